@@ -0,0 +1,113 @@
+package io.bdrc.lucene.bo.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.bdrc.lucene.bo.CommonHelpers;
+import io.bdrc.lucene.bo.TibetanAnalyzer;
+import io.bdrc.lucene.bo.phonetics.TibetanPhoneticIndexAnalyzer;
+import io.bdrc.lucene.bo.phonetics.TibetanPhoneticQueryAnalyzer;
+
+/**
+ * Full analyzers in the configurations used in production, with the
+ * components reused across documents like during indexing.
+ * One operation is one pass over the corpus.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AnalyzerBenchmark {
+
+    // the word and verbs configurations need the compiled Tries of the resources submodule,
+    // the word one falls back on the bundled lexicon
+    @Param({ "syllables", "syllables-affix-paba", "syllables-oldtib", "syllables-verbs", "words-lemmas",
+            "ewts-syllables", "phonetic-index", "phonetic-query" })
+    public String config;
+
+    private String[] docs;
+    private long chars;
+    private Analyzer analyzer;
+
+    public static Analyzer newAnalyzer(final String config) throws IOException {
+        switch (config) {
+        case "syllables":
+            return new TibetanAnalyzer(false, "", "", TibetanAnalyzer.INPUT_METHOD_UNICODE, null, null);
+        case "syllables-affix-paba":
+            return new TibetanAnalyzer(false, "affix-paba", "l", TibetanAnalyzer.INPUT_METHOD_UNICODE, "", null);
+        case "syllables-oldtib":
+            return new TibetanAnalyzer(false, "affix-paba", "l-ot", TibetanAnalyzer.INPUT_METHOD_UNICODE, "", null);
+        case "syllables-verbs":
+            return new TibetanAnalyzer(false, "affix-verbs-paba", "l", TibetanAnalyzer.INPUT_METHOD_UNICODE, "", null);
+        case "words-lemmas":
+            return new TibetanAnalyzer(true, "lemmas", "l", TibetanAnalyzer.INPUT_METHOD_UNICODE, "", lexiconFile());
+        case "ewts-syllables":
+            return new TibetanAnalyzer(false, "affix-paba", "l", TibetanAnalyzer.INPUT_METHOD_EWTS, "", null);
+        case "phonetic-index":
+            return new TibetanPhoneticIndexAnalyzer();
+        case "phonetic-query":
+            return new TibetanPhoneticQueryAnalyzer();
+        default:
+            throw new IllegalArgumentException("unknown configuration: " + config);
+        }
+    }
+
+    public static String corpusFor(final String config) {
+        if (config.startsWith("ewts"))
+            return Corpus.EWTS;
+        if (config.equals("phonetic-query"))
+            return Corpus.LATIN;
+        return Corpus.TIBETAN;
+    }
+
+    // null to use the default compiled Trie
+    private static String lexiconFile() throws IOException {
+        try (InputStream stream = CommonHelpers.getResourceOrFile("bo-compiled-trie.dump")) {
+            if (stream != null)
+                return null;
+        }
+        return Corpus.toTempFile(Corpus.LEXICON);
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        docs = Corpus.load(corpusFor(config));
+        for (final String doc : docs)
+            chars += doc.length();
+        analyzer = newAnalyzer(config);
+    }
+
+    @TearDown
+    public void tearDown() {
+        analyzer.close();
+    }
+
+    @Benchmark
+    public void analyze(final Throughput t, final Blackhole bh) throws IOException {
+        for (final String doc : docs) {
+            final TokenStream ts = analyzer.tokenStream("", doc);
+            ts.reset();
+            t.consume(ts, bh);
+        }
+        t.chars += chars;
+    }
+}
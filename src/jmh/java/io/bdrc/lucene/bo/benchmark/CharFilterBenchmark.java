@@ -0,0 +1,110 @@
+package io.bdrc.lucene.bo.benchmark;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.bdrc.lucene.bo.TibCharFilter;
+import io.bdrc.lucene.bo.TibEwtsFilter;
+import io.bdrc.lucene.bo.TibPattFilter;
+import io.bdrc.lucene.bo.phonetics.EnglishPhoneticCharFilter;
+import io.bdrc.lucene.bo.phonetics.EnglishPhoneticCharMapFilter;
+import io.bdrc.lucene.bo.phonetics.EnglishPhoneticRegexFilter;
+import io.bdrc.lucene.bo.phonetics.LowerCaseCharFilter;
+
+/**
+ * Char filters alone, read until the end with a fixed size buffer.
+ * One operation is one pass over the corpus.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CharFilterBenchmark {
+
+    private String[] tibetan;
+    private String[] ewts;
+    private String[] latin;
+    private long tibetanChars;
+    private long ewtsChars;
+    private long latinChars;
+    private final char[] buffer = new char[1024];
+
+    private static long length(final String[] docs) {
+        long res = 0;
+        for (final String doc : docs)
+            res += doc.length();
+        return res;
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        tibetan = Corpus.load(Corpus.TIBETAN);
+        ewts = Corpus.load(Corpus.EWTS);
+        latin = Corpus.load(Corpus.LATIN);
+        tibetanChars = length(tibetan);
+        ewtsChars = length(ewts);
+        latinChars = length(latin);
+    }
+
+    @Benchmark
+    public void tibCharFilter(final Throughput t, final Blackhole bh) throws IOException {
+        for (final String doc : tibetan)
+            t.drain(new TibCharFilter(new StringReader(doc)), buffer, bh);
+        t.chars += tibetanChars;
+    }
+
+    @Benchmark
+    public void tibCharFilterLenientOldTib(final Throughput t, final Blackhole bh) throws IOException {
+        for (final String doc : tibetan)
+            t.drain(new TibCharFilter(new StringReader(doc), true, true), buffer, bh);
+        t.chars += tibetanChars;
+    }
+
+    @Benchmark
+    public void tibPattFilters(final Throughput t, final Blackhole bh) throws IOException {
+        for (final String doc : tibetan)
+            t.drain(TibPattFilter.plugFilters(new StringReader(doc)), buffer, bh);
+        t.chars += tibetanChars;
+    }
+
+    @Benchmark
+    public void tibEwtsFilter(final Throughput t, final Blackhole bh) throws IOException {
+        for (final String doc : ewts)
+            t.drain(new TibEwtsFilter(new StringReader(doc)), buffer, bh);
+        t.chars += ewtsChars;
+    }
+
+    @Benchmark
+    public void englishPhoneticCharFilter(final Throughput t, final Blackhole bh) throws IOException {
+        for (final String doc : latin)
+            t.drain(new EnglishPhoneticCharFilter(new StringReader(doc)), buffer, bh);
+        t.chars += latinChars;
+    }
+
+    @Benchmark
+    public void englishPhoneticFilterChain(final Throughput t, final Blackhole bh) throws IOException {
+        for (final String doc : latin) {
+            Reader reader = new LowerCaseCharFilter(new StringReader(doc));
+            reader = new EnglishPhoneticCharMapFilter(reader);
+            reader = EnglishPhoneticRegexFilter.plugFilters(reader);
+            t.drain(reader, buffer, bh);
+        }
+        t.chars += latinChars;
+    }
+}
@@ -0,0 +1,90 @@
+package io.bdrc.lucene.bo.benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.bdrc.lucene.bo.SyntheticCorpusGenerator;
+
+/**
+ * Fixed corpora bundled with the benchmarks, one document per line:
+ * <ul>
+ * <li>corpus-bo.txt: Tibetan Unicode, sentences made of the words of synonyms.txt
+ * <li>corpus-ewts.txt: the same text in EWTS
+ * <li>corpus-latin.txt: Latin phonetic renderings of names
+ * </ul>
+ * The corpora are small on purpose: they are only read once per trial. The
+ * indexing and search tools use larger generated or local corpora.
+ */
+public final class Corpus {
+
+    public static final String TIBETAN = "corpus-bo.txt";
+    public static final String EWTS = "corpus-ewts.txt";
+    public static final String LATIN = "corpus-latin.txt";
+    public static final String LEXICON = "lexicon-bo.txt";
+
+    private Corpus() {}
+
+    public static String[] load(final String name) throws IOException {
+        final List<String> res = new ArrayList<>();
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(open(name), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (!line.isEmpty())
+                    res.add(line);
+            }
+        }
+        return res.toArray(new String[0]);
+    }
+
+    // reproducible documents of about docLength chars, cut at the end of lines
+    public static String[] generate(final long seed, final int nbDocs, final int docLength, final boolean ewts) {
+        final String text = new SyntheticCorpusGenerator(seed).oldTibRatio(0.01).latinRatio(0.001).ewts(ewts)
+                .generate((long) nbDocs * docLength);
+        final List<String> res = new ArrayList<>(nbDocs);
+        final StringBuilder doc = new StringBuilder();
+        for (final String line : text.split("\n")) {
+            doc.append(line).append('\n');
+            if (doc.length() >= docLength) {
+                res.add(doc.toString());
+                doc.setLength(0);
+            }
+        }
+        if (doc.length() > 0)
+            res.add(doc.toString());
+        return res.toArray(new String[0]);
+    }
+
+    // one document per UTF-8 file
+    public static String[] load(final List<Path> files) throws IOException {
+        final String[] res = new String[files.size()];
+        for (int i = 0; i < res.length; i++)
+            res[i] = new String(Files.readAllBytes(files.get(i)), StandardCharsets.UTF_8);
+        return res;
+    }
+
+    // copy of a bundled resource on disk, for the APIs that take file names
+    public static String toTempFile(final String name) throws IOException {
+        final File f = File.createTempFile("lucene-bo-", "-" + name);
+        f.deleteOnExit();
+        try (InputStream in = open(name)) {
+            Files.copy(in, f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return f.getAbsolutePath();
+    }
+
+    private static InputStream open(final String name) throws IOException {
+        final InputStream in = Corpus.class.getResourceAsStream(name);
+        if (in == null)
+            throw new IOException("corpus not found: " + name);
+        return in;
+    }
+}
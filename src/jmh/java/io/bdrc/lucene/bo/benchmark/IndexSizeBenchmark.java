@@ -0,0 +1,201 @@
+package io.bdrc.lucene.bo.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.MultiTerms;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.index.TieredMergePolicy;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+
+import io.bdrc.lucene.bo.TibetanAnalyzer;
+
+/**
+ * Indexes the same generated corpus with analyzer configurations that differ
+ * by one option at a time, and reports for each the size of the term index
+ * (.tip), of the term dictionary (.tim), of the postings (.doc) and of the
+ * positions (.pos), the number of unique terms and their total size in bytes.
+ * <p>
+ * Each configuration gets its own index with a single field, merged into one
+ * segment so that the sizes don't depend on the flushes. The same seed and
+ * number of documents always give the same corpus. Not a JMH benchmark, run
+ * with:
+ *
+ * <pre>
+ * mvn -Pjmh test-compile exec:java@index-size-benchmark -Dexec.args="-docs 5000"
+ * </pre>
+ */
+public final class IndexSizeBenchmark {
+
+    // from the strictest to the most normalizing, each one adds an option to a previous one
+    public static final List<String> CONFIGS = Arrays.asList("strict", "lenient", "affix", "paba", "affix-paba",
+            "affix-paba-oldtib", "affix-paba-stopwords", "affix-paba-compact", "words-lemmas", "phonetic-index");
+
+    static final List<String> EXTENSIONS = Arrays.asList("tip", "tim", "doc", "pos");
+
+    private IndexSizeBenchmark() {}
+
+    public static Analyzer newAnalyzer(final String config) throws IOException {
+        switch (config) {
+        case "strict":
+            return new TibetanAnalyzer(false, "", "", TibetanAnalyzer.INPUT_METHOD_UNICODE, null, null);
+        case "lenient":
+            return new TibetanAnalyzer(false, "", "l", TibetanAnalyzer.INPUT_METHOD_UNICODE, null, null);
+        case "affix":
+            return new TibetanAnalyzer(false, "affix", "l", TibetanAnalyzer.INPUT_METHOD_UNICODE, null, null);
+        case "paba":
+            return new TibetanAnalyzer(false, "paba", "l", TibetanAnalyzer.INPUT_METHOD_UNICODE, null, null);
+        case "affix-paba":
+            return new TibetanAnalyzer(false, "affix-paba", "l", TibetanAnalyzer.INPUT_METHOD_UNICODE, null, null);
+        case "affix-paba-oldtib":
+            return new TibetanAnalyzer(false, "affix-paba", "l-ot", TibetanAnalyzer.INPUT_METHOD_UNICODE, null, null);
+        case "affix-paba-stopwords":
+            return new TibetanAnalyzer(false, "affix-paba", "l", TibetanAnalyzer.INPUT_METHOD_UNICODE, "", null);
+        case "affix-paba-compact":
+            final TibetanAnalyzer compact = new TibetanAnalyzer(false, "affix-paba", "l", TibetanAnalyzer.INPUT_METHOD_UNICODE, null, null);
+            compact.setCompactTerms(true);
+            return compact;
+        default:
+            return AnalyzerBenchmark.newAnalyzer(config);
+        }
+    }
+
+    /** The sizes of the index of a field. */
+    public static final class Sizes {
+        public final Map<String, Long> bytesPerExtension = new TreeMap<>();
+        public long totalBytes = 0;
+        public long uniqueTerms = 0;
+        public long termBytes = 0;
+        public long tokens = 0;
+    }
+
+    // without compound files, so that the files of each structure can be measured
+    static IndexWriterConfig writerConfig(final Analyzer analyzer) {
+        final TieredMergePolicy mergePolicy = new TieredMergePolicy();
+        mergePolicy.setNoCFSRatio(0);
+        return new IndexWriterConfig(analyzer).setMergePolicy(mergePolicy).setUseCompoundFile(false).setRAMBufferSizeMB(64);
+    }
+
+    /**
+     * Merges the index into one segment and measures it.
+     *
+     * @param dir
+     *            the index
+     * @param field
+     *            the field
+     * @return the sizes
+     * @throws IOException
+     *             from the index
+     */
+    public static Sizes measure(final Directory dir, final String field) throws IOException {
+        try (IndexWriter writer = new IndexWriter(dir, writerConfig(null))) {
+            writer.forceMerge(1);
+        }
+        final Sizes res = new Sizes();
+        for (final String file : dir.listAll()) {
+            final long length = dir.fileLength(file);
+            final int dot = file.lastIndexOf('.');
+            if (dot != -1)
+                res.bytesPerExtension.merge(file.substring(dot + 1), length, Long::sum);
+            res.totalBytes += length;
+        }
+        try (DirectoryReader reader = DirectoryReader.open(dir)) {
+            final Terms terms = MultiTerms.getTerms(reader, field);
+            if (terms != null) {
+                res.tokens = terms.getSumTotalTermFreq();
+                final TermsEnum te = terms.iterator();
+                BytesRef term;
+                while ((term = te.next()) != null) {
+                    res.uniqueTerms++;
+                    res.termBytes += term.length;
+                }
+            }
+        }
+        return res;
+    }
+
+    private static void usage() {
+        System.err.println("usage: IndexSizeBenchmark [options] [configuration]...");
+        System.err.println("  -docs <n>       number of generated documents, 2000 by default");
+        System.err.println("  -length <n>     length of the generated documents in chars, 5000 by default");
+        System.err.println("  -seed <n>       seed of the generated corpus, 42 by default");
+        System.err.println("  -dir <dir>      directory of the indexes, a temporary directory by default");
+        System.err.println("  configurations: " + String.join(" ", CONFIGS) + " (all by default)");
+        System.exit(1);
+    }
+
+    public static void main(final String[] args) throws IOException {
+        int nbDocs = 2000;
+        int docLength = 5000;
+        long seed = 42;
+        Path root = null;
+        final List<String> configs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            final String arg = args[i];
+            if (arg.startsWith("-") && i + 1 == args.length)
+                usage();
+            switch (arg) {
+            case "-docs":
+                nbDocs = Integer.parseInt(args[++i]);
+                break;
+            case "-length":
+                docLength = Integer.parseInt(args[++i]);
+                break;
+            case "-seed":
+                seed = Long.parseLong(args[++i]);
+                break;
+            case "-dir":
+                root = Paths.get(args[++i]);
+                break;
+            default:
+                if (arg.startsWith("-") || !CONFIGS.contains(arg))
+                    usage();
+                configs.add(arg);
+            }
+        }
+        if (configs.isEmpty())
+            configs.addAll(CONFIGS);
+        final boolean tempRoot = root == null;
+        if (tempRoot)
+            root = Files.createTempDirectory("lucene-bo-size-");
+        final String[] docs = Corpus.generate(seed, nbDocs, docLength, false);
+        System.out.println(String.format("%-22s %10s %10s %10s %10s %10s %10s %10s %10s", "configuration", ".tip", ".tim",
+                ".doc", ".pos", "total", "terms", "term bytes", "tokens"));
+        for (final String config : configs) {
+            final Path path = root.resolve(config);
+            IndexingBenchmark.deleteRecursively(path);
+            final Sizes s;
+            try (Analyzer analyzer = newAnalyzer(config); Directory dir = FSDirectory.open(path)) {
+                IndexingBenchmark.index(dir, writerConfig(analyzer), docs, 1);
+                s = measure(dir, IndexingBenchmark.FIELD);
+            } catch (IOException | RuntimeException e) {
+                // the word configurations need the compiled Tries of the resources submodule
+                System.out.println(String.format("%-22s failed: %s", config, e.getCause() != null ? e.getCause() : e));
+                continue;
+            }
+            final StringBuilder sb = new StringBuilder(String.format("%-22s", config));
+            for (final String ext : EXTENSIONS)
+                sb.append(String.format(" %8.1fkB", s.bytesPerExtension.getOrDefault(ext, 0L) / 1024.0));
+            sb.append(String.format(" %8.1fkB %10d %10d %10d", s.totalBytes / 1024.0, s.uniqueTerms, s.termBytes, s.tokens));
+            System.out.println(sb);
+            if (tempRoot)
+                IndexingBenchmark.deleteRecursively(path);
+        }
+        if (tempRoot)
+            IndexingBenchmark.deleteRecursively(root);
+    }
+}
@@ -0,0 +1,258 @@
+package io.bdrc.lucene.bo.benchmark;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+
+import io.bdrc.lucene.bo.bulk.CorpusAnalyzer;
+
+/**
+ * Indexes a corpus with each analyzer configuration of
+ * {@link AnalyzerBenchmark} into an {@link FSDirectory}, with several indexing
+ * threads sharing an {@link IndexWriter}, and reports the indexing rate, the
+ * share of the CPU time of the indexing threads spent in the analysis and the
+ * size of the index. The analysis share is the CPU time of a second pass only
+ * analyzing the documents, divided by the CPU time of the indexing, the
+ * background merges excluded.
+ * <p>
+ * Each configuration gets its own index with a single field, so the size of
+ * the index is the size of the field. Not a JMH benchmark, run with:
+ *
+ * <pre>
+ * mvn -Pjmh test-compile exec:java@indexing-benchmark -Dexec.args="-docs 5000 -threads 4 syllables ewts-syllables"
+ * </pre>
+ */
+public final class IndexingBenchmark {
+
+    public static final String FIELD = "text";
+    // the configurations of AnalyzerBenchmark that are used at index time
+    public static final List<String> CONFIGS = Arrays.asList("syllables", "syllables-affix-paba", "syllables-oldtib",
+            "syllables-verbs", "words-lemmas", "ewts-syllables", "phonetic-index");
+
+    private IndexingBenchmark() {}
+
+    /** The measures of the indexing of a corpus. */
+    public static final class Result {
+        public int docs;
+        public long chars;
+        public long wallNanos;
+        public long cpuNanos;
+        public long analysisNanos;
+        public long indexBytes;
+
+        public double docsPerSecond() {
+            return docs / (wallNanos / 1e9);
+        }
+
+        public double analysisShare() {
+            return cpuNanos == 0 ? Double.NaN : (double) analysisNanos / cpuNanos;
+        }
+    }
+
+    interface DocConsumer {
+        void accept(String doc) throws IOException;
+    }
+
+    // runs the consumer on all the documents with several threads, returns the CPU time of the threads
+    static long parallel(final String[] docs, final int threads, final DocConsumer consumer) throws IOException {
+        final ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        final LongAdder cpu = new LongAdder();
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final Thread worker = new Thread(() -> {
+                final long cpuStart = mx.getCurrentThreadCpuTime();
+                try {
+                    int i;
+                    while ((i = next.getAndIncrement()) < docs.length && error.get() == null)
+                        consumer.accept(docs[i]);
+                } catch (Throwable e) {
+                    error.compareAndSet(null, e);
+                }
+                cpu.add(mx.getCurrentThreadCpuTime() - cpuStart);
+            }, "benchmark-" + t);
+            workers.add(worker);
+            worker.start();
+        }
+        for (final Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted", e);
+            }
+        }
+        if (error.get() != null)
+            throw new IOException("benchmark failed", error.get());
+        return cpu.sum();
+    }
+
+    /**
+     * Indexes documents in a single field with several threads and commits,
+     * then analyzes them again without indexing to measure the analysis time.
+     *
+     * @param dir
+     *            the directory, should be empty
+     * @param analyzer
+     *            the analyzer of the field
+     * @param docs
+     *            the documents
+     * @param threads
+     *            the number of indexing threads
+     * @return the measures
+     * @throws IOException
+     *             from the index
+     */
+    public static Result index(final Directory dir, final Analyzer analyzer, final String[] docs, final int threads)
+            throws IOException {
+        return index(dir, new IndexWriterConfig(analyzer).setRAMBufferSizeMB(64), docs, threads);
+    }
+
+    // same with a custom configuration of the IndexWriter
+    public static Result index(final Directory dir, final IndexWriterConfig config, final String[] docs, final int threads)
+            throws IOException {
+        final Analyzer analyzer = config.getAnalyzer();
+        final Result res = new Result();
+        final long start = System.nanoTime();
+        try (IndexWriter writer = new IndexWriter(dir, config)) {
+            res.cpuNanos = parallel(docs, threads, text -> {
+                final Document doc = new Document();
+                doc.add(new TextField(FIELD, text, Field.Store.NO));
+                writer.addDocument(doc);
+            });
+            final long cpuStart = ManagementFactory.getThreadMXBean().getCurrentThreadCpuTime();
+            writer.commit();
+            res.cpuNanos += ManagementFactory.getThreadMXBean().getCurrentThreadCpuTime() - cpuStart;
+        }
+        res.wallNanos = System.nanoTime() - start;
+        res.analysisNanos = parallel(docs, threads, text -> {
+            try (TokenStream ts = analyzer.tokenStream(FIELD, text)) {
+                ts.reset();
+                while (ts.incrementToken())
+                    ;
+                ts.end();
+            }
+        });
+        res.docs = docs.length;
+        for (final String doc : docs)
+            res.chars += doc.length();
+        for (final String file : dir.listAll())
+            res.indexBytes += dir.fileLength(file);
+        return res;
+    }
+
+    public static void deleteRecursively(final Path path) throws IOException {
+        if (!Files.exists(path))
+            return;
+        try (Stream<Path> walk = Files.walk(path)) {
+            for (final Path p : (Iterable<Path>) walk.sorted((a, b) -> b.compareTo(a))::iterator)
+                Files.delete(p);
+        }
+    }
+
+    private static void usage() {
+        System.err.println("usage: IndexingBenchmark [options] [configuration]...");
+        System.err.println("  -docs <n>       number of generated documents, 2000 by default");
+        System.err.println("  -length <n>     length of the generated documents in chars, 5000 by default");
+        System.err.println("  -seed <n>       seed of the generated corpus, 42 by default");
+        System.err.println("  -corpus <dir>   local corpus instead of the generated one, one document per file");
+        System.err.println("  -threads <n>    number of indexing threads, the number of processors by default");
+        System.err.println("  -dir <dir>      directory of the indexes, a temporary directory by default");
+        System.err.println("  configurations: " + String.join(" ", CONFIGS) + " (all by default)");
+        System.exit(1);
+    }
+
+    public static void main(final String[] args) throws IOException {
+        int nbDocs = 2000;
+        int docLength = 5000;
+        long seed = 42;
+        Path corpus = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path root = null;
+        final List<String> configs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            final String arg = args[i];
+            if (arg.startsWith("-") && i + 1 == args.length)
+                usage();
+            switch (arg) {
+            case "-docs":
+                nbDocs = Integer.parseInt(args[++i]);
+                break;
+            case "-length":
+                docLength = Integer.parseInt(args[++i]);
+                break;
+            case "-seed":
+                seed = Long.parseLong(args[++i]);
+                break;
+            case "-corpus":
+                corpus = Paths.get(args[++i]);
+                break;
+            case "-threads":
+                threads = Integer.parseInt(args[++i]);
+                break;
+            case "-dir":
+                root = Paths.get(args[++i]);
+                break;
+            default:
+                if (arg.startsWith("-") || !CONFIGS.contains(arg))
+                    usage();
+                configs.add(arg);
+            }
+        }
+        if (configs.isEmpty())
+            configs.addAll(CONFIGS);
+        final boolean tempRoot = root == null;
+        if (tempRoot)
+            root = Files.createTempDirectory("lucene-bo-indexing-");
+        final String[] localDocs = corpus == null ? null : Corpus.load(CorpusAnalyzer.listFiles(Arrays.asList(corpus)));
+        System.out.println(String.format("%-22s %8s %10s %10s %9s %12s", "configuration", "docs", "docs/s", "Mchars/s", "analysis", "index size"));
+        for (final String config : configs) {
+            final String[] docs = localDocs != null ? localDocs
+                    : Corpus.generate(seed, nbDocs, docLength, config.startsWith("ewts"));
+            final Path path = root.resolve(config);
+            deleteRecursively(path);
+            final Result r;
+            try (Analyzer analyzer = AnalyzerBenchmark.newAnalyzer(config)) {
+                // one pass in memory so that the measure is not the one of the JIT
+                try (Directory dir = new ByteBuffersDirectory()) {
+                    index(dir, analyzer, docs, threads);
+                }
+                try (Directory dir = FSDirectory.open(path)) {
+                    r = index(dir, analyzer, docs, threads);
+                }
+            } catch (IOException | RuntimeException e) {
+                // the word configurations need the compiled Tries of the resources submodule
+                System.out.println(String.format("%-22s failed: %s", config, e.getCause() != null ? e.getCause() : e));
+                continue;
+            }
+            System.out.println(String.format("%-22s %8d %10.1f %10.2f %8.1f%% %10.2fMB", config, r.docs, r.docsPerSecond(),
+                    r.chars / 1e6 / (r.wallNanos / 1e9), 100 * r.analysisShare(), r.indexBytes / 1048576.0));
+            if (tempRoot)
+                deleteRecursively(path);
+        }
+        if (tempRoot)
+            deleteRecursively(root);
+    }
+}
@@ -0,0 +1,256 @@
+package io.bdrc.lucene.bo.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.MultiPhraseQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+
+import io.bdrc.ewtsconverter.EwtsConverter;
+import io.bdrc.lucene.bo.TibetanAnalyzer;
+import io.bdrc.lucene.bo.bulk.TokenArray;
+import io.bdrc.lucene.bo.phonetics.TibetanPhoneticIndexAnalyzer;
+import io.bdrc.lucene.bo.phonetics.TibetanPhoneticQueryAnalyzer;
+
+/**
+ * Builds an index of a generated corpus with a Tibetan field and a phonetic
+ * field, then replays query mixes against it and reports the p50 and p99
+ * latencies per class of queries, split between the analysis of the query and
+ * the search of the top 10 hits:
+ * <ul>
+ * <li>syllable: a single syllable of the corpus, in Unicode</li>
+ * <li>phrase: 3 to 5 consecutive syllables of the corpus with a particle, in
+ * Unicode</li>
+ * <li>ewts: the same phrases in EWTS</li>
+ * <li>phonetic: the Latin names of {@link Corpus#LATIN} through
+ * {@link TibetanPhoneticQueryAnalyzer}, on the phonetic field</li>
+ * </ul>
+ * The queries are built from the analyzed tokens as term or multi-phrase
+ * queries, so that the analysis and the search can be timed separately. Not a
+ * JMH benchmark, run with:
+ *
+ * <pre>
+ * mvn -Pjmh test-compile exec:java@query-benchmark -Dexec.args="-docs 20000 -queries 5000"
+ * </pre>
+ */
+public final class QueryBenchmark {
+
+    public static final String TEXT_FIELD = "text";
+    public static final String PHONETIC_FIELD = "phonetic";
+
+    static final List<String> PARTICLES = Arrays.asList("གི", "ཀྱི", "གྱི", "ཡི", "གིས", "ཀྱིས", "གྱིས", "ལ", "ན", "དུ",
+            "ཏུ", "སུ", "ར", "ནས", "ལས", "དང", "ཀྱང", "ཡང", "ནི", "པ", "བ", "མ");
+
+    private QueryBenchmark() {}
+
+    /** A query of the mix, with its analyzer and field. */
+    static final class QueryCase {
+        final String queryClass;
+        final String text;
+        final Analyzer analyzer;
+        final String field;
+
+        QueryCase(final String queryClass, final String text, final Analyzer analyzer, final String field) {
+            this.queryClass = queryClass;
+            this.text = text;
+            this.analyzer = analyzer;
+            this.field = field;
+        }
+    }
+
+    /** The latencies of a class of queries, in nanoseconds. */
+    static final class Latencies {
+        final List<long[]> samples = new ArrayList<>();
+        long hits = 0;
+
+        void add(final long analysis, final long search) {
+            samples.add(new long[] { analysis, search });
+        }
+
+        long percentile(final int column, final double p) {
+            final long[] values = new long[samples.size()];
+            for (int i = 0; i < values.length; i++)
+                values[i] = column == 2 ? samples.get(i)[0] + samples.get(i)[1] : samples.get(i)[column];
+            Arrays.sort(values);
+            return values.length == 0 ? 0 : values[Math.min(values.length - 1, (int) Math.ceil(p * values.length) - 1)];
+        }
+    }
+
+    // the syllables of a Unicode text, without the punctuation
+    static List<String> syllables(final String doc) {
+        final List<String> res = new ArrayList<>();
+        for (final String s : doc.split("[་༌།\\s]+")) {
+            if (!s.isEmpty() && s.charAt(0) >= 'ཀ' && s.charAt(0) <= 'ྼ')
+                res.add(s);
+        }
+        return res;
+    }
+
+    static List<QueryCase> queryMix(final String[] docs, final int nbQueries, final long seed,
+            final Analyzer unicode, final Analyzer ewts, final Analyzer phonetic) throws IOException {
+        final Random rand = new Random(seed);
+        final EwtsConverter converter = new EwtsConverter();
+        final Set<String> particles = new HashSet<>(PARTICLES);
+        final String[] latin = Corpus.load(Corpus.LATIN);
+        final List<QueryCase> res = new ArrayList<>();
+        for (int q = 0; q < nbQueries; q++) {
+            final List<String> sylls = syllables(docs[rand.nextInt(docs.length)]);
+            if (sylls.size() < 5) {
+                q--;
+                continue;
+            }
+            res.add(new QueryCase("syllable", sylls.get(rand.nextInt(sylls.size())), unicode, TEXT_FIELD));
+            // a window with a particle, or the last one tried
+            final int length = 3 + rand.nextInt(3);
+            List<String> window = null;
+            for (int tries = 0; tries < 20; tries++) {
+                final int start = rand.nextInt(Math.max(1, sylls.size() - length));
+                window = sylls.subList(start, Math.min(sylls.size(), start + length));
+                if (window.stream().anyMatch(particles::contains))
+                    break;
+            }
+            final String phrase = String.join("་", window) + "་";
+            res.add(new QueryCase("phrase", phrase, unicode, TEXT_FIELD));
+            res.add(new QueryCase("ewts", converter.toWylie(phrase), ewts, TEXT_FIELD));
+            res.add(new QueryCase("phonetic", latin[rand.nextInt(latin.length)], phonetic, PHONETIC_FIELD));
+        }
+        // the classes interleaved in a random order
+        Collections.shuffle(res, rand);
+        return res;
+    }
+
+    // a term query, or a multi-phrase query with the alternatives at each position
+    static Query toQuery(final String field, final TokenArray tokens) {
+        if (tokens.size() == 0)
+            return new MatchNoDocsQuery();
+        if (tokens.size() == 1)
+            return new TermQuery(new Term(field, tokens.term(0)));
+        final Map<Integer, List<Term>> byPosition = new LinkedHashMap<>();
+        for (int i = 0; i < tokens.size(); i++)
+            byPosition.computeIfAbsent(tokens.position(i), k -> new ArrayList<>()).add(new Term(field, tokens.term(i)));
+        final MultiPhraseQuery.Builder builder = new MultiPhraseQuery.Builder();
+        for (final Map.Entry<Integer, List<Term>> e : byPosition.entrySet())
+            builder.add(e.getValue().toArray(new Term[0]), e.getKey());
+        return builder.build();
+    }
+
+    static Map<String, Latencies> replay(final IndexSearcher searcher, final List<QueryCase> queries) throws IOException {
+        final Map<String, Latencies> res = new LinkedHashMap<>();
+        for (final QueryCase qc : queries) {
+            final long start = System.nanoTime();
+            final TokenArray tokens;
+            try (TokenStream ts = qc.analyzer.tokenStream(qc.field, qc.text)) {
+                tokens = TokenArray.capture(ts);
+            }
+            final Query query = toQuery(qc.field, tokens);
+            final long analyzed = System.nanoTime();
+            final long hits = searcher.search(query, 10).totalHits.value;
+            final long end = System.nanoTime();
+            final Latencies l = res.computeIfAbsent(qc.queryClass, k -> new Latencies());
+            l.add(analyzed - start, end - analyzed);
+            l.hits += hits;
+        }
+        return res;
+    }
+
+    private static void usage() {
+        System.err.println("usage: QueryBenchmark [options]");
+        System.err.println("  -docs <n>       number of generated documents, 10000 by default");
+        System.err.println("  -length <n>     length of the generated documents in chars, 2000 by default");
+        System.err.println("  -queries <n>    number of queries per class, 2000 by default");
+        System.err.println("  -seed <n>       seed of the corpus and of the queries, 42 by default");
+        System.exit(1);
+    }
+
+    public static void main(final String[] args) throws IOException {
+        int nbDocs = 10000;
+        int docLength = 2000;
+        int nbQueries = 2000;
+        long seed = 42;
+        for (int i = 0; i < args.length; i++) {
+            if (i + 1 == args.length)
+                usage();
+            switch (args[i]) {
+            case "-docs":
+                nbDocs = Integer.parseInt(args[++i]);
+                break;
+            case "-length":
+                docLength = Integer.parseInt(args[++i]);
+                break;
+            case "-queries":
+                nbQueries = Integer.parseInt(args[++i]);
+                break;
+            case "-seed":
+                seed = Long.parseLong(args[++i]);
+                break;
+            default:
+                usage();
+            }
+        }
+        final String[] docs = Corpus.generate(seed, nbDocs, docLength, false);
+        final Path path = Files.createTempDirectory("lucene-bo-query-");
+        try (TibetanAnalyzer unicode = new TibetanAnalyzer(false, "affix-paba", "l", TibetanAnalyzer.INPUT_METHOD_UNICODE, "", null);
+                TibetanAnalyzer ewts = new TibetanAnalyzer(false, "affix-paba", "l", TibetanAnalyzer.INPUT_METHOD_EWTS, "", null);
+                TibetanPhoneticIndexAnalyzer phoneticIndex = new TibetanPhoneticIndexAnalyzer();
+                TibetanPhoneticQueryAnalyzer phoneticQuery = new TibetanPhoneticQueryAnalyzer();
+                Directory dir = FSDirectory.open(path)) {
+            final Map<String, Analyzer> perField = new HashMap<>();
+            perField.put(PHONETIC_FIELD, phoneticIndex);
+            final long indexStart = System.nanoTime();
+            try (IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(new PerFieldAnalyzerWrapper(unicode, perField)))) {
+                IndexingBenchmark.parallel(docs, Runtime.getRuntime().availableProcessors(), text -> {
+                    final Document doc = new Document();
+                    doc.add(new TextField(TEXT_FIELD, text, Field.Store.NO));
+                    doc.add(new TextField(PHONETIC_FIELD, text, Field.Store.NO));
+                    writer.addDocument(doc);
+                });
+                writer.forceMerge(1);
+            }
+            System.out.println(String.format("indexed %d docs in %.1fs", docs.length, (System.nanoTime() - indexStart) / 1e9));
+            try (DirectoryReader reader = DirectoryReader.open(dir)) {
+                final IndexSearcher searcher = new IndexSearcher(reader);
+                final List<QueryCase> queries = queryMix(docs, nbQueries, seed, unicode, ewts, phoneticQuery);
+                // warm up pass
+                replay(searcher, queries);
+                final Map<String, Latencies> latencies = replay(searcher, queries);
+                System.out.println(String.format("%-10s %8s %10s %10s %10s %10s %10s %10s %12s", "class", "queries",
+                        "ana p50", "ana p99", "search p50", "search p99", "total p50", "total p99", "avg hits"));
+                for (final Map.Entry<String, Latencies> e : latencies.entrySet()) {
+                    final Latencies l = e.getValue();
+                    System.out.println(String.format("%-10s %8d %8.1fus %8.1fus %8.1fus %8.1fus %8.1fus %8.1fus %12.1f",
+                            e.getKey(), l.samples.size(), l.percentile(0, 0.5) / 1e3, l.percentile(0, 0.99) / 1e3,
+                            l.percentile(1, 0.5) / 1e3, l.percentile(1, 0.99) / 1e3, l.percentile(2, 0.5) / 1e3,
+                            l.percentile(2, 0.99) / 1e3, (double) l.hits / l.samples.size()));
+                }
+            }
+        } finally {
+            IndexingBenchmark.deleteRecursively(path);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package io.bdrc.lucene.bo.benchmark;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Secondary results of the benchmarks, reported by JMH as chars/s and
+ * tokens/s next to the corpus passes per second.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class Throughput {
+
+    public long chars;
+    public long tokens;
+
+    @Setup(Level.Iteration)
+    public void clean() {
+        chars = 0;
+        tokens = 0;
+    }
+
+    // consumes a token stream that has been reset
+    public void consume(final TokenStream ts, final Blackhole bh) throws IOException {
+        final CharTermAttribute termAtt = ts.getAttribute(CharTermAttribute.class);
+        long n = 0;
+        while (ts.incrementToken()) {
+            bh.consume(termAtt.length());
+            n++;
+        }
+        ts.end();
+        ts.close();
+        tokens += n;
+    }
+
+    // reads a char filter chain until the end
+    public void drain(final Reader reader, final char[] buffer, final Blackhole bh) throws IOException {
+        int len;
+        while ((len = reader.read(buffer, 0, buffer.length)) != -1)
+            bh.consume(len);
+        reader.close();
+    }
+}
@@ -0,0 +1,104 @@
+package io.bdrc.lucene.bo.benchmark;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.bdrc.lucene.bo.PaBaFilter;
+import io.bdrc.lucene.bo.TibAffixedFilter;
+import io.bdrc.lucene.bo.TibSyllableTokenizer;
+import io.bdrc.lucene.bo.phonetics.EnglishPhoneticFilter;
+import io.bdrc.lucene.bo.phonetics.StandardTibetanPhoneticFilter;
+
+/**
+ * Token filters on top of {@link TibSyllableTokenizer}, to be compared with
+ * TokenizerBenchmark.tibSyllableTokenizer. The chains are reused like in an
+ * Analyzer. One operation is one pass over the corpus.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenFilterBenchmark {
+
+    private String[] tibetan;
+    private long tibetanChars;
+
+    private Tokenizer affixedSource;
+    private TokenStream affixed;
+    private Tokenizer affixedOldTibSource;
+    private TokenStream affixedOldTib;
+    private Tokenizer pabaSource;
+    private TokenStream paba;
+    private Tokenizer standardTibetanSource;
+    private TokenStream standardTibetan;
+    private Tokenizer englishSource;
+    private TokenStream english;
+
+    @Setup
+    public void setup() throws IOException {
+        tibetan = Corpus.load(Corpus.TIBETAN);
+        for (final String doc : tibetan)
+            tibetanChars += doc.length();
+        affixedSource = new TibSyllableTokenizer();
+        affixed = new TibAffixedFilter(affixedSource, false);
+        affixedOldTibSource = new TibSyllableTokenizer();
+        affixedOldTib = new TibAffixedFilter(affixedOldTibSource, true);
+        pabaSource = new TibSyllableTokenizer();
+        paba = new PaBaFilter(pabaSource);
+        standardTibetanSource = new TibSyllableTokenizer();
+        standardTibetan = new StandardTibetanPhoneticFilter(standardTibetanSource);
+        englishSource = new TibSyllableTokenizer();
+        english = new EnglishPhoneticFilter(englishSource);
+    }
+
+    private void run(final Tokenizer source, final TokenStream chain, final Throughput t, final Blackhole bh) throws IOException {
+        for (final String doc : tibetan) {
+            source.setReader(new StringReader(doc));
+            chain.reset();
+            t.consume(chain, bh);
+        }
+        t.chars += tibetanChars;
+    }
+
+    @Benchmark
+    public void tibAffixedFilter(final Throughput t, final Blackhole bh) throws IOException {
+        run(affixedSource, affixed, t, bh);
+    }
+
+    @Benchmark
+    public void tibAffixedFilterOldTib(final Throughput t, final Blackhole bh) throws IOException {
+        run(affixedOldTibSource, affixedOldTib, t, bh);
+    }
+
+    @Benchmark
+    public void paBaFilter(final Throughput t, final Blackhole bh) throws IOException {
+        run(pabaSource, paba, t, bh);
+    }
+
+    @Benchmark
+    public void standardTibetanPhoneticFilter(final Throughput t, final Blackhole bh) throws IOException {
+        run(standardTibetanSource, standardTibetan, t, bh);
+    }
+
+    @Benchmark
+    public void englishPhoneticFilter(final Throughput t, final Blackhole bh) throws IOException {
+        run(englishSource, english, t, bh);
+    }
+}
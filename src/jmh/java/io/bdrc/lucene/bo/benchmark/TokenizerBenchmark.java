@@ -0,0 +1,97 @@
+package io.bdrc.lucene.bo.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.analysis.Tokenizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.bdrc.lucene.bo.BuildCompiledTrie;
+import io.bdrc.lucene.bo.CommonHelpers;
+import io.bdrc.lucene.bo.TibSyllableTokenizer;
+import io.bdrc.lucene.bo.TibWordTokenizer;
+import io.bdrc.lucene.bo.phonetics.EnglishPhoneticTokenizer;
+
+/**
+ * Tokenizers alone, on input that has not gone through any char filter.
+ * One operation is one pass over the corpus.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenizerBenchmark {
+
+    private String[] tibetan;
+    private String[] latin;
+    private long tibetanChars;
+    private long latinChars;
+
+    private Tokenizer syllableTokenizer;
+    private Tokenizer wordTokenizer;
+    private Tokenizer englishPhoneticTokenizer;
+
+    @Setup
+    public void setup() throws IOException {
+        tibetan = Corpus.load(Corpus.TIBETAN);
+        latin = Corpus.load(Corpus.LATIN);
+        for (final String doc : tibetan)
+            tibetanChars += doc.length();
+        for (final String doc : latin)
+            latinChars += doc.length();
+        syllableTokenizer = new TibSyllableTokenizer();
+        wordTokenizer = newWordTokenizer();
+        englishPhoneticTokenizer = new EnglishPhoneticTokenizer();
+    }
+
+    // the default compiled Trie comes from the resources submodule, use the
+    // bundled lexicon when it's not there
+    static TibWordTokenizer newWordTokenizer() throws IOException {
+        try (InputStream stream = CommonHelpers.getResourceOrFile("bo-compiled-trie.dump")) {
+            if (stream != null)
+                return new TibWordTokenizer();
+        }
+        return new TibWordTokenizer(BuildCompiledTrie.buildTrie(Arrays.asList(Corpus.toTempFile(Corpus.LEXICON))));
+    }
+
+    private void run(final Tokenizer tokenizer, final String[] docs, final Throughput t, final Blackhole bh) throws IOException {
+        for (final String doc : docs) {
+            tokenizer.setReader(new StringReader(doc));
+            tokenizer.reset();
+            t.consume(tokenizer, bh);
+        }
+    }
+
+    @Benchmark
+    public void tibSyllableTokenizer(final Throughput t, final Blackhole bh) throws IOException {
+        run(syllableTokenizer, tibetan, t, bh);
+        t.chars += tibetanChars;
+    }
+
+    @Benchmark
+    public void tibWordTokenizer(final Throughput t, final Blackhole bh) throws IOException {
+        run(wordTokenizer, tibetan, t, bh);
+        t.chars += tibetanChars;
+    }
+
+    @Benchmark
+    public void englishPhoneticTokenizer(final Throughput t, final Blackhole bh) throws IOException {
+        run(englishPhoneticTokenizer, latin, t, bh);
+        t.chars += latinChars;
+    }
+}
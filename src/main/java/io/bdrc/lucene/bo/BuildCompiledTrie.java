@@ -8,6 +8,7 @@ import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.Reader;
 import java.util.Arrays;
 import java.util.List;
 
@@ -55,24 +56,46 @@ public class BuildCompiledTrie {
         /* Fill the Trie with the content of all inputFiles */
         Trie trie = new Trie(true);
         for (String filename : inputFiles) {
-            // currently only adds the entries without any diff
             try (BufferedReader br = new BufferedReader(new FileReader(filename))) {
-                String line;
-                while ((line = br.readLine()) != null) {
-                    final int spaceIndex = line.indexOf(' ');
-                    if (spaceIndex == -1) {
-                        throw new IllegalArgumentException(
-                                "The dictionary file is corrupted in the following line.\n" + line);
-                    } else {
-                        trie.add(line.substring(0, spaceIndex), line.substring(spaceIndex + 1));
-                    }
-                }
+                addEntries(trie, br);
             }
         }
         trie = new Reduce().optimize(trie);
         return trie;
     }
 
+    /**
+     * 
+     * @param lexicon
+     *            a lexicon in the format of the files of
+     *            {@link #buildTrie(List)}, closed by this method
+     * @throws IOException
+     *             could not read the lexicon
+     * @return the optimized Trie
+     */
+    public static Trie buildTrie(Reader lexicon) throws IOException {
+        Trie trie = new Trie(true);
+        try (BufferedReader br = new BufferedReader(lexicon)) {
+            addEntries(trie, br);
+        }
+        trie = new Reduce().optimize(trie);
+        return trie;
+    }
+
+    private static void addEntries(final Trie trie, final BufferedReader br) throws IOException {
+        // currently only adds the entries without any diff
+        String line;
+        while ((line = br.readLine()) != null) {
+            final int spaceIndex = line.indexOf(' ');
+            if (spaceIndex == -1) {
+                throw new IllegalArgumentException(
+                        "The dictionary file is corrupted in the following line.\n" + line);
+            } else {
+                trie.add(line.substring(0, spaceIndex), line.substring(spaceIndex + 1));
+            }
+        }
+    }
+
     /**
      * 
      * @param trie
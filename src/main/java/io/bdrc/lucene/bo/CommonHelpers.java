@@ -2,7 +2,9 @@ package io.bdrc.lucene.bo;
 
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.zip.CRC32;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,6 +40,39 @@ public class CommonHelpers {
             return null;
         }
     }
+
+    /**
+     * Identifies the content of a resource by its size and CRC32, to tell two
+     * versions of a resource with the same name apart.
+     * 
+     * @param stream
+     *            the resource, closed by this method, or null
+     * @return the identity of the content, "none" for a null stream
+     * @throws IOException
+     *             when reading the stream
+     */
+    public static String contentIdentity(final InputStream stream) throws IOException {
+        if (stream == null)
+            return "none";
+        final CRC32 crc = new CRC32();
+        final byte[] buffer = new byte[8192];
+        long size = 0;
+        try (InputStream in = stream) {
+            int len;
+            while ((len = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, len);
+                size += len;
+            }
+        }
+        return size + ":" + Long.toHexString(crc.getValue());
+    }
+
+    // the identity of a content already read, as contentIdentity(InputStream)
+    public static String contentIdentity(final byte[] bytes) {
+        final CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return bytes.length + ":" + Long.toHexString(crc.getValue());
+    }
     
     public static final VeryBasicTrie onsetTrie = new VeryBasicTrie();
     public static final VeryBasicTrie vowelCodaTrie = new VeryBasicTrie();
@@ -423,13 +458,41 @@ public class CommonHelpers {
     
     public static final boolean isStandardTibetan(final char[] b, final int start, final int end) {
         // returns true if the syllable is formed according to Standard Tibetan rules
-        int longestMatchPos = onsetTrie.findLongestMatchPos(b, start, end);
-        if (longestMatchPos == -1)
-            return false;
-        if (longestMatchPos == end)
-            return true;
-        longestMatchPos = vowelCodaTrie.findLongestMatchPos(b, longestMatchPos, end);
-        return longestMatchPos == end;
+        return syllableId(b, start, end) != -1;
+    }
+
+    /**
+     * Gives a dense id to the syllables following the spelling rules of Standard
+     * Tibetan: the index of the onset times the number of vowel / codas plus the
+     * index of the vowel / coda, in the order of {@link #initializeTrees()}.
+     * 
+     * @param b
+     *            the buffer
+     * @param start
+     *            the start of the syllable
+     * @param end
+     *            the end of the syllable
+     * @return the id, between 0 and {@link #nbSyllableIds()} - 1, or -1 if the
+     *         syllable is not Standard Tibetan
+     */
+    public static final int syllableId(final char[] b, final int start, final int end) {
+        final long onset = onsetTrie.findLongestMatch(b, start, end);
+        if (onset == -1)
+            return -1;
+        final long vowelCoda = vowelCodaTrie.findLongestMatch(b, (int) onset, end);
+        if (vowelCoda == -1 || (int) vowelCoda != end)
+            return -1;
+        return (int) (onset >>> 32) * vowelCodaTrie.size() + (int) (vowelCoda >>> 32);
+    }
+
+    // the size of the tables indexed by syllable id
+    public static final int nbSyllableIds() {
+        return onsetTrie.size() * vowelCodaTrie.size();
+    }
+
+    // the syllable of an id returned by syllableId()
+    public static final String syllable(final int id) {
+        return onsetTrie.key(id / vowelCodaTrie.size()) + vowelCodaTrie.key(id % vowelCodaTrie.size());
     }
     
     public static final boolean keepinstack(final char c) {
@@ -0,0 +1,17 @@
+package io.bdrc.lucene.bo;
+
+import org.apache.lucene.analysis.tokenattributes.CharTermAttributeImpl;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * A term attribute giving its bytes in the encoding of
+ * {@link TibetanTermEncoding}, created by {@link TibetanTermEncoding#FACTORY}.
+ */
+public class CompactTermAttributeImpl extends CharTermAttributeImpl {
+
+    @Override
+    public BytesRef getBytesRef() {
+        TibetanTermEncoding.encode(buffer(), 0, length(), builder);
+        return builder.get();
+    }
+}
@@ -0,0 +1,30 @@
+package io.bdrc.lucene.bo;
+
+import java.io.Reader;
+
+/**
+ * A char filter reporting the offset corrections it adds, so that
+ * {@link PipelinedCharFilter} can correct the offsets on the reading thread
+ * without calling the filter, which is read on another thread.
+ */
+public interface OffsetCorrectionReporter {
+
+    interface Listener {
+        /**
+         * Called for each correction added by the filter, with the arguments
+         * of {@code BaseCharFilter.addOffCorrectMap()}
+         */
+        void added(int off, int cumulativeDiff);
+    }
+
+    /**
+     * @return the reader of the filter
+     */
+    Reader getInput();
+
+    /**
+     * @param listener
+     *            the listener of the next corrections, null to stop reporting
+     */
+    void setCorrectionListener(Listener listener);
+}
@@ -21,12 +21,18 @@ public class PaBaFilter extends TokenFilter {
         poArray[0] = 'པ';
         poArray[1] = '\u0F7C';
     }
+    private static final int baId = CommonHelpers.syllableId(new char[] { 'བ' }, 0, 1);
+    private static final int boId = CommonHelpers.syllableId(new char[] { 'བ', '\u0F7C' }, 0, 2);
+    private static final int paId = CommonHelpers.syllableId(paArray, 0, 1);
+    private static final int poId = CommonHelpers.syllableId(poArray, 0, 2);
 
     public PaBaFilter(final TokenStream input) {
         super(input);
     }
 
     private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+    // present if the tokenizer sets the syllable ids
+    private final SyllableIdAttribute sylAtt = hasAttribute(SyllableIdAttribute.class) ? getAttribute(SyllableIdAttribute.class) : null;
 
     @Override
     public final boolean incrementToken() throws java.io.IOException {
@@ -34,6 +40,18 @@ public class PaBaFilter extends TokenFilter {
             return false;
         }
 
+        final int id = sylAtt == null ? -1 : sylAtt.getSyllableId();
+        if (id != -1) {
+            // no need to look at the chars
+            if (id == baId) {
+                termAtt.copyBuffer(paArray, 0, 1);
+                sylAtt.setSyllableId(paId);
+            } else if (id == boId) {
+                termAtt.copyBuffer(poArray, 0, 2);
+                sylAtt.setSyllableId(poId);
+            }
+            return true;
+        }
         final char[] buffer = termAtt.buffer();
         final int len = termAtt.length();
         if (len == 1 && buffer[0] == 'བ') {
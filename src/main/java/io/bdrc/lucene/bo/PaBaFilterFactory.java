@@ -0,0 +1,36 @@
+package io.bdrc.lucene.bo;
+
+import java.util.Map;
+
+import org.apache.lucene.analysis.TokenFilterFactory;
+import org.apache.lucene.analysis.TokenStream;
+
+/**
+ * Factory for {@link PaBaFilter}.
+ *
+ * <pre class="prettyprint">
+ * &lt;filter class="io.bdrc.lucene.bo.PaBaFilterFactory"/&gt;
+ * </pre>
+ *
+ * @lucene.spi {@value #NAME}
+ */
+public class PaBaFilterFactory extends TokenFilterFactory {
+
+    public static final String NAME = "tibPaBa";
+
+    public PaBaFilterFactory(final Map<String, String> args) {
+        super(args);
+        if (!args.isEmpty())
+            throw new IllegalArgumentException("Unknown parameters: " + args);
+    }
+
+    // for the SPI
+    public PaBaFilterFactory() {
+        throw defaultCtorException();
+    }
+
+    @Override
+    public TokenStream create(final TokenStream input) {
+        return new PaBaFilter(input);
+    }
+}
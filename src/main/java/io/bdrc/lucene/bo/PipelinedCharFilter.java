@@ -0,0 +1,322 @@
+package io.bdrc.lucene.bo;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.lucene.analysis.CharFilter;
+import org.apache.lucene.util.ArrayUtil;
+
+/**
+ * Runs a chain of char filters on another thread, so that the normalization
+ * (EWTS conversion, TibCharFilter, TibPattFilter) of a document overlaps with
+ * its tokenization.
+ * <p>
+ * The producer thread reads the chain into blocks of chars, annotated with the
+ * offset corrections added by the filters of the chain while reading them, and
+ * hands them to the reading thread through a bounded single-producer
+ * single-consumer ring. The reading thread only sees the blocks, the chain is
+ * never accessed by two threads. The offsets are corrected on the reading
+ * thread by replaying the corrections of each filter, so the char filters of
+ * the chain must implement {@link OffsetCorrectionReporter}. The errors of the
+ * chain are thrown by the reading thread.
+ * <p>
+ * The thread handoff has a fixed cost per document, this is only worth it for
+ * large documents.
+ */
+public final class PipelinedCharFilter extends CharFilter {
+
+    private static final int BLOCK_SIZE = 4096;
+    private static final int NB_BLOCKS = 8;
+    // spins before parking when the ring is full or empty, the other thread unparks
+    // the waiting one after each block, the timeout is only a safety net
+    private static final int SPINS = 100;
+    private static final long PARK_NANOS = 1_000_000;
+
+    private static final AtomicInteger threadCount = new AtomicInteger();
+    private static final ExecutorService defaultExecutor = Executors.newCachedThreadPool(r -> {
+        final Thread t = new Thread(r, "pipelined-char-filter-" + threadCount.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+
+    private static final class Block {
+        final char[] chars = new char[BLOCK_SIZE];
+        int length = 0;
+        // the offset corrections added by the filters of the chain while reading the block
+        int[] corrStages = new int[16];
+        int[] corrOffsets = new int[16];
+        int[] corrDiffs = new int[16];
+        int nbCorr = 0;
+        boolean last = false;
+        Throwable error = null;
+
+        void addCorrection(final int stage, final int off, final int diff) {
+            if (nbCorr == corrOffsets.length) {
+                corrStages = ArrayUtil.grow(corrStages, nbCorr + 1);
+                corrOffsets = ArrayUtil.grow(corrOffsets, nbCorr + 1);
+                corrDiffs = ArrayUtil.grow(corrDiffs, nbCorr + 1);
+            }
+            corrStages[nbCorr] = stage;
+            corrOffsets[nbCorr] = off;
+            corrDiffs[nbCorr] = diff;
+            nbCorr++;
+        }
+    }
+
+    private final Reader chain;
+    private final Executor executor;
+    private final Block[] ring = new Block[NB_BLOCKS];
+    // blocks published by the producer and released by the consumer, head <= tail <= head + NB_BLOCKS
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private volatile boolean closed = false;
+    private volatile Thread producer = null;
+    private volatile boolean done = false;
+    // taken by the producer before it reads the chain, or by close() if the producer never ran
+    private final AtomicBoolean claimed = new AtomicBoolean();
+    private Thread consumer = null;
+    private boolean started = false;
+
+    // producer state, the block the corrections of the chain are added to
+    private Block filling = null;
+
+    // consumer state
+    private Block current = null;
+    private int currentPos = 0;
+    private boolean eof = false;
+    // the corrections of each filter of the chain, from the last one to the first,
+    // with the semantics of BaseCharFilter
+    private final int nbStages;
+    private final int[][] stageOffsets;
+    private final int[][] stageDiffs;
+    private final int[] stageSizes;
+
+    /**
+     * @param chain
+     *            the char filters to run on the other thread, with the document
+     *            reader at their root
+     * @throws IllegalArgumentException
+     *             if a char filter of the chain doesn't implement
+     *             {@link OffsetCorrectionReporter}
+     */
+    public PipelinedCharFilter(final Reader chain) {
+        this(chain, defaultExecutor);
+    }
+
+    public PipelinedCharFilter(final Reader chain, final Executor executor) {
+        // the chain is not the input of this filter so that correctOffset() doesn't call it
+        super(Reader.nullReader());
+        this.chain = chain;
+        this.executor = executor;
+        for (int i = 0; i < NB_BLOCKS; i++)
+            ring[i] = new Block();
+        final List<OffsetCorrectionReporter> stages = new ArrayList<>();
+        Reader reader = chain;
+        while (reader instanceof CharFilter) {
+            if (!(reader instanceof OffsetCorrectionReporter))
+                throw new IllegalArgumentException(reader.getClass().getName() + " doesn't report its offset corrections");
+            final OffsetCorrectionReporter stage = (OffsetCorrectionReporter) reader;
+            final int idx = stages.size();
+            // called on the producer thread, while reading the chain
+            stage.setCorrectionListener((off, diff) -> filling.addCorrection(idx, off, diff));
+            stages.add(stage);
+            reader = stage.getInput();
+        }
+        this.nbStages = stages.size();
+        this.stageOffsets = new int[nbStages][8];
+        this.stageDiffs = new int[nbStages][8];
+        this.stageSizes = new int[nbStages];
+    }
+
+    private void produce() {
+        if (!claimed.compareAndSet(false, true))
+            return;
+        producer = Thread.currentThread();
+        try {
+            boolean last = false;
+            while (!last) {
+                final long t = tail.get();
+                if (!waitFor(() -> t - head.get() < NB_BLOCKS))
+                    return;
+                final Block block = ring[(int) (t % NB_BLOCKS)];
+                block.length = 0;
+                block.nbCorr = 0;
+                block.error = null;
+                filling = block;
+                try {
+                    int len = 0;
+                    while (len < BLOCK_SIZE) {
+                        final int read = chain.read(block.chars, len, BLOCK_SIZE - len);
+                        if (read == -1) {
+                            last = true;
+                            break;
+                        }
+                        len += read;
+                    }
+                    block.length = len;
+                } catch (Throwable e) {
+                    // thrown by the reading thread, which would wait forever otherwise
+                    block.error = e;
+                    last = true;
+                }
+                block.last = last;
+                tail.set(t + 1);
+                LockSupport.unpark(consumer);
+            }
+        } finally {
+            filling = null;
+            producer = null;
+            done = true;
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    private interface Condition {
+        boolean holds();
+    }
+
+    // false if the filter was closed while waiting
+    private boolean waitFor(final Condition condition) {
+        int spins = 0;
+        while (!condition.holds()) {
+            if (closed)
+                return false;
+            if (spins < SPINS) {
+                spins++;
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(this, PARK_NANOS);
+            }
+        }
+        return true;
+    }
+
+    // makes the next block current, false at the end
+    private boolean nextBlock() throws IOException {
+        if (current != null) {
+            if (current.last) {
+                eof = true;
+                return false;
+            }
+            head.set(head.get() + 1);
+            LockSupport.unpark(producer);
+            current = null;
+        }
+        if (!started) {
+            consumer = Thread.currentThread();
+            try {
+                executor.execute(this::produce);
+            } catch (RuntimeException e) {
+                // rejected, there is no producer to wait for in close()
+                eof = true;
+                throw e;
+            }
+            started = true;
+        }
+        final long h = head.get();
+        if (!waitFor(() -> tail.get() > h || done))
+            throw new IOException("closed");
+        // done is set after the last block is published
+        if (tail.get() <= h) {
+            eof = true;
+            throw new IOException("the char filters stopped before the end");
+        }
+        current = ring[(int) (h % NB_BLOCKS)];
+        currentPos = 0;
+        for (int i = 0; i < current.nbCorr; i++)
+            addCorrection(current.corrStages[i], current.corrOffsets[i], current.corrDiffs[i]);
+        if (current.error != null) {
+            eof = true;
+            final Throwable e = current.error;
+            if (e instanceof IOException)
+                throw (IOException) e;
+            if (e instanceof RuntimeException)
+                throw (RuntimeException) e;
+            if (e instanceof Error)
+                throw (Error) e;
+            throw new IOException(e);
+        }
+        return true;
+    }
+
+    // as BaseCharFilter.addOffCorrectMap()
+    private void addCorrection(final int stage, final int off, final int diff) {
+        final int size = stageSizes[stage];
+        if (size != 0 && stageOffsets[stage][size - 1] == off) {
+            stageDiffs[stage][size - 1] = diff;
+            return;
+        }
+        if (size == stageOffsets[stage].length) {
+            stageOffsets[stage] = ArrayUtil.grow(stageOffsets[stage], size + 1);
+            stageDiffs[stage] = ArrayUtil.grow(stageDiffs[stage], size + 1);
+        }
+        stageOffsets[stage][size] = off;
+        stageDiffs[stage][size] = diff;
+        stageSizes[stage] = size + 1;
+    }
+
+    // the chain corrects the offsets from its last filter to its first, as CharFilter.correctOffset()
+    @Override
+    protected int correct(int currentOff) {
+        for (int stage = 0; stage < nbStages; stage++) {
+            int idx = Arrays.binarySearch(stageOffsets[stage], 0, stageSizes[stage], currentOff);
+            if (idx < -1)
+                idx = -2 - idx;
+            // as BaseCharFilter.correct(), never negative as in PatternReplaceCharFilter
+            if (idx >= 0)
+                currentOff = Math.max(0, currentOff + stageDiffs[stage][idx]);
+        }
+        return currentOff;
+    }
+
+    @Override
+    public int read(final char[] cbuf, final int off, final int len) throws IOException {
+        if (eof)
+            return -1;
+        if (len == 0)
+            return 0;
+        while (current == null || currentPos == current.length) {
+            if (!nextBlock())
+                return -1;
+        }
+        final int n = Math.min(len, current.length - currentPos);
+        System.arraycopy(current.chars, currentPos, cbuf, off, n);
+        currentPos += n;
+        return n;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (eof)
+            return -1;
+        while (current == null || currentPos == current.length) {
+            if (!nextBlock())
+                return -1;
+        }
+        return current.chars[currentPos++];
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        // the chain must not be used by the producer anymore, the Analyzer reuses the document reader,
+        // a producer not running yet (queued, or dropped by the executor) is not waited for
+        if (started && !claimed.compareAndSet(false, true)) {
+            LockSupport.unpark(producer);
+            while (!done)
+                LockSupport.parkNanos(this, PARK_NANOS);
+        }
+        chain.close();
+        super.close();
+    }
+}
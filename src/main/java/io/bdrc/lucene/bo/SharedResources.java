@@ -0,0 +1,68 @@
+package io.bdrc.lucene.bo;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The resources shared by the factories of the whole JVM, keyed by their
+ * content so that all the cores using the same content share one instance.
+ * <p>
+ * The resources are held weakly: they are kept as long as a factory uses them,
+ * the ones of the cores reloaded with another content can be collected.
+ */
+final class SharedResources<V> {
+
+    interface Loader<V> {
+        V load() throws IOException;
+    }
+
+    private final ConcurrentMap<String, WeakReference<V>> resources = new ConcurrentHashMap<>();
+
+    /**
+     * @param key
+     *            identifies the content of the resource
+     * @param loader
+     *            loads the resource if it is not shared yet, called once per
+     *            key by concurrent callers
+     * @return the shared resource, to keep while it is used
+     * @throws IOException
+     *             from the loader
+     */
+    V get(final String key, final Loader<V> loader) throws IOException {
+        // the entries of the collected resources
+        resources.values().removeIf(ref -> ref.get() == null);
+        final Object[] res = new Object[1];
+        try {
+            resources.compute(key, (k, ref) -> {
+                V value = ref == null ? null : ref.get();
+                if (value == null) {
+                    try {
+                        value = loader.load();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    ref = new WeakReference<>(value);
+                }
+                res[0] = value;
+                return ref;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        @SuppressWarnings("unchecked")
+        final V value = (V) res[0];
+        return value;
+    }
+
+    // the number of resources not collected yet
+    int size() {
+        int res = 0;
+        for (final WeakReference<V> ref : resources.values())
+            if (ref.get() != null)
+                res++;
+        return res;
+    }
+}
@@ -0,0 +1,18 @@
+package io.bdrc.lucene.bo;
+
+import org.apache.lucene.util.Attribute;
+
+public interface SyllableIdAttribute extends Attribute {
+
+    /*
+     * The id of the syllable given by CommonHelpers.syllableId(), or -1 if the
+     * token is not a Standard Tibetan syllable or if its id is not known. Set by
+     * TibSyllableTokenizer when enabled, the filters changing the term must update
+     * it or set it to -1, the filters reading it must fall back to the chars when
+     * it is -1.
+     */
+
+    void setSyllableId(int id);
+    int getSyllableId();
+
+}
@@ -0,0 +1,35 @@
+package io.bdrc.lucene.bo;
+
+import org.apache.lucene.util.AttributeImpl;
+import org.apache.lucene.util.AttributeReflector;
+
+public class SyllableIdAttributeImpl extends AttributeImpl implements SyllableIdAttribute {
+
+    private int syllableId = -1;
+
+    @Override
+    public void setSyllableId(int syllableId) {
+        this.syllableId = syllableId;
+    }
+
+    @Override
+    public int getSyllableId() {
+        return this.syllableId;
+    }
+
+    @Override
+    public void clear() {
+        this.syllableId = -1;
+    }
+
+    @Override
+    public void copyTo(AttributeImpl target) {
+        ((SyllableIdAttribute) target).setSyllableId(this.syllableId);
+    }
+
+    @Override
+    public void reflectWith(AttributeReflector reflector) {
+        reflector.reflect(SyllableIdAttribute.class, "syllableId", this.syllableId);
+    }
+
+}
@@ -0,0 +1,53 @@
+package io.bdrc.lucene.bo;
+
+import org.apache.lucene.analysis.CharArraySet;
+import org.apache.lucene.analysis.StopFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.util.FixedBitSet;
+
+/**
+ * A {@link StopFilter} that looks up the syllables with an id (see
+ * {@link SyllableIdAttribute}) in a bit set instead of hashing their chars.
+ * The other tokens are looked up in the stop set.
+ */
+public final class SyllableStopFilter extends StopFilter {
+
+    private final FixedBitSet stopIds;
+    private final SyllableIdAttribute sylAtt = hasAttribute(SyllableIdAttribute.class) ? getAttribute(SyllableIdAttribute.class) : null;
+
+    /**
+     * @param in
+     *            the input
+     * @param stopWords
+     *            the stop words
+     * @param stopIds
+     *            the ids of the stop words, from {@link #syllableIds(CharArraySet)}
+     */
+    public SyllableStopFilter(final TokenStream in, final CharArraySet stopWords, final FixedBitSet stopIds) {
+        super(in, stopWords);
+        this.stopIds = stopIds;
+    }
+
+    /**
+     * @param stopWords
+     *            the stop words
+     * @return the ids of the stop words that are Standard Tibetan syllables
+     */
+    public static FixedBitSet syllableIds(final CharArraySet stopWords) {
+        final FixedBitSet res = new FixedBitSet(CommonHelpers.nbSyllableIds());
+        for (final Object word : stopWords) {
+            final char[] chars = (char[]) word;
+            final int id = CommonHelpers.syllableId(chars, 0, chars.length);
+            if (id != -1)
+                res.set(id);
+        }
+        return res;
+    }
+
+    @Override
+    protected boolean accept() {
+        final int id = sylAtt == null ? -1 : sylAtt.getSyllableId();
+        // a syllable with an id can only be equal to a stop word with the same id
+        return id != -1 ? !stopIds.get(id) : super.accept();
+    }
+}
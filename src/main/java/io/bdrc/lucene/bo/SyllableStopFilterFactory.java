@@ -0,0 +1,95 @@
+package io.bdrc.lucene.bo;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+import org.apache.lucene.analysis.CharArraySet;
+import org.apache.lucene.analysis.StopFilter;
+import org.apache.lucene.analysis.TokenFilterFactory;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.ResourceLoader;
+import org.apache.lucene.util.ResourceLoaderAware;
+
+import io.bdrc.lucene.bo.metrics.ResourceFootprint;
+import io.bdrc.lucene.bo.metrics.ResourceLoadEvent;
+
+/**
+ * Factory for {@link SyllableStopFilter}, with the bundled
+ * <code>bo-stopwords.txt</code> or a list opened through the
+ * {@link ResourceLoader} (<code>words</code>, in the format of
+ * {@link TibetanAnalyzer#getWordList}, in UTF-8).
+ * <p>
+ * The stop sets are shared in the whole JVM by content (size and CRC32), so
+ * all the cores and fields using the same list share the same set, and a list
+ * of the same name with another content (another core, a changed file) gets
+ * its own set. They are held weakly, the set of a list changed before a reload
+ * is collected once the old core is closed.
+ *
+ * <pre class="prettyprint">
+ * &lt;filter class="io.bdrc.lucene.bo.SyllableStopFilterFactory" words="bo-stopwords.txt"/&gt;
+ * </pre>
+ *
+ * @lucene.spi {@value #NAME}
+ */
+public class SyllableStopFilterFactory extends TokenFilterFactory implements ResourceLoaderAware {
+
+    public static final String NAME = "tibStop";
+    public static final String DEFAULT_WORDS = "bo-stopwords.txt";
+
+    static final class StopWords {
+        final CharArraySet set;
+        final FixedBitSet ids;
+
+        StopWords(final CharArraySet set) {
+            this.set = CharArraySet.unmodifiableSet(set);
+            this.ids = SyllableStopFilter.syllableIds(set);
+        }
+    }
+
+    static final SharedResources<StopWords> stopWords = new SharedResources<>();
+
+    private final String words;
+    private StopWords stop = null;
+
+    public SyllableStopFilterFactory(final Map<String, String> args) {
+        super(args);
+        this.words = get(args, "words");
+        if (!args.isEmpty())
+            throw new IllegalArgumentException("Unknown parameters: " + args);
+    }
+
+    // for the SPI
+    public SyllableStopFilterFactory() {
+        throw defaultCtorException();
+    }
+
+    @Override
+    public void inform(final ResourceLoader loader) throws IOException {
+        final String name = words == null ? DEFAULT_WORDS : words;
+        final byte[] bytes;
+        try (InputStream stream = words == null ? CommonHelpers.getResourceOrFile(DEFAULT_WORDS) : loader.openResource(words)) {
+            if (stream == null)
+                throw new IOException("The stop word file is not found");
+            bytes = stream.readAllBytes();
+        }
+        stop = stopWords.get(CommonHelpers.contentIdentity(bytes), () -> {
+            final ResourceLoadEvent event = ResourceLoadEvent.start("stopwords", name);
+            try (InputStream stream = new ByteArrayInputStream(bytes)) {
+                final StopWords res = new StopWords(StopFilter.makeStopSet(TibetanAnalyzer.getWordList(stream, "#")));
+                event.finish(name, res.set.size());
+                ResourceFootprint.register(name, "stopwords", res.set, res.set.size());
+                return res;
+            }
+        });
+    }
+
+    @Override
+    public TokenStream create(final TokenStream input) {
+        if (stop == null)
+            throw new IllegalStateException("inform() must be called first");
+        return new SyllableStopFilter(input, stop.set, stop.ids);
+    }
+}
@@ -0,0 +1,119 @@
+package io.bdrc.lucene.bo;
+
+/**
+ * The decomposition of the Standard Tibetan syllables into prefix,
+ * superscript, root, subscript, vowel, suffix, post-suffix and affixed
+ * particle, packed in an int: 4 bits per component giving the offset of its
+ * end in the syllable, so that an absent component has the same start and
+ * end. The decomposition of each onset and vowel / coda of
+ * {@link CommonHelpers} is computed once, the one of a syllable is given by
+ * its id (see {@link CommonHelpers#syllableId}).
+ * <p>
+ * The affixed particles are the vowel / codas starting with <em>འ</em> that
+ * are not the <em>འ</em> suffix alone (<em>འི</em>, <em>འོ</em>, <em>འང</em>,
+ * <em>འམ</em>, <em>འུ</em>...). 0 is not a valid structure, as all the
+ * syllables have a root.
+ */
+public final class SyllableStructure {
+
+    public static final int PREFIX = 0;
+    public static final int SUPERSCRIPT = 1;
+    public static final int ROOT = 2;
+    public static final int SUBSCRIPT = 3;
+    public static final int VOWEL = 4;
+    public static final int SUFFIX = 5;
+    public static final int POST_SUFFIX = 6;
+    public static final int AFFIX = 7;
+
+    // the ends of the first 4 components, by onset id
+    private static final int[] onsetEnds;
+    private static final int[] onsetLengths;
+    // the ends of the last 4 components relative to the end of the onset, by vowel / coda id
+    private static final int[] vowelCodaEnds;
+    private static final int nbVowelCodas;
+
+    static {
+        final int nbOnsets = CommonHelpers.onsetTrie.size();
+        onsetEnds = new int[nbOnsets];
+        onsetLengths = new int[nbOnsets];
+        for (int i = 0; i < nbOnsets; i++) {
+            final String onset = CommonHelpers.onsetTrie.key(i);
+            onsetEnds[i] = decomposeOnset(onset);
+            onsetLengths[i] = onset.length();
+        }
+        nbVowelCodas = CommonHelpers.vowelCodaTrie.size();
+        vowelCodaEnds = new int[nbVowelCodas];
+        for (int i = 0; i < nbVowelCodas; i++)
+            vowelCodaEnds[i] = decomposeVowelCoda(CommonHelpers.vowelCodaTrie.key(i));
+    }
+
+    private SyllableStructure() {}
+
+    private static boolean isBase(final char c) {
+        return c >= 'ཀ' && c <= 'ཬ';
+    }
+
+    private static boolean isSubscript(final char c) {
+        return c == 'ྱ' || c == 'ྲ' || c == 'ླ' || c == 'ྭ';
+    }
+
+    private static int pack(final int component, final int end) {
+        return end << (4 * component);
+    }
+
+    private static int decomposeOnset(final String onset) {
+        int pos = 0;
+        // two base letters: the first one is a prefix
+        if (onset.length() > 1 && isBase(onset.charAt(0)) && isBase(onset.charAt(1)))
+            pos++;
+        int res = pack(PREFIX, pos);
+        // a subjoined letter that is not ya, ra, la or wa: the base letter is a superscript
+        if (pos + 1 < onset.length() && !isSubscript(onset.charAt(pos + 1)))
+            pos++;
+        res |= pack(SUPERSCRIPT, pos);
+        pos++;
+        res |= pack(ROOT, pos);
+        return res | pack(SUBSCRIPT, onset.length());
+    }
+
+    private static int decomposeVowelCoda(final String vowelCoda) {
+        int pos = 0;
+        if (!vowelCoda.isEmpty() && "ིེོུ".indexOf(vowelCoda.charAt(0)) != -1)
+            pos++;
+        int res = pack(VOWEL, pos);
+        final int rest = vowelCoda.length() - pos;
+        if (rest > 1 && vowelCoda.charAt(pos) == 'འ')
+            return res | pack(SUFFIX, pos) | pack(POST_SUFFIX, pos) | pack(AFFIX, vowelCoda.length());
+        // at most a suffix and a post-suffix
+        if (rest > 2)
+            throw new IllegalStateException("cannot decompose " + vowelCoda);
+        res |= pack(SUFFIX, pos + Math.min(rest, 1));
+        res |= pack(POST_SUFFIX, vowelCoda.length());
+        return res | pack(AFFIX, vowelCoda.length());
+    }
+
+    /**
+     * @param syllableId
+     *            an id given by {@link CommonHelpers#syllableId}, or -1
+     * @return the structure of the syllable, 0 for -1
+     */
+    public static int of(final int syllableId) {
+        if (syllableId == -1)
+            return 0;
+        final int onset = syllableId / nbVowelCodas;
+        // the 4 ends of the vowel / coda are shifted by the length of the onset, each fits in 4 bits
+        return onsetEnds[onset] | (vowelCodaEnds[syllableId % nbVowelCodas] + onsetLengths[onset] * 0x11110000);
+    }
+
+    public static int end(final int structure, final int component) {
+        return (structure >>> (4 * component)) & 0xF;
+    }
+
+    public static int start(final int structure, final int component) {
+        return component == PREFIX ? 0 : end(structure, component - 1);
+    }
+
+    public static int length(final int structure, final int component) {
+        return end(structure, component) - start(structure, component);
+    }
+}
@@ -0,0 +1,17 @@
+package io.bdrc.lucene.bo;
+
+import org.apache.lucene.util.Attribute;
+
+public interface SyllableStructureAttribute extends Attribute {
+
+    /*
+     * The components of the syllable packed by SyllableStructure, or 0 if the
+     * token is not a Standard Tibetan syllable or if its structure is not known.
+     * Set by TibSyllableTokenizer when enabled, the filters changing the term
+     * must update it or set it to 0.
+     */
+
+    void setStructure(int structure);
+    int getStructure();
+
+}
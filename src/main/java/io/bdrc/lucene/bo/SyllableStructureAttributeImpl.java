@@ -0,0 +1,35 @@
+package io.bdrc.lucene.bo;
+
+import org.apache.lucene.util.AttributeImpl;
+import org.apache.lucene.util.AttributeReflector;
+
+public class SyllableStructureAttributeImpl extends AttributeImpl implements SyllableStructureAttribute {
+
+    private int structure = 0;
+
+    @Override
+    public void setStructure(int structure) {
+        this.structure = structure;
+    }
+
+    @Override
+    public int getStructure() {
+        return this.structure;
+    }
+
+    @Override
+    public void clear() {
+        this.structure = 0;
+    }
+
+    @Override
+    public void copyTo(AttributeImpl target) {
+        ((SyllableStructureAttribute) target).setStructure(this.structure);
+    }
+
+    @Override
+    public void reflectWith(AttributeReflector reflector) {
+        reflector.reflect(SyllableStructureAttribute.class, "structure", this.structure);
+    }
+
+}
@@ -141,6 +141,11 @@ public final class TibAffixedFilter extends TokenFilter {
     }
 
     private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+    // present if the tokenizer sets the syllable ids, reset when the term changes
+    // (a new lookup would cost more than what it saves in the next filters)
+    private final SyllableIdAttribute sylAtt = hasAttribute(SyllableIdAttribute.class) ? getAttribute(SyllableIdAttribute.class) : null;
+    // present if the tokenizer sets the syllable structures, also reset when the term changes
+    private final SyllableStructureAttribute structAtt = hasAttribute(SyllableStructureAttribute.class) ? getAttribute(SyllableStructureAttribute.class) : null;
 
     /**
      * Returns the next token in the stream, or null at EOS.
@@ -154,7 +159,24 @@ public final class TibAffixedFilter extends TokenFilter {
         if (!input.incrementToken()) {
             return false;
         }
+        final int structure = structAtt == null ? 0 : structAtt.getStructure();
+        // nothing to remove without an affixed particle or a final འ
+        if (structure != 0 && SyllableStructure.length(structure, SyllableStructure.AFFIX) == 0
+                && (SyllableStructure.length(structure, SyllableStructure.SUFFIX) == 0
+                        || termAtt.buffer()[SyllableStructure.start(structure, SyllableStructure.SUFFIX)] != '\u0F60'))
+            return true;
+        final int len = termAtt.length();
+        removeAffixes();
+        if (termAtt.length() != len) {
+            if (sylAtt != null)
+                sylAtt.setSyllableId(-1);
+            if (structAtt != null)
+                structAtt.setStructure(0);
+        }
+        return true;
+    }
 
+    private void removeAffixes() {
         final char[] buffer = termAtt.buffer();
         final int len = termAtt.length();
 
@@ -170,7 +192,7 @@ public final class TibAffixedFilter extends TokenFilter {
                 } else {
                     termAtt.setLength(len - 4);
                 }
-                return true;
+                return;
             }
         }
 
@@ -184,7 +206,7 @@ public final class TibAffixedFilter extends TokenFilter {
                 } else {
                     termAtt.setLength(len - 3);
                 }
-                return true;
+                return;
             }
         }
 
@@ -219,7 +241,7 @@ public final class TibAffixedFilter extends TokenFilter {
         
         // next rules are Old Tibetan only:
         if (!this.convertOldTib)
-            return true;
+            return;
         
         // Dadrag. Handled here instead of a regex as it's less costly and (almost) makes sense
         // [^གམ][ནལར])ད
@@ -232,7 +254,5 @@ public final class TibAffixedFilter extends TokenFilter {
             buffer[len-2] = buffer[len-1];
             termAtt.setLength(len - 1);
         }
-        
-        return true;
     }
 }
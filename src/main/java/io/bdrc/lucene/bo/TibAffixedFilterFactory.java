@@ -0,0 +1,39 @@
+package io.bdrc.lucene.bo;
+
+import java.util.Map;
+
+import org.apache.lucene.analysis.TokenFilterFactory;
+import org.apache.lucene.analysis.TokenStream;
+
+/**
+ * Factory for {@link TibAffixedFilter}.
+ *
+ * <pre class="prettyprint">
+ * &lt;filter class="io.bdrc.lucene.bo.TibAffixedFilterFactory" convertOldTib="false"/&gt;
+ * </pre>
+ *
+ * @lucene.spi {@value #NAME}
+ */
+public class TibAffixedFilterFactory extends TokenFilterFactory {
+
+    public static final String NAME = "tibAffixed";
+
+    private final boolean convertOldTib;
+
+    public TibAffixedFilterFactory(final Map<String, String> args) {
+        super(args);
+        this.convertOldTib = getBoolean(args, "convertOldTib", false);
+        if (!args.isEmpty())
+            throw new IllegalArgumentException("Unknown parameters: " + args);
+    }
+
+    // for the SPI
+    public TibAffixedFilterFactory() {
+        throw defaultCtorException();
+    }
+
+    @Override
+    public TokenStream create(final TokenStream input) {
+        return new TibAffixedFilter(input, convertOldTib);
+    }
+}
@@ -1,11 +1,19 @@
 package io.bdrc.lucene.bo;
 
 import java.io.Reader;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiConsumer;
 
 import org.apache.lucene.analysis.charfilter.MappingCharFilter;
 import org.apache.lucene.analysis.charfilter.NormalizeCharMap;
 
-public class TibCharFilter extends MappingCharFilter {
+import io.bdrc.lucene.bo.metrics.Metrics;
+import io.bdrc.lucene.bo.metrics.ResourceFootprint;
+import io.bdrc.lucene.bo.metrics.ResourceLoadEvent;
+
+public class TibCharFilter extends MappingCharFilter implements OffsetCorrectionReporter {
+    private OffsetCorrectionReporter.Listener correctionListener = null;
+
     public TibCharFilter(final Reader in) {
         super(getTibNormalizeCharMapCached(true, true), in);
     }
@@ -13,193 +21,230 @@ public class TibCharFilter extends MappingCharFilter {
     public TibCharFilter(final Reader in, final boolean lenient, final boolean oldtib) {
         super(getTibNormalizeCharMapCached(lenient, oldtib), in);
     }
+
+    @Override
+    public Reader getInput() {
+        return input;
+    }
+
+    @Override
+    public void setCorrectionListener(final OffsetCorrectionReporter.Listener listener) {
+        this.correctionListener = listener;
+    }
+
+    @Override
+    protected void addOffCorrectMap(final int off, final int cumulativeDiff) {
+        super.addOffCorrectMap(off, cumulativeDiff);
+        if (correctionListener != null)
+            correctionListener.added(off, cumulativeDiff);
+    }
     
-    private static final NormalizeCharMap[] cache = new NormalizeCharMap[] {null, null, null, null};
+    // the maps are immutable, concurrent misses build them more than once but only one is kept
+    private static final AtomicReferenceArray<NormalizeCharMap> cache = new AtomicReferenceArray<>(4);
     private static NormalizeCharMap getTibNormalizeCharMapCached(final boolean lenient, final boolean oldtib) {
         final int idx = lenient ? (oldtib ? 0 : 1) : (oldtib ? 2 : 3);
-        if (cache[idx] == null)
-            cache[idx] = getTibNormalizeCharMap(lenient, oldtib);
-        return cache[idx];
+        final NormalizeCharMap cached = cache.get(idx);
+        if (cached != null)
+            return cached;
+        Metrics.counter("TibCharFilter.cacheMisses").increment();
+        final ResourceLoadEvent event = ResourceLoadEvent.start("charmap", "TibCharFilter");
+        final NormalizeCharMap.Builder builder = new NormalizeCharMap.Builder();
+        final int[] size = {0};
+        addMappings(lenient, oldtib, (from, to) -> {
+            builder.add(from, to);
+            size[0]++;
+        });
+        final NormalizeCharMap built = builder.build();
+        event.finish("lenient=" + lenient + ", oldtib=" + oldtib, size[0]);
+        if (!cache.compareAndSet(idx, null, built))
+            return cache.get(idx);
+        ResourceFootprint.register("TibCharFilter(lenient=" + lenient + ", oldtib=" + oldtib + ")", "charmap", built, size[0]);
+        return built;
     }
 
     public final static NormalizeCharMap getTibNormalizeCharMap(final boolean lenient, final boolean oldtib) {
-        NormalizeCharMap.Builder builder = new NormalizeCharMap.Builder();
+        final NormalizeCharMap.Builder builder = new NormalizeCharMap.Builder();
+        addMappings(lenient, oldtib, builder::add);
+        return builder.build();
+    }
+
+    // the mappings of the NormalizeCharMap, as (from, to) pairs
+    public final static void addMappings(final boolean lenient, final boolean oldtib, final BiConsumer<String,String> mapping) {
         // The non-breaking tsheg and double tsheg are replaced with the normal one
-        builder.add("\u0f0C", "\u0F0B");
-        builder.add("\u0fD2", "\u0F0B");
+        mapping.accept("\u0f0C", "\u0F0B");
+        mapping.accept("\u0fD2", "\u0F0B");
         // we want to cut syllables after each Namche
-        builder.add("\u0f7f", "\u0f7f\u0f0b");
+        mapping.accept("\u0f7f", "\u0f7f\u0f0b");
         // we map latin digits to Tibetan instead of the opposite because
         // TibSyllableTokenizer remove non-Tibetan (including latin digits)
-        builder.add("0", "༠");
-        builder.add("1", "༡");
-        builder.add("2", "༢");
-        builder.add("3", "༣");
-        builder.add("4", "༤");
-        builder.add("5", "༥");
-        builder.add("6", "༦");
-        builder.add("7", "༧");
-        builder.add("8", "༨");
-        builder.add("9", "༩");
+        mapping.accept("0", "༠");
+        mapping.accept("1", "༡");
+        mapping.accept("2", "༢");
+        mapping.accept("3", "༣");
+        mapping.accept("4", "༤");
+        mapping.accept("5", "༥");
+        mapping.accept("6", "༦");
+        mapping.accept("7", "༧");
+        mapping.accept("8", "༨");
+        mapping.accept("9", "༩");
         // Characters to delete: the markers found under selected syllables
-        builder.add("\u0F35", ""); // ༵
-        builder.add("\u0F37", ""); // ༷
-        builder.add("\u0F39", ""); // ༹
+        mapping.accept("\u0F35", ""); // ༵
+        mapping.accept("\u0F37", ""); // ༷
+        mapping.accept("\u0F39", ""); // ༹
         // Characters to decompose
-        builder.add("\u0F00", "\u0F68\u0F7C\u0F7E"); // ༀ
-        builder.add("\u0F02", "\u0F60\u0F74\u0F82\u0F7F"); // ༂
-        builder.add("\u0F03", "\u0F60\u0F74\u0F82\u0F14"); // ༃
-        builder.add("\u0F43", "\u0F42\u0FB7"); // གྷ
-        builder.add("\u0F48", "\u0F47\u0FB7"); // ཈
-        builder.add("\u0F4D", lenient ? "\u0F47\u0FB7" : "\u0F4C\u0FB7"); // ཌྷ
-        builder.add("\u0F52", "\u0F51\u0FB7"); // དྷ
-        builder.add("\u0F57", "\u0F56\u0FB7"); // བྷ
-        builder.add("\u0F5C", "\u0F5B\u0FB7"); // ཛྷ
-        builder.add("\u0F69", lenient ? "\u0F40\u0FB4" : "\u0F40\u0FB5"); // ཀྵ
-        builder.add("\u0F73", lenient ? "\u0F72" : "\u0F71\u0F72"); // ཱི
-        builder.add("\u0F75", lenient ? "\u0F74" : "\u0F71\u0F74"); // ཱུ
-        builder.add("\u0F76", lenient ? "\u0FB2\u0F72" : "\u0FB2\u0F80"); // ྲྀ
-        builder.add("\u0F77", lenient ? "\u0FB2\u0F72" : "\u0FB2\u0F71\u0F80"); // ཷ
-        builder.add("\u0F78", lenient ? "\u0FB3\u0F72" : "\u0FB3\u0F80"); // ླྀ
-        builder.add("\u0F79", lenient ? "\u0FB3\u0F72" : "\u0FB3\u0F71\u0F80"); // ཹ
-        builder.add("\u0F81", lenient ? "\u0F72" : "\u0F71\u0F80"); // ཱྀ
-        builder.add("\u0F93", "\u0F92\u0FB7"); // ྒྷ
-        builder.add("\u0F9D", lenient ? "\u0FA1\u0FB7" : "\u0F9C\u0FB7"); // ྜྷ
-        builder.add("\u0FA2", "\u0FA1\u0FB7"); // ྡྷ
-        builder.add("\u0FA7", "\u0FA6\u0FB7"); // ྦྷ
-        builder.add("\u0FAC", "\u0FAB\u0FB7"); // ྫྷ
-        builder.add("\u0FB9", lenient ? "\u0F90\u0FB4" : "\u0F90\u0FB5"); // ྐྵ
+        mapping.accept("\u0F00", "\u0F68\u0F7C\u0F7E"); // ༀ
+        mapping.accept("\u0F02", "\u0F60\u0F74\u0F82\u0F7F"); // ༂
+        mapping.accept("\u0F03", "\u0F60\u0F74\u0F82\u0F14"); // ༃
+        mapping.accept("\u0F43", "\u0F42\u0FB7"); // གྷ
+        mapping.accept("\u0F48", "\u0F47\u0FB7"); // ཈
+        mapping.accept("\u0F4D", lenient ? "\u0F47\u0FB7" : "\u0F4C\u0FB7"); // ཌྷ
+        mapping.accept("\u0F52", "\u0F51\u0FB7"); // དྷ
+        mapping.accept("\u0F57", "\u0F56\u0FB7"); // བྷ
+        mapping.accept("\u0F5C", "\u0F5B\u0FB7"); // ཛྷ
+        mapping.accept("\u0F69", lenient ? "\u0F40\u0FB4" : "\u0F40\u0FB5"); // ཀྵ
+        mapping.accept("\u0F73", lenient ? "\u0F72" : "\u0F71\u0F72"); // ཱི
+        mapping.accept("\u0F75", lenient ? "\u0F74" : "\u0F71\u0F74"); // ཱུ
+        mapping.accept("\u0F76", lenient ? "\u0FB2\u0F72" : "\u0FB2\u0F80"); // ྲྀ
+        mapping.accept("\u0F77", lenient ? "\u0FB2\u0F72" : "\u0FB2\u0F71\u0F80"); // ཷ
+        mapping.accept("\u0F78", lenient ? "\u0FB3\u0F72" : "\u0FB3\u0F80"); // ླྀ
+        mapping.accept("\u0F79", lenient ? "\u0FB3\u0F72" : "\u0FB3\u0F71\u0F80"); // ཹ
+        mapping.accept("\u0F81", lenient ? "\u0F72" : "\u0F71\u0F80"); // ཱྀ
+        mapping.accept("\u0F93", "\u0F92\u0FB7"); // ྒྷ
+        mapping.accept("\u0F9D", lenient ? "\u0FA1\u0FB7" : "\u0F9C\u0FB7"); // ྜྷ
+        mapping.accept("\u0FA2", "\u0FA1\u0FB7"); // ྡྷ
+        mapping.accept("\u0FA7", "\u0FA6\u0FB7"); // ྦྷ
+        mapping.accept("\u0FAC", "\u0FAB\u0FB7"); // ྫྷ
+        mapping.accept("\u0FB9", lenient ? "\u0F90\u0FB4" : "\u0F90\u0FB5"); // ྐྵ
         if (lenient) {
             // not entirely sure about the following one:
-            builder.add("ཾ", "ྃ");
+            mapping.accept("ཾ", "ྃ");
             // double vowels
-            builder.add("ེེ", "ཻ");
-            builder.add("ོོ", "ཽ");
+            mapping.accept("ེེ", "ཻ");
+            mapping.accept("ོོ", "ཽ");
             // mapping retroflex to "normal", so that the search is less case sensitive
-            builder.add("ཊ", "ཏ");
-            builder.add("ཋ", "ཐ");
-            builder.add("ཌ", "ད");
-            builder.add("ཎ", "ན");
-            builder.add("ཱ", "");
-            builder.add("ྂ", "ྃ");
-            builder.add("ྚ", "ྟ");
-            builder.add("ྛ", "ྠ");
-            builder.add("ྜ", "ྡ");
-            builder.add("ྞ", "ྣ");
-            builder.add("ྺ", "ྭ");
-            builder.add("ྻ", "ྱ");
-            builder.add("ྰ", "");
-            builder.add("ྼ", "ྲ");
-            builder.add("ཪ", "ར");
-            builder.add("ཥ", "ཤ");
-            builder.add("ྵ" , "ྴ");
+            mapping.accept("ཊ", "ཏ");
+            mapping.accept("ཋ", "ཐ");
+            mapping.accept("ཌ", "ད");
+            mapping.accept("ཎ", "ན");
+            mapping.accept("ཱ", "");
+            mapping.accept("ྂ", "ྃ");
+            mapping.accept("ྚ", "ྟ");
+            mapping.accept("ྛ", "ྠ");
+            mapping.accept("ྜ", "ྡ");
+            mapping.accept("ྞ", "ྣ");
+            mapping.accept("ྺ", "ྭ");
+            mapping.accept("ྻ", "ྱ");
+            mapping.accept("ྰ", "");
+            mapping.accept("ྼ", "ྲ");
+            mapping.accept("ཪ", "ར");
+            mapping.accept("ཥ", "ཤ");
+            mapping.accept("ྵ" , "ྴ");
             // a few Sanskrit stacks:
-            builder.add("ནྱ", "ཉ");
-            builder.add("ྣྱ", "ྙ");
-            builder.add("རྨྨ", "རྨ");
-            builder.add("རྦྦ", "རྦ");
-            builder.add("རྒྒ", "རྒ");
+            mapping.accept("ནྱ", "ཉ");
+            mapping.accept("ྣྱ", "ྙ");
+            mapping.accept("རྨྨ", "རྨ");
+            mapping.accept("རྦྦ", "རྦ");
+            mapping.accept("རྒྒ", "རྒ");
             // padma = pad+ma, pandi = pan+di, ratna = rat+na
             // https://github.com/buda-base/lucene-bo/issues/33
-            builder.add("པདམ", "པད་མ");
-            builder.add("པདྨ", "པད་མ");
-            builder.add("སེངྒེ", "སེང་གེ");
-            builder.add("སེངགེ", "སེང་གེ");
-            builder.add("ལིངྒ", "ལིང་ག");
-            builder.add("ལོཙ", "ལོ་ཙ");
-            builder.add("ལོཚ", "ལོ་ཙ");
-            builder.add("ལོ་ཙྭ", "ལོ་ཙ");
-            builder.add("ཙྪ", "ཙ");
-            builder.add("ཀུཎྜ", "ཀུ་ནྡ");
-            builder.add("ཀུནྡ", "ཀུ་ནྡ");
-            builder.add("བནྡྷ", "བན་དྷ");
-            builder.add("མནྟ", "མན་ཏ");
-            builder.add("ཀྲོདྷ", "ཀྲོ་དྷ");
-            builder.add("ཀྲོདྡྷ", "ཀྲོ་དྷ");
-            builder.add("པནདི", "པནྡི");
-            builder.add("ཀྐ", "ཀ"); // tikka
-            builder.add("རཏན", "རཏྣ");
-            builder.add("ཀརྨ", "ཀར་མ");
-            builder.add("ཀིརྟི", "ཀིར་ཏི");
-            builder.add("ཤམྦྷ", "ཤམ་བྷ");
-            builder.add("བནྡེ", "བན་དེ");
-            builder.add("ལྡེའུ་བཙན", "ལྡེ་བཙན");
+            mapping.accept("པདམ", "པད་མ");
+            mapping.accept("པདྨ", "པད་མ");
+            mapping.accept("སེངྒེ", "སེང་གེ");
+            mapping.accept("སེངགེ", "སེང་གེ");
+            mapping.accept("ལིངྒ", "ལིང་ག");
+            mapping.accept("ལོཙ", "ལོ་ཙ");
+            mapping.accept("ལོཚ", "ལོ་ཙ");
+            mapping.accept("ལོ་ཙྭ", "ལོ་ཙ");
+            mapping.accept("ཙྪ", "ཙ");
+            mapping.accept("ཀུཎྜ", "ཀུ་ནྡ");
+            mapping.accept("ཀུནྡ", "ཀུ་ནྡ");
+            mapping.accept("བནྡྷ", "བན་དྷ");
+            mapping.accept("མནྟ", "མན་ཏ");
+            mapping.accept("ཀྲོདྷ", "ཀྲོ་དྷ");
+            mapping.accept("ཀྲོདྡྷ", "ཀྲོ་དྷ");
+            mapping.accept("པནདི", "པནྡི");
+            mapping.accept("ཀྐ", "ཀ"); // tikka
+            mapping.accept("རཏན", "རཏྣ");
+            mapping.accept("ཀརྨ", "ཀར་མ");
+            mapping.accept("ཀིརྟི", "ཀིར་ཏི");
+            mapping.accept("ཤམྦྷ", "ཤམ་བྷ");
+            mapping.accept("བནྡེ", "བན་དེ");
+            mapping.accept("ལྡེའུ་བཙན", "ལྡེ་བཙན");
             // dwags = dags, a bit risqué but should work
-            //builder.add("དྭགས", "དགས");
-            builder.add("\u0FC6", "");
-            builder.add("༸", "༧"); // often conflated
+            //mapping.accept("དྭགས", "དགས");
+            mapping.accept("\u0FC6", "");
+            mapping.accept("༸", "༧"); // often conflated
         }
         if (lenient || oldtib)
-            builder.add("ྀ", "ི");
+            mapping.accept("ྀ", "ི");
         if (oldtib) {
-            builder.add("ོེ", "ོའི");
-            builder.add("བགྱིསྣ", "བགྱིས་ན");
-            builder.add("རབལ", "རབ་ལ");
-            builder.add("མཆིསྣ", "མཆིས་ན");
-            // builder.add("མོལ", "མོ་ལ"); indicated in the doc, but would conflict with other things
-            builder.add("ཐོགསླ", "ཐོག་སླ");
-            builder.add("ལྕེབསའོ", "ལྕེབས་སོ");
-            builder.add("གཤེགསའོ", "གཤེགས་སོ");
-            builder.add("བཏགསའོ", "བཏགས་སོ");
-            builder.add("ལསྩོགསྟེ", "ལ་སྩོགས་སྟེ");
-            // builder.add("མའང", "མ་འང"); indicated but more or less useless
-            builder.add("མྱི", "མི");
-            builder.add("མྱེ", "མེ");
-            builder.add("གསྩན", "གསན");
-            builder.add("གསྩང", "གསང");
-            builder.add("སྩོགས", "སོགས");
-            builder.add("སྩུབ", "སུབ");
-            builder.add("སྩང", "སང");
-            builder.add("སྩངས", "སངས");
-            builder.add("གསྩུག", "གསུག");
-            builder.add("བསྩག", "བསག");
-            builder.add("མཀ", "མཁ");
-            builder.add("མཅ", "མཆ");
-            builder.add("མཏ", "མཐ");
-            builder.add("མཙ", "མཚ");
-            builder.add("འཀ", "འཁ");
-            builder.add("འཅ", "འཆ");
-            builder.add("འཏ", "འཐ");
-            builder.add("འཔ", "འཕ");
-            builder.add("འཙ", "འཚ");
-            builder.add("དཁ", "དཀ");
-            builder.add("དཕ", "དཔ");
-            builder.add("གཆ", "གཅ");
-            builder.add("གཐ", "གཏ");
-            builder.add("གཚ", "གཙ");
-            builder.add("བཁ", "བཀ");
-            builder.add("བཆ", "བཅ");
-            builder.add("བཐ", "བཏ");
-            builder.add("བཚ", "བཙ");
-            builder.add("སྑ", "སྐ");
-            builder.add("སྠ", "སྟ");
-            builder.add("སྥ", "སྤ");
-            builder.add("སྪ", "སྩ");
-            builder.add("རྑ", "རྐ");
-            builder.add("རྪ", "རྩ");
-            builder.add("རྠ", "རྟ");
-            builder.add("ལྑ", "ལྐ");
-            builder.add("ལྖ", "ལྕ");
-            builder.add("ལྠ", "ལྟ");
-            builder.add("ལྥ", "ལྤ");
-            builder.add("པྱག", "ཕྱག");
-            builder.add("པྱི", "ཕྱི");
-            builder.add("པོ་ཉ", "ཕོ་ཉ");
-            builder.add("དམག་ཕོན", "དམག་དཔོན");
-            builder.add("པོག་པ", "ཕོག་པ");
-            builder.add("ཕོ་བྲང", "པོ་བྲང");
-            builder.add("བལ་ཕོ", "བལ་པོ");
-            builder.add("ཕལ་ཕོ", "ཕལ་པོ");
-            builder.add("རྩང་ཅེན", "རྩང་ཆེན");
-            builder.add("ལོ་ཕར", "ལོ་པར");
-            builder.add("བློན་ཅེ", "བློན་ཆེ");
-            builder.add("ཞལ་ཅེ", "ཞལ་ཆེ");
-            builder.add("མེར་ཁེ", "མེར་ཀེ");
-            builder.add("ལོ་ཆིག", "ལོ་གཅིག");
-            builder.add("ཆེད་པོ", "ཆེན་པོ");
-            builder.add("ཅེད་པོ", "ཆེན་པོ");
-            builder.add("ཅེན་པོ", "ཆེན་པོ");
+            mapping.accept("ོེ", "ོའི");
+            mapping.accept("བགྱིསྣ", "བགྱིས་ན");
+            mapping.accept("རབལ", "རབ་ལ");
+            mapping.accept("མཆིསྣ", "མཆིས་ན");
+            // mapping.accept("མོལ", "མོ་ལ"); indicated in the doc, but would conflict with other things
+            mapping.accept("ཐོགསླ", "ཐོག་སླ");
+            mapping.accept("ལྕེབསའོ", "ལྕེབས་སོ");
+            mapping.accept("གཤེགསའོ", "གཤེགས་སོ");
+            mapping.accept("བཏགསའོ", "བཏགས་སོ");
+            mapping.accept("ལསྩོགསྟེ", "ལ་སྩོགས་སྟེ");
+            // mapping.accept("མའང", "མ་འང"); indicated but more or less useless
+            mapping.accept("མྱི", "མི");
+            mapping.accept("མྱེ", "མེ");
+            mapping.accept("གསྩན", "གསན");
+            mapping.accept("གསྩང", "གསང");
+            mapping.accept("སྩོགས", "སོགས");
+            mapping.accept("སྩུབ", "སུབ");
+            mapping.accept("སྩང", "སང");
+            mapping.accept("སྩངས", "སངས");
+            mapping.accept("གསྩུག", "གསུག");
+            mapping.accept("བསྩག", "བསག");
+            mapping.accept("མཀ", "མཁ");
+            mapping.accept("མཅ", "མཆ");
+            mapping.accept("མཏ", "མཐ");
+            mapping.accept("མཙ", "མཚ");
+            mapping.accept("འཀ", "འཁ");
+            mapping.accept("འཅ", "འཆ");
+            mapping.accept("འཏ", "འཐ");
+            mapping.accept("འཔ", "འཕ");
+            mapping.accept("འཙ", "འཚ");
+            mapping.accept("དཁ", "དཀ");
+            mapping.accept("དཕ", "དཔ");
+            mapping.accept("གཆ", "གཅ");
+            mapping.accept("གཐ", "གཏ");
+            mapping.accept("གཚ", "གཙ");
+            mapping.accept("བཁ", "བཀ");
+            mapping.accept("བཆ", "བཅ");
+            mapping.accept("བཐ", "བཏ");
+            mapping.accept("བཚ", "བཙ");
+            mapping.accept("སྑ", "སྐ");
+            mapping.accept("སྠ", "སྟ");
+            mapping.accept("སྥ", "སྤ");
+            mapping.accept("སྪ", "སྩ");
+            mapping.accept("རྑ", "རྐ");
+            mapping.accept("རྪ", "རྩ");
+            mapping.accept("རྠ", "རྟ");
+            mapping.accept("ལྑ", "ལྐ");
+            mapping.accept("ལྖ", "ལྕ");
+            mapping.accept("ལྠ", "ལྟ");
+            mapping.accept("ལྥ", "ལྤ");
+            mapping.accept("པྱག", "ཕྱག");
+            mapping.accept("པྱི", "ཕྱི");
+            mapping.accept("པོ་ཉ", "ཕོ་ཉ");
+            mapping.accept("དམག་ཕོན", "དམག་དཔོན");
+            mapping.accept("པོག་པ", "ཕོག་པ");
+            mapping.accept("ཕོ་བྲང", "པོ་བྲང");
+            mapping.accept("བལ་ཕོ", "བལ་པོ");
+            mapping.accept("ཕལ་ཕོ", "ཕལ་པོ");
+            mapping.accept("རྩང་ཅེན", "རྩང་ཆེན");
+            mapping.accept("ལོ་ཕར", "ལོ་པར");
+            mapping.accept("བློན་ཅེ", "བློན་ཆེ");
+            mapping.accept("ཞལ་ཅེ", "ཞལ་ཆེ");
+            mapping.accept("མེར་ཁེ", "མེར་ཀེ");
+            mapping.accept("ལོ་ཆིག", "ལོ་གཅིག");
+            mapping.accept("ཆེད་པོ", "ཆེན་པོ");
+            mapping.accept("ཅེད་པོ", "ཆེན་པོ");
+            mapping.accept("ཅེན་པོ", "ཆེན་པོ");
         }
-        return builder.build();
     }
 }
@@ -0,0 +1,47 @@
+package io.bdrc.lucene.bo;
+
+import java.io.Reader;
+import java.util.Map;
+
+import org.apache.lucene.analysis.CharFilterFactory;
+
+/**
+ * Factory for {@link TibCharFilter}, the normalization maps are shared by all
+ * the instances.
+ *
+ * <pre class="prettyprint">
+ * &lt;charFilter class="io.bdrc.lucene.bo.TibCharFilterFactory" lenient="true" convertOldTib="false"/&gt;
+ * </pre>
+ *
+ * @lucene.spi {@value #NAME}
+ */
+public class TibCharFilterFactory extends CharFilterFactory {
+
+    public static final String NAME = "tibChar";
+
+    private final boolean lenient;
+    private final boolean convertOldTib;
+
+    public TibCharFilterFactory(final Map<String, String> args) {
+        super(args);
+        this.lenient = getBoolean(args, "lenient", true);
+        this.convertOldTib = getBoolean(args, "convertOldTib", false);
+        if (!args.isEmpty())
+            throw new IllegalArgumentException("Unknown parameters: " + args);
+    }
+
+    // for the SPI
+    public TibCharFilterFactory() {
+        throw defaultCtorException();
+    }
+
+    @Override
+    public Reader create(final Reader input) {
+        return new TibCharFilter(input, lenient, convertOldTib);
+    }
+
+    @Override
+    public Reader normalize(final Reader input) {
+        return create(input);
+    }
+}
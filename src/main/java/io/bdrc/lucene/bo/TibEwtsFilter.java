@@ -16,7 +16,7 @@ import io.bdrc.ewtsconverter.EwtsConverter;
  * 
  * @author Elie Roux
  **/
-public class TibEwtsFilter extends BaseCharFilter {
+public class TibEwtsFilter extends BaseCharFilter implements OffsetCorrectionReporter {
 
     public static final EwtsConverter converter_ewts = new EwtsConverter(false, false, false, false, EwtsConverter.Mode.EWTS);
     public static final EwtsConverter converter_dts = new EwtsConverter(false, false, false, false, EwtsConverter.Mode.EWTS);
@@ -29,8 +29,10 @@ public class TibEwtsFilter extends BaseCharFilter {
     private int replacementLen = -1;
     private int inputOff;
     private final boolean lenient;
-    StringBuilder tmpEwts;
+    // reused for each syllable
+    final StringBuilder tmpEwts = new StringBuilder();
     public EwtsConverter converter;
+    private OffsetCorrectionReporter.Listener correctionListener = null;
 
     public TibEwtsFilter(Reader in) {
         this(in, TibetanAnalyzer.INPUT_METHOD_EWTS, true);
@@ -62,6 +64,23 @@ public class TibEwtsFilter extends BaseCharFilter {
         inputOff = 0;
     }
 
+    @Override
+    public Reader getInput() {
+        return input;
+    }
+
+    @Override
+    public void setCorrectionListener(final OffsetCorrectionReporter.Listener listener) {
+        this.correctionListener = listener;
+    }
+
+    @Override
+    protected void addOffCorrectMap(final int off, final int cumulativeDiff) {
+        super.addOffCorrectMap(off, cumulativeDiff);
+        if (correctionListener != null)
+            correctionListener.added(off, cumulativeDiff);
+    }
+
     public static boolean isEwtsLetters(final int c) {
         if (c == ' ' || c == '*' || c == '_' || c == '(' || c == '/' || c == ')' || c == ':')
             return false;
@@ -75,7 +94,7 @@ public class TibEwtsFilter extends BaseCharFilter {
         }
         replacement = null;
         replacementIdx = 0;
-        tmpEwts = new StringBuilder();
+        tmpEwts.setLength(0);
         final int initialInputOff = inputOff;
         boolean stoppedOnPunctuation = false;
         while (true) {
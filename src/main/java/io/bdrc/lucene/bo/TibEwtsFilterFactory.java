@@ -0,0 +1,49 @@
+package io.bdrc.lucene.bo;
+
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.apache.lucene.analysis.CharFilterFactory;
+
+/**
+ * Factory for {@link TibEwtsFilter}, <code>inputMethod</code> is one of
+ * ewts, dts or alalc.
+ *
+ * <pre class="prettyprint">
+ * &lt;charFilter class="io.bdrc.lucene.bo.TibEwtsFilterFactory" inputMethod="ewts" lenient="true"/&gt;
+ * </pre>
+ *
+ * @lucene.spi {@value #NAME}
+ */
+public class TibEwtsFilterFactory extends CharFilterFactory {
+
+    public static final String NAME = "tibEwts";
+
+    private final String inputMethod;
+    private final boolean lenient;
+
+    public TibEwtsFilterFactory(final Map<String, String> args) {
+        super(args);
+        this.inputMethod = get(args, "inputMethod", Arrays.asList(TibetanAnalyzer.INPUT_METHOD_EWTS,
+                TibetanAnalyzer.INPUT_METHOD_DTS, TibetanAnalyzer.INPUT_METHOD_ALALC), TibetanAnalyzer.INPUT_METHOD_EWTS);
+        this.lenient = getBoolean(args, "lenient", true);
+        if (!args.isEmpty())
+            throw new IllegalArgumentException("Unknown parameters: " + args);
+    }
+
+    // for the SPI
+    public TibEwtsFilterFactory() {
+        throw defaultCtorException();
+    }
+
+    @Override
+    public Reader create(final Reader input) {
+        return new TibEwtsFilter(input, inputMethod, lenient);
+    }
+
+    @Override
+    public Reader normalize(final Reader input) {
+        return create(input);
+    }
+}
@@ -12,7 +12,33 @@ public class TibPattFilter {
     // All the patterns are related to Old Tibetan, and are important to apply
     // before any tokenization happens as they add tsheks
     
-    public static class MergedSylFilter1 extends PatternReplaceCharFilter {
+    // the base of the filters below, reporting their offset corrections
+    public static abstract class PatternFilter extends PatternReplaceCharFilter implements OffsetCorrectionReporter {
+        private OffsetCorrectionReporter.Listener correctionListener = null;
+
+        protected PatternFilter(final Pattern pattern, final String replacement, final Reader in) {
+            super(pattern, replacement, in);
+        }
+
+        @Override
+        public Reader getInput() {
+            return input;
+        }
+
+        @Override
+        public void setCorrectionListener(final OffsetCorrectionReporter.Listener listener) {
+            this.correctionListener = listener;
+        }
+
+        @Override
+        protected void addOffCorrectMap(final int off, final int cumulativeDiff) {
+            super.addOffCorrectMap(off, cumulativeDiff);
+            if (correctionListener != null)
+                correctionListener.added(off, cumulativeDiff);
+        }
+    }
+    
+    public static class MergedSylFilter1 extends PatternFilter {
         public MergedSylFilter1(Reader in) {
             super(rCatcherMerged1, repl, in);
         }
@@ -29,7 +55,7 @@ public class TibPattFilter {
         }
     }
     
-    public static class MergedSylFilter2 extends PatternReplaceCharFilter {
+    public static class MergedSylFilter2 extends PatternFilter {
         public MergedSylFilter2(Reader in) {
             super(rCatcherMerged2, repl, in);
         }
@@ -44,7 +70,7 @@ public class TibPattFilter {
         }
     }
     
-    public static class MergedSylFilter3 extends PatternReplaceCharFilter {
+    public static class MergedSylFilter3 extends PatternFilter {
         public MergedSylFilter3(Reader in) {
             super(rCatcherMerged3, repl, in);
         }
@@ -65,7 +91,7 @@ public class TibPattFilter {
         }
     }
     
-    public static class MergedSylFilter4 extends PatternReplaceCharFilter {
+    public static class MergedSylFilter4 extends PatternFilter {
         public MergedSylFilter4(Reader in) {
             super(rCatcherMerged4, repl, in);
         }
@@ -80,7 +106,7 @@ public class TibPattFilter {
         }
     }
     
-    public static class ReorderFilter extends PatternReplaceCharFilter {
+    public static class ReorderFilter extends PatternFilter {
         public ReorderFilter(Reader in) {
             super(rReorder, repl, in);
         }
@@ -94,7 +120,7 @@ public class TibPattFilter {
         }
     }
     
-    public static class SktFilter1 extends PatternReplaceCharFilter {
+    public static class SktFilter1 extends PatternFilter {
         public SktFilter1(Reader in) {
             super(init, repl, in);
         }
@@ -102,7 +128,7 @@ public class TibPattFilter {
         public static final String repl = "\u0F45$1";
     }
     
-    public static class SktFilter2 extends PatternReplaceCharFilter {
+    public static class SktFilter2 extends PatternFilter {
         public SktFilter2(Reader in) {
             super(init, repl, in);
         }
@@ -110,7 +136,7 @@ public class TibPattFilter {
         public static final String repl = "\u0F95$1";
     }
     
-    public static class SktFilter3 extends PatternReplaceCharFilter {
+    public static class SktFilter3 extends PatternFilter {
         public SktFilter3(Reader in) {
             super(init, repl, in);
         }
@@ -118,7 +144,7 @@ public class TibPattFilter {
         public static final String repl = "\u0F47$1";
     }
     
-    public static class SktFilter4 extends PatternReplaceCharFilter {
+    public static class SktFilter4 extends PatternFilter {
         public SktFilter4(Reader in) {
             super(init, repl, in);
         }
@@ -130,7 +156,7 @@ public class TibPattFilter {
      * This is to be used in the case where we want to keep some shads in the tokens. In that scenario, there are shads that
      * we don't want: those after the yigo. This filter removes the yigo and subsequent shads
      */
-    public static class PunctFilter1 extends PatternReplaceCharFilter {
+    public static class PunctFilter1 extends PatternFilter {
         public PunctFilter1(Reader in) {
             super(init, repl, in);
         }
@@ -141,7 +167,7 @@ public class TibPattFilter {
     /*
      * This filter folds all type of shad and repetitions into just one shad, to be used in the case where we want to keep some shads in the tokens
      */
-    public static class PunctFilter2 extends PatternReplaceCharFilter {
+    public static class PunctFilter2 extends PatternFilter {
         public PunctFilter2(Reader in) {
             super(init, repl, in);
         }
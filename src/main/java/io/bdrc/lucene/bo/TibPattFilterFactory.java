@@ -0,0 +1,61 @@
+package io.bdrc.lucene.bo;
+
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.apache.lucene.analysis.CharFilterFactory;
+
+/**
+ * Factory for the sets of filters of {@link TibPattFilter}, the patterns are
+ * compiled once:
+ * <ul>
+ * <li>oldtib: the Old Tibetan normalizations of
+ * {@link TibPattFilter#plugFilters(Reader)}, by default</li>
+ * <li>reorder: only {@link TibPattFilter.ReorderFilter}</li>
+ * <li>punct: {@link TibPattFilter.PunctFilter1} and
+ * {@link TibPattFilter.PunctFilter2}, when the shads are kept in the
+ * tokens</li>
+ * </ul>
+ *
+ * <pre class="prettyprint">
+ * &lt;charFilter class="io.bdrc.lucene.bo.TibPattFilterFactory" set="oldtib"/&gt;
+ * </pre>
+ *
+ * @lucene.spi {@value #NAME}
+ */
+public class TibPattFilterFactory extends CharFilterFactory {
+
+    public static final String NAME = "tibPatt";
+
+    private final String set;
+
+    public TibPattFilterFactory(final Map<String, String> args) {
+        super(args);
+        this.set = get(args, "set", Arrays.asList("oldtib", "reorder", "punct"), "oldtib");
+        if (!args.isEmpty())
+            throw new IllegalArgumentException("Unknown parameters: " + args);
+    }
+
+    // for the SPI
+    public TibPattFilterFactory() {
+        throw defaultCtorException();
+    }
+
+    @Override
+    public Reader create(final Reader input) {
+        switch (set) {
+        case "reorder":
+            return new TibPattFilter.ReorderFilter(input);
+        case "punct":
+            return new TibPattFilter.PunctFilter2(new TibPattFilter.PunctFilter1(input));
+        default:
+            return TibPattFilter.plugFilters(input);
+        }
+    }
+
+    @Override
+    public Reader normalize(final Reader input) {
+        return create(input);
+    }
+}
@@ -3,6 +3,7 @@ package io.bdrc.lucene.bo;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.apache.lucene.analysis.TokenFilter;
 import org.apache.lucene.analysis.TokenStream;
@@ -10,41 +11,76 @@ import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.bdrc.lucene.bo.metrics.AnalysisMetrics;
+import io.bdrc.lucene.bo.metrics.Metrics;
+import io.bdrc.lucene.bo.metrics.ResourceFootprint;
+import io.bdrc.lucene.bo.metrics.ResourceLoadEvent;
+
 import io.bdrc.lucene.stemmer.Row;
 import io.bdrc.lucene.stemmer.Trie;
 
 public final class TibSyllableLemmatizer extends TokenFilter {
 
-    private static Trie defaultTrie = null;
+    // loaded on first use, the JVM class initialization publishes it safely to all threads
+    private static final class DefaultTrie {
+        static final Trie trie = loadDefaultTrie();
+        // the lemmas of the syllables with an id, filled on first use
+        static final AtomicReferenceArray<Lemma> lemmas = new AtomicReferenceArray<>(CommonHelpers.nbSyllableIds());
+    }
+
+    private static final class Lemma {
+        final String value;
+        final int id;
+
+        Lemma(final String value) {
+            this.value = value;
+            this.id = value == null ? -1 : CommonHelpers.syllableId(value.toCharArray(), 0, value.length());
+        }
+    }
+
+    private static final Lemma NO_LEMMA = new Lemma(null);
     
-    private Trie scanner = null;
+    private final Trie scanner;
     static final Logger logger = LoggerFactory.getLogger(TibWordTokenizer.class);
     
     public TibSyllableLemmatizer(final TokenStream input) {
         super(input);
-        if (defaultTrie != null) {
-            this.scanner = defaultTrie;
-            return;
-        }
-        InputStream stream = null;
-        stream = CommonHelpers.getResourceOrFile("verbs-compiled-trie.dump");
+        this.scanner = DefaultTrie.trie;
+    }
+    
+    // the Trie of the lemmatizer, null if it cannot be found or read
+    static Trie defaultTrie() {
+        return DefaultTrie.trie;
+    }
+
+    // null if the Trie cannot be found or read
+    private static Trie loadDefaultTrie() {
+        final InputStream stream = CommonHelpers.getResourceOrFile("verbs-compiled-trie.dump");
         if (stream == null) {
             final String msg = "The syllables compiled Trie is not found. Either rebuild the Jar or run BuildCompiledTrie.main()"
                     + "\n\tAborting...";
             logger.error(msg);
-        } else {
-            try {
-                this.scanner = new Trie(new DataInputStream(stream));
-            } catch (IOException e) {
-                e.printStackTrace();
-                return;
-            }
-            defaultTrie = scanner;
+            return null;
+        }
+        try {
+            final ResourceLoadEvent event = ResourceLoadEvent.start("trie", "verbs-compiled-trie.dump");
+            final Trie res = new Trie(new DataInputStream(stream));
+            event.finish("verbs-compiled-trie.dump", res.getCells());
+            ResourceFootprint.register("verbs-compiled-trie.dump", "trie", res, res.getCells());
+            return res;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
         }
-        
     }
     
     private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+    // present if the tokenizer sets the syllable ids, kept in sync with the term
+    private final SyllableIdAttribute sylAtt = hasAttribute(SyllableIdAttribute.class) ? getAttribute(SyllableIdAttribute.class) : null;
+    // present if the tokenizer sets the syllable structures, kept in sync with the term
+    private final SyllableStructureAttribute structAtt = hasAttribute(SyllableStructureAttribute.class) ? getAttribute(SyllableStructureAttribute.class) : null;
+    private final AnalysisMetrics.Counter hits = Metrics.counter("TibSyllableLemmatizer.hits");
+    private final AnalysisMetrics.Counter misses = Metrics.counter("TibSyllableLemmatizer.misses");
 
     
     public String getReplacement(final char[] buffer, final int len) {
@@ -70,8 +106,29 @@ public final class TibSyllableLemmatizer extends TokenFilter {
         final char[] buffer = termAtt.buffer();
         final int len = termAtt.length();
         
-        String repl = getReplacement(buffer, len);
-        if (repl == null) return true;
+        final int id = sylAtt == null ? -1 : sylAtt.getSyllableId();
+        final String repl;
+        if (id != -1) {
+            // the Trie is only walked once per syllable
+            Lemma lemma = DefaultTrie.lemmas.get(id);
+            if (lemma == null) {
+                final String value = getReplacement(buffer, len);
+                lemma = value == null ? NO_LEMMA : new Lemma(value);
+                DefaultTrie.lemmas.set(id, lemma);
+            }
+            repl = lemma.value;
+            if (repl != null)
+                sylAtt.setSyllableId(lemma.id);
+        } else {
+            repl = getReplacement(buffer, len);
+        }
+        if (repl == null) {
+            misses.increment();
+            return true;
+        }
+        hits.increment();
+        if (structAtt != null)
+            structAtt.setStructure(sylAtt == null ? 0 : SyllableStructure.of(sylAtt.getSyllableId()));
         
         int newlen = repl.length();
         if (newlen != len)
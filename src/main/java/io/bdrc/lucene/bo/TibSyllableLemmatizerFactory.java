@@ -0,0 +1,47 @@
+package io.bdrc.lucene.bo;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.apache.lucene.analysis.TokenFilterFactory;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.util.ResourceLoader;
+import org.apache.lucene.util.ResourceLoaderAware;
+
+/**
+ * Factory for {@link TibSyllableLemmatizer}. The compiled Trie of the verbs is
+ * loaded once for the whole JVM, {@link #inform(ResourceLoader)} fails if it
+ * cannot be found.
+ *
+ * <pre class="prettyprint">
+ * &lt;filter class="io.bdrc.lucene.bo.TibSyllableLemmatizerFactory"/&gt;
+ * </pre>
+ *
+ * @lucene.spi {@value #NAME}
+ */
+public class TibSyllableLemmatizerFactory extends TokenFilterFactory implements ResourceLoaderAware {
+
+    public static final String NAME = "tibSyllableLemmatizer";
+
+    public TibSyllableLemmatizerFactory(final Map<String, String> args) {
+        super(args);
+        if (!args.isEmpty())
+            throw new IllegalArgumentException("Unknown parameters: " + args);
+    }
+
+    // for the SPI
+    public TibSyllableLemmatizerFactory() {
+        throw defaultCtorException();
+    }
+
+    @Override
+    public void inform(final ResourceLoader loader) throws IOException {
+        if (TibSyllableLemmatizer.defaultTrie() == null)
+            throw new IOException("The syllables compiled Trie is not found. Either rebuild the Jar or run BuildCompiledTrie.main()");
+    }
+
+    @Override
+    public TokenStream create(final TokenStream input) {
+        return new TibSyllableLemmatizer(input);
+    }
+}
@@ -20,15 +20,17 @@
 package io.bdrc.lucene.bo;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.function.Predicate;
 
 import org.apache.lucene.analysis.CharacterUtils;
 import org.apache.lucene.analysis.CharacterUtils.CharacterBuffer;
 import org.apache.lucene.analysis.Tokenizer;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.AttributeFactory;
+
+import io.bdrc.lucene.bo.metrics.AnalysisMetrics;
+import io.bdrc.lucene.bo.metrics.Metrics;
 
 /**
  * A TibSyllableTokenizer divides text between sequences of Tibetan Letter
@@ -54,19 +56,26 @@ public final class TibSyllableTokenizer extends Tokenizer {
     private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
     private final OffsetAttribute offsetAtt = addAttribute(OffsetAttribute.class);
     private final IsStandardTibetanAttribute istAtt = addAttribute(IsStandardTibetanAttribute.class);
+    // null unless the syllable ids are enabled
+    private final SyllableIdAttribute sylAtt;
+    // null unless the syllable structures are enabled
+    private final SyllableStructureAttribute structAtt;
 
     private final CharacterBuffer ioBuffer = CharacterUtils.newCharacterBuffer(IO_BUFFER_SIZE);
-    private char[] bufferForStacks = null;
+    // reused across tokens so that the stack path doesn't allocate
+    private char[] bufferForStacks = new char[16];
     
-    private final List<Integer> stackBreaks = new ArrayList<>();  // To store stack break positions
-    private final List<Integer> stackBreakOffsets = new ArrayList<>();  // To store stack break positions
+    private int[] stackBreaks = new int[16];  // To store stack break positions
+    private int[] stackBreakOffsets = new int[17];  // To store stack break offsets
+    private int nbStackBreaks = 0;
     private int stackBreakIndex = 0;  // To track the current stack break being processed
     private int stackStart = -1;
     private int stackStartOffset = -1;
     private int stackEnd = -1;
     
     private final boolean tokenizeNonStandardTibIntoStacks;
-    private final Predicate<Integer> isTibLetterOrDigit;
+    private final AnalysisMetrics.Counter stackSplits = Metrics.counter("TibSyllableTokenizer.stackSplits");
+    private final boolean tokenizeShads;
     
     /**
      * Construct a new TibSyllableTokenizer.
@@ -76,10 +85,57 @@ public final class TibSyllableTokenizer extends Tokenizer {
     }
     
     public TibSyllableTokenizer(final boolean tokenizeNonStandardTibIntoStacks, final boolean tokenizeShads) {
+        this(DEFAULT_TOKEN_ATTRIBUTE_FACTORY, tokenizeNonStandardTibIntoStacks, tokenizeShads);
+    }
+
+    // with TibetanTermEncoding.FACTORY for compact terms
+    public TibSyllableTokenizer(final AttributeFactory factory, final boolean tokenizeNonStandardTibIntoStacks, final boolean tokenizeShads) {
+        this(factory, tokenizeNonStandardTibIntoStacks, tokenizeShads, false);
+    }
+
+    /**
+     * Construct a new TibSyllableTokenizer.
+     * 
+     * @param factory
+     *            the attribute factory
+     * @param tokenizeNonStandardTibIntoStacks
+     *            if the syllables that are not Standard Tibetan are split into
+     *            stacks
+     * @param tokenizeShads
+     *            if the shads are kept in the tokens
+     * @param syllableIds
+     *            if the {@link SyllableIdAttribute} is set, from the same pass as
+     *            the Standard Tibetan check
+     */
+    public TibSyllableTokenizer(final AttributeFactory factory, final boolean tokenizeNonStandardTibIntoStacks, final boolean tokenizeShads,
+            final boolean syllableIds) {
+        this(factory, tokenizeNonStandardTibIntoStacks, tokenizeShads, syllableIds, false);
+    }
+
+    /**
+     * Construct a new TibSyllableTokenizer.
+     * 
+     * @param factory
+     *            the attribute factory
+     * @param tokenizeNonStandardTibIntoStacks
+     *            if the syllables that are not Standard Tibetan are split into
+     *            stacks
+     * @param tokenizeShads
+     *            if the shads are kept in the tokens
+     * @param syllableIds
+     *            if the {@link SyllableIdAttribute} is set, from the same pass as
+     *            the Standard Tibetan check
+     * @param syllableStructures
+     *            if the {@link SyllableStructureAttribute} is set, from the same
+     *            pass
+     */
+    public TibSyllableTokenizer(final AttributeFactory factory, final boolean tokenizeNonStandardTibIntoStacks, final boolean tokenizeShads,
+            final boolean syllableIds, final boolean syllableStructures) {
+        super(factory);
         this.tokenizeNonStandardTibIntoStacks = tokenizeNonStandardTibIntoStacks;
-        this.isTibLetterOrDigit = tokenizeShads 
-                ? this::isTibLetterOrDigitOrShad 
-                : this::isTibLetterOrDigitNoShad;
+        this.tokenizeShads = tokenizeShads;
+        this.sylAtt = syllableIds ? addAttribute(SyllableIdAttribute.class) : null;
+        this.structAtt = syllableStructures ? addAttribute(SyllableStructureAttribute.class) : null;
     }
 
     // see http://jrgraphix.net/r/Unicode/0F00-0FFF
@@ -96,11 +152,11 @@ public final class TibSyllableTokenizer extends Tokenizer {
         clearAttributes();
 
         // If there are remaining stack breaks, return the next token based on stack breaks
-        if (stackBreakIndex < stackBreaks.size()) {
+        if (stackBreakIndex < nbStackBreaks) {
             int start = stackStart;
             int startOffset = stackStartOffset;
-            int end = stackBreaks.get(stackBreakIndex);
-            int endOffset = stackBreakOffsets.get(stackBreakIndex);
+            int end = stackBreaks[stackBreakIndex];
+            int endOffset = stackBreakOffsets[stackBreakIndex];
             //System.out.println(String.format("start=%d, startOffset=%d, end=%d, endOffset=%d", start, startOffset, end, endOffset));
             termAtt.copyBuffer(bufferForStacks, start, end - start);
             istAtt.setIsStandardTibetan(false);
@@ -140,7 +196,8 @@ public final class TibSyllableTokenizer extends Tokenizer {
             final int charCount = Character.charCount(c);
             bufferIndex += charCount;
 
-            if (this.isTibLetterOrDigit.test(c)) {  // Token character
+            // no Predicate<Integer> here, it would box each code point
+            if (tokenizeShads ? isTibLetterOrDigitOrShad(c) : isTibLetterOrDigitNoShad(c)) {  // Token character
                 if (length == 0) {
                     start = offset + bufferIndex - charCount;
                     end = start;
@@ -161,11 +218,13 @@ public final class TibSyllableTokenizer extends Tokenizer {
 
         // Check if the token is a valid Tibetan syllable
         if (length > 0) {
-            if (tokenizeNonStandardTibIntoStacks && !CommonHelpers.isStandardTibetan(buffer, 0, length)) {
+            // the id is -1 for the syllables that are not Standard Tibetan
+            final int id = (sylAtt != null || structAtt != null || tokenizeNonStandardTibIntoStacks) ? CommonHelpers.syllableId(buffer, 0, length) : -1;
+            if (tokenizeNonStandardTibIntoStacks && id == -1) {
                 //System.out.println(String.copyValueOf(buffer, 0, length)+" is not standard Tibetan");
                 // It's not a valid Tibetan syllable, so split it into smaller tokens
-                stackBreaks.clear();  // Clear any previous stack breaks
-                stackBreakOffsets.clear();
+                stackSplits.increment();
+                nbStackBreaks = 0;  // Clear any previous stack breaks
                 stackBreakIndex = 0;
                 stackStart = 0;  // Initialize the start of the stack
                 stackStartOffset = correctOffset(start);
@@ -174,19 +233,24 @@ public final class TibSyllableTokenizer extends Tokenizer {
                 while (currentStackBreak < length) {
                     int nextBreak = CommonHelpers.nextStackBreak(buffer, currentStackBreak, length);
                     // System.out.println(String.format("currentStackBreak=%d, length=%d -> nextBreak=%d", currentStackBreak, length, nextBreak));
-                    stackBreaks.add(nextBreak);  // Add the break position
-                    stackBreakOffsets.add(correctOffset(start+nextBreak));
+                    if (nbStackBreaks == stackBreaks.length) {
+                        stackBreaks = ArrayUtil.grow(stackBreaks, nbStackBreaks + 1);
+                        stackBreakOffsets = ArrayUtil.grow(stackBreakOffsets, stackBreaks.length + 1);
+                    }
+                    stackBreaks[nbStackBreaks] = nextBreak;  // Add the break position
+                    stackBreakOffsets[nbStackBreaks] = correctOffset(start+nextBreak);
+                    nbStackBreaks++;
                     currentStackBreak = nextBreak;
                 }
-                stackBreakOffsets.add(correctOffset(end));
+                stackBreakOffsets[nbStackBreaks] = correctOffset(end);
                 // Return the first stack as the token                
-                stackEnd = stackBreaks.get(0);
-                // System.out.println(String.format("stackend=%d, stackendoffset=%d", stackEnd, stackBreakOffsets.get(0)));
+                stackEnd = stackBreaks[0];
+                // System.out.println(String.format("stackend=%d, stackendoffset=%d", stackEnd, stackBreakOffsets[0]));
                 istAtt.setIsStandardTibetan(false);
-                bufferForStacks = new char[length];
+                bufferForStacks = ArrayUtil.grow(bufferForStacks, length);
                 System.arraycopy(buffer, 0, bufferForStacks, 0, length);
                 termAtt.copyBuffer(buffer, stackStart, stackEnd - stackStart);
-                offsetAtt.setOffset(stackStartOffset, stackBreakOffsets.get(0));
+                offsetAtt.setOffset(stackStartOffset, stackBreakOffsets[0]);
                 stackStart = stackEnd;  // Move to the next break
                 stackBreakIndex = 1;
                 return true;
@@ -194,6 +258,10 @@ public final class TibSyllableTokenizer extends Tokenizer {
                 // Valid syllable, return it as a single token
                 termAtt.copyBuffer(buffer, 0, length);
                 istAtt.setIsStandardTibetan(true);
+                if (sylAtt != null)
+                    sylAtt.setSyllableId(id);
+                if (structAtt != null)
+                    structAtt.setStructure(SyllableStructure.of(id));
                 offsetAtt.setOffset(correctOffset(start), correctOffset(end));
                 return true;
             }
@@ -216,8 +284,7 @@ public final class TibSyllableTokenizer extends Tokenizer {
       dataLen = 0;
       finalOffset = 0;
       ioBuffer.reset(); // make sure to reset the IO buffer!!
-      stackBreaks.clear();
-      stackBreakOffsets.clear();
+      nbStackBreaks = 0;
       stackBreakIndex = 0;
     }
 
@@ -0,0 +1,47 @@
+package io.bdrc.lucene.bo;
+
+import java.util.Map;
+
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.TokenizerFactory;
+import org.apache.lucene.util.AttributeFactory;
+
+/**
+ * Factory for {@link TibSyllableTokenizer}.
+ *
+ * <pre class="prettyprint">
+ * &lt;tokenizer class="io.bdrc.lucene.bo.TibSyllableTokenizerFactory" tokenizeNonStandardTibIntoStacks="true"
+ *     tokenizeShads="false" syllableIds="true" syllableStructures="false"/&gt;
+ * </pre>
+ *
+ * @lucene.spi {@value #NAME}
+ */
+public class TibSyllableTokenizerFactory extends TokenizerFactory {
+
+    public static final String NAME = "tibSyllable";
+
+    private final boolean tokenizeNonStandardTibIntoStacks;
+    private final boolean tokenizeShads;
+    private final boolean syllableIds;
+    private final boolean syllableStructures;
+
+    public TibSyllableTokenizerFactory(final Map<String, String> args) {
+        super(args);
+        this.tokenizeNonStandardTibIntoStacks = getBoolean(args, "tokenizeNonStandardTibIntoStacks", true);
+        this.tokenizeShads = getBoolean(args, "tokenizeShads", false);
+        this.syllableIds = getBoolean(args, "syllableIds", false);
+        this.syllableStructures = getBoolean(args, "syllableStructures", false);
+        if (!args.isEmpty())
+            throw new IllegalArgumentException("Unknown parameters: " + args);
+    }
+
+    // for the SPI
+    public TibSyllableTokenizerFactory() {
+        throw defaultCtorException();
+    }
+
+    @Override
+    public Tokenizer create(final AttributeFactory factory) {
+        return new TibSyllableTokenizer(factory, tokenizeNonStandardTibIntoStacks, tokenizeShads, syllableIds, syllableStructures);
+    }
+}
@@ -19,19 +19,27 @@
  ******************************************************************************/
 package io.bdrc.lucene.bo;
 
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
 import org.apache.lucene.analysis.Tokenizer;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
 import org.apache.lucene.analysis.util.RollingCharBuffer;
+import org.apache.lucene.util.AttributeFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.bdrc.lucene.bo.metrics.AnalysisMetrics;
+import io.bdrc.lucene.bo.metrics.Metrics;
+import io.bdrc.lucene.bo.metrics.ResourceFootprint;
+import io.bdrc.lucene.bo.metrics.ResourceLoadEvent;
 import io.bdrc.lucene.stemmer.Row;
 import io.bdrc.lucene.stemmer.Trie;
 
@@ -65,7 +73,10 @@ public final class TibWordTokenizer extends Tokenizer {
     private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
     private final OffsetAttribute offsetAtt = addAttribute(OffsetAttribute.class);
 
-    private static Trie defaultTrie = null;
+    // loaded on first use, the JVM class initialization publishes it safely to all threads
+    private static final class DefaultTrie {
+        static final Trie trie = loadDefaultTrie();
+    }
 
     private Trie scanner;
     static final Logger logger = LoggerFactory.getLogger(TibWordTokenizer.class);
@@ -73,6 +84,9 @@ public final class TibWordTokenizer extends Tokenizer {
     private boolean debug = false;
     private boolean lemmatize = true;
 
+    private final AnalysisMetrics.Counter unknownSyllables = Metrics.counter("TibWordTokenizer.unknownSyllables");
+    private final AnalysisMetrics.Counter lemmatized = Metrics.counter("TibWordTokenizer.lemmatized");
+
     /**
      * Constructs a TibWordTokenizer using a default lexicon file (here
      * "resource/output/total_lexicon.txt")
@@ -81,22 +95,34 @@ public final class TibWordTokenizer extends Tokenizer {
      *             the file containing the lexicon cannot be read
      */
     public TibWordTokenizer() throws IOException {
-        if (defaultTrie != null) {
-            this.scanner = defaultTrie;
-            ioBuffer = new RollingCharBuffer();
-            ioBuffer.reset(input);
-            return;
-        }
-        InputStream stream = null;
-        stream = CommonHelpers.getResourceOrFile("bo-compiled-trie.dump");
+        this(DEFAULT_TOKEN_ATTRIBUTE_FACTORY);
+    }
+
+    // with TibetanTermEncoding.FACTORY for compact terms
+    public TibWordTokenizer(final AttributeFactory factory) throws IOException {
+        this(factory, DefaultTrie.trie);
+        if (this.scanner == null)
+            throw new IOException("The default compiled Trie is not found. Either rebuild the Jar or run BuildCompiledTrie.main()");
+    }
+
+    // the Trie of the default constructor, null if it cannot be found or read
+    static Trie defaultTrie() {
+        return DefaultTrie.trie;
+    }
+
+    // null if the Trie cannot be found or read
+    private static Trie loadDefaultTrie() {
+        final InputStream stream = CommonHelpers.getResourceOrFile("bo-compiled-trie.dump");
         if (stream == null) {
-            final String msg = "The default compiled Trie is not found. Either rebuild the Jar or run BuildCompiledTrie.main()"
-                    + "\n\tAborting...";
-            logger.error(msg);
-            throw new IOException(msg);
-        } else {
-            init(stream);
-            defaultTrie = scanner;
+            logger.error("The default compiled Trie is not found. Either rebuild the Jar or run BuildCompiledTrie.main()"
+                    + "\n\tAborting...");
+            return null;
+        }
+        try {
+            return load(stream);
+        } catch (IOException e) {
+            logger.error("cannot read the default compiled Trie", e);
+            return null;
         }
     }
 
@@ -107,19 +133,47 @@ public final class TibWordTokenizer extends Tokenizer {
      *            built with BuildCompiledTrie.java
      */
     public TibWordTokenizer(Trie trie) {
+        this(DEFAULT_TOKEN_ATTRIBUTE_FACTORY, trie);
+    }
+
+    public TibWordTokenizer(final AttributeFactory factory, final Trie trie) {
+        super(factory);
         this.scanner = trie;
         ioBuffer = new RollingCharBuffer();
         ioBuffer.reset(input);
     }
 
     public TibWordTokenizer(String trieFile) throws FileNotFoundException, IOException {
-        System.out.println("\n\tcompiled Trie not found, building it.");
+        this(DEFAULT_TOKEN_ATTRIBUTE_FACTORY, trieFile);
+    }
+
+    public TibWordTokenizer(final AttributeFactory factory, final String trieFile) throws FileNotFoundException, IOException {
+        this(factory, buildTrie(trieFile));
+    }
+
+    static Trie buildTrie(final String trieFile) throws FileNotFoundException, IOException {
+        return buildTrie(trieFile, () -> BuildCompiledTrie.buildTrie(Arrays.asList(trieFile)));
+    }
+
+    // a lexicon already read, in UTF-8
+    static Trie buildTrie(final String trieFile, final byte[] lexicon) throws IOException {
+        return buildTrie(trieFile, () -> BuildCompiledTrie.buildTrie(new InputStreamReader(new ByteArrayInputStream(lexicon), StandardCharsets.UTF_8)));
+    }
+
+    private interface TrieBuilder {
+        Trie build() throws IOException;
+    }
+
+    private static Trie buildTrie(final String trieFile, final TrieBuilder builder) throws IOException {
+        logger.info("compiled Trie not found, building it from {}", trieFile);
+        final ResourceLoadEvent event = ResourceLoadEvent.start("trie", "lexicon");
         long start = System.currentTimeMillis();
-        this.scanner = BuildCompiledTrie.buildTrie(Arrays.asList(trieFile));
+        final Trie trie = builder.build();
         long end = System.currentTimeMillis();
-        System.out.println("\tTime: " + (end - start) / 1000 + "s.");
-        ioBuffer = new RollingCharBuffer();
-        ioBuffer.reset(input);
+        event.finish(trieFile, trie.getCells());
+        ResourceFootprint.register(trieFile, "trie", trie, trie.getCells());
+        logger.info("Trie built in {} ms", end - start);
+        return trie;
     }
 
     /**
@@ -128,14 +182,15 @@ public final class TibWordTokenizer extends Tokenizer {
      * @param inputStream
      *            the compiled Trie opened as a Stream
      */
-    private void init(InputStream inputStream) throws IOException {
-        System.out.println("\n\tLoading the trie");
+    private static Trie load(InputStream inputStream) throws IOException {
+        final ResourceLoadEvent event = ResourceLoadEvent.start("trie", "bo-compiled-trie.dump");
         long start = System.currentTimeMillis();
-        this.scanner = new Trie(new DataInputStream(inputStream));
+        final Trie res = new Trie(new DataInputStream(inputStream));
         long end = System.currentTimeMillis();
-        System.out.println("\tTime: " + (end - start) / 1000 + "s.");
-        ioBuffer = new RollingCharBuffer();
-        ioBuffer.reset(input);
+        event.finish("bo-compiled-trie.dump", res.getCells());
+        ResourceFootprint.register("bo-compiled-trie.dump", "trie", res, res.getCells());
+        logger.info("Trie loaded in {} ms", end - start);
+        return res;
     }
 
     private int bufferIndex = 0, finalOffset = 0;
@@ -269,6 +324,8 @@ public final class TibWordTokenizer extends Tokenizer {
 
         /* B.2. EXITING incrementToken() WITH THE TOKEN */
         assert (tokenStart != -1);
+        if (foundMatchCmdIndex == -1)
+            unknownSyllables.increment(); // no entry of the Trie matched, the syllable is returned alone
         finalizeSettingTermAttribute(tokenBuffer);
         lemmatizeIfRequired();
         return true;
@@ -323,6 +380,7 @@ public final class TibWordTokenizer extends Tokenizer {
         if (lemmatize) {
             final String cmd = scanner.getCommandVal(foundMatchCmdIndex);
             if (cmd != null) {
+                lemmatized.increment();
                 applyCmdToTermAtt(cmd);
             }
         }
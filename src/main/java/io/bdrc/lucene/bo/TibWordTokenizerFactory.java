@@ -0,0 +1,101 @@
+package io.bdrc.lucene.bo;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.TokenizerFactory;
+import org.apache.lucene.util.AttributeFactory;
+import org.apache.lucene.util.ResourceLoader;
+import org.apache.lucene.util.ResourceLoaderAware;
+
+import io.bdrc.lucene.bo.metrics.ResourceFootprint;
+import io.bdrc.lucene.bo.metrics.ResourceLoadEvent;
+import io.bdrc.lucene.stemmer.Trie;
+
+/**
+ * Factory for {@link TibWordTokenizer}, with the default compiled Trie, a
+ * compiled Trie opened through the {@link ResourceLoader} (<code>trie</code>)
+ * or a lexicon file (in UTF-8) opened through the {@link ResourceLoader} and
+ * compiled on first use (<code>lexicon</code>).
+ * <p>
+ * The Tries are shared in the whole JVM by content (size and CRC32), so all
+ * the cores and fields using the same file share the same Trie, and a file of
+ * the same name with another content (another core, a changed file) gets its
+ * own Trie. They are held weakly, the Trie of a file changed before a reload is
+ * collected once the old core is closed. The file is read at each
+ * {@link #inform} to get its identity, it is only parsed the first time.
+ *
+ * <pre class="prettyprint">
+ * &lt;tokenizer class="io.bdrc.lucene.bo.TibWordTokenizerFactory" trie="bo-compiled-trie.dump" lemmatize="true"/&gt;
+ * </pre>
+ *
+ * @lucene.spi {@value #NAME}
+ */
+public class TibWordTokenizerFactory extends TokenizerFactory implements ResourceLoaderAware {
+
+    public static final String NAME = "tibWord";
+
+    static final SharedResources<Trie> tries = new SharedResources<>();
+
+    private final String trieName;
+    private final String lexiconName;
+    private final boolean lemmatize;
+    private Trie trie = null;
+
+    public TibWordTokenizerFactory(final Map<String, String> args) {
+        super(args);
+        this.trieName = get(args, "trie");
+        this.lexiconName = get(args, "lexicon");
+        this.lemmatize = getBoolean(args, "lemmatize", true);
+        if (trieName != null && lexiconName != null)
+            throw new IllegalArgumentException("trie and lexicon cannot be used together");
+        if (!args.isEmpty())
+            throw new IllegalArgumentException("Unknown parameters: " + args);
+    }
+
+    // for the SPI
+    public TibWordTokenizerFactory() {
+        throw defaultCtorException();
+    }
+
+    @Override
+    public void inform(final ResourceLoader loader) throws IOException {
+        if (trieName != null) {
+            final byte[] bytes = readResource(loader, trieName);
+            trie = tries.get("trie:" + CommonHelpers.contentIdentity(bytes), () -> {
+                final ResourceLoadEvent event = ResourceLoadEvent.start("trie", trieName);
+                final Trie res = new Trie(new DataInputStream(new ByteArrayInputStream(bytes)));
+                event.finish(trieName, res.getCells());
+                ResourceFootprint.register(trieName, "trie", res, res.getCells());
+                return res;
+            });
+        } else if (lexiconName != null) {
+            // read once, the content identifies the Trie built from it
+            final byte[] bytes = readResource(loader, lexiconName);
+            trie = tries.get("lexicon:" + CommonHelpers.contentIdentity(bytes), () -> TibWordTokenizer.buildTrie(lexiconName, bytes));
+        } else {
+            trie = TibWordTokenizer.defaultTrie();
+            if (trie == null)
+                throw new IOException("The default compiled Trie is not found. Either rebuild the Jar or run BuildCompiledTrie.main()");
+        }
+    }
+
+    private static byte[] readResource(final ResourceLoader loader, final String name) throws IOException {
+        try (InputStream stream = loader.openResource(name)) {
+            return stream.readAllBytes();
+        }
+    }
+
+    @Override
+    public Tokenizer create(final AttributeFactory factory) {
+        if (trie == null)
+            throw new IllegalStateException("inform() must be called first");
+        final TibWordTokenizer res = new TibWordTokenizer(factory, trie);
+        res.setLemmatize(lemmatize);
+        return res;
+    }
+}
@@ -27,18 +27,33 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.CharArraySet;
-import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.Tokenizer;
 import org.apache.lucene.analysis.core.StopFilter;
+import org.apache.lucene.util.AttributeFactory;
+import org.apache.lucene.util.FixedBitSet;
 import org.apache.lucene.util.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.bdrc.lucene.bo.TibPattFilter.ReorderFilter;
+import io.bdrc.lucene.bo.bulk.ResultCacheFilter;
+import io.bdrc.lucene.bo.bulk.TokenArrayCache;
+import io.bdrc.lucene.bo.metrics.AnalysisMetrics;
+import io.bdrc.lucene.bo.metrics.DocumentAnalysisFilter;
+import io.bdrc.lucene.bo.metrics.Metrics;
+import io.bdrc.lucene.bo.metrics.ResourceFootprint;
+import io.bdrc.lucene.bo.metrics.ResourceLoadEvent;
+import io.bdrc.lucene.bo.metrics.TimedCharFilter;
+import io.bdrc.lucene.bo.metrics.TimedTokenFilter;
 
 /**
  * An Analyzer that uses {@link TibSyllableTokenizer} and filters with
@@ -60,6 +75,8 @@ public final class TibetanAnalyzer extends Analyzer {
     static final Logger logger = LoggerFactory.getLogger(TibetanAnalyzer.class);
 
     CharArraySet tibStopSet;
+    // the syllable ids of tibStopSet, for SyllableStopFilter
+    FixedBitSet tibStopIds;
     boolean segmentInWords = false;
     String lemmatize = null;
     boolean convertOldTib = false;
@@ -71,6 +88,12 @@ public final class TibetanAnalyzer extends Analyzer {
     String normalize = null;
     String lexiconFileName = null;
     String inputMethod = INPUT_METHOD_DEFAULT;
+    volatile boolean pipelined = false;
+    // read when the components are created, set before the first use
+    volatile TokenArrayCache resultCache = null;
+    volatile boolean compactTerms = false;
+    // read once so that the chains of an analyzer are all instrumented or not
+    final AnalysisMetrics metrics = Metrics.get();
 
     // compatibility layer for < 1.5.0
     public TibetanAnalyzer(boolean segmentInWords, boolean lemmatize, boolean normalize, String inputMethod,
@@ -112,6 +135,7 @@ public final class TibetanAnalyzer extends Analyzer {
         this.lemmatizePaba = this.lemmatize.contains("paba");
         this.lemmatizeAffixes = this.lemmatize.contains("affix");
         if (stopFilename != null) {
+            final ResourceLoadEvent event = ResourceLoadEvent.start("stopwords", "bo-stopwords.txt");
             if (stopFilename.isEmpty()) {
                 InputStream stream = null;
                 stream = CommonHelpers.getResourceOrFile("bo-stopwords.txt");
@@ -124,9 +148,14 @@ public final class TibetanAnalyzer extends Analyzer {
             } else {
                 this.tibStopSet = StopFilter.makeStopSet(getWordList(new FileInputStream(stopFilename), "#"));
             }
+            event.finish(stopFilename.isEmpty() ? "bo-stopwords.txt" : stopFilename, tibStopSet == null ? -1 : tibStopSet.size());
+            if (tibStopSet != null)
+                ResourceFootprint.register(stopFilename.isEmpty() ? "bo-stopwords.txt" : stopFilename, "stopwords", tibStopSet, tibStopSet.size());
         } else {
             this.tibStopSet = null;
         }
+        if (tibStopSet != null)
+            this.tibStopIds = SyllableStopFilter.syllableIds(tibStopSet);
         if (lexiconFileName != null && lexiconFileName.isEmpty())
             this.lexiconFileName = null;
         else
@@ -168,6 +197,8 @@ public final class TibetanAnalyzer extends Analyzer {
     }
 
     /**
+     * Reads a list of words in UTF-8, whatever the default charset of the JVM.
+     * 
      * @param inputStream
      *            stream to the list of stopwords
      * @param comment
@@ -177,10 +208,25 @@ public final class TibetanAnalyzer extends Analyzer {
      * @return result the {@link ArrayList} to fill with the reader's words
      */
     public static ArrayList<String> getWordList(InputStream inputStream, String comment) throws IOException {
+        return getWordList(inputStream, StandardCharsets.UTF_8, comment);
+    }
+
+    /**
+     * @param inputStream
+     *            stream to the list of stopwords
+     * @param charset
+     *            the charset of the list
+     * @param comment
+     *            The string representing a comment
+     * @throws IOException
+     *             if the file containing stopwords can't be opened
+     * @return result the {@link ArrayList} to fill with the reader's words
+     */
+    public static ArrayList<String> getWordList(InputStream inputStream, Charset charset, String comment) throws IOException {
         ArrayList<String> result = new ArrayList<String>();
         BufferedReader br = null;
         try {
-            br = new BufferedReader(new InputStreamReader(inputStream));
+            br = new BufferedReader(new InputStreamReader(inputStream, charset));
             String word = null;
             while ((word = br.readLine()) != null) {
                 word = word.replace("\t", "");
@@ -203,37 +249,174 @@ public final class TibetanAnalyzer extends Analyzer {
         return result;
     }
 
+    // one of the INPUT_METHOD_* constants
+    public String getInputMethod() {
+        return inputMethod;
+    }
+
+    /**
+     * Identifies the contents of the tries used by the analyzer (the lexicon of
+     * the word tokenizer, the verbs of the lemmatizer) by their size and CRC32.
+     * Unlike {@link #getConfiguration()}, a lexicon file changed in place gives
+     * another identity. Reads the resources, so it should not be called per
+     * document.
+     * 
+     * @return the identity of the resources, as a string
+     * @throws IOException
+     *             when reading the resources
+     */
+    public String getResourceIdentity() throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        if (segmentInWords) {
+            final InputStream lexicon = lexiconFileName != null ? new FileInputStream(lexiconFileName)
+                    : CommonHelpers.getResourceOrFile("bo-compiled-trie.dump");
+            sb.append("lexicon=").append(CommonHelpers.contentIdentity(lexicon));
+        } else if (lemmatizeVerbs) {
+            sb.append("verbs=").append(CommonHelpers.contentIdentity(CommonHelpers.getResourceOrFile("verbs-compiled-trie.dump")));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Describes the options that change the output of the analyzer, two analyzers
+     * with the same configuration give the same tokens. Used as a cache key.
+     * 
+     * @return the configuration, as a string
+     */
+    public String getConfiguration() {
+        final StringBuilder sb = new StringBuilder("TibetanAnalyzer");
+        sb.append(" words=").append(segmentInWords);
+        sb.append(" lemmatize=").append(lemmatize);
+        sb.append(" lenient=").append(lenient);
+        sb.append(" oldtib=").append(convertOldTib);
+        sb.append(" input=").append(inputMethod);
+        sb.append(" lexicon=").append(lexiconFileName);
+        sb.append(" compact=").append(compactTerms);
+        if (tibStopSet != null) {
+            final List<String> stopWords = new ArrayList<>();
+            for (final Object word : tibStopSet)
+                stopWords.add(new String((char[]) word));
+            Collections.sort(stopWords);
+            sb.append(" stopwords=").append(stopWords);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Runs the char filters on another thread than the tokenizer and the token
+     * filters, see {@link PipelinedCharFilter}. Only worth it for large fields,
+     * especially with a transliterated input.
+     * 
+     * @param pipelined
+     *            if the char filters of the next documents should be pipelined
+     */
+    public void setPipelined(final boolean pipelined) {
+        this.pipelined = pipelined;
+    }
+
+    /**
+     * Caches the tokens of the short texts (titles, names, queries) analyzed
+     * over and over, the texts in the cache are not analyzed again. The
+     * replayed tokens don't have the syllable ids and structures, the longer
+     * texts are analyzed as without the cache. Only applies to the token
+     * streams created after, so it should be called before the first use of
+     * the analyzer.
+     * 
+     * @param maxLength
+     *            the maximum length of the cached texts, 0 to disable the cache
+     * @param maxEntries
+     *            the maximum number of cached texts, the least recently used are
+     *            evicted
+     */
+    public void setResultCache(final int maxLength, final int maxEntries) {
+        this.resultCache = maxLength > 0 ? new TokenArrayCache(maxLength, maxEntries) : null;
+    }
+
+    /**
+     * Writes the Tibetan terms in the compact encoding of
+     * {@link TibetanTermEncoding}, one byte per char instead of 3. The same
+     * setting must be used at index and query time. Only applies to the token
+     * streams created after, so it should be called before the first use of the
+     * analyzer. The prefix queries of the query parsers are encoded too, but not
+     * the wildcard queries: a {@code WildcardQuery} can't match the marker byte
+     * of the encoding.
+     * 
+     * @param compactTerms
+     *            if the terms should be encoded with {@link TibetanTermEncoding}
+     */
+    public void setCompactTerms(final boolean compactTerms) {
+        this.compactTerms = compactTerms;
+    }
+
+    // also used by normalize(), for the prefix queries of the query parsers (the
+    // wildcard queries are not supported with the compact terms)
+    @Override
+    protected AttributeFactory attributeFactory(final String fieldName) {
+        return this.compactTerms ? TibetanTermEncoding.FACTORY : super.attributeFactory(fieldName);
+    }
+
+    /**
+     * The attribute factory of the token streams of a field, for the analyzers
+     * replaying the tokens of this one.
+     * 
+     * @param fieldName
+     *            the field name
+     * @return the attribute factory, encoding the terms when
+     *         {@link #setCompactTerms(boolean)} is set
+     */
+    public AttributeFactory getAttributeFactory(final String fieldName) {
+        return attributeFactory(fieldName);
+    }
+
     @Override
     protected Reader initReader(String fieldName, Reader reader) {
+        // with the result cache, the ResultCacheFilter reads the original text and runs the char filters itself
+        if (this.resultCache == null)
+            reader = charFilters(reader);
+        return super.initReader(fieldName, reader);
+    }
+
+    private Reader charFilters(Reader reader) {
         switch (this.inputMethod) {
         case INPUT_METHOD_EWTS:
         case INPUT_METHOD_DTS:
         case INPUT_METHOD_ALALC:
-            reader = new TibEwtsFilter(reader, this.inputMethod, this.lenient);
+            reader = TimedCharFilter.wrap(new TibEwtsFilter(reader, this.inputMethod, this.lenient), "TibEwtsFilter", metrics);
             break;
         case INPUT_METHOD_UNICODE:
-            reader = new ReorderFilter(reader);
+            reader = TimedCharFilter.wrap(new ReorderFilter(reader), "ReorderFilter", metrics);
             break;
         default:
             break;
         }
-        reader = new TibCharFilter(reader, this.lenient, this.convertOldTib);
+        reader = TimedCharFilter.wrap(new TibCharFilter(reader, this.lenient, this.convertOldTib), "TibCharFilter", metrics);
         if (this.convertOldTib)
-            reader = TibPattFilter.plugFilters(reader);
-        return super.initReader(fieldName, reader);
+            reader = TimedCharFilter.wrap(TibPattFilter.plugFilters(reader), "TibPattFilter", metrics);
+        if (this.pipelined)
+            reader = new PipelinedCharFilter(reader);
+        return reader;
     }
 
     @Override
     protected TokenStreamComponents createComponents(final String fieldName) {
+        final TokenStreamComponents chain = createChain(fieldName);
+        final TokenArrayCache cache = this.resultCache;
+        if (cache == null || chain == null)
+            return chain;
+        final ResultCacheFilter filter = new ResultCacheFilter(chain.getTokenStream(), chain.getSource(), this::charFilters, cache);
+        return new TokenStreamComponents(filter::setReader, filter);
+    }
+
+    private TokenStreamComponents createChain(final String fieldName) {
         Tokenizer source = null;
-        TokenFilter filter = null;
+        TokenStream filter = null;
 
         if (segmentInWords) {
             try {
                 if (lexiconFileName != null) {
-                    source = new TibWordTokenizer(lexiconFileName);
+                    source = new TibWordTokenizer(attributeFactory(fieldName), lexiconFileName);
                 } else {
-                    source = new TibWordTokenizer();
+                    source = new TibWordTokenizer(attributeFactory(fieldName));
                 }
                 ((TibWordTokenizer) source).setLemmatize(this.lemmatizeLemma);
             } catch (FileNotFoundException e) {
@@ -244,25 +427,28 @@ public final class TibetanAnalyzer extends Analyzer {
                 return null;
             }
         } else {
-            source = new TibSyllableTokenizer();
+            // the syllable ids save char comparisons in the filters
+            source = new TibSyllableTokenizer(attributeFactory(fieldName), true, false, true);
+        }
+        if (metrics.isEnabled())
+            filter = new TimedTokenFilter(source, source.getClass().getSimpleName(), metrics);
+        if (!segmentInWords) {
             if (this.lemmatizeAffixes)
-                filter = new TibAffixedFilter(source, this.convertOldTib);
+                filter = TimedTokenFilter.wrap(new TibAffixedFilter(filter == null ? source : filter, this.convertOldTib), "TibAffixedFilter", metrics);
             if (this.lemmatizeVerbs)
-                filter = new TibSyllableLemmatizer(filter == null ? source : filter);
+                filter = TimedTokenFilter.wrap(new TibSyllableLemmatizer(filter == null ? source : filter), "TibSyllableLemmatizer", metrics);
             if (this.lemmatizePaba)
-                filter = new PaBaFilter(filter == null ? source : filter);
+                filter = TimedTokenFilter.wrap(new PaBaFilter(filter == null ? source : filter), "PaBaFilter", metrics);
         }
         if (tibStopSet != null) {
             if (filter != null) {
-                filter = new StopFilter(filter, tibStopSet);
+                filter = TimedTokenFilter.wrap(new SyllableStopFilter(filter, tibStopSet, tibStopIds), "StopFilter", metrics);
             } else {
-                filter = new StopFilter(source, tibStopSet);
+                filter = TimedTokenFilter.wrap(new SyllableStopFilter(source, tibStopSet, tibStopIds), "StopFilter", metrics);
             }
         }
-        if (filter != null) {
-            return new TokenStreamComponents(source, filter);
-        } else {
-            return new TokenStreamComponents(source);
-        }
+        // JFR event for the documents that are slow to analyze
+        filter = new DocumentAnalysisFilter(filter == null ? source : filter, "TibetanAnalyzer", fieldName);
+        return new TokenStreamComponents(source, filter);
     }
 }
\ No newline at end of file
@@ -0,0 +1,102 @@
+package io.bdrc.lucene.bo;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.util.AttributeFactory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+
+/**
+ * Compact encoding of the index terms, one byte per char for the terms made
+ * only of chars of the Tibetan block (U+0F00 to U+0FFF) instead of 3 in UTF-8.
+ * <p>
+ * A compact term is a marker byte (0xFE, which never appears in UTF-8)
+ * followed by the low byte of each char. The other terms are in UTF-8, so the
+ * encoding is reversible and a prefix of a compact term is the encoding of
+ * the prefix. The compact terms sort after the UTF-8 ones, in the order of
+ * their chars.
+ * <p>
+ * Enabled with {@link TibetanAnalyzer#setCompactTerms(boolean)}; the terms of
+ * queries built outside of the analyzer must be encoded with
+ * {@link #encode(CharSequence)}, and the terms read from the index decoded
+ * with {@link #decode(BytesRef)}.
+ */
+public final class TibetanTermEncoding {
+
+    public static final byte MARKER = (byte) 0xFE;
+
+    /** Creates the term attributes writing the compact encoding. */
+    public static final AttributeFactory FACTORY = new AttributeFactory.StaticImplementationAttributeFactory<CompactTermAttributeImpl>(
+            TokenStream.DEFAULT_TOKEN_ATTRIBUTE_FACTORY, CompactTermAttributeImpl.class) {
+        @Override
+        protected CompactTermAttributeImpl createInstance() {
+            return new CompactTermAttributeImpl();
+        }
+    };
+
+    private TibetanTermEncoding() {}
+
+    static boolean isTibetan(final char[] buffer, final int offset, final int length) {
+        if (length == 0)
+            return false;
+        for (int i = offset; i < offset + length; i++) {
+            if ((buffer[i] & 0xFF00) != 0x0F00)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Encodes a term.
+     *
+     * @param buffer
+     *            the chars of the term
+     * @param offset
+     *            the start of the term in the buffer
+     * @param length
+     *            the length of the term
+     * @param out
+     *            receives the encoded term
+     */
+    public static void encode(final char[] buffer, final int offset, final int length, final BytesRefBuilder out) {
+        if (!isTibetan(buffer, offset, length)) {
+            out.copyChars(buffer, offset, length);
+            return;
+        }
+        out.grow(length + 1);
+        final byte[] bytes = out.bytes();
+        bytes[0] = MARKER;
+        for (int i = 0; i < length; i++)
+            bytes[i + 1] = (byte) buffer[offset + i];
+        out.setLength(length + 1);
+    }
+
+    /**
+     * Encodes a term, for term and prefix queries built by hand.
+     *
+     * @param term
+     *            the term, as produced by the analyzer
+     * @return the encoded term
+     */
+    public static BytesRef encode(final CharSequence term) {
+        final char[] chars = term.toString().toCharArray();
+        final BytesRefBuilder out = new BytesRefBuilder();
+        encode(chars, 0, chars.length, out);
+        return out.toBytesRef();
+    }
+
+    /**
+     * Decodes a term read from the index.
+     *
+     * @param term
+     *            a term in the compact encoding or in UTF-8
+     * @return the term
+     */
+    public static String decode(final BytesRef term) {
+        if (term.length == 0 || term.bytes[term.offset] != MARKER)
+            return term.utf8ToString();
+        final char[] chars = new char[term.length - 1];
+        for (int i = 0; i < chars.length; i++)
+            chars[i] = (char) (0x0F00 | (term.bytes[term.offset + 1 + i] & 0xFF));
+        return new String(chars);
+    }
+}
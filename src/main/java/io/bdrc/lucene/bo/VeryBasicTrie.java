@@ -1,16 +1,45 @@
 package io.bdrc.lucene.bo;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 public class VeryBasicTrie {
 
     public static final class TrieNode {
-        final Map<Character, TrieNode> children = new HashMap<>();
+        // sorted labels, a HashMap<Character,...> would box each char of the lookups
+        char[] labels = new char[0];
+        TrieNode[] children = new TrieNode[0];
         boolean canMatch = false;
+        // index of the key in the order of the additions, -1 if no key ends here
+        int id = -1;
+
+        TrieNode child(final char c) {
+            final int idx = Arrays.binarySearch(labels, c);
+            return idx < 0 ? null : children[idx];
+        }
+
+        TrieNode addChild(final char c) {
+            int idx = Arrays.binarySearch(labels, c);
+            if (idx >= 0)
+                return children[idx];
+            idx = -idx - 1;
+            final char[] newLabels = new char[labels.length + 1];
+            final TrieNode[] newChildren = new TrieNode[children.length + 1];
+            System.arraycopy(labels, 0, newLabels, 0, idx);
+            System.arraycopy(children, 0, newChildren, 0, idx);
+            System.arraycopy(labels, idx, newLabels, idx + 1, labels.length - idx);
+            System.arraycopy(children, idx, newChildren, idx + 1, children.length - idx);
+            newLabels[idx] = c;
+            newChildren[idx] = new TrieNode();
+            labels = newLabels;
+            children = newChildren;
+            return newChildren[idx];
+        }
     }
 
     private TrieNode root;
+    private final List<String> keysById = new ArrayList<>();
 
     public VeryBasicTrie() {
         this.root = new TrieNode();
@@ -18,11 +47,22 @@ public class VeryBasicTrie {
 
     public void add(final String key) {
         TrieNode node = root;
-        for (char ch : key.toCharArray()) {
-            node.children.putIfAbsent(ch, new TrieNode());
-            node = node.children.get(ch);
+        for (int i = 0; i < key.length(); i++)
+            node = node.addChild(key.charAt(i));
+        if (!node.canMatch) {
+            node.canMatch = true;
+            node.id = keysById.size();
+            keysById.add(key);
         }
-        node.canMatch = true;
+    }
+
+    // number of distinct keys, the ids are between 0 and size() - 1
+    public int size() {
+        return keysById.size();
+    }
+
+    public String key(final int id) {
+        return keysById.get(id);
     }
 
     // Finds the longest matching string in the Trie between start and end and returns the number of characters that matched
@@ -32,16 +72,45 @@ public class VeryBasicTrie {
         if (node.canMatch)
             longestMatchPos = start;
         for (int i = start; i < end; i++) {
-            char ch = b[i];
-            if (!node.children.containsKey(ch)) {
+            node = node.child(b[i]);
+            if (node == null)
                 break;
-            }
-            node = node.children.get(ch);
             if (node.canMatch)
                 longestMatchPos = i+1;
         }
 
         return longestMatchPos;
     }
-    
+
+    // same as findLongestMatchPos() but also gives the id of the key that matched: id << 32 | pos, or -1
+    public long findLongestMatch(final char[] b, final int start, final int end) {
+        TrieNode node = root;
+        long res = node.canMatch ? ((long) node.id << 32) | start : -1;
+        for (int i = start; i < end; i++) {
+            node = node.child(b[i]);
+            if (node == null)
+                break;
+            if (node.canMatch)
+                res = ((long) node.id << 32) | (i + 1);
+        }
+        return res;
+    }
+
+    // all the keys of the Trie, in no particular order
+    public List<String> keys() {
+        final List<String> res = new ArrayList<>();
+        collectKeys(root, new StringBuilder(), res);
+        return res;
+    }
+
+    private static void collectKeys(final TrieNode node, final StringBuilder prefix, final List<String> res) {
+        if (node.canMatch)
+            res.add(prefix.toString());
+        for (int i = 0; i < node.labels.length; i++) {
+            prefix.append(node.labels[i]);
+            collectKeys(node.children[i], prefix, res);
+            prefix.setLength(prefix.length() - 1);
+        }
+    }
+
 }
@@ -0,0 +1,36 @@
+package io.bdrc.lucene.bo;
+
+import java.util.Map;
+
+import org.apache.lucene.analysis.TokenFilterFactory;
+import org.apache.lucene.analysis.TokenStream;
+
+/**
+ * Factory for {@link YiTokenFilter}.
+ *
+ * <pre class="prettyprint">
+ * &lt;filter class="io.bdrc.lucene.bo.YiTokenFilterFactory"/&gt;
+ * </pre>
+ *
+ * @lucene.spi {@value #NAME}
+ */
+public class YiTokenFilterFactory extends TokenFilterFactory {
+
+    public static final String NAME = "tibYi";
+
+    public YiTokenFilterFactory(final Map<String, String> args) {
+        super(args);
+        if (!args.isEmpty())
+            throw new IllegalArgumentException("Unknown parameters: " + args);
+    }
+
+    // for the SPI
+    public YiTokenFilterFactory() {
+        throw defaultCtorException();
+    }
+
+    @Override
+    public TokenStream create(final TokenStream input) {
+        return new YiTokenFilter(input);
+    }
+}
@@ -0,0 +1,337 @@
+package io.bdrc.lucene.bo.bulk;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.lucene.store.ByteBuffersDataInput;
+import org.apache.lucene.store.ByteBuffersDataOutput;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Content-addressed cache of analysis results on disk, so that reindexing
+ * unchanged texts doesn't analyze them again.
+ * <p>
+ * The entries are keyed by a 128 bits hash (truncated SHA-256) of the analyzer
+ * configuration and of the text. They are appended to segment files made of a
+ * header (magic, version) and of records: the key, the length of the payload
+ * and the payload, a {@link TokenArray} in the format of
+ * {@link TokenArray#writeTo}. Full segments are memory-mapped and read without
+ * locking, the segment being written is read through its channel. A record
+ * truncated by a crash is ignored when the cache is opened.
+ * <p>
+ * The keys and locations of the entries are kept in memory (32 bytes per entry
+ * at worst). The directory can only be used by one process at a time.
+ */
+public final class AnalysisCache implements Closeable {
+
+    static final Logger logger = LoggerFactory.getLogger(AnalysisCache.class);
+
+    private static final int MAGIC = 0x424f4143;
+    // to increase when the format or the output of the analyzers change
+    public static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 20;
+    public static final long DEFAULT_SEGMENT_SIZE = 256L << 20;
+    private static final String SUFFIX = ".seg";
+    private static final long POSITION_MASK = (1L << 40) - 1;
+
+    private final Path dir;
+    private final long maxSegmentSize;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    // null for the segment being written
+    private final List<MappedByteBuffer> segments = new CopyOnWriteArrayList<>();
+
+    // open addressing table of the keys (2 longs per slot) and their location:
+    // segment << 40 | position of the record, 0 for an empty slot
+    private long[] keys = new long[2 * 1024];
+    private long[] locations = new long[1024];
+    private int count = 0;
+
+    private int nextSegmentNumber;
+    private FileChannel active = null;
+    private Path activePath = null;
+    private long activeSize = 0;
+
+    /**
+     * Opens or creates a cache with segments of {@link #DEFAULT_SEGMENT_SIZE}.
+     *
+     * @param dir
+     *            the directory of the cache
+     * @throws IOException
+     *             if the directory cannot be read or is used by another process
+     */
+    public AnalysisCache(final Path dir) throws IOException {
+        this(dir, DEFAULT_SEGMENT_SIZE);
+    }
+
+    public AnalysisCache(final Path dir, final long maxSegmentSize) throws IOException {
+        if (maxSegmentSize > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("segments cannot be larger than 2GB");
+        this.dir = Files.createDirectories(dir);
+        this.maxSegmentSize = maxSegmentSize;
+        this.lockChannel = FileChannel.open(dir.resolve("write.lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock l;
+        try {
+            l = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // already opened in this JVM
+            l = null;
+        }
+        this.lock = l;
+        if (lock == null) {
+            lockChannel.close();
+            throw new IOException("the analysis cache " + dir + " is used by another process");
+        }
+        final List<Integer> numbers = new ArrayList<>();
+        try {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+                for (final Path p : stream) {
+                    final String name = p.getFileName().toString();
+                    try {
+                        numbers.add(Integer.parseInt(name.substring(0, name.length() - SUFFIX.length())));
+                    } catch (NumberFormatException e) {
+                        logger.warn("ignoring {} in the analysis cache", p);
+                    }
+                }
+            }
+            Collections.sort(numbers);
+            for (final int number : numbers)
+                openSegment(segmentPath(number));
+        } catch (IOException | RuntimeException e) {
+            // the lock is released with its channel, the cache can be opened again once fixed
+            try {
+                lockChannel.close();
+            } catch (IOException closing) {
+                e.addSuppressed(closing);
+            }
+            throw e;
+        }
+        nextSegmentNumber = numbers.isEmpty() ? 0 : numbers.get(numbers.size() - 1) + 1;
+        logger.info("analysis cache {} opened with {} entries", dir, count);
+    }
+
+    private Path segmentPath(final int number) {
+        return dir.resolve(String.format("%08d%s", number, SUFFIX));
+    }
+
+    // maps a segment and indexes its records
+    private void openSegment(final Path path) throws IOException {
+        final MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            logger.warn("ignoring {}, not a segment of this version", path);
+            return;
+        }
+        final int segment = segments.size();
+        segments.add(buffer);
+        int pos = HEADER_SIZE;
+        while (pos + RECORD_HEADER_SIZE <= buffer.limit()) {
+            final int length = buffer.getInt(pos + 16);
+            if (length < 0 || pos + RECORD_HEADER_SIZE + length > buffer.limit())
+                break;
+            insert(buffer.getLong(pos), buffer.getLong(pos + 8), ((long) segment << 40) | pos);
+            pos += RECORD_HEADER_SIZE + length;
+        }
+        if (pos != buffer.limit())
+            logger.warn("{} is truncated at {}, the last record is ignored", path, pos);
+    }
+
+    private static long[] key(final String configuration, final String text) {
+        final MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every JVM has SHA-256
+            throw new IllegalStateException(e);
+        }
+        md.update(configuration.getBytes(StandardCharsets.UTF_8));
+        md.update((byte) 0);
+        md.update(text.getBytes(StandardCharsets.UTF_8));
+        final ByteBuffer digest = ByteBuffer.wrap(md.digest());
+        return new long[] { digest.getLong(), digest.getLong() };
+    }
+
+    private synchronized long find(final long k1, final long k2) {
+        final int mask = locations.length - 1;
+        for (int slot = (int) k1 & mask;; slot = (slot + 1) & mask) {
+            if (locations[slot] == 0)
+                return 0;
+            if (keys[2 * slot] == k1 && keys[2 * slot + 1] == k2)
+                return locations[slot];
+        }
+    }
+
+    private synchronized void insert(final long k1, final long k2, final long location) {
+        if (2 * (count + 1) > locations.length) {
+            final long[] oldKeys = keys;
+            final long[] oldLocations = locations;
+            keys = new long[2 * oldKeys.length];
+            locations = new long[2 * oldLocations.length];
+            count = 0;
+            for (int i = 0; i < oldLocations.length; i++) {
+                if (oldLocations[i] != 0)
+                    insert(oldKeys[2 * i], oldKeys[2 * i + 1], oldLocations[i]);
+            }
+        }
+        final int mask = locations.length - 1;
+        int slot = (int) k1 & mask;
+        while (locations[slot] != 0) {
+            if (keys[2 * slot] == k1 && keys[2 * slot + 1] == k2)
+                return;
+            slot = (slot + 1) & mask;
+        }
+        keys[2 * slot] = k1;
+        keys[2 * slot + 1] = k2;
+        locations[slot] = location;
+        count++;
+    }
+
+    /**
+     * @param configuration
+     *            the configuration of the analyzer, see
+     *            {@link io.bdrc.lucene.bo.TibetanAnalyzer#getConfiguration()}
+     * @param text
+     *            the analyzed text
+     * @return the cached tokens, or null
+     * @throws IOException
+     *             if the cache cannot be read
+     */
+    public TokenArray get(final String configuration, final String text) throws IOException {
+        final long[] key = key(configuration, text);
+        final long location = find(key[0], key[1]);
+        if (location == 0)
+            return null;
+        final int segment = (int) (location >>> 40);
+        final int pos = (int) (location & POSITION_MASK);
+        final MappedByteBuffer mapped = segments.get(segment);
+        final ByteBuffer payload;
+        if (mapped != null) {
+            final ByteBuffer b = mapped.duplicate();
+            final int length = b.getInt(pos + 16);
+            b.position(pos + RECORD_HEADER_SIZE).limit(pos + RECORD_HEADER_SIZE + length);
+            payload = b.slice();
+        } else {
+            payload = readActive(segment, pos);
+        }
+        return TokenArray.readFrom(new ByteBuffersDataInput(Collections.singletonList(payload)));
+    }
+
+    // reads a record of the segment being written, or of the one that was just mapped
+    private synchronized ByteBuffer readActive(final int segment, final int pos) throws IOException {
+        final MappedByteBuffer mapped = segments.get(segment);
+        if (mapped != null) {
+            final ByteBuffer b = mapped.duplicate();
+            b.position(pos + RECORD_HEADER_SIZE).limit(pos + RECORD_HEADER_SIZE + b.getInt(pos + 16));
+            return b.slice();
+        }
+        final ByteBuffer header = ByteBuffer.allocate(4);
+        readFully(header, pos + 16);
+        final ByteBuffer res = ByteBuffer.allocate(header.getInt(0));
+        readFully(res, pos + RECORD_HEADER_SIZE);
+        res.flip();
+        return res;
+    }
+
+    private void readFully(final ByteBuffer b, final long position) throws IOException {
+        while (b.hasRemaining()) {
+            if (active.read(b, position + b.position()) == -1)
+                throw new IOException("unexpected end of " + activePath);
+        }
+    }
+
+    /**
+     * Adds the tokens of a text, if they are not in the cache yet.
+     *
+     * @param configuration
+     *            the configuration of the analyzer
+     * @param text
+     *            the analyzed text
+     * @param tokens
+     *            its tokens
+     * @throws IOException
+     *             if the cache cannot be written
+     */
+    public void put(final String configuration, final String text, final TokenArray tokens) throws IOException {
+        final long[] key = key(configuration, text);
+        if (find(key[0], key[1]) != 0)
+            return;
+        final ByteBuffersDataOutput out = new ByteBuffersDataOutput();
+        tokens.writeTo(out);
+        final byte[] payload = out.toArrayCopy();
+        final ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length);
+        record.putLong(key[0]).putLong(key[1]).putInt(payload.length).put(payload).flip();
+        synchronized (this) {
+            if (find(key[0], key[1]) != 0)
+                return;
+            if (active != null && activeSize + record.remaining() > maxSegmentSize)
+                sealActive();
+            if (active == null)
+                createActive();
+            final long pos = activeSize;
+            while (record.hasRemaining())
+                activeSize += active.write(record, activeSize);
+            insert(key[0], key[1], ((long) (segments.size() - 1) << 40) | pos);
+        }
+    }
+
+    private void createActive() throws IOException {
+        activePath = segmentPath(nextSegmentNumber++);
+        active = FileChannel.open(activePath, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION);
+        header.flip();
+        activeSize = 0;
+        while (header.hasRemaining())
+            activeSize += active.write(header, activeSize);
+        segments.add(null);
+    }
+
+    // maps the segment being written
+    private void sealActive() throws IOException {
+        active.force(false);
+        final MappedByteBuffer mapped = active.map(FileChannel.MapMode.READ_ONLY, 0, activeSize);
+        segments.set(segments.size() - 1, mapped);
+        active.close();
+        active = null;
+    }
+
+    /** The number of cached texts. */
+    public synchronized int size() {
+        return count;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            if (active != null) {
+                active.force(false);
+                active.close();
+                active = null;
+            }
+        } finally {
+            lock.release();
+            lockChannel.close();
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package io.bdrc.lucene.bo.bulk;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Analyzes many documents concurrently outside of an index, for instance to
+ * prepare a corpus for machine learning.
+ * <p>
+ * A fixed number of workers take the documents from a bounded queue and analyze
+ * them with the shared {@link Analyzer}, so each worker keeps its own reusable
+ * components for its lifetime. The results come back in the input order, and the
+ * input is only read a few documents ahead of the consumer.
+ * <p>
+ * By default the workers run on virtual threads when the JVM supports them
+ * (JDK 21+), and on platform threads otherwise.
+ */
+public final class BulkAnalyzer implements Closeable {
+
+    static final Logger logger = LoggerFactory.getLogger(BulkAnalyzer.class);
+
+    private static final class Task {
+        final String field;
+        final String text;
+        final CompletableFuture<TokenArray> result = new CompletableFuture<>();
+
+        Task(final String field, final String text) {
+            this.field = field;
+            this.text = text;
+        }
+    }
+
+    private static final Task STOP = new Task(null, null);
+
+    private final Analyzer analyzer;
+    private final int parallelism;
+    private final int window;
+    private final ExecutorService executor;
+    private final boolean ownExecutor;
+    private final BlockingQueue<Task> queue;
+    private volatile boolean closed = false;
+
+    /**
+     * Uses one worker per available processor on the default executor.
+     *
+     * @param analyzer
+     *            the analyzer, shared by the workers
+     */
+    public BulkAnalyzer(final Analyzer analyzer) {
+        this(analyzer, Runtime.getRuntime().availableProcessors(), null);
+    }
+
+    /**
+     * @param analyzer
+     *            the analyzer, shared by the workers
+     * @param parallelism
+     *            the number of workers
+     * @param executor
+     *            runs the workers, it must be able to run them all at the same
+     *            time. It is not shut down by {@link #close()}. If null, a
+     *            virtual thread executor is used when available, or a pool of
+     *            daemon threads
+     */
+    public BulkAnalyzer(final Analyzer analyzer, final int parallelism, final ExecutorService executor) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("parallelism must be at least 1: " + parallelism);
+        this.analyzer = analyzer;
+        this.parallelism = parallelism;
+        // enough documents in flight to keep the workers busy while the consumer catches up
+        this.window = 4 * parallelism;
+        this.queue = new ArrayBlockingQueue<>(window + parallelism);
+        this.ownExecutor = executor == null;
+        this.executor = executor != null ? executor : defaultExecutor(parallelism);
+        for (int i = 0; i < parallelism; i++)
+            this.executor.execute(this::work);
+    }
+
+    // virtual threads on JDK 21+, looked up by reflection as we target Java 11
+    static ExecutorService defaultExecutor(final int parallelism) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.debug("virtual threads are not available, using platform threads");
+        }
+        final AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(parallelism, r -> {
+            final Thread t = new Thread(r, "bulk-analyzer-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    private void work() {
+        while (true) {
+            final Task task;
+            try {
+                task = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (task == STOP)
+                return;
+            try (TokenStream ts = analyzer.tokenStream(task.field, task.text)) {
+                task.result.complete(TokenArray.capture(ts));
+            } catch (Throwable e) {
+                task.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Analyzes the documents lazily: the input is read as the results are
+     * consumed, with a bounded number of documents in flight.
+     *
+     * @param field
+     *            the field name passed to the analyzer
+     * @param docs
+     *            the documents, read on the thread consuming the results
+     * @return the analyzed documents, in the input order. An analysis error is
+     *         thrown by next() as an {@link UncheckedIOException} or a
+     *         RuntimeException
+     */
+    public Iterator<TokenArray> analyze(final String field, final Iterator<String> docs) {
+        if (closed)
+            throw new IllegalStateException("closed");
+        return new Iterator<TokenArray>() {
+            private final ArrayDeque<Task> pending = new ArrayDeque<>();
+
+            private void fill() {
+                while (pending.size() < window && docs.hasNext()) {
+                    if (closed)
+                        throw new IllegalStateException("closed");
+                    final Task task = new Task(field, docs.next());
+                    try {
+                        queue.put(task);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("interrupted", e);
+                    }
+                    pending.add(task);
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                fill();
+                return !pending.isEmpty();
+            }
+
+            @Override
+            public TokenArray next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                final Task task = pending.poll();
+                try {
+                    return task.result.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("interrupted", e);
+                } catch (ExecutionException e) {
+                    final Throwable cause = e.getCause();
+                    if (cause instanceof IOException)
+                        throw new UncheckedIOException((IOException) cause);
+                    if (cause instanceof RuntimeException)
+                        throw (RuntimeException) cause;
+                    throw new IllegalStateException(cause);
+                }
+            }
+        };
+    }
+
+    /**
+     * Same as {@link #analyze(String, Iterator)} for a sequential stream. The
+     * returned stream is ordered and should be consumed by one thread.
+     */
+    public Stream<TokenArray> analyze(final String field, final Stream<String> docs) {
+        final Iterator<TokenArray> it = analyze(field, docs.iterator());
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(it, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(docs::close);
+    }
+
+    /**
+     * Stops the workers once the queued documents are analyzed. The analyzer is
+     * not closed.
+     */
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            for (int i = 0; i < parallelism; i++)
+                queue.put(STOP);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (ownExecutor)
+            executor.shutdown();
+    }
+}
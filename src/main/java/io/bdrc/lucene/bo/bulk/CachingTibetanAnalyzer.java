@@ -0,0 +1,120 @@
+package io.bdrc.lucene.bo.bulk;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.util.AttributeFactory;
+
+import io.bdrc.lucene.bo.TibetanAnalyzer;
+import io.bdrc.lucene.bo.metrics.AnalysisMetrics;
+import io.bdrc.lucene.bo.metrics.Metrics;
+
+/**
+ * A {@link TibetanAnalyzer} with its results stored in an {@link AnalysisCache},
+ * the tokens of a text already analyzed with the same configuration are
+ * replayed from the cache.
+ * <p>
+ * The key includes the configuration of the analyzer, the size and CRC32 of its
+ * lexicon, the version of the cache format and the version of this library, so
+ * that the cache of an older version or of another lexicon is not used. The
+ * texts are hashed with their field name as the analyzer can be given different
+ * options per field in the future.
+ */
+public final class CachingTibetanAnalyzer extends Analyzer {
+
+    /**
+     * The version of this library, from the resource filtered by Maven.
+     */
+    public static final String LIBRARY_VERSION = libraryVersion();
+
+    private final TibetanAnalyzer delegate;
+    private final AnalysisCache cache;
+    private final String configuration;
+    private final AnalysisMetrics.Counter hits = Metrics.counter("AnalysisCache.hits");
+    private final AnalysisMetrics.Counter misses = Metrics.counter("AnalysisCache.misses");
+
+    /**
+     * @param delegate
+     *            the analyzer of the texts not in the cache, not closed by this
+     *            analyzer
+     * @param cache
+     *            the cache, not closed by this analyzer
+     * @throws IOException
+     *             when reading the lexicon of the delegate analyzer
+     */
+    public CachingTibetanAnalyzer(final TibetanAnalyzer delegate, final AnalysisCache cache) throws IOException {
+        this(delegate, cache, LIBRARY_VERSION);
+    }
+
+    /**
+     * @param delegate
+     *            the analyzer of the texts not in the cache, not closed by this
+     *            analyzer
+     * @param cache
+     *            the cache, not closed by this analyzer
+     * @param version
+     *            the version in the key instead of {@link #LIBRARY_VERSION}, the
+     *            tokens cached with another version are not used
+     * @throws IOException
+     *             when reading the lexicon of the delegate analyzer
+     */
+    public CachingTibetanAnalyzer(final TibetanAnalyzer delegate, final AnalysisCache cache, final String version) throws IOException {
+        this.delegate = delegate;
+        this.cache = cache;
+        this.configuration = delegate.getConfiguration() + " " + delegate.getResourceIdentity() + " format=" + AnalysisCache.VERSION
+                + " version=" + version;
+    }
+
+    // "unknown" if the resource is missing, when the classes are not built by Maven
+    private static String libraryVersion() {
+        try (InputStream stream = TibetanAnalyzer.class.getResourceAsStream("lucene-bo.properties")) {
+            if (stream == null)
+                return "unknown";
+            final Properties properties = new Properties();
+            properties.load(stream);
+            return properties.getProperty("version", "unknown");
+        } catch (IOException e) {
+            return "unknown";
+        }
+    }
+
+    // the terms are encoded as by the delegate, also for normalize()
+    @Override
+    protected AttributeFactory attributeFactory(final String fieldName) {
+        return delegate.getAttributeFactory(fieldName);
+    }
+
+    @Override
+    protected TokenStreamComponents createComponents(final String fieldName) {
+        return new TokenStreamComponents(new ReplayTokenizer(attributeFactory(fieldName), text -> analyze(fieldName, text)));
+    }
+
+    /**
+     * Gets the tokens of a text from the cache, or analyzes it and adds them.
+     *
+     * @param field
+     *            the field name passed to the delegate analyzer
+     * @param text
+     *            the text
+     * @return the tokens of the text
+     * @throws IOException
+     *             from the cache or the delegate analyzer
+     */
+    public TokenArray analyze(final String field, final String text) throws IOException {
+        final String key = configuration + " field=" + field;
+        TokenArray res = cache.get(key, text);
+        if (res != null) {
+            hits.increment();
+            return res;
+        }
+        misses.increment();
+        try (TokenStream ts = delegate.tokenStream(field, text)) {
+            res = TokenArray.capture(ts);
+        }
+        cache.put(key, text, res);
+        return res;
+    }
+}
@@ -0,0 +1,167 @@
+package io.bdrc.lucene.bo.bulk;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.util.AttributeFactory;
+
+import io.bdrc.lucene.bo.TibetanAnalyzer;
+
+/**
+ * Analyzes large documents in parallel chunks with a {@link TibetanAnalyzer},
+ * for the etexts of several MB stored in a single field.
+ * <p>
+ * The text is split after a shad followed by spaces and before the first letter
+ * of the next syllable (in Unicode or in the transliteration of the analyzer),
+ * no char filter pattern or token crosses such a boundary.
+ * The chunks are analyzed on a {@link ForkJoinPool} and their tokens are merged
+ * with rebased offsets and positions, the result is the same as the analysis of
+ * the whole text. Texts shorter than two chunks are analyzed on the calling
+ * thread.
+ * <p>
+ * The tokens of a document are kept in memory until it is consumed.
+ */
+public final class ChunkedAnalyzer extends Analyzer {
+
+    public static final int DEFAULT_CHUNK_LENGTH = 1 << 16;
+
+    private final TibetanAnalyzer delegate;
+    private final boolean transliterated;
+    private final int chunkLength;
+    private final ForkJoinPool pool;
+
+    /**
+     * Chunks of {@link #DEFAULT_CHUNK_LENGTH} chars on the common pool.
+     *
+     * @param delegate
+     *            the analyzer of the chunks, not closed by this analyzer
+     */
+    public ChunkedAnalyzer(final TibetanAnalyzer delegate) {
+        this(delegate, DEFAULT_CHUNK_LENGTH, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param delegate
+     *            the analyzer of the chunks, not closed by this analyzer
+     * @param chunkLength
+     *            the minimum length of the chunks
+     * @param pool
+     *            the pool running the analysis of the chunks
+     */
+    public ChunkedAnalyzer(final TibetanAnalyzer delegate, final int chunkLength, final ForkJoinPool pool) {
+        if (chunkLength < 1)
+            throw new IllegalArgumentException("chunkLength must be positive: " + chunkLength);
+        this.delegate = delegate;
+        this.transliterated = !delegate.getInputMethod().equals(TibetanAnalyzer.INPUT_METHOD_UNICODE);
+        this.chunkLength = chunkLength;
+        this.pool = pool;
+    }
+
+    // the terms are encoded as by the delegate, also for normalize()
+    @Override
+    protected AttributeFactory attributeFactory(final String fieldName) {
+        return delegate.getAttributeFactory(fieldName);
+    }
+
+    @Override
+    protected TokenStreamComponents createComponents(final String fieldName) {
+        return new TokenStreamComponents(new ReplayTokenizer(attributeFactory(fieldName), text -> analyze(fieldName, text)));
+    }
+
+    /**
+     * Analyzes a text, in parallel when it is long enough.
+     *
+     * @param field
+     *            the field name passed to the delegate analyzer
+     * @param text
+     *            the text
+     * @return the tokens of the text
+     * @throws IOException
+     *             from the delegate analyzer
+     */
+    public TokenArray analyze(final String field, final String text) throws IOException {
+        final int[] starts = chunkStarts(text, chunkLength, transliterated);
+        if (starts.length == 1)
+            return analyzeChunk(field, text);
+        final List<ForkJoinTask<TokenArray>> tasks = new ArrayList<>(starts.length);
+        for (int c = 0; c < starts.length; c++) {
+            final String chunk = text.substring(starts[c], c + 1 < starts.length ? starts[c + 1] : text.length());
+            tasks.add(pool.submit(() -> {
+                try {
+                    return analyzeChunk(field, chunk);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }));
+        }
+        final TokenArray[] chunks = new TokenArray[starts.length];
+        try {
+            for (int c = 0; c < chunks.length; c++)
+                chunks[c] = tasks.get(c).join();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            for (final ForkJoinTask<TokenArray> task : tasks)
+                task.cancel(false);
+        }
+        return TokenArray.concat(chunks, starts);
+    }
+
+    private TokenArray analyzeChunk(final String field, final String chunk) throws IOException {
+        try (TokenStream ts = delegate.tokenStream(field, chunk)) {
+            return TokenArray.capture(ts);
+        }
+    }
+
+    /**
+     * The starts of the chunks of a text, the first one is always 0.
+     *
+     * @param text
+     *            the text
+     * @param chunkLength
+     *            the minimum length of a chunk
+     * @param transliterated
+     *            if the text is in EWTS, DTS or ALA-LC, where the shad is /
+     * @return the start offsets of the chunks
+     */
+    public static int[] chunkStarts(final CharSequence text, final int chunkLength, final boolean transliterated) {
+        final int length = text.length();
+        if (length < 2 * chunkLength)
+            return new int[] {0};
+        final List<Integer> res = new ArrayList<>();
+        res.add(0);
+        int i = chunkLength;
+        // the last chunk is at least chunkLength long
+        while (i < length - chunkLength) {
+            if (isChunkStart(text, i, transliterated)) {
+                res.add(i);
+                i += chunkLength;
+            } else {
+                i++;
+            }
+        }
+        final int[] starts = new int[res.size()];
+        for (int c = 0; c < starts.length; c++)
+            starts[c] = res.get(c);
+        return starts;
+    }
+
+    // a letter preceded by spaces preceded by a shad, the spaces after a shad are _ in EWTS
+    static boolean isChunkStart(final CharSequence text, final int i, final boolean transliterated) {
+        final char c = text.charAt(i);
+        if (transliterated ? !((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) : !(c >= 'ཀ' && c <= 'ཬ'))
+            return false;
+        int j = i - 1;
+        while (j >= 0 && (Character.isWhitespace(text.charAt(j)) || (transliterated && text.charAt(j) == '_')))
+            j--;
+        if (j == i - 1 || j < 0)
+            return false;
+        return text.charAt(j) == (transliterated ? '/' : '།');
+    }
+}
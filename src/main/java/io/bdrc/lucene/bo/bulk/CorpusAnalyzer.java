@@ -0,0 +1,380 @@
+package io.bdrc.lucene.bo.bulk;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.store.ByteBuffersDataOutput;
+import org.apache.lucene.store.OutputStreamDataOutput;
+
+import io.bdrc.lucene.bo.TibetanAnalyzer;
+import io.bdrc.lucene.bo.phonetics.PhoneticSystemEnglish;
+import io.bdrc.lucene.bo.phonetics.PhoneticSystemStandardTibetan;
+import io.bdrc.lucene.bo.phonetics.TibetanPhoneticIndexAnalyzer;
+
+/**
+ * Command line tool analyzing whole corpora (files or directories of UTF-8
+ * Unicode or transliterated Tibetan) for statistics or machine learning, and
+ * measuring the throughput of the analyzers on real data.
+ * <p>
+ * The files are memory-mapped and decoded by chunks as they are analyzed by a
+ * pool of workers sharing one analyzer, the output is written in the order of
+ * the input:
+ * <ul>
+ * <li>tsv: one line per token: file, position, start offset, end offset,
+ * flags, term</li>
+ * <li>bin: a magic int, then per file its path as a Lucene string and its
+ * tokens in the format of {@link TokenArray#writeTo}</li>
+ * </ul>
+ * The throughput is printed on stderr at the end.
+ */
+public final class CorpusAnalyzer {
+
+    public static final int BINARY_MAGIC = 0x424f5441;
+
+    // the chars decoded at once from a mapped file
+    private static final int DECODE_BUFFER_SIZE = 8192;
+
+    public enum Format {
+        TSV, BIN
+    }
+
+    /** The totals of a run. */
+    public static final class Stats {
+        public long files = 0;
+        public long bytes = 0;
+        public long chars = 0;
+        public long tokens = 0;
+        public long nanos = 0;
+
+        @Override
+        public String toString() {
+            final double seconds = nanos / 1e9;
+            return String.format("%d files, %.1f MB, %d chars, %d tokens in %.2fs: %.2f MB/s, %.0f chars/s, %.0f tokens/s",
+                    files, bytes / 1048576.0, chars, tokens, seconds, bytes / 1048576.0 / seconds, chars / seconds, tokens / seconds);
+        }
+    }
+
+    private static final class Result {
+        final long bytes;
+        final long chars;
+        final int tokens;
+        final ByteBuffersDataOutput output;
+
+        Result(final long bytes, final long chars, final int tokens, final ByteBuffersDataOutput output) {
+            this.bytes = bytes;
+            this.chars = chars;
+            this.tokens = tokens;
+            this.output = output;
+        }
+    }
+
+    // decodes a mapped file as it is read, without copying it whole to the heap
+    private static final class MappedFileReader extends Reader {
+        private final Path file;
+        private final ByteBuffer bytes;
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        // the decoded chars not read yet
+        private final CharBuffer decoded = CharBuffer.allocate(DECODE_BUFFER_SIZE).flip();
+        private boolean flushed = false;
+        long chars = 0;
+
+        MappedFileReader(final Path file, final ByteBuffer bytes) {
+            this.file = file;
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int read(final char[] cbuf, final int off, final int len) throws IOException {
+            if (len == 0)
+                return 0;
+            if (!decoded.hasRemaining() && !decode())
+                return -1;
+            final int n = Math.min(len, decoded.remaining());
+            decoded.get(cbuf, off, n);
+            chars += n;
+            return n;
+        }
+
+        // false at the end of the file
+        private boolean decode() throws IOException {
+            decoded.clear();
+            while (decoded.position() == 0 && !flushed) {
+                CoderResult res = decoder.decode(bytes, decoded, true);
+                if (res.isUnderflow()) {
+                    res = decoder.flush(decoded);
+                    flushed = res.isUnderflow();
+                }
+                if (res.isError()) {
+                    try {
+                        res.throwException();
+                    } catch (CharacterCodingException e) {
+                        throw new IOException(file + " is not in UTF-8", e);
+                    }
+                }
+            }
+            decoded.flip();
+            return decoded.hasRemaining();
+        }
+
+        @Override
+        public void close() {}
+    }
+
+    private final Analyzer analyzer;
+    private final Format format;
+    private final int threads;
+
+    /**
+     * @param analyzer
+     *            the analyzer, shared by the workers
+     * @param format
+     *            the output format
+     * @param threads
+     *            the number of workers
+     */
+    public CorpusAnalyzer(final Analyzer analyzer, final Format format, final int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be positive: " + threads);
+        this.analyzer = analyzer;
+        this.format = format;
+        this.threads = threads;
+    }
+
+    /**
+     * The regular files of a list of files and directories, the directories
+     * being walked recursively and sorted so that the output is reproducible.
+     *
+     * @param roots
+     *            files and directories
+     * @return the files
+     * @throws IOException
+     *             if a directory cannot be read
+     */
+    public static List<Path> listFiles(final List<Path> roots) throws IOException {
+        final List<Path> res = new ArrayList<>();
+        for (final Path root : roots) {
+            if (Files.isDirectory(root)) {
+                try (Stream<Path> walk = Files.walk(root)) {
+                    res.addAll(walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList()));
+                }
+            } else {
+                res.add(root);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Analyzes files and writes their tokens.
+     *
+     * @param files
+     *            the files
+     * @param out
+     *            the output, not closed
+     * @return the totals
+     * @throws IOException
+     *             if a file cannot be read or the output cannot be written
+     */
+    public Stats run(final List<Path> files, final OutputStream out) throws IOException {
+        final Stats stats = new Stats();
+        final long start = System.nanoTime();
+        final ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            final Thread t = new Thread(r, "corpus-analyzer");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            final OutputStreamDataOutput dataOut = new OutputStreamDataOutput(out);
+            if (format == Format.BIN)
+                dataOut.writeInt(BINARY_MAGIC);
+            // a few files ahead of the writer so that the workers don't wait
+            final ArrayDeque<Future<Result>> pending = new ArrayDeque<>();
+            int next = 0;
+            while (next < files.size() || !pending.isEmpty()) {
+                while (next < files.size() && pending.size() < 2 * threads) {
+                    final Path file = files.get(next++);
+                    pending.add(executor.submit(() -> analyzeFile(file)));
+                }
+                final Result result = get(pending.poll());
+                result.output.copyTo(dataOut);
+                stats.files++;
+                stats.bytes += result.bytes;
+                stats.chars += result.chars;
+                stats.tokens += result.tokens;
+            }
+            out.flush();
+        } finally {
+            executor.shutdownNow();
+        }
+        stats.nanos = System.nanoTime() - start;
+        return stats;
+    }
+
+    private static Result get(final Future<Result> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            if (e.getCause() instanceof UncheckedIOException)
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private Result analyzeFile(final Path file) throws IOException {
+        final MappedByteBuffer mapped;
+        final long bytes;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            bytes = channel.size();
+            if (bytes > Integer.MAX_VALUE)
+                throw new IOException(file + " is larger than 2GB");
+            // the mapping stays valid after the channel is closed
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, bytes);
+        }
+        final MappedFileReader reader = new MappedFileReader(file, mapped);
+        final TokenArray tokens;
+        try (TokenStream ts = analyzer.tokenStream("", reader)) {
+            tokens = TokenArray.capture(ts);
+        }
+        final long chars = reader.chars;
+        final ByteBuffersDataOutput output = new ByteBuffersDataOutput();
+        if (format == Format.BIN) {
+            output.writeString(file.toString());
+            tokens.writeTo(output);
+        } else {
+            final StringBuilder sb = new StringBuilder();
+            final String name = file.toString();
+            for (int i = 0; i < tokens.size(); i++) {
+                sb.setLength(0);
+                sb.append(name).append('\t').append(tokens.position(i))
+                        .append('\t').append(tokens.startOffset(i))
+                        .append('\t').append(tokens.endOffset(i))
+                        .append('\t').append(tokens.flags(i))
+                        .append('\t').append(tokens.termBuffer(), tokens.termStart(i), tokens.termLength(i))
+                        .append('\n');
+                final byte[] line = sb.toString().getBytes(StandardCharsets.UTF_8);
+                output.writeBytes(line, line.length);
+            }
+        }
+        return new Result(bytes, chars, tokens.size(), output);
+    }
+
+    static Analyzer createAnalyzer(final String name, final String inputMethod, final String lemmatize, final String normalize)
+            throws IOException {
+        switch (name) {
+        case "syllables":
+            return new TibetanAnalyzer(false, lemmatize, normalize, inputMethod, "", null);
+        case "words":
+            return new TibetanAnalyzer(true, lemmatize, normalize, inputMethod, "", null);
+        case "phonetic-en":
+            return new TibetanPhoneticIndexAnalyzer(inputMethod, PhoneticSystemEnglish.INSTANCE);
+        case "phonetic-bo":
+            return new TibetanPhoneticIndexAnalyzer(inputMethod, PhoneticSystemStandardTibetan.INSTANCE);
+        default:
+            throw new IllegalArgumentException("unknown analyzer: " + name);
+        }
+    }
+
+    private static void usage() {
+        System.err.println("usage: CorpusAnalyzer [options] <file or directory>...");
+        System.err.println("  -o <file>      output file, stdout by default");
+        System.err.println("  -f tsv|bin     output format, tsv by default");
+        System.err.println("  -a <analyzer>  syllables (default), words, phonetic-en or phonetic-bo");
+        System.err.println("  -i <input>     unicode (default), ewts, dts or alalc");
+        System.err.println("  -l <lemmatize> lemmatization options of TibetanAnalyzer, affix-paba by default");
+        System.err.println("  -n <normalize> normalization options of TibetanAnalyzer, l by default");
+        System.err.println("  -t <threads>   number of workers, the number of processors by default");
+        System.exit(1);
+    }
+
+    public static void main(final String[] args) throws IOException {
+        String output = null;
+        Format format = Format.TSV;
+        String analyzerName = "syllables";
+        String inputMethod = TibetanAnalyzer.INPUT_METHOD_UNICODE;
+        String lemmatize = "affix-paba";
+        String normalize = "l";
+        int threads = Runtime.getRuntime().availableProcessors();
+        final List<Path> roots = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            final String arg = args[i];
+            if (arg.startsWith("-") && i + 1 == args.length)
+                usage();
+            switch (arg) {
+            case "-o":
+                output = args[++i];
+                break;
+            case "-f":
+                format = Format.valueOf(args[++i].toUpperCase());
+                break;
+            case "-a":
+                analyzerName = args[++i];
+                break;
+            case "-i":
+                inputMethod = args[++i];
+                break;
+            case "-l":
+                lemmatize = args[++i];
+                break;
+            case "-n":
+                normalize = args[++i];
+                break;
+            case "-t":
+                threads = Integer.parseInt(args[++i]);
+                break;
+            default:
+                if (arg.startsWith("-"))
+                    usage();
+                roots.add(Paths.get(arg));
+            }
+        }
+        if (roots.isEmpty())
+            usage();
+        final List<Path> files = listFiles(roots);
+        final Stats stats;
+        try (Analyzer analyzer = createAnalyzer(analyzerName, inputMethod, lemmatize, normalize)) {
+            final CorpusAnalyzer corpusAnalyzer = new CorpusAnalyzer(analyzer, format, threads);
+            if (output == null) {
+                stats = corpusAnalyzer.run(files, new BufferedOutputStream(System.out, 1 << 16));
+            } else {
+                try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(Paths.get(output)), 1 << 16)) {
+                    stats = corpusAnalyzer.run(files, out);
+                }
+            }
+        }
+        System.err.println(stats);
+    }
+}
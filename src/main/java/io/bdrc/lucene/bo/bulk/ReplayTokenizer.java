@@ -0,0 +1,87 @@
+package io.bdrc.lucene.bo.bulk;
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.util.AttributeFactory;
+
+import io.bdrc.lucene.bo.IsStandardTibetanAttribute;
+
+/**
+ * Reads its whole input, gets the tokens of the text from a {@link Source}
+ * (chunked analysis, a cache, etc.) and replays them.
+ */
+public final class ReplayTokenizer extends Tokenizer {
+
+    /** Gives the tokens of a text. */
+    public interface Source {
+        TokenArray tokens(String text) throws IOException;
+    }
+
+    private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+    private final OffsetAttribute offsetAtt = addAttribute(OffsetAttribute.class);
+    private final PositionIncrementAttribute posIncAtt = addAttribute(PositionIncrementAttribute.class);
+    private final IsStandardTibetanAttribute istAtt = addAttribute(IsStandardTibetanAttribute.class);
+
+    private final Source source;
+    private final StringBuilder text = new StringBuilder();
+    private final char[] readBuffer = new char[8192];
+    private TokenArray tokens = null;
+    private int idx = 0;
+
+    public ReplayTokenizer(final Source source) {
+        this(DEFAULT_TOKEN_ATTRIBUTE_FACTORY, source);
+    }
+
+    public ReplayTokenizer(final AttributeFactory factory, final Source source) {
+        super(factory);
+        this.source = source;
+    }
+
+    @Override
+    public void reset() throws IOException {
+        super.reset();
+        text.setLength(0);
+        int len;
+        while ((len = input.read(readBuffer)) != -1)
+            text.append(readBuffer, 0, len);
+        tokens = source.tokens(text.toString());
+        idx = 0;
+    }
+
+    @Override
+    public boolean incrementToken() throws IOException {
+        if (idx >= tokens.size())
+            return false;
+        clearAttributes();
+        termAtt.copyBuffer(tokens.termBuffer(), tokens.termStart(idx), tokens.termLength(idx));
+        // the offsets are relative to the text read, mapped through the char filters of this chain if any
+        offsetAtt.setOffset(correctOffset(tokens.startOffset(idx)), correctOffset(tokens.endOffset(idx)));
+        posIncAtt.setPositionIncrement(tokens.positionIncrement(idx));
+        istAtt.setIsStandardTibetan((tokens.flags(idx) & TokenArray.FLAG_STANDARD_TIBETAN) != 0);
+        idx++;
+        return true;
+    }
+
+    @Override
+    public void end() throws IOException {
+        super.end();
+        final int finalOffset = correctOffset(tokens.finalOffset());
+        offsetAtt.setOffset(finalOffset, finalOffset);
+        posIncAtt.setPositionIncrement(tokens.finalPositionIncrement());
+    }
+
+    @Override
+    public void close() throws IOException {
+        super.close();
+        tokens = null;
+        // don't keep huge documents around
+        if (text.capacity() > 1 << 16) {
+            text.setLength(0);
+            text.trimToSize();
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package io.bdrc.lucene.bo.bulk;
+
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+
+import io.bdrc.lucene.bo.IsStandardTibetanAttribute;
+import io.bdrc.lucene.bo.metrics.AnalysisMetrics;
+import io.bdrc.lucene.bo.metrics.Metrics;
+
+/**
+ * Ends a chain with a {@link TokenArrayCache}: the texts short enough for the
+ * cache are looked up, and their tokens are replayed when found. The other
+ * texts stream through the chain, the short ones are added to the cache.
+ * <p>
+ * The text is given to {@link #setReader(Reader)} instead of the source of the
+ * chain, without char filters, as the texts are cached before them. Only the
+ * first chars are read to tell the short texts apart, the long ones are read
+ * by the chain as they are analyzed.
+ * <p>
+ * The replayed tokens have the attributes kept by {@link TokenArray}, the other
+ * attributes of the chain (syllable ids and structures) keep their default
+ * values. The tokens streamed through the chain have all their attributes.
+ */
+public final class ResultCacheFilter extends TokenFilter {
+
+    private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+    private final OffsetAttribute offsetAtt = addAttribute(OffsetAttribute.class);
+    private final PositionIncrementAttribute posIncAtt = addAttribute(PositionIncrementAttribute.class);
+    private final IsStandardTibetanAttribute istAtt = addAttribute(IsStandardTibetanAttribute.class);
+
+    private final Consumer<Reader> chainSource;
+    private final UnaryOperator<Reader> charFilters;
+    private final TokenArrayCache cache;
+    private final AnalysisMetrics.Counter hits = Metrics.counter("TibetanAnalyzer.resultCacheHits");
+    private final AnalysisMetrics.Counter misses = Metrics.counter("TibetanAnalyzer.resultCacheMisses");
+    // the longest cached text, plus one char to tell the longer ones apart
+    private final char[] prefix;
+
+    private Reader reader = null;
+    // the short text analyzed by the chain, null for a long text or a replay
+    private String text = null;
+    // the tokens replayed, or the tokens of text as they are recorded
+    private TokenArray tokens = null;
+    private boolean replaying = false;
+    private int idx = 0;
+    private int position = -1;
+
+    /**
+     * @param chain
+     *            the end of the chain
+     * @param chainSource
+     *            the source of the chain, given the text after the char filters
+     * @param charFilters
+     *            the char filters of the chain
+     * @param cache
+     *            the cache
+     */
+    public ResultCacheFilter(final TokenStream chain, final Consumer<Reader> chainSource, final UnaryOperator<Reader> charFilters,
+            final TokenArrayCache cache) {
+        super(chain);
+        this.chainSource = chainSource;
+        this.charFilters = charFilters;
+        this.cache = cache;
+        this.prefix = new char[cache.maxLength() + 1];
+    }
+
+    /**
+     * The source of the components ending with this filter.
+     *
+     * @param reader
+     *            the text, before the char filters
+     */
+    public void setReader(final Reader reader) {
+        this.reader = reader;
+    }
+
+    @Override
+    public void reset() throws IOException {
+        final PushbackReader pushback = new PushbackReader(reader, prefix.length);
+        reader = null;
+        int len = 0;
+        int read;
+        while (len < prefix.length && (read = pushback.read(prefix, len, prefix.length - len)) != -1)
+            len += read;
+        text = null;
+        tokens = null;
+        replaying = false;
+        idx = 0;
+        position = -1;
+        if (len == prefix.length) {
+            pushback.unread(prefix, 0, len);
+            chainSource.accept(charFilters.apply(pushback));
+        } else {
+            final String shortText = new String(prefix, 0, len);
+            tokens = cache.get(shortText);
+            if (tokens != null) {
+                hits.increment();
+                replaying = true;
+                pushback.close();
+                return;
+            }
+            misses.increment();
+            text = shortText;
+            tokens = new TokenArray();
+            chainSource.accept(charFilters.apply(new StringReader(shortText)));
+            pushback.close();
+        }
+        super.reset();
+    }
+
+    @Override
+    public boolean incrementToken() throws IOException {
+        if (replaying) {
+            if (idx >= tokens.size())
+                return false;
+            clearAttributes();
+            termAtt.copyBuffer(tokens.termBuffer(), tokens.termStart(idx), tokens.termLength(idx));
+            offsetAtt.setOffset(tokens.startOffset(idx), tokens.endOffset(idx));
+            posIncAtt.setPositionIncrement(tokens.positionIncrement(idx));
+            istAtt.setIsStandardTibetan((tokens.flags(idx) & TokenArray.FLAG_STANDARD_TIBETAN) != 0);
+            idx++;
+            return true;
+        }
+        if (!input.incrementToken())
+            return false;
+        if (text != null) {
+            position += posIncAtt.getPositionIncrement();
+            final byte flag = istAtt.getIsStandardTibetan() ? TokenArray.FLAG_STANDARD_TIBETAN : 0;
+            tokens.add(termAtt.buffer(), 0, termAtt.length(), offsetAtt.startOffset(), offsetAtt.endOffset(), position, flag);
+        }
+        return true;
+    }
+
+    @Override
+    public void end() throws IOException {
+        if (replaying) {
+            endAttributes();
+            offsetAtt.setOffset(tokens.finalOffset(), tokens.finalOffset());
+            posIncAtt.setPositionIncrement(tokens.finalPositionIncrement());
+            return;
+        }
+        super.end();
+        if (text != null) {
+            tokens.setEnd(offsetAtt.endOffset(), posIncAtt.getPositionIncrement());
+            cache.put(text, tokens);
+            text = null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        tokens = null;
+        text = null;
+        if (replaying) {
+            // the chain was not given a reader
+            replaying = false;
+            return;
+        }
+        super.close();
+    }
+}
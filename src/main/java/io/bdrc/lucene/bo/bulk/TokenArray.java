@@ -0,0 +1,281 @@
+package io.bdrc.lucene.bo.bulk;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.store.DataInput;
+import org.apache.lucene.store.DataOutput;
+import org.apache.lucene.util.ArrayUtil;
+
+import io.bdrc.lucene.bo.IsStandardTibetanAttribute;
+
+/**
+ * The tokens of an analyzed document in a few flat arrays: the terms are
+ * concatenated in one char array, and the offsets, positions and flags are
+ * stored in parallel int and byte arrays.
+ */
+public final class TokenArray {
+
+    /** Flag set when the token was a syllable of Standard Tibetan for the tokenizer. */
+    public static final byte FLAG_STANDARD_TIBETAN = 1;
+
+    private int size = 0;
+    private char[] chars = new char[64];
+    private int charsLength = 0;
+    // termEnds[i] is the end of the term i in chars, it starts at termEnds[i-1] (or 0)
+    private int[] termEnds = new int[16];
+    private int[] startOffsets = new int[16];
+    private int[] endOffsets = new int[16];
+    private int[] positions = new int[16];
+    private byte[] flags = new byte[16];
+    private int finalOffset = 0;
+    private int finalPositionIncrement = 0;
+
+    /**
+     * Consumes a token stream, from reset() to end(). The stream is not closed.
+     *
+     * @param ts
+     *            the token stream, not reset yet
+     * @return the tokens
+     * @throws IOException
+     *             from the token stream
+     */
+    public static TokenArray capture(final TokenStream ts) throws IOException {
+        final TokenArray res = new TokenArray();
+        final CharTermAttribute termAtt = ts.addAttribute(CharTermAttribute.class);
+        final OffsetAttribute offsetAtt = ts.addAttribute(OffsetAttribute.class);
+        final PositionIncrementAttribute posIncAtt = ts.addAttribute(PositionIncrementAttribute.class);
+        final IsStandardTibetanAttribute istAtt = ts.hasAttribute(IsStandardTibetanAttribute.class)
+                ? ts.getAttribute(IsStandardTibetanAttribute.class) : null;
+        int position = -1;
+        ts.reset();
+        while (ts.incrementToken()) {
+            position += posIncAtt.getPositionIncrement();
+            final byte flag = istAtt != null && istAtt.getIsStandardTibetan() ? FLAG_STANDARD_TIBETAN : 0;
+            res.add(termAtt.buffer(), 0, termAtt.length(), offsetAtt.startOffset(), offsetAtt.endOffset(), position, flag);
+        }
+        ts.end();
+        res.finalOffset = offsetAtt.endOffset();
+        res.finalPositionIncrement = posIncAtt.getPositionIncrement();
+        return res;
+    }
+
+    // adds a token, positions must not decrease
+    void add(final char[] term, final int termOffset, final int termLength, final int startOffset, final int endOffset,
+            final int position, final byte flag) {
+        if (size == termEnds.length) {
+            final int newSize = ArrayUtil.oversize(size + 1, Integer.BYTES);
+            termEnds = ArrayUtil.growExact(termEnds, newSize);
+            startOffsets = ArrayUtil.growExact(startOffsets, newSize);
+            endOffsets = ArrayUtil.growExact(endOffsets, newSize);
+            positions = ArrayUtil.growExact(positions, newSize);
+            flags = ArrayUtil.growExact(flags, newSize);
+        }
+        chars = ArrayUtil.grow(chars, charsLength + termLength);
+        System.arraycopy(term, termOffset, chars, charsLength, termLength);
+        charsLength += termLength;
+        termEnds[size] = charsLength;
+        startOffsets[size] = startOffset;
+        endOffsets[size] = endOffset;
+        positions[size] = position;
+        flags[size] = flag;
+        size++;
+    }
+
+    // sets the final offset and position increment, from end()
+    void setEnd(final int finalOffset, final int finalPositionIncrement) {
+        this.finalOffset = finalOffset;
+        this.finalPositionIncrement = finalPositionIncrement;
+    }
+
+    /**
+     * Merges the tokens of consecutive chunks of a text as if the whole text had
+     * been analyzed at once: the offsets are shifted by the start of each chunk
+     * and the positions continue from one chunk to the next, including the
+     * positions of the tokens removed at the end of a chunk.
+     *
+     * @param chunks
+     *            the tokens of each chunk, in order
+     * @param chunkStarts
+     *            the offset of each chunk in the text
+     * @return the tokens of the text
+     */
+    public static TokenArray concat(final TokenArray[] chunks, final int[] chunkStarts) {
+        final TokenArray res = new TokenArray();
+        int last = -1;
+        int pending = 0;
+        for (int c = 0; c < chunks.length; c++) {
+            final TokenArray chunk = chunks[c];
+            final int offsetShift = chunkStarts[c];
+            if (chunk.size == 0) {
+                pending += chunk.finalPositionIncrement;
+            } else {
+                final int positionShift = last + pending + 1;
+                for (int i = 0; i < chunk.size; i++) {
+                    res.add(chunk.chars, chunk.termStart(i), chunk.termLength(i), chunk.startOffsets[i] + offsetShift,
+                            chunk.endOffsets[i] + offsetShift, chunk.positions[i] + positionShift, chunk.flags[i]);
+                }
+                last = chunk.positions[chunk.size - 1] + positionShift;
+                pending = chunk.finalPositionIncrement;
+            }
+            res.finalOffset = chunk.finalOffset + offsetShift;
+        }
+        res.finalPositionIncrement = pending;
+        return res;
+    }
+
+    /**
+     * Writes the tokens in a compact form: variable length ints, with the offsets
+     * and positions as deltas from the previous token.
+     *
+     * @param out
+     *            the output
+     * @throws IOException
+     *             from the output
+     */
+    public void writeTo(final DataOutput out) throws IOException {
+        out.writeVInt(size);
+        int prevStart = 0;
+        int prevPosition = -1;
+        for (int i = 0; i < size; i++) {
+            final int start = termStart(i);
+            final int length = termEnds[i] - start;
+            out.writeVInt(length);
+            for (int j = start; j < start + length; j++)
+                out.writeVInt(chars[j]);
+            out.writeZInt(startOffsets[i] - prevStart);
+            out.writeZInt(endOffsets[i] - startOffsets[i]);
+            out.writeVInt(positions[i] - prevPosition);
+            out.writeByte(flags[i]);
+            prevStart = startOffsets[i];
+            prevPosition = positions[i];
+        }
+        out.writeVInt(finalOffset);
+        out.writeVInt(finalPositionIncrement);
+    }
+
+    /**
+     * Reads tokens written by {@link #writeTo(DataOutput)}.
+     *
+     * @param in
+     *            the input
+     * @return the tokens
+     * @throws IOException
+     *             from the input
+     */
+    public static TokenArray readFrom(final DataInput in) throws IOException {
+        final TokenArray res = new TokenArray();
+        final int size = in.readVInt();
+        char[] term = new char[16];
+        int start = 0;
+        int position = -1;
+        for (int i = 0; i < size; i++) {
+            final int length = in.readVInt();
+            term = ArrayUtil.grow(term, length);
+            for (int j = 0; j < length; j++)
+                term[j] = (char) in.readVInt();
+            start += in.readZInt();
+            final int end = start + in.readZInt();
+            position += in.readVInt();
+            res.add(term, 0, length, start, end, position, in.readByte());
+        }
+        res.finalOffset = in.readVInt();
+        res.finalPositionIncrement = in.readVInt();
+        return res;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** The buffer holding all the terms, see {@link #termStart(int)} and {@link #termLength(int)}. */
+    public char[] termBuffer() {
+        return chars;
+    }
+
+    public int termStart(final int i) {
+        return i == 0 ? 0 : termEnds[i - 1];
+    }
+
+    public int termLength(final int i) {
+        return termEnds[i] - termStart(i);
+    }
+
+    public String term(final int i) {
+        final int start = termStart(i);
+        return new String(chars, start, termEnds[i] - start);
+    }
+
+    public int startOffset(final int i) {
+        return startOffsets[i];
+    }
+
+    public int endOffset(final int i) {
+        return endOffsets[i];
+    }
+
+    /** The position of the token, starting at 0. */
+    public int position(final int i) {
+        return positions[i];
+    }
+
+    public int positionIncrement(final int i) {
+        return i == 0 ? positions[0] + 1 : positions[i] - positions[i - 1];
+    }
+
+    public byte flags(final int i) {
+        return flags[i];
+    }
+
+    /** The end offset set by {@link TokenStream#end()}. */
+    public int finalOffset() {
+        return finalOffset;
+    }
+
+    /** The position increment set by {@link TokenStream#end()}, for trailing removed tokens. */
+    public int finalPositionIncrement() {
+        return finalPositionIncrement;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof TokenArray))
+            return false;
+        final TokenArray other = (TokenArray) o;
+        return size == other.size && finalOffset == other.finalOffset
+                && finalPositionIncrement == other.finalPositionIncrement
+                && Arrays.equals(chars, 0, charsLength, other.chars, 0, other.charsLength)
+                && Arrays.equals(termEnds, 0, size, other.termEnds, 0, size)
+                && Arrays.equals(startOffsets, 0, size, other.startOffsets, 0, size)
+                && Arrays.equals(endOffsets, 0, size, other.endOffsets, 0, size)
+                && Arrays.equals(positions, 0, size, other.positions, 0, size)
+                && Arrays.equals(flags, 0, size, other.flags, 0, size);
+    }
+
+    @Override
+    public int hashCode() {
+        int res = size;
+        for (int i = 0; i < charsLength; i++)
+            res = 31 * res + chars[i];
+        for (int i = 0; i < size; i++)
+            res = 31 * (31 * res + startOffsets[i]) + positions[i];
+        return res;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            sb.append(term(i)).append(' ').append(startOffsets[i]).append('-').append(endOffsets[i])
+                    .append(" @").append(positions[i]).append(' ').append(flags[i]).append('\n');
+        }
+        sb.append("end ").append(finalOffset).append(" +").append(finalPositionIncrement);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,117 @@
+package io.bdrc.lucene.bo.bulk;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded in-memory cache of the tokens of short texts (titles, names, queries),
+ * evicting the least recently used entries.
+ * <p>
+ * The entries are spread over stripes, each one being a small LRU map with its
+ * own lock, so that concurrent lookups rarely contend. The recency is per
+ * stripe, which is close enough to a global LRU for large caches. The
+ * capacities of the stripes add up to the maximum number of entries, there are
+ * fewer stripes for the small caches.
+ */
+public final class TokenArrayCache {
+
+    private static final int MAX_STRIPES = 16;
+
+    private static final class Stripe extends LinkedHashMap<String, TokenArray> {
+        private static final long serialVersionUID = 1L;
+        private final int capacity;
+
+        Stripe(final int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, TokenArray> eldest) {
+            return size() > capacity;
+        }
+    }
+
+    private final Stripe[] stripes;
+    private final int maxLength;
+
+    /**
+     * @param maxLength
+     *            the maximum length of the cached texts, in chars
+     * @param maxEntries
+     *            the maximum number of cached texts
+     */
+    public TokenArrayCache(final int maxLength, final int maxEntries) {
+        if (maxEntries < 1)
+            throw new IllegalArgumentException("maxEntries must be positive: " + maxEntries);
+        this.maxLength = maxLength;
+        // a power of two, for the mask of stripe()
+        final int nbStripes = Math.min(MAX_STRIPES, Integer.highestOneBit(maxEntries));
+        this.stripes = new Stripe[nbStripes];
+        for (int i = 0; i < nbStripes; i++)
+            stripes[i] = new Stripe(maxEntries / nbStripes + (i < maxEntries % nbStripes ? 1 : 0));
+    }
+
+    private Stripe stripe(final String text) {
+        final int h = text.hashCode();
+        return stripes[(h ^ (h >>> 16)) & (stripes.length - 1)];
+    }
+
+    /** The maximum length of the cached texts, in chars. */
+    public int maxLength() {
+        return maxLength;
+    }
+
+    /** If the tokens of the text can be cached. */
+    public boolean accepts(final String text) {
+        return text.length() <= maxLength;
+    }
+
+    /**
+     * @param text
+     *            the text
+     * @return its cached tokens, or null
+     */
+    public TokenArray get(final String text) {
+        final Stripe stripe = stripe(text);
+        synchronized (stripe) {
+            return stripe.get(text);
+        }
+    }
+
+    /**
+     * Adds the tokens of a text, ignored if the text is too long.
+     *
+     * @param text
+     *            the text
+     * @param tokens
+     *            its tokens, must not be modified after
+     */
+    public void put(final String text, final TokenArray tokens) {
+        if (!accepts(text))
+            return;
+        final Stripe stripe = stripe(text);
+        synchronized (stripe) {
+            stripe.put(text, tokens);
+        }
+    }
+
+    /** The number of cached texts. */
+    public int size() {
+        int res = 0;
+        for (final Stripe stripe : stripes) {
+            synchronized (stripe) {
+                res += stripe.size();
+            }
+        }
+        return res;
+    }
+
+    public void clear() {
+        for (final Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package io.bdrc.lucene.bo.metrics;
+
+/**
+ * Receives the timings and counters of the analysis components.
+ * <p>
+ * Implementations are found with {@link java.util.ServiceLoader} (a
+ * <code>META-INF/services/io.bdrc.lucene.bo.metrics.AnalysisMetrics</code>
+ * file in the jar of the implementation) or registered with
+ * {@link Metrics#set(AnalysisMetrics)}. Without any, {@link #NOOP} is used and
+ * the analyzers are not instrumented at all.
+ * </p>
+ * <p>
+ * Implementations are called from the analysis threads and must be thread
+ * safe.
+ * </p>
+ */
+public interface AnalysisMetrics {
+
+    /**
+     * A named event counter, obtained once by the components that use it.
+     */
+    interface Counter {
+        void add(long n);
+
+        default void increment() {
+            add(1);
+        }
+    }
+
+    /**
+     * Called once per document and stage, when the stage is closed.
+     * <p>
+     * Lucene analysis is pulled from the end of the chain, so the time of a
+     * stage includes the time of the stages before it; when all the stages of
+     * a chain are timed, the time of a stage alone is the difference with the
+     * previous one.
+     * </p>
+     * 
+     * @param stage
+     *            the name of the stage, usually the class name of the component
+     * @param nanos
+     *            time spent in the stage and the stages before it
+     * @param chars
+     *            number of chars that went out of the stage (for token streams,
+     *            the total length of the terms)
+     * @param tokens
+     *            number of tokens that went out of the stage, 0 for char filters
+     */
+    void recordStage(String stage, long nanos, long chars, long tokens);
+
+    /**
+     * @param name
+     *            the name of the counter, of the form Component.event
+     * @return the counter, possibly shared between threads
+     */
+    Counter counter(String name);
+
+    /**
+     * @return false if the analyzers don't need to time their stages
+     */
+    default boolean isEnabled() {
+        return true;
+    }
+
+    static final Counter NOOP_COUNTER = n -> {};
+
+    static final AnalysisMetrics NOOP = new AnalysisMetrics() {
+        @Override
+        public void recordStage(final String stage, final long nanos, final long chars, final long tokens) {}
+
+        @Override
+        public Counter counter(final String name) {
+            return NOOP_COUNTER;
+        }
+
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+    };
+}
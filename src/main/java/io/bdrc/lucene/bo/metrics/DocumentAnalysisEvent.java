@@ -0,0 +1,36 @@
+package io.bdrc.lucene.bo.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight Recorder event for the analysis of a document, from the reset of
+ * the token stream to its end. Only recorded above the threshold (500 ms by
+ * default, can be changed in the recording settings).
+ */
+@Name("io.bdrc.lucene.bo.DocumentAnalysis")
+@Label("Tibetan Document Analysis")
+@Category({ "Lucene", "Tibetan Analysis" })
+@Description("Analysis of a document that took longer than the threshold")
+@Threshold("500 ms")
+@StackTrace(false)
+public final class DocumentAnalysisEvent extends Event {
+
+    @Label("Analyzer")
+    String analyzer;
+
+    @Label("Field")
+    String field;
+
+    @Label("Chars")
+    @Description("Length of the document")
+    long chars;
+
+    @Label("Tokens")
+    long tokens;
+}
@@ -0,0 +1,66 @@
+package io.bdrc.lucene.bo.metrics;
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+
+public final class DocumentAnalysisFilter extends TokenFilter {
+
+    /*
+     * Last filter of an analysis chain, times each document and records a
+     * DocumentAnalysisEvent when it takes longer than the JFR threshold. When
+     * the event is disabled, only the tokens are counted.
+     */
+
+    private final String analyzer;
+    private final String field;
+    private final OffsetAttribute offsetAtt = addAttribute(OffsetAttribute.class);
+    private DocumentAnalysisEvent event = null;
+    private long tokens = 0;
+
+    public DocumentAnalysisFilter(final TokenStream input, final String analyzer, final String field) {
+        super(input);
+        this.analyzer = analyzer;
+        this.field = field;
+    }
+
+    @Override
+    public boolean incrementToken() throws IOException {
+        if (!input.incrementToken())
+            return false;
+        tokens++;
+        return true;
+    }
+
+    @Override
+    public void reset() throws IOException {
+        final DocumentAnalysisEvent e = new DocumentAnalysisEvent();
+        if (e.isEnabled()) {
+            e.begin();
+            event = e;
+        } else {
+            event = null;
+        }
+        tokens = 0;
+        super.reset();
+    }
+
+    @Override
+    public void end() throws IOException {
+        super.end();
+        if (event == null)
+            return;
+        event.end();
+        if (event.shouldCommit()) {
+            event.analyzer = analyzer;
+            event.field = field;
+            // the final offset is the length of the input
+            event.chars = offsetAtt.endOffset();
+            event.tokens = tokens;
+            event.commit();
+        }
+        event = null;
+    }
+}
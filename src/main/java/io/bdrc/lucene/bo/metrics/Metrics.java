@@ -0,0 +1,49 @@
+package io.bdrc.lucene.bo.metrics;
+
+import java.util.Iterator;
+import java.util.ServiceLoader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public final class Metrics {
+
+    /*
+     * Holds the AnalysisMetrics used by the analysis components. The components read it
+     * when they are created, so an implementation registered with set() only applies to
+     * the analyzers and components created after.
+     */
+
+    static final Logger logger = LoggerFactory.getLogger(Metrics.class);
+
+    private static volatile AnalysisMetrics instance = load();
+
+    private Metrics() {}
+
+    private static AnalysisMetrics load() {
+        try {
+            final Iterator<AnalysisMetrics> it = ServiceLoader.load(AnalysisMetrics.class).iterator();
+            if (it.hasNext()) {
+                final AnalysisMetrics res = it.next();
+                logger.info("using analysis metrics {}", res.getClass().getName());
+                return res;
+            }
+        } catch (Throwable e) {
+            logger.error("cannot load the analysis metrics implementation", e);
+        }
+        return AnalysisMetrics.NOOP;
+    }
+
+    public static AnalysisMetrics get() {
+        return instance;
+    }
+
+    // null goes back to no metrics
+    public static void set(final AnalysisMetrics metrics) {
+        instance = metrics == null ? AnalysisMetrics.NOOP : metrics;
+    }
+
+    public static AnalysisMetrics.Counter counter(final String name) {
+        return instance.counter(name);
+    }
+}
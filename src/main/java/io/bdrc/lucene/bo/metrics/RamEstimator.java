@@ -0,0 +1,112 @@
+package io.bdrc.lucene.bo.metrics;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.RamUsageEstimator;
+
+final class RamEstimator {
+
+    /*
+     * Estimates the bytes retained by an object graph. The fields of JDK classes cannot
+     * be read with reflection, so maps and collections are walked through their API with
+     * the per-entry overhead estimated by Lucene, and the other JDK objects (boxed
+     * values, etc.) only count for their shallow size. Accountable objects (FSTs) report
+     * their own size. Static fields are not followed.
+     */
+
+    private static final Map<Class<?>, Field[]> fieldsCache = new ConcurrentHashMap<>();
+
+    private RamEstimator() {}
+
+    static long estimate(final Object root) {
+        final Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        final ArrayDeque<Object> stack = new ArrayDeque<>();
+        long res = 0;
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            final Object o = stack.pop();
+            if (!seen.add(o))
+                continue;
+            final Class<?> c = o.getClass();
+            if (o instanceof String) {
+                res += RamUsageEstimator.sizeOf((String) o);
+            } else if (o instanceof Accountable) {
+                res += ((Accountable) o).ramBytesUsed();
+            } else if (c.isArray()) {
+                res += RamUsageEstimator.shallowSizeOf(o);
+                if (!c.getComponentType().isPrimitive()) {
+                    final int len = Array.getLength(o);
+                    for (int i = 0; i < len; i++)
+                        pushIfNotNull(stack, Array.get(o, i));
+                }
+            } else if (o instanceof Map && isJdk(c)) {
+                final Map<?, ?> m = (Map<?, ?>) o;
+                res += RamUsageEstimator.shallowSizeOfInstance(c) + m.size() * RamUsageEstimator.HASHTABLE_RAM_BYTES_PER_ENTRY;
+                for (final Map.Entry<?, ?> e : m.entrySet()) {
+                    pushIfNotNull(stack, e.getKey());
+                    pushIfNotNull(stack, e.getValue());
+                }
+            } else if (o instanceof Collection && isJdk(c)) {
+                final Collection<?> coll = (Collection<?>) o;
+                res += RamUsageEstimator.shallowSizeOfInstance(c) + RamUsageEstimator.alignObjectSize(
+                        RamUsageEstimator.NUM_BYTES_ARRAY_HEADER + (long) coll.size() * RamUsageEstimator.NUM_BYTES_OBJECT_REF);
+                for (final Object e : coll)
+                    pushIfNotNull(stack, e);
+            } else if (isJdk(c)) {
+                res += RamUsageEstimator.shallowSizeOfInstance(c);
+            } else {
+                res += RamUsageEstimator.shallowSizeOfInstance(c);
+                for (final Field f : fields(c)) {
+                    try {
+                        pushIfNotNull(stack, f.get(o));
+                    } catch (IllegalAccessException e) {
+                        // not readable, counted as a reference only
+                    }
+                }
+            }
+        }
+        return res;
+    }
+
+    private static void pushIfNotNull(final ArrayDeque<Object> stack, final Object o) {
+        if (o != null && !(o instanceof Class) && !(o instanceof Enum))
+            stack.push(o);
+    }
+
+    private static boolean isJdk(final Class<?> c) {
+        final String name = c.getName();
+        return name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("jdk.") || name.startsWith("sun.");
+    }
+
+    // the non-static reference fields of the class and its superclasses
+    private static Field[] fields(final Class<?> c) {
+        return fieldsCache.computeIfAbsent(c, k -> {
+            final List<Field> res = new ArrayList<>();
+            for (Class<?> cur = k; cur != null && cur != Object.class; cur = cur.getSuperclass()) {
+                for (final Field f : cur.getDeclaredFields()) {
+                    if (Modifier.isStatic(f.getModifiers()) || f.getType().isPrimitive())
+                        continue;
+                    try {
+                        f.setAccessible(true);
+                        res.add(f);
+                    } catch (RuntimeException e) {
+                        // inaccessible module, skipped
+                    }
+                }
+            }
+            return res.toArray(new Field[0]);
+        });
+    }
+}
@@ -0,0 +1,99 @@
+package io.bdrc.lucene.bo.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public final class ResourceFootprint implements ResourceFootprintMXBean {
+
+    /*
+     * Registry of the loaded resources (Tries, char maps, phonetic tables, stop sets)
+     * with their estimated size, for capacity planning. The resources register
+     * themselves when they are loaded and are only weakly referenced, so the ones that
+     * belong to a closed analyzer disappear after garbage collection.
+     *
+     * The sizes are estimated on the first request and kept, as the resources don't
+     * change after loading. The registry is exposed as an MXBean.
+     */
+
+    static final Logger logger = LoggerFactory.getLogger(ResourceFootprint.class);
+
+    public static final String OBJECT_NAME = "io.bdrc.lucene.bo:type=ResourceFootprint";
+
+    private static final class Entry {
+        final String name;
+        final String kind;
+        final long entries;
+        final WeakReference<Object> ref;
+        volatile long retainedBytes = -1;
+
+        Entry(final String name, final String kind, final Object resource, final long entries) {
+            this.name = name;
+            this.kind = kind;
+            this.entries = entries;
+            this.ref = new WeakReference<>(resource);
+        }
+    }
+
+    private static final List<Entry> registry = new CopyOnWriteArrayList<>();
+    private static final ResourceFootprint INSTANCE = new ResourceFootprint();
+
+    static {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name))
+                server.registerMBean(INSTANCE, name);
+        } catch (Exception | LinkageError e) {
+            logger.warn("cannot register the resource footprint MBean", e);
+        }
+    }
+
+    private ResourceFootprint() {}
+
+    public static void register(final String name, final String kind, final Object resource, final long entries) {
+        if (resource == null)
+            return;
+        registry.removeIf(e -> e.ref.get() == null);
+        registry.add(new Entry(name, kind, resource, entries));
+    }
+
+    public static List<ResourceInfo> resources() {
+        final List<ResourceInfo> res = new ArrayList<>();
+        for (final Entry e : registry) {
+            final Object resource = e.ref.get();
+            if (resource == null)
+                continue;
+            if (e.retainedBytes < 0)
+                e.retainedBytes = RamEstimator.estimate(resource);
+            res.add(new ResourceInfo(e.name, e.kind, e.entries, e.retainedBytes));
+        }
+        return res;
+    }
+
+    @Override
+    public List<ResourceInfo> getResources() {
+        return resources();
+    }
+
+    @Override
+    public long getTotalRetainedBytes() {
+        long res = 0;
+        for (final ResourceInfo info : resources())
+            res += info.getRetainedBytes();
+        return res;
+    }
+
+    @Override
+    public int getResourceCount() {
+        return resources().size();
+    }
+}
@@ -0,0 +1,16 @@
+package io.bdrc.lucene.bo.metrics;
+
+import java.util.List;
+
+/**
+ * JMX view of the linguistic resources currently loaded, registered as
+ * <code>io.bdrc.lucene.bo:type=ResourceFootprint</code>.
+ */
+public interface ResourceFootprintMXBean {
+
+    List<ResourceInfo> getResources();
+
+    long getTotalRetainedBytes();
+
+    int getResourceCount();
+}
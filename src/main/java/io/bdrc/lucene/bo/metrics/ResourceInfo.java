@@ -0,0 +1,43 @@
+package io.bdrc.lucene.bo.metrics;
+
+/**
+ * Footprint of a loaded resource, as reported by {@link ResourceFootprint}.
+ */
+public final class ResourceInfo {
+
+    private final String name;
+    private final String kind;
+    private final long entries;
+    private final long retainedBytes;
+
+    public ResourceInfo(final String name, final String kind, final long entries, final long retainedBytes) {
+        this.name = name;
+        this.kind = kind;
+        this.entries = entries;
+        this.retainedBytes = retainedBytes;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // trie, charmap, phonetic or stopwords
+    public String getKind() {
+        return kind;
+    }
+
+    // Trie cells, mappings, phonetic entries or words
+    public long getEntries() {
+        return entries;
+    }
+
+    // estimated, shared sub-objects are counted in each resource
+    public long getRetainedBytes() {
+        return retainedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + kind + "): " + entries + " entries, ~" + retainedBytes + " bytes";
+    }
+}
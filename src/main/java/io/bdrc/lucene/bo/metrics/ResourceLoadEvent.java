@@ -0,0 +1,61 @@
+package io.bdrc.lucene.bo.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for the loading of a linguistic resource (compiled
+ * Trie, char map, phonetic tables, stop words).
+ * <p>
+ * Usage:
+ * </p>
+ * 
+ * <pre>
+ * final ResourceLoadEvent event = ResourceLoadEvent.start("trie", "bo-compiled-trie.dump");
+ * ...
+ * event.finish(source, size);
+ * </pre>
+ */
+@Name("io.bdrc.lucene.bo.ResourceLoad")
+@Label("Tibetan Resource Load")
+@Category({ "Lucene", "Tibetan Analysis" })
+@Description("Loading or building of a resource used by the Tibetan analyzers")
+@StackTrace(false)
+public final class ResourceLoadEvent extends Event {
+
+    @Label("Kind")
+    @Description("trie, charmap, phonetic or stopwords")
+    String kind;
+
+    @Label("Resource")
+    String resource;
+
+    @Label("Source")
+    @Description("Where the resource was read from, or what it was built from")
+    String source;
+
+    @Label("Size")
+    @Description("Number of entries (Trie cells, mappings, phonetic entries, words), -1 if unknown")
+    long size;
+
+    public static ResourceLoadEvent start(final String kind, final String resource) {
+        final ResourceLoadEvent event = new ResourceLoadEvent();
+        event.kind = kind;
+        event.resource = resource;
+        event.begin();
+        return event;
+    }
+
+    public void finish(final String source, final long size) {
+        end();
+        if (shouldCommit()) {
+            this.source = source;
+            this.size = size;
+            commit();
+        }
+    }
+}
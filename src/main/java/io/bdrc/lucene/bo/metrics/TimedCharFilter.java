@@ -0,0 +1,69 @@
+package io.bdrc.lucene.bo.metrics;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import org.apache.lucene.analysis.CharFilter;
+
+import io.bdrc.lucene.bo.OffsetCorrectionReporter;
+
+public final class TimedCharFilter extends CharFilter implements OffsetCorrectionReporter {
+
+    /*
+     * Transparent CharFilter recording the time spent reading from the wrapped Reader
+     * and the number of chars it produced. Offsets are corrected by the wrapped filters.
+     */
+
+    private final String stage;
+    private final AnalysisMetrics metrics;
+    private long nanos = 0;
+    private long chars = 0;
+
+    public TimedCharFilter(final Reader in, final String stage, final AnalysisMetrics metrics) {
+        super(in);
+        this.stage = stage;
+        this.metrics = metrics;
+    }
+
+    // returns the reader itself when the metrics are disabled
+    public static Reader wrap(final Reader in, final String stage, final AnalysisMetrics metrics) {
+        return metrics.isEnabled() ? new TimedCharFilter(in, stage, metrics) : in;
+    }
+
+    @Override
+    public int read(final char[] cbuf, final int off, final int len) throws IOException {
+        final long start = System.nanoTime();
+        final int res = input.read(cbuf, off, len);
+        nanos += System.nanoTime() - start;
+        if (res > 0)
+            chars += res;
+        return res;
+    }
+
+    @Override
+    protected int correct(final int currentOff) {
+        return currentOff;
+    }
+
+    @Override
+    public Reader getInput() {
+        return input;
+    }
+
+    // no corrections to report
+    @Override
+    public void setCorrectionListener(final OffsetCorrectionReporter.Listener listener) {
+    }
+
+    @Override
+    public void close() throws IOException {
+        // the stages before are closed (and recorded) first
+        try {
+            super.close();
+        } finally {
+            metrics.recordStage(stage, nanos, chars, 0);
+            nanos = 0;
+            chars = 0;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package io.bdrc.lucene.bo.metrics;
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+
+public final class TimedTokenFilter extends TokenFilter {
+
+    /*
+     * Transparent TokenFilter recording the time spent in the wrapped stream and the
+     * number of tokens and term chars it produced, for each document.
+     */
+
+    private final String stage;
+    private final AnalysisMetrics metrics;
+    private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+    private long nanos = 0;
+    private long chars = 0;
+    private long tokens = 0;
+
+    public TimedTokenFilter(final TokenStream input, final String stage, final AnalysisMetrics metrics) {
+        super(input);
+        this.stage = stage;
+        this.metrics = metrics;
+    }
+
+    // returns the stream itself when the metrics are disabled
+    public static TokenStream wrap(final TokenStream input, final String stage, final AnalysisMetrics metrics) {
+        return metrics.isEnabled() ? new TimedTokenFilter(input, stage, metrics) : input;
+    }
+
+    @Override
+    public boolean incrementToken() throws IOException {
+        final long start = System.nanoTime();
+        final boolean res = input.incrementToken();
+        nanos += System.nanoTime() - start;
+        if (res) {
+            tokens++;
+            chars += termAtt.length();
+        }
+        return res;
+    }
+
+    @Override
+    public void reset() throws IOException {
+        final long start = System.nanoTime();
+        super.reset();
+        nanos = System.nanoTime() - start;
+        chars = 0;
+        tokens = 0;
+    }
+
+    @Override
+    public void end() throws IOException {
+        final long start = System.nanoTime();
+        super.end();
+        nanos += System.nanoTime() - start;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // the stages before are closed (and recorded) first
+        try {
+            super.close();
+        } finally {
+            metrics.recordStage(stage, nanos, chars, tokens);
+            nanos = 0;
+            chars = 0;
+            tokens = 0;
+        }
+    }
+}
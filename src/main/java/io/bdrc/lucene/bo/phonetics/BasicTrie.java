@@ -1,14 +1,51 @@
 package io.bdrc.lucene.bo.phonetics;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 public class BasicTrie {
     
     public static final class TrieNode {
-        final Map<Character, TrieNode> children = new HashMap<>();
+        // sorted labels, a HashMap<Character,...> would box each char of the lookups
+        char[] labels = new char[0];
+        TrieNode[] children = new TrieNode[0];
         char[] phonetic = null; // Stores the phonetic representation of the syllable part
         boolean canbefinal = false;
+        int depth = 0;
+
+        TrieNode child(final char c) {
+            final int idx = Arrays.binarySearch(labels, c);
+            return idx < 0 ? null : children[idx];
+        }
+
+        TrieNode addChild(final char c) {
+            int idx = Arrays.binarySearch(labels, c);
+            if (idx >= 0)
+                return children[idx];
+            idx = -idx - 1;
+            final char[] newLabels = new char[labels.length + 1];
+            final TrieNode[] newChildren = new TrieNode[children.length + 1];
+            System.arraycopy(labels, 0, newLabels, 0, idx);
+            System.arraycopy(children, 0, newChildren, 0, idx);
+            System.arraycopy(labels, idx, newLabels, idx + 1, labels.length - idx);
+            System.arraycopy(children, idx, newChildren, idx + 1, children.length - idx);
+            newLabels[idx] = c;
+            newChildren[idx] = new TrieNode();
+            newChildren[idx].depth = depth + 1;
+            labels = newLabels;
+            children = newChildren;
+            return newChildren[idx];
+        }
+
+        public char[] getPhonetic() {
+            return phonetic;
+        }
+
+        // number of chars of the key ending on this node
+        public int getDepth() {
+            return depth;
+        }
     }
     
     public static final class TrieMatch {
@@ -25,10 +62,8 @@ public class BasicTrie {
     // Adds a string (onset or vowel + coda) to the Trie with its phonetic representation
     public void add(final String key, final String phonetic, final boolean canbefinal) {
         TrieNode node = root;
-        for (char ch : key.toCharArray()) {
-            node.children.putIfAbsent(ch, new TrieNode());
-            node = node.children.get(ch);
-        }
+        for (int i = 0; i < key.length(); i++)
+            node = node.addChild(key.charAt(i));
         node.phonetic = phonetic.toCharArray(); // Store the phonetic representation at the leaf
         node.canbefinal = canbefinal;
     }
@@ -40,19 +75,43 @@ public class BasicTrie {
 
     // Finds the longest matching string in the Trie and returns its phonetic representation
     public TrieMatch findLongestMatch(final char[] b, final int len) {
+        final TrieMatch longestMatch = new TrieMatch();
+        final TrieNode node = findLongestMatchNode(b, len);
+        if (node != null) {
+            longestMatch.phonetic = node.phonetic;
+            longestMatch.nbchar = node.depth;
+        }
+        return longestMatch;
+    }
+
+    // same as findLongestMatch without allocation, returns null when nothing matches
+    public TrieNode findLongestMatchNode(final char[] b, final int len) {
         TrieNode node = root;
-        TrieMatch longestMatch = new TrieMatch();
+        TrieNode longestMatch = null;
         for (int i = 0; i < len; i++) {
-            char ch = b[i];
-            if (!node.children.containsKey(ch)) {
+            node = node.child(b[i]);
+            if (node == null)
                 break;
-            }
-            node = node.children.get(ch);
-            if (node.phonetic != null && (node.canbefinal || i < len -1)) {
-                longestMatch.phonetic = node.phonetic; // Update longest match found
-                longestMatch.nbchar = i+1;
-            }
+            if (node.phonetic != null && (node.canbefinal || i < len -1))
+                longestMatch = node; // Update longest match found
         }
         return longestMatch;
     }
-}
\ No newline at end of file
+
+    // all the keys of the Trie, for tools that need to enumerate syllables
+    public List<String> keys() {
+        final List<String> res = new ArrayList<>();
+        collectKeys(root, new StringBuilder(), res);
+        return res;
+    }
+
+    private static void collectKeys(final TrieNode node, final StringBuilder prefix, final List<String> res) {
+        if (node.phonetic != null)
+            res.add(prefix.toString());
+        for (int i = 0; i < node.labels.length; i++) {
+            prefix.append(node.labels[i]);
+            collectKeys(node.children[i], prefix, res);
+            prefix.setLength(prefix.length() - 1);
+        }
+    }
+}
@@ -0,0 +1,374 @@
+package io.bdrc.lucene.bo.phonetics;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+import org.apache.lucene.analysis.charfilter.BaseCharFilter;
+import org.apache.lucene.util.ArrayUtil;
+
+import io.bdrc.lucene.bo.metrics.ResourceFootprint;
+import io.bdrc.lucene.bo.metrics.ResourceLoadEvent;
+
+public final class EnglishPhoneticCharFilter extends BaseCharFilter {
+
+    /*
+     * Single pass equivalent of
+     *
+     *   LowerCaseCharFilter -> EnglishPhoneticCharMapFilter -> EnglishPhoneticRegexFilter.plugFilters()
+     *
+     * for the phonetic queries in Latin script. Lower casing is a char table, the char map is
+     * compiled into a trie (longest match, like MappingCharFilter) and the end of word
+     * rewrites of EnglishPhoneticRegexFilter are applied in place on the mapped text.
+     *
+     * The rewrites feed into each other ("Ys" -> "Y" -> "ni"), so they are run in the same order
+     * as the regex filters, on chunks of mapped text. The regular expressions never match
+     * across a character that is not an ASCII letter, and never remove such a character,
+     * so a chunk can end after any of them and give the same result as processing
+     * the whole input at once.
+     */
+
+    private static final class Node {
+        char[] labels = new char[0];
+        Node[] children = new Node[0];
+        char[] output = null;
+
+        Node child(final char c) {
+            final int idx = Arrays.binarySearch(labels, c);
+            return idx < 0 ? null : children[idx];
+        }
+
+        Node addChild(final char c) {
+            int idx = Arrays.binarySearch(labels, c);
+            if (idx >= 0)
+                return children[idx];
+            idx = -idx - 1;
+            final char[] newLabels = new char[labels.length + 1];
+            final Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(labels, 0, newLabels, 0, idx);
+            System.arraycopy(children, 0, newChildren, 0, idx);
+            System.arraycopy(labels, idx, newLabels, idx + 1, labels.length - idx);
+            System.arraycopy(children, idx, newChildren, idx + 1, children.length - idx);
+            newLabels[idx] = c;
+            newChildren[idx] = new Node();
+            labels = newLabels;
+            children = newChildren;
+            return newChildren[idx];
+        }
+    }
+
+    private static final class Tables {
+        static final char[] lower;
+        static final Node root = new Node();
+        static int maxKeyLen = 1;
+        static int size = 0;
+
+        static {
+            final ResourceLoadEvent event = ResourceLoadEvent.start("charmap", "EnglishPhoneticCharFilter");
+            final char[] tmp = new char[0x10000];
+            LowerCaseCharFilter.addMappings((from, to) -> tmp[from.charAt(0)] = to.charAt(0));
+            int max = 0;
+            for (int i = 0; i < tmp.length; i++)
+                if (tmp[i] != 0)
+                    max = i;
+            lower = Arrays.copyOf(tmp, max + 1);
+            EnglishPhoneticCharMapFilter.addMappings((from, to) -> {
+                Node node = root;
+                for (int i = 0; i < from.length(); i++)
+                    node = node.addChild(from.charAt(i));
+                node.output = to.toCharArray();
+                if (from.length() > maxKeyLen)
+                    maxKeyLen = from.length();
+                size++;
+            });
+            event.finish("LowerCaseCharFilter and EnglishPhoneticCharMapFilter mappings", lower.length + size);
+            ResourceFootprint.register("EnglishPhoneticCharFilter.lower", "charmap", lower, lower.length);
+            ResourceFootprint.register("EnglishPhoneticCharFilter", "charmap", root, size);
+        }
+    }
+
+    // lower cased input, rawBuf[0] is at rawOffset in the input
+    private char[] rawBuf = new char[1024];
+    private int rawPos = 0;
+    private int rawLen = 0;
+    private int rawOffset = 0;
+    private boolean eof = false;
+
+    // mapped text not yet processed by the rewrites, with the input offset of each char
+    private char[] chunk = new char[1024];
+    private int[] chunkSrc = new int[1024];
+    private int chunkLen = 0;
+
+    // work buffers for the rewrites
+    private char[] w0 = new char[1024];
+    private int[] s0 = new int[1024];
+    private char[] w1 = new char[1024];
+    private int[] s1 = new int[1024];
+
+    // output ready to be read
+    private char[] out = w0;
+    private int outPos = 0;
+    private int outLen = 0;
+    private int outOffset = 0; // output offset of out[0]
+    private int lastDiff = 0;
+    private boolean finished = false;
+
+    public EnglishPhoneticCharFilter(final Reader in) {
+        super(in);
+    }
+
+    @Override
+    public int read(final char[] cbuf, final int off, final int len) throws IOException {
+        if (len == 0)
+            return 0;
+        while (outPos >= outLen) {
+            if (!produce())
+                return -1;
+        }
+        final int n = Math.min(len, outLen - outPos);
+        System.arraycopy(out, outPos, cbuf, off, n);
+        outPos += n;
+        return n;
+    }
+
+    @Override
+    public int read() throws IOException {
+        while (outPos >= outLen) {
+            if (!produce())
+                return -1;
+        }
+        return out[outPos++];
+    }
+
+    private static boolean isAsciiLetter(final char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    // produces the next block of output, returns false at the end of the input
+    private boolean produce() throws IOException {
+        if (finished)
+            return false;
+        while (true) {
+            int cut = chunkLen;
+            while (cut > 0 && isAsciiLetter(chunk[cut - 1]))
+                cut--;
+            if (cut > 0) {
+                rewrite(cut);
+                return true;
+            }
+            if (eof && rawPos == rawLen) {
+                if (chunkLen > 0) {
+                    rewrite(chunkLen);
+                    return true;
+                }
+                // map the end of the input to the end of the output
+                final int endDiff = rawOffset + rawLen - outOffset - outLen;
+                if (endDiff != lastDiff)
+                    addOffCorrectMap(outOffset + outLen, endDiff);
+                finished = true;
+                return false;
+            }
+            fillRaw();
+            mapRaw();
+        }
+    }
+
+    // reads enough input to have a full key of lookahead
+    private void fillRaw() throws IOException {
+        if (eof || rawLen - rawPos >= Tables.maxKeyLen)
+            return;
+        if (rawPos > 0) {
+            System.arraycopy(rawBuf, rawPos, rawBuf, 0, rawLen - rawPos);
+            rawOffset += rawPos;
+            rawLen -= rawPos;
+            rawPos = 0;
+        }
+        while (!eof && rawLen < rawBuf.length) {
+            final int n = input.read(rawBuf, rawLen, rawBuf.length - rawLen);
+            if (n < 0) {
+                eof = true;
+                break;
+            }
+            final char[] lower = Tables.lower;
+            for (int i = rawLen; i < rawLen + n; i++) {
+                final char c = rawBuf[i];
+                if (c < lower.length && lower[c] != 0)
+                    rawBuf[i] = lower[c];
+            }
+            rawLen += n;
+            if (rawLen - rawPos >= Tables.maxKeyLen)
+                break;
+        }
+    }
+
+    private void appendChunk(final char c, final int src) {
+        if (chunkLen == chunk.length) {
+            chunk = ArrayUtil.grow(chunk, chunkLen + 1);
+            chunkSrc = ArrayUtil.grow(chunkSrc, chunk.length);
+        }
+        chunk[chunkLen] = c;
+        chunkSrc[chunkLen] = src;
+        chunkLen++;
+    }
+
+    // maps the raw input while there is enough lookahead for a longest match
+    private void mapRaw() {
+        while (rawPos < rawLen && (eof || rawLen - rawPos >= Tables.maxKeyLen)) {
+            Node node = Tables.root;
+            char[] match = null;
+            int matchLen = 0;
+            for (int i = rawPos; i < rawLen; i++) {
+                node = node.child(rawBuf[i]);
+                if (node == null)
+                    break;
+                if (node.output != null) {
+                    match = node.output;
+                    matchLen = i - rawPos + 1;
+                }
+            }
+            final int src = rawOffset + rawPos;
+            if (match == null) {
+                appendChunk(rawBuf[rawPos], src);
+                rawPos++;
+            } else {
+                for (int j = 0; j < match.length; j++)
+                    appendChunk(match[j], src + Math.min(j, matchLen - 1));
+                rawPos += matchLen;
+            }
+        }
+    }
+
+    // w0 holds the current text, w1 is only written to
+    private void ensureWork(final int size) {
+        if (w0.length < size) {
+            w0 = ArrayUtil.grow(w0, size);
+            s0 = ArrayUtil.grow(s0, w0.length);
+        }
+        if (w1.length < size) {
+            w1 = new char[ArrayUtil.oversize(size, Character.BYTES)];
+            s1 = new int[w1.length];
+        }
+    }
+
+    private void swap() {
+        final char[] tc = w0;
+        w0 = w1;
+        w1 = tc;
+        final int[] ts = s0;
+        s0 = s1;
+        s1 = ts;
+    }
+
+    // applies the rewrites on chunk[0, cut) and makes it the new output
+    private void rewrite(final int cut) {
+        outOffset += outLen;
+        // each pass at most doubles the length (Y -> ni)
+        ensureWork(cut * 2);
+        System.arraycopy(chunk, 0, w0, 0, cut);
+        System.arraycopy(chunkSrc, 0, s0, 0, cut);
+        int n = cut;
+        for (int pass = 1; pass <= 7; pass++) {
+            ensureWork(n * 2);
+            n = rewritePass(pass, n);
+            swap();
+        }
+        System.arraycopy(chunk, cut, chunk, 0, chunkLen - cut);
+        System.arraycopy(chunkSrc, cut, chunkSrc, 0, chunkLen - cut);
+        chunkLen -= cut;
+        out = w0;
+        outPos = 0;
+        outLen = n;
+        for (int i = 0; i < n; i++) {
+            final int diff = s0[i] - (outOffset + i);
+            if (diff != lastDiff) {
+                addOffCorrectMap(outOffset + i, diff);
+                lastDiff = diff;
+            }
+        }
+    }
+
+    private static boolean letterAt(final char[] b, final int i, final int n) {
+        return i < n && isAsciiLetter(b[i]);
+    }
+
+    // one rewrite from w0 to w1, in the same order as EnglishPhoneticRegexFilter.plugFilters()
+    private int rewritePass(final int pass, final int n) {
+        final char[] a = w0, d = w1;
+        final int[] as = s0, ds = s1;
+        int j = 0;
+        int i = 0;
+        while (i < n) {
+            final char c = a[i];
+            switch (pass) {
+            case 1:
+                // [ae]y($|[^aeiou]) -> e$1
+                if ((c == 'a' || c == 'e') && i + 1 < n && a[i + 1] == 'y'
+                        && (i + 2 == n || "aeiou".indexOf(a[i + 2]) == -1)) {
+                    d[j] = 'e';
+                    ds[j++] = as[i];
+                    i += 2;
+                    continue;
+                }
+                break;
+            case 2:
+                // ([a-zA-Z])w([aeo])(?![nN]) -> $1 b$2
+                if (isAsciiLetter(c) && i + 2 < n && a[i + 1] == 'w' && "aeo".indexOf(a[i + 2]) != -1
+                        && (i + 3 == n || (a[i + 3] != 'n' && a[i + 3] != 'N'))) {
+                    d[j] = c;
+                    ds[j++] = as[i];
+                    d[j] = ' ';
+                    ds[j++] = as[i + 1];
+                    d[j] = 'b';
+                    ds[j++] = as[i + 1];
+                    d[j] = a[i + 2];
+                    ds[j++] = as[i + 2];
+                    i += 3;
+                    continue;
+                }
+                break;
+            case 3:
+                // [sd](?![a-zA-Z]) ->
+                if ((c == 's' || c == 'd') && !letterAt(a, i + 1, n)) {
+                    i++;
+                    continue;
+                }
+                break;
+            case 4:
+            case 5:
+                // Y(?![a-zA-Z]) -> ni, G(?![a-zA-Z]) -> gi
+                if (c == (pass == 4 ? 'Y' : 'G') && !letterAt(a, i + 1, n)) {
+                    d[j] = pass == 4 ? 'n' : 'g';
+                    ds[j++] = as[i];
+                    d[j] = 'i';
+                    ds[j++] = as[i];
+                    i++;
+                    continue;
+                }
+                break;
+            case 6:
+                // y(?![a-zA-Z]) -> i
+                if (c == 'y' && !letterAt(a, i + 1, n)) {
+                    d[j] = 'i';
+                    ds[j++] = as[i];
+                    i++;
+                    continue;
+                }
+                break;
+            case 7:
+                // ([bgmn])\1(?=$|[^a-zA-Z]) -> $1
+                if ((c == 'b' || c == 'g' || c == 'm' || c == 'n') && i + 1 < n && a[i + 1] == c
+                        && !letterAt(a, i + 2, n)) {
+                    d[j] = c;
+                    ds[j++] = as[i];
+                    i += 2;
+                    continue;
+                }
+                break;
+            }
+            d[j] = c;
+            ds[j++] = as[i];
+            i++;
+        }
+        return j;
+    }
+}
@@ -1,10 +1,14 @@
 package io.bdrc.lucene.bo.phonetics;
 
 import java.io.Reader;
+import java.util.function.BiConsumer;
 
 import org.apache.lucene.analysis.charfilter.MappingCharFilter;
 import org.apache.lucene.analysis.charfilter.NormalizeCharMap;
 
+import io.bdrc.lucene.bo.metrics.ResourceFootprint;
+import io.bdrc.lucene.bo.metrics.ResourceLoadEvent;
+
 public final class EnglishPhoneticCharMapFilter extends MappingCharFilter {
     
     /*
@@ -17,236 +21,256 @@ public final class EnglishPhoneticCharMapFilter extends MappingCharFilter {
      * - tr = D
      */
     
-    private static NormalizeCharMap cache = null;
-    private static boolean ignoreRetroflex = true;
+    // built on first use, the JVM class initialization publishes it safely to all threads
+    private static final class Cache {
+        static final NormalizeCharMap map = build();
+    }
+    private static final boolean ignoreRetroflex = true;
 
     public EnglishPhoneticCharMapFilter(final Reader in) {
         super(getCharMapCached(), in);
     }
     
     public static NormalizeCharMap getCharMapCached() {
-        if (cache == null)
-            cache = getNormalizeCharMap();
-        return cache;
+        return Cache.map;
+    }
+    
+    private static NormalizeCharMap build() {
+        final ResourceLoadEvent event = ResourceLoadEvent.start("charmap", "EnglishPhoneticCharMapFilter");
+        final NormalizeCharMap.Builder builder = new NormalizeCharMap.Builder();
+        final int[] size = {0};
+        addMappings((from, to) -> {
+            builder.add(from, to);
+            size[0]++;
+        });
+        final NormalizeCharMap res = builder.build();
+        event.finish("EnglishPhoneticCharMapFilter.addMappings", size[0]);
+        ResourceFootprint.register("EnglishPhoneticCharMapFilter", "charmap", res, size[0]);
+        return res;
     }
     
     public final static NormalizeCharMap getNormalizeCharMap() {
-        NormalizeCharMap.Builder builder = new NormalizeCharMap.Builder();
-        builder.add("0", "༠");
-        builder.add("1", "༡");
-        builder.add("2", "༢");
-        builder.add("3", "༣");
-        builder.add("4", "༤");
-        builder.add("5", "༥");
-        builder.add("6", "༦");
-        builder.add("7", "༧");
-        builder.add("8", "༨");
-        builder.add("9", "༩");
-        builder.add("ae", "e");
-        builder.add("ai", "e"); // a'i is sometimes pronounced aï (as in Dalai Lama) or e (more common)
-        builder.add("aï", "e");
-        builder.add("oe", "o"); // Damchoe (Bhutanese style)
-        builder.add("ue", "u"); // Tsondue (Bhutanese style)
-        builder.add("aa", "a"); // no need for duplicate vowels
-        builder.add("ii", "i");
-        builder.add("uu", "u");
-        builder.add("oo", "u"); // a bit more ambiguous, English rendering
-        builder.add("ee", "i"); // shree
+        final NormalizeCharMap.Builder builder = new NormalizeCharMap.Builder();
+        addMappings(builder::add);
+        return builder.build();
+    }
+    
+    // the mappings, also compiled by EnglishPhoneticCharFilter
+    public final static void addMappings(final BiConsumer<String,String> mapping) {
+        mapping.accept("0", "༠");
+        mapping.accept("1", "༡");
+        mapping.accept("2", "༢");
+        mapping.accept("3", "༣");
+        mapping.accept("4", "༤");
+        mapping.accept("5", "༥");
+        mapping.accept("6", "༦");
+        mapping.accept("7", "༧");
+        mapping.accept("8", "༨");
+        mapping.accept("9", "༩");
+        mapping.accept("ae", "e");
+        mapping.accept("ai", "e"); // a'i is sometimes pronounced aï (as in Dalai Lama) or e (more common)
+        mapping.accept("aï", "e");
+        mapping.accept("oe", "o"); // Damchoe (Bhutanese style)
+        mapping.accept("ue", "u"); // Tsondue (Bhutanese style)
+        mapping.accept("aa", "a"); // no need for duplicate vowels
+        mapping.accept("ii", "i");
+        mapping.accept("uu", "u");
+        mapping.accept("oo", "u"); // a bit more ambiguous, English rendering
+        mapping.accept("ee", "i"); // shree
         // remove different diacritics
-        builder.add("ü", "u"); // \\uFC
-        builder.add("u\u0308", "u"); // decomposed version
-        builder.add("ö", "o"); // \\uF6
-        builder.add("o\u0308", "o"); // decomposed version
-        builder.add("ä", "e"); // \\uE4
-        builder.add("a\u0308", "e"); // decomposed version
-        builder.add("ï", "i");
-        builder.add("i\u0308", "i"); // decomposed version
-        builder.add("é", "e");
+        mapping.accept("ü", "u"); // \\uFC
+        mapping.accept("u\u0308", "u"); // decomposed version
+        mapping.accept("ö", "o"); // \\uF6
+        mapping.accept("o\u0308", "o"); // decomposed version
+        mapping.accept("ä", "e"); // \\uE4
+        mapping.accept("a\u0308", "e"); // decomposed version
+        mapping.accept("ï", "i");
+        mapping.accept("i\u0308", "i"); // decomposed version
+        mapping.accept("é", "e");
         // remove all acute accent diacritics
-        builder.add("\u0301", "");
-        builder.add("è", "e");
-        builder.add("\u0300", "");
-        builder.add("ṇ", "n"); // Paṇchen
-        builder.add("n\u0323", "n");
-        builder.add("aht", "a d"); // kaHtog
-        builder.add("ahth", "a d"); // kaHtog
-        builder.add("ḥ", " "); // kaḥtog
-        builder.add("h\u0323", " ");
-        builder.add("'", ""); // ka'tog, Mip'am
-        builder.add("-", " "); // 
+        mapping.accept("\u0301", "");
+        mapping.accept("è", "e");
+        mapping.accept("\u0300", "");
+        mapping.accept("ṇ", "n"); // Paṇchen
+        mapping.accept("n\u0323", "n");
+        mapping.accept("aht", "a d"); // kaHtog
+        mapping.accept("ahth", "a d"); // kaHtog
+        mapping.accept("ḥ", " "); // kaḥtog
+        mapping.accept("h\u0323", " ");
+        mapping.accept("'", ""); // ka'tog, Mip'am
+        mapping.accept("-", " "); // 
         // various diactitics
-        builder.add("ś", "S");
-        builder.add("Ś", "S");
-        builder.add("s\u0301", "S");
-        builder.add("ṣ", "S");
-        builder.add("s\u0323", "S");
-        builder.add("ñ", "Y");
-        builder.add("n\u0303", "Y");
-        builder.add("ṅ", "N");
-        builder.add("n\u0307", "N");
-        builder.add("ā", "a");
-        builder.add("a\u0304", "a");
-        builder.add("ī", "i");
-        builder.add("i\u0304", "i");
-        builder.add("ū", "u");
-        builder.add("u\u0304", "u");
-        builder.add("ṃ", "n");
-        builder.add("m\u0323", "n");
-        builder.add("ṁ", "n");
-        builder.add("m\u0307", "n");
-        builder.add("ṭ", "t");
-        builder.add("t\u0323", "t");
-        builder.add("ḍ", "d");
-        builder.add("d\u0323", "d");
-        builder.add("dj", "c"); // Dudjom
-        builder.add("zh", "S");
-        builder.add("sh", "S");
-        builder.add("shy", "S"); // Nyingtik Yabshyi
-        builder.add("dz", "T"); // to avoid confusion between dz and z
-        // builder.add("dzh", "T"); // not sure it's really cogent
+        mapping.accept("ś", "S");
+        mapping.accept("Ś", "S");
+        mapping.accept("s\u0301", "S");
+        mapping.accept("ṣ", "S");
+        mapping.accept("s\u0323", "S");
+        mapping.accept("ñ", "Y");
+        mapping.accept("n\u0303", "Y");
+        mapping.accept("ṅ", "N");
+        mapping.accept("n\u0307", "N");
+        mapping.accept("ā", "a");
+        mapping.accept("a\u0304", "a");
+        mapping.accept("ī", "i");
+        mapping.accept("i\u0304", "i");
+        mapping.accept("ū", "u");
+        mapping.accept("u\u0304", "u");
+        mapping.accept("ṃ", "n");
+        mapping.accept("m\u0323", "n");
+        mapping.accept("ṁ", "n");
+        mapping.accept("m\u0307", "n");
+        mapping.accept("ṭ", "t");
+        mapping.accept("t\u0323", "t");
+        mapping.accept("ḍ", "d");
+        mapping.accept("d\u0323", "d");
+        mapping.accept("dj", "c"); // Dudjom
+        mapping.accept("zh", "S");
+        mapping.accept("sh", "S");
+        mapping.accept("shy", "S"); // Nyingtik Yabshyi
+        mapping.accept("dz", "T"); // to avoid confusion between dz and z
+        // mapping.accept("dzh", "T"); // not sure it's really cogent
         // remove aspiration
-        builder.add("hl", "l"); // hl is a bit closer to pronounciation
-        builder.add("lh", "l");
-        builder.add("chh", "c");
-        builder.add("ch", "c");
-        builder.add("j", "c");
-        builder.add("jh", "c");
-        builder.add("tsh", "T");
-        builder.add("ts", "T");
-        builder.add("dd", "d");
-        builder.add("ph", "b");
-        builder.add("p", "b");
-        builder.add("bh", "b");
-        builder.add("thr", ignoreRetroflex ? "d" : "D");
-        builder.add("th", "d");
-        builder.add("dh", "d"); // Dhondup
-        builder.add("tr", ignoreRetroflex ? "d" : "D");
-        builder.add("dr", ignoreRetroflex ? "d" : "D");
-        builder.add("dhr", ignoreRetroflex ? "d" : "D");
-        builder.add("t", "d");
-        builder.add("kh", "g");
-        builder.add("gh", "g");
-        builder.add("k", "g");
-        builder.add("ck", "g"); // dicki
-        builder.add("ngh", " N"); // Sengha / Singha
-        builder.add("khy", "G");
-        builder.add("ky", "G");
-        builder.add("nkhy", "n G"); // Kunkhyab
-        builder.add("nky", "n G");
+        mapping.accept("hl", "l"); // hl is a bit closer to pronounciation
+        mapping.accept("lh", "l");
+        mapping.accept("chh", "c");
+        mapping.accept("ch", "c");
+        mapping.accept("j", "c");
+        mapping.accept("jh", "c");
+        mapping.accept("tsh", "T");
+        mapping.accept("ts", "T");
+        mapping.accept("dd", "d");
+        mapping.accept("ph", "b");
+        mapping.accept("p", "b");
+        mapping.accept("bh", "b");
+        mapping.accept("thr", ignoreRetroflex ? "d" : "D");
+        mapping.accept("th", "d");
+        mapping.accept("dh", "d"); // Dhondup
+        mapping.accept("tr", ignoreRetroflex ? "d" : "D");
+        mapping.accept("dr", ignoreRetroflex ? "d" : "D");
+        mapping.accept("dhr", ignoreRetroflex ? "d" : "D");
+        mapping.accept("t", "d");
+        mapping.accept("kh", "g");
+        mapping.accept("gh", "g");
+        mapping.accept("k", "g");
+        mapping.accept("ck", "g"); // dicki
+        mapping.accept("ngh", " N"); // Sengha / Singha
+        mapping.accept("khy", "G");
+        mapping.accept("ky", "G");
+        mapping.accept("nkhy", "n G"); // Kunkhyab
+        mapping.accept("nky", "n G");
         // complicated, see tokenizer
-        builder.add("ngy", "nG");
-        builder.add("gy", "G");
-        builder.add("ng", "N");
-        builder.add("ny", "Y");
-        builder.add("v", " b");
+        mapping.accept("ngy", "nG");
+        mapping.accept("gy", "G");
+        mapping.accept("ng", "N");
+        mapping.accept("ny", "Y");
+        mapping.accept("v", " b");
         // exceptions
-        builder.add("patrul", ignoreRetroflex ? "bal dul" : "bal Dul");
-        builder.add("patrül", ignoreRetroflex ? "bal dul" : "bal Dul");
-        builder.add("acarya", "a Ta rya");
-        builder.add("acharya", "a Ta rya");
-        builder.add("rya", " rya"); // arya
-        // builder.add("kye gompa", "gil gon ba"); //?
-        builder.add("indra", "i ndra");
-        builder.add("mbha", "mba"); // Shambhala
-        builder.add("mingyur", "mi Gur");
-        builder.add("pakshi", "ba gSi");
-        builder.add("rakshi", "ra gSi");
-        builder.add("dharma", "da rma");
-        builder.add("amchi ", "em ci ");
-        builder.add("wose", "o se");
-        builder.add("wöse", "o se");
-        builder.add("kanjur", "ga Gur");
-        builder.add("kangyur", "ga Gur");
-        builder.add("tanjur", "den Gur");
-        builder.add("tenjur", "den Gur");
-        builder.add("umdze", "u Te");
-        builder.add("umze", "u Te");
-        builder.add("umdzé", "u Te");
-        builder.add("umzé", "u Te");
-        builder.add("sangye", "saN Ge");
-        builder.add("sangyé", "saN Ge");
-        builder.add("senge", "seN ge");
-        builder.add("sengé", "seN ge");
-        builder.add("sengge", "seN ge");
-        builder.add("senggé", "seN ge");
-        builder.add("ringdzin", "rig Tin");
-        builder.add("ringzin", "rig Tin");
-        builder.add("rindzin", "rig Tin");
-        builder.add("rinzin", "rig Tin");
-        builder.add("diki", "de gi");
-        builder.add("dicki", "de gi");
-        builder.add("dickie", "de gi");
-        builder.add("karmay", "gar meu"); // མཁར་རྨེའུ -> Karmay
-        builder.add("amnye", "a Ye");
-        builder.add("amnyé", "a Ye");
-        builder.add("derge", "de ge");
-        builder.add("dergé", "de ge");
-        builder.add("chamdo", "cab do");
-        builder.add("gompa", "gon ba"); // this one is a bit difficult
+        mapping.accept("patrul", ignoreRetroflex ? "bal dul" : "bal Dul");
+        mapping.accept("patrül", ignoreRetroflex ? "bal dul" : "bal Dul");
+        mapping.accept("acarya", "a Ta rya");
+        mapping.accept("acharya", "a Ta rya");
+        mapping.accept("rya", " rya"); // arya
+        // mapping.accept("kye gompa", "gil gon ba"); //?
+        mapping.accept("indra", "i ndra");
+        mapping.accept("mbha", "mba"); // Shambhala
+        mapping.accept("mingyur", "mi Gur");
+        mapping.accept("pakshi", "ba gSi");
+        mapping.accept("rakshi", "ra gSi");
+        mapping.accept("dharma", "da rma");
+        mapping.accept("amchi ", "em ci ");
+        mapping.accept("wose", "o se");
+        mapping.accept("wöse", "o se");
+        mapping.accept("kanjur", "ga Gur");
+        mapping.accept("kangyur", "ga Gur");
+        mapping.accept("tanjur", "den Gur");
+        mapping.accept("tenjur", "den Gur");
+        mapping.accept("umdze", "u Te");
+        mapping.accept("umze", "u Te");
+        mapping.accept("umdzé", "u Te");
+        mapping.accept("umzé", "u Te");
+        mapping.accept("sangye", "saN Ge");
+        mapping.accept("sangyé", "saN Ge");
+        mapping.accept("senge", "seN ge");
+        mapping.accept("sengé", "seN ge");
+        mapping.accept("sengge", "seN ge");
+        mapping.accept("senggé", "seN ge");
+        mapping.accept("ringdzin", "rig Tin");
+        mapping.accept("ringzin", "rig Tin");
+        mapping.accept("rindzin", "rig Tin");
+        mapping.accept("rinzin", "rig Tin");
+        mapping.accept("diki", "de gi");
+        mapping.accept("dicki", "de gi");
+        mapping.accept("dickie", "de gi");
+        mapping.accept("karmay", "gar meu"); // མཁར་རྨེའུ -> Karmay
+        mapping.accept("amnye", "a Ye");
+        mapping.accept("amnyé", "a Ye");
+        mapping.accept("derge", "de ge");
+        mapping.accept("dergé", "de ge");
+        mapping.accept("chamdo", "cab do");
+        mapping.accept("gompa", "gon ba"); // this one is a bit difficult
         // chos rgya pronounced chögyam as a short for chos kyi rgya mtsho
-        builder.add("chogyam", "cho Ga");
-        builder.add("chögyam", "cho Ga");
-        builder.add("gyamtso", "Ga To");
-        builder.add("khandro", ignoreRetroflex ? "ga do" : "ga Do");
-        builder.add("amdo", "a do");
-        builder.add("chorten", "cho den");
-        builder.add("chörten", "cho den");
-        builder.add("dorje", "do ce");
-        builder.add("dordje", "do ce");
-        builder.add("dordjé", "do ce");
-        builder.add("dorjé", "do ce");
-        builder.add("dorjee", "do ce");
-        builder.add("dorji", "do ce");
-        builder.add("kumbum", "gu bum");
-        builder.add("orgyen", "o Gen");
-        builder.add("urgyen", "u Gen");
-        builder.add("lharje", "lha ce");
-        builder.add("lharjé", "lha ce");
-        builder.add("gyantse", "Gel Te");
-        builder.add("gyantsé", "Gel Te");
-        builder.add("renda", "re da");
-        builder.add("reting", ignoreRetroflex ? "ra deN" : "ra DeN");
-        builder.add("lobzang", "lo saN");
-        builder.add("lopzang", "lo saN");
-        builder.add("lobsang", "lo saN");
-        builder.add("lopsang", "lo saN");
-        builder.add("ngawang", "Nag waN");
-        builder.add("chod ", "cho");
-        builder.add("labrang", "la daN");
-        builder.add("agsar", "a sar");
-        builder.add("chugsum", "chu sum");
-        builder.add("padm", "be m");
-        builder.add("gendun", "ge dun");
-        builder.add("bonjong", "bo joN");
-        builder.add("ganden", "ga den");
-        builder.add("kundun", "gu dun");
-        builder.add("kundün", "gu dun");
-        builder.add("ngondzin", "No Tin");
-        builder.add("yabshi", "ya Si");
-        builder.add("yabzhi", "ya Si");
-        builder.add("yabshyi", "ya Si");
-        builder.add("sabche", "sa ce");
-        builder.add("chonjug", "co cug");
-        builder.add("kenjug", "ge cug");
-        builder.add("panchen", "ben cen");
-        builder.add("paṇchen", "ben cen");
-        builder.add("pandita", "ba ndi da");
-        builder.add("mandala", "ma nda la");
-        builder.add("aṇḍ", "a nd");
-        builder.add("vajra", "ba Tra"); // ts -> c (dz -> j) is a bit difficult...
-        builder.add("benza", "ba Tra");
-        builder.add("bendza", "ba Tra");
-        builder.add("evam", "e bam");
-        builder.add("évam", "e bam");
-        builder.add("evaṃ", "e bam");
-        builder.add("shakya", "Sa gya");
-        builder.add("shribhadra", "Sri ba dra");
-        builder.add("śribhadra", "Sri ba dra");
+        mapping.accept("chogyam", "cho Ga");
+        mapping.accept("chögyam", "cho Ga");
+        mapping.accept("gyamtso", "Ga To");
+        mapping.accept("khandro", ignoreRetroflex ? "ga do" : "ga Do");
+        mapping.accept("amdo", "a do");
+        mapping.accept("chorten", "cho den");
+        mapping.accept("chörten", "cho den");
+        mapping.accept("dorje", "do ce");
+        mapping.accept("dordje", "do ce");
+        mapping.accept("dordjé", "do ce");
+        mapping.accept("dorjé", "do ce");
+        mapping.accept("dorjee", "do ce");
+        mapping.accept("dorji", "do ce");
+        mapping.accept("kumbum", "gu bum");
+        mapping.accept("orgyen", "o Gen");
+        mapping.accept("urgyen", "u Gen");
+        mapping.accept("lharje", "lha ce");
+        mapping.accept("lharjé", "lha ce");
+        mapping.accept("gyantse", "Gel Te");
+        mapping.accept("gyantsé", "Gel Te");
+        mapping.accept("renda", "re da");
+        mapping.accept("reting", ignoreRetroflex ? "ra deN" : "ra DeN");
+        mapping.accept("lobzang", "lo saN");
+        mapping.accept("lopzang", "lo saN");
+        mapping.accept("lobsang", "lo saN");
+        mapping.accept("lopsang", "lo saN");
+        mapping.accept("ngawang", "Nag waN");
+        mapping.accept("chod ", "cho");
+        mapping.accept("labrang", "la daN");
+        mapping.accept("agsar", "a sar");
+        mapping.accept("chugsum", "chu sum");
+        mapping.accept("padm", "be m");
+        mapping.accept("gendun", "ge dun");
+        mapping.accept("bonjong", "bo joN");
+        mapping.accept("ganden", "ga den");
+        mapping.accept("kundun", "gu dun");
+        mapping.accept("kundün", "gu dun");
+        mapping.accept("ngondzin", "No Tin");
+        mapping.accept("yabshi", "ya Si");
+        mapping.accept("yabzhi", "ya Si");
+        mapping.accept("yabshyi", "ya Si");
+        mapping.accept("sabche", "sa ce");
+        mapping.accept("chonjug", "co cug");
+        mapping.accept("kenjug", "ge cug");
+        mapping.accept("panchen", "ben cen");
+        mapping.accept("paṇchen", "ben cen");
+        mapping.accept("pandita", "ba ndi da");
+        mapping.accept("mandala", "ma nda la");
+        mapping.accept("aṇḍ", "a nd");
+        mapping.accept("vajra", "ba Tra"); // ts -> c (dz -> j) is a bit difficult...
+        mapping.accept("benza", "ba Tra");
+        mapping.accept("bendza", "ba Tra");
+        mapping.accept("evam", "e bam");
+        mapping.accept("évam", "e bam");
+        mapping.accept("evaṃ", "e bam");
+        mapping.accept("shakya", "Sa gya");
+        mapping.accept("shribhadra", "Sri ba dra");
+        mapping.accept("śribhadra", "Sri ba dra");
         if (!ignoreRetroflex) {
-            builder.add("tashi", "da Si");
-            builder.add("tulku", "dul gu");
-            builder.add("tülku", "dul gu");
+            mapping.accept("tashi", "da Si");
+            mapping.accept("tulku", "dul gu");
+            mapping.accept("tülku", "dul gu");
         }
-        return builder.build(); 
     }
 }
@@ -7,6 +7,7 @@ import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 
 import io.bdrc.lucene.bo.IsStandardTibetanAttribute;
+import io.bdrc.lucene.bo.SyllableIdAttribute;
 
 public final class EnglishPhoneticFilter extends TokenFilter {
     
@@ -14,22 +15,35 @@ public final class EnglishPhoneticFilter extends TokenFilter {
      * Token filter to transform a token in Tibetan Unicode into English phonetic
      */
 
+    private final PhoneticSystem system;
+    
     public EnglishPhoneticFilter(final TokenStream input) {
+        this(input, PhoneticSystemEnglish.INSTANCE);
+    }
+    
+    // system can be any variant, typically obtained from PhoneticSystemEnglish.get()
+    public EnglishPhoneticFilter(final TokenStream input, final PhoneticSystem system) {
         super(input);
+        this.system = system;
     }
 
     private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
     private final IsStandardTibetanAttribute istAtt = addAttribute(IsStandardTibetanAttribute.class);
+    // present if the tokenizer sets the syllable ids
+    private final SyllableIdAttribute sylAtt = hasAttribute(SyllableIdAttribute.class) ? getAttribute(SyllableIdAttribute.class) : null;
     
     @Override
     public final boolean incrementToken() throws IOException {
         if (!input.incrementToken())
             return false;
         
-        if (istAtt.getIsStandardTibetan())
-            PhoneticSystemEnglish.INSTANCE.getPhonetics(termAtt);
+        final int id = sylAtt == null ? -1 : sylAtt.getSyllableId();
+        if (id != -1)
+            system.getPhonetics(termAtt, id);
+        else if (istAtt.getIsStandardTibetan())
+            system.getPhonetics(termAtt);
         else
-            PhoneticSystemEnglish.INSTANCE.getSktPhonetics(termAtt);
+            system.getSktPhonetics(termAtt);
         return true;
     }
 
@@ -0,0 +1,47 @@
+package io.bdrc.lucene.bo.phonetics;
+
+import java.util.Map;
+
+import org.apache.lucene.analysis.TokenFilterFactory;
+import org.apache.lucene.analysis.TokenStream;
+
+/**
+ * Factory for {@link EnglishPhoneticFilter}, the arguments are the options of
+ * {@link PhoneticSystemEnglish.Options}. The phonetic systems are compiled once
+ * per set of options, see {@link PhoneticSystemEnglish#get}.
+ *
+ * <pre class="prettyprint">
+ * &lt;filter class="io.bdrc.lucene.bo.phonetics.EnglishPhoneticFilterFactory" foldnasals="false"/&gt;
+ * </pre>
+ *
+ * @lucene.spi {@value #NAME}
+ */
+public class EnglishPhoneticFilterFactory extends TokenFilterFactory {
+
+    public static final String NAME = "tibEnglishPhonetic";
+
+    private final PhoneticSystemEnglish system;
+
+    public EnglishPhoneticFilterFactory(final Map<String, String> args) {
+        super(args);
+        final PhoneticSystemEnglish.Options d = PhoneticSystemEnglish.Options.DEFAULT;
+        final PhoneticSystemEnglish.Options options = PhoneticSystemEnglish.Options.builder()
+                .ignoreRetroflex(getBoolean(args, "ignoreRetroflex", d.ignoreRetroflex))
+                .alntoeln(getBoolean(args, "alntoeln", d.alntoeln))
+                .foldnasals(getBoolean(args, "foldnasals", d.foldnasals))
+                .build();
+        if (!args.isEmpty())
+            throw new IllegalArgumentException("Unknown parameters: " + args);
+        this.system = PhoneticSystemEnglish.get(options);
+    }
+
+    // for the SPI
+    public EnglishPhoneticFilterFactory() {
+        throw defaultCtorException();
+    }
+
+    @Override
+    public TokenStream create(final TokenStream input) {
+        return new EnglishPhoneticFilter(input, system);
+    }
+}
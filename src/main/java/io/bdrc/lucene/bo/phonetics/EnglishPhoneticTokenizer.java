@@ -2,238 +2,465 @@ package io.bdrc.lucene.bo.phonetics;
 
 import org.apache.lucene.analysis.Tokenizer;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
 import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.util.ArrayUtil;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+
+import io.bdrc.lucene.bo.metrics.AnalysisMetrics;
+import io.bdrc.lucene.bo.metrics.Metrics;
 
 public final class EnglishPhoneticTokenizer extends Tokenizer {
-    
-    // made by ChatGPT, quite unoptimized, but this direction is less critical than the other one for performance
+
+    /*
+     * Tokenizer for phonetic queries in Latin script (after the phonetic char filters).
+     *
+     * Words are split on whitespace, then cut into syllables around their vowel groups.
+     * A group of consonants between two vowel groups can often be cut in different ways
+     * ("wangpo" is "wang po" but "pala" is "pa la"), so each syllable position has a set of
+     * alternatives, emitted with a position increment of 1 for the first and 0 for the others.
+     *
+     * Everything is done on char arrays: a cut is a set of (literal, from, to) int triples,
+     * where the syllable part is the literal followed by the word slice [from, to).
+     */
 
     private final CharTermAttribute charTermAttr = addAttribute(CharTermAttribute.class);
     private final PositionIncrementAttribute posIncrAttr = addAttribute(PositionIncrementAttribute.class);
-    
-    private static final class TokenWithIncrement {
-        public final String token;
-        public final int increment;
-        
-        TokenWithIncrement(final String token, final int increment) {
-            this.token = token;
-            this.increment = increment;
-        }
+    private final OffsetAttribute offsetAttr = addAttribute(OffsetAttribute.class);
+
+    // literal prefixes used by the cuts, index 0 is the empty literal
+    private static final char[][] LITERALS = {
+            {}, {'g'}, {'N'}, {'n'}, {'n', 'g'}, {'N', 'g'}, {'y'}
+    };
+    private static final int L_NONE = 0, L_G = 1, L_NN = 2, L_N = 3, L_NG = 4, L_NNG = 5, L_Y = 6;
+
+    // max number of codas and onsets in a cut
+    private static final int MAX_CODAS = 3;
+    private static final int MAX_ONSETS = 4;
+
+    // reading
+    private final char[] ioBuffer = new char[4096];
+    private int ioLen = 0;
+    private int ioPos = 0;
+    private int offset = 0; // offset of ioBuffer[ioPos] in the input
+    private boolean inputDone = false;
+
+    // current word
+    private char[] word = new char[64];
+    private int wordLen = 0;
+    private int wordStart = 0;
+
+    // vowel groups of the current word
+    private int[] vStart = new int[8];
+    private int[] vEnd = new int[8];
+    private int nV = 0;
+
+    // cuts between vowel groups i and i+1: triples of (literal, from, to)
+    private int[] cutCodas = new int[8 * MAX_CODAS * 3];
+    private int[] cutCodaN = new int[8];
+    private int[] cutOnsets = new int[8 * MAX_ONSETS * 3];
+    private int[] cutOnsetN = new int[8];
+
+    // alternatives for the current syllable group
+    private char[] alts = new char[64];
+    private int[] altStart = new int[16];
+    private int[] altLen = new int[16];
+    private int nAlts = 0;
+    private int altIdx = 0;
+
+    // iteration state
+    private int nGroups = 0;
+    private int groupIdx = 0;
+
+    // optional pruning of the alternatives
+    private final PhoneticVocabulary vocabulary;
+    private final int maxAlternatives;
+    private final AnalysisMetrics.Counter pruneFallbacks = Metrics.counter("EnglishPhoneticTokenizer.pruneFallbacks");
+
+    public EnglishPhoneticTokenizer() {
+        this(null, Integer.MAX_VALUE);
     }
 
-    private final List<TokenWithIncrement> tokens = new ArrayList<>();
-    private int tokenIndex = 0;
+    /*
+     * When vocabulary is not null, the alternatives of a syllable that are not in it are dropped
+     * (unless none of them are, in which case they are all kept). At most maxAlternatives
+     * alternatives are emitted per syllable, in the order of preference.
+     */
+    public EnglishPhoneticTokenizer(final PhoneticVocabulary vocabulary, final int maxAlternatives) {
+        if (maxAlternatives < 1)
+            throw new IllegalArgumentException("maxAlternatives must be at least 1");
+        this.vocabulary = vocabulary;
+        this.maxAlternatives = maxAlternatives;
+    }
 
     @Override
     public final boolean incrementToken() throws IOException {
-        if (tokens.isEmpty()) {
-            final StringBuilder inputStringBuilder = new StringBuilder();
-            int ch;
-            while ((ch = input.read()) != -1) {
-                inputStringBuilder.append((char) ch);
+        while (altIdx >= nAlts) {
+            if (groupIdx < nGroups) {
+                fillGroup(groupIdx);
+                groupIdx++;
+                continue;
             }
-            if (inputStringBuilder.isEmpty())
+            if (!nextWord())
                 return false;
-            final String inputText = inputStringBuilder.toString().trim();
-            tokenizeText(inputText);
-            //for (final TokenWithIncrement twi : tokens) {
-            //    System.out.println("found token "+twi.token);
-            //}
-        }
-
-        if (tokenIndex < tokens.size()) {
-            clearAttributes();
-            final TokenWithIncrement twi = tokens.get(tokenIndex);
-            posIncrAttr.setPositionIncrement(twi.increment);
-            char[] buffer = charTermAttr.buffer();
-            final int toklen = twi.token.length(); 
-            if (toklen > charTermAttr.length())
-                buffer = charTermAttr.resizeBuffer(toklen);
-            // copy the string in the buffer
-            twi.token.getChars(0, toklen, buffer, 0);
-            charTermAttr.setLength(toklen);
-            tokenIndex++;
-            return true;
-        }
-        return false;
-    }
-
-    private void tokenizeText(String inputText) {
-        // Split the text by spaces to get words
-        final String[] words = inputText.split("\\s+");
-        for (final String word : words) {
-            if (word.isEmpty()) continue;
-            final List<List<String>> syllables = processWord(word.toCharArray(), 0, word.length());
-            for (final List<String> possibleSyllables : syllables) {
-                // increment is 1 for the first in the possible syllables, then 0
-                boolean first = true;
-                for (String possibleSyllable : possibleSyllables) {
-                    /*
-                     * Important hack: we transform al and an into el and en. We can't do that earlier
-                     * because we don't want to change "pala" ("pa" "la") into "pela" ("pe" "la"). We need
-                     * to do it at a stage where we need if the l is suffix or not. That stage is here. 
-                     */
-                    if (possibleSyllable.endsWith("al"))
-                        possibleSyllable = possibleSyllable.substring(0,possibleSyllable.length()-2)+"el";
-                    else if (possibleSyllable.endsWith("an"))
-                        possibleSyllable = possibleSyllable.substring(0,possibleSyllable.length()-2)+"en";
-                    if (possibleSyllable.startsWith("Gi"))
-                        possibleSyllable = "gi" + possibleSyllable.substring(2);
-                    else if (possibleSyllable.startsWith("Yi"))
-                        possibleSyllable = "ni" + possibleSyllable.substring(2);
-                    if (possibleSyllable.contains("z")) {
-                        // z can be either T (ts) or s
-                        tokens.add(new TokenWithIncrement(possibleSyllable.replace('z', 'T'), first ? 1 : 0));
-                        tokens.add(new TokenWithIncrement(possibleSyllable.replace('z', 's'), 0));
-                        first = false;
-                    } else {
-                        // general case
-                        tokens.add(new TokenWithIncrement(possibleSyllable, first ? 1 : 0));
-                        first = false;
+            processWord();
+        }
+        clearAttributes();
+        // increment is 1 for the first in the possible syllables, then 0
+        posIncrAttr.setPositionIncrement(altIdx == 0 ? 1 : 0);
+        final int len = altLen[altIdx];
+        final char[] buffer = charTermAttr.resizeBuffer(len);
+        System.arraycopy(alts, altStart[altIdx], buffer, 0, len);
+        charTermAttr.setLength(len);
+        offsetAttr.setOffset(correctOffset(wordStart), correctOffset(wordStart + wordLen));
+        altIdx++;
+        return true;
+    }
+
+    // same characters as \s in regular expressions
+    private static boolean isSeparator(final char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private boolean fillIoBuffer() throws IOException {
+        if (inputDone)
+            return false;
+        ioLen = input.read(ioBuffer, 0, ioBuffer.length);
+        ioPos = 0;
+        if (ioLen <= 0) {
+            ioLen = 0;
+            inputDone = true;
+            return false;
+        }
+        return true;
+    }
+
+    // reads the next word in the word buffer
+    private boolean nextWord() throws IOException {
+        wordLen = 0;
+        while (true) {
+            if (ioPos >= ioLen && !fillIoBuffer())
+                return wordLen > 0;
+            final char c = ioBuffer[ioPos];
+            ioPos++;
+            offset++;
+            if (isSeparator(c)) {
+                if (wordLen > 0)
+                    return true;
+                continue;
+            }
+            if (wordLen == 0)
+                wordStart = offset - 1;
+            if (wordLen == word.length)
+                word = ArrayUtil.grow(word, wordLen + 1);
+            word[wordLen++] = c;
+        }
+    }
+
+    private static boolean isVowel(final char c) {
+        return c == 'a' || c == 'e' || c == 'i' || c == 'o' || c == 'u';
+    }
+
+    private void processWord() {
+        // Find all the positions of vowel groups in the word
+        nV = 0;
+        boolean previousisvowel = false;
+        for (int i = 0; i < wordLen; i++) {
+            if (isVowel(word[i])) {
+                if (!previousisvowel) {
+                    if (nV == vStart.length) {
+                        vStart = ArrayUtil.grow(vStart, nV + 1);
+                        vEnd = ArrayUtil.grow(vEnd, nV + 1);
                     }
+                    vStart[nV] = i;
                 }
+                previousisvowel = true;
+            } else if (previousisvowel) {
+                vEnd[nV++] = i;
+                previousisvowel = false;
             }
         }
+        if (previousisvowel)
+            vEnd[nV++] = wordLen;
+        if (nV < 2) {
+            // If there is only one vowel, the whole word is a token
+            nGroups = 1;
+        } else {
+            nGroups = nV;
+            if (cutCodaN.length < nV) {
+                cutCodaN = new int[ArrayUtil.oversize(nV, Integer.BYTES)];
+                cutOnsetN = new int[cutCodaN.length];
+                cutCodas = new int[cutCodaN.length * MAX_CODAS * 3];
+                cutOnsets = new int[cutCodaN.length * MAX_ONSETS * 3];
+            }
+            for (int i = 0; i < nV - 1; i++)
+                computeCut(i, vEnd[i], vStart[i + 1]);
+        }
+        groupIdx = 0;
+        nAlts = 0;
+        altIdx = 0;
+    }
+
+    private void addCoda(final int cut, final int literal, final int from, final int to) {
+        final int idx = (cut * MAX_CODAS + cutCodaN[cut]) * 3;
+        cutCodas[idx] = literal;
+        cutCodas[idx + 1] = from;
+        cutCodas[idx + 2] = to;
+        cutCodaN[cut]++;
     }
 
-    private List<String[]> getPossibleCuts(char[] b, int start, int end) {
-        // For an intervocalic group of consonnants, give a list of two arrays:
+    private void addOnset(final int cut, final int literal, final int from, final int to) {
+        final int idx = (cut * MAX_ONSETS + cutOnsetN[cut]) * 3;
+        cutOnsets[idx] = literal;
+        cutOnsets[idx + 1] = from;
+        cutOnsets[idx + 2] = to;
+        cutOnsetN[cut]++;
+    }
+
+    private void computeCut(final int cut, final int start, final int end) {
+        // For an intervocalic group of consonnants, compute
         // first the list of possible codas of the last syllable
         // second the list of possible onsets of the next syllable
-        final String ch = String.copyValueOf(b, start, end-start);
-        if ("cfhjstdTDSvzw".indexOf(b[start]) != -1) {
+        cutCodaN[cut] = 0;
+        cutOnsetN[cut] = 0;
+        final char first = word[start];
+        if ("cfhjstdTDSvzw".indexOf(first) != -1) {
             // if starts with a letter that cannot be a suffix, then cut before
-            return List.of(new String[] { "" }, new String[] { ch });
-        }
-        if (ch.startsWith("G")) {
-            final String rest = String.copyValueOf(b, start+1, end-start-1);
-            return List.of(new String[] {"g", ""}, new String[] {"G"+rest});
+            addCoda(cut, L_NONE, start, start);
+            addOnset(cut, L_NONE, start, end);
+            return;
         }
-        if (ch.equals("N")) {
-            // this one is pretty nasty...
-            return List.of(new String[] {"N", "", "n"}, new String[] {"g", "N", "ng", "Ng"});
+        if (first == 'G') {
+            addCoda(cut, L_G, start, start);
+            addCoda(cut, L_NONE, start, start);
+            addOnset(cut, L_NONE, start, end);
+            return;
         }
-        if (ch.startsWith("N")) {
+        if (first == 'N') {
+            if (end == start + 1) {
+                // this one is pretty nasty...
+                addCoda(cut, L_NN, start, start);
+                addCoda(cut, L_NONE, start, start);
+                addCoda(cut, L_N, start, start);
+                addOnset(cut, L_G, start, start);
+                addOnset(cut, L_NN, start, start);
+                addOnset(cut, L_NG, start, start);
+                addOnset(cut, L_NNG, start, start);
+                return;
+            }
             // like "wangpo"
-            final String rest = String.copyValueOf(b, start+1, end-start-1);
-            return List.of(new String[] {"N", ""}, new String[] {rest, "N"+rest});
+            addCoda(cut, L_NN, start, start);
+            addCoda(cut, L_NONE, start, start);
+            addOnset(cut, L_NONE, start + 1, end);
+            addOnset(cut, L_NONE, start, end);
+            return;
         }
-        if (ch.startsWith("Y")) {
-            final String rest = String.copyValueOf(b, start+1, end-start-1);
-            return List.of(new String[] {"", "n" }, new String[] {"y"+rest, "Y"+rest});
+        if (first == 'Y') {
+            addCoda(cut, L_NONE, start, start);
+            addCoda(cut, L_N, start, start);
+            addOnset(cut, L_Y, start + 1, end);
+            addOnset(cut, L_NONE, start, end);
+            return;
         }
-        if (end == start+1) {
+        if (end == start + 1) {
             // if just 1 character that is ambiguously a start or end of a syllable:
-            return List.of(new String[] {"", ch}, new String[] {"", ch});
+            addCoda(cut, L_NONE, start, start);
+            addCoda(cut, L_NONE, start, end);
+            addOnset(cut, L_NONE, start, start);
+            addOnset(cut, L_NONE, start, end);
+            return;
         }
         // if a character is repeated, we cut between the repetition
         char previouschar = '.';
-        int pos = start;
-        while (pos < end) {
-            if (b[pos] == previouschar)
-                return List.of(new String[] { String.copyValueOf(b, start, pos-start) }, new String[] { String.copyValueOf(b, pos, end-pos) });
-            previouschar = b[pos];
-            pos += 1;
-        }
-        if (ch.startsWith("nG")) {
-            final String rest = String.copyValueOf(b, start+2, end-start-2);
-            //return Collections.singletonList(new String[] { "N", rest }); // Wangyal -> Wang gyal. Can't find an example with ngy = n gy
-            return List.of(new String[] {"N", "n"}, new String[] {"G"+rest});
+        for (int pos = start; pos < end; pos++) {
+            if (word[pos] == previouschar) {
+                addCoda(cut, L_NONE, start, pos);
+                addOnset(cut, L_NONE, pos, end);
+                return;
+            }
+            previouschar = word[pos];
+        }
+        if (first == 'n' && word[start + 1] == 'G') {
+            // Wangyal -> Wang gyal. Can't find an example with ngy = n gy
+            addCoda(cut, L_NN, start, start);
+            addCoda(cut, L_N, start, start);
+            addOnset(cut, L_NONE, start + 1, end);
+            return;
         }
         // for the rest we cut after the first (ex: palden)
-        return List.of(new String[] { String.copyValueOf(b, start, 1) }, new String[] { String.copyValueOf(b, start+1, end-start-1)});
-        
+        addCoda(cut, L_NONE, start, start + 1);
+        addOnset(cut, L_NONE, start + 1, end);
     }
 
-    private List<List<String>> processWord(char[] b, int start, int end) {
-        List<int[]> vowelPositions = new ArrayList<>();
-        
-        // Find all the positions of vowels in the word
-        int vowelgroupstart = -1;
-        boolean previousisvowel = false;
-        for (int i = start; i < end; i++) {
-            if ("aeiou".indexOf(b[i]) != -1) {
-                if (!previousisvowel)
-                    vowelgroupstart = i;
-                previousisvowel = true;
-            } else {
-                if (previousisvowel) {
-                    final int[] vowelPosition = new int[2];
-                    vowelPosition[0] = vowelgroupstart;
-                    vowelPosition[1] = i;
-                    vowelPositions.add(vowelPosition);
-                    previousisvowel = false;
-                }
+    // computes the alternatives for syllable group g
+    private void fillGroup(final int g) {
+        nAlts = 0;
+        altIdx = 0;
+        computeAlternatives(g);
+        if (vocabulary != null)
+            pruneAlternatives();
+        if (nAlts > maxAlternatives)
+            nAlts = maxAlternatives;
+    }
+
+    // keeps only the alternatives found in the vocabulary, if there are any
+    private void pruneAlternatives() {
+        int kept = 0;
+        for (int i = 0; i < nAlts; i++) {
+            if (vocabulary.contains(alts, altStart[i], altLen[i])) {
+                altStart[kept] = altStart[i];
+                altLen[kept] = altLen[i];
+                kept++;
             }
         }
-        if (previousisvowel) {
-            final int[] vowelPosition = new int[2];
-            vowelPosition[0] = vowelgroupstart;
-            vowelPosition[1] = end;
-            vowelPositions.add(vowelPosition);
-        }
+        if (kept > 0)
+            nAlts = kept;
+        else
+            pruneFallbacks.increment();
+    }
 
-        int vowelCount = vowelPositions.size();
-        
-        if (vowelCount < 2) {
-            // If there is only one vowel, return the whole word as a token
-            return List.of(List.of(String.copyValueOf(b, start, end-start)));
+    private void computeAlternatives(final int g) {
+        if (nV < 2) {
+            startAlt();
+            appendSlice(0, wordLen);
+            finishAlt();
+            return;
+        }
+        // the codas come from the cut after the group, the onsets from the cut before,
+        // except at the edges of the word
+        final int[] codas, onsets;
+        final int codaBase, nCodas, onsetBase, nOnsets;
+        if (g == nV - 1) {
+            codas = null;
+            codaBase = 0;
+            nCodas = 1;
         } else {
-            // we initialize the list of possible onsets to what's before the first vowel group + the first vowel group
-            List<String> possibleOnsets = List.of(String.copyValueOf(b, start, vowelPositions.get(0)[1]-start));
-            final List<List<String>> syllableGroups = new ArrayList<>(); // the final result
-            
-            for (int i = 0; i < vowelCount - 1; i++) {
-                final int intervowel_start = vowelPositions.get(i)[1];
-                final int intervowel_end = vowelPositions.get(i + 1)[0];
-                
-                if (intervowel_start <= intervowel_end) {
-                    // Get the substring between vowels
-                    final List<String[]> possibleCuts = getPossibleCuts(b, intervowel_start, intervowel_end);
-                    List<String> syllableGroup = new ArrayList<>();
-
-                    for (final String possibleCoda : possibleCuts.get(0)) {
-                        // for all possible cuts, first look at all possible onsets and finish the previous syllables
-                        for (final String possibleOnset : possibleOnsets) {
-                            syllableGroup.add(possibleOnset+possibleCoda);
-                        }
-                    }
-                    syllableGroups.add(syllableGroup);
-                    
-                    // if we're at the end, just finish:
-                    if (i == vowelCount -2) {
-                        syllableGroup = new ArrayList<>();
-                        final String ending = String.copyValueOf(b, vowelPositions.get(i + 1)[0], end-vowelPositions.get(i + 1)[0]);
-                        for (String possibleOnset : possibleCuts.get(1)) {
-                            syllableGroup.add(possibleOnset+ending);
-                        }
-                        syllableGroups.add(syllableGroup);
-                        break;
-                    }
-                    
-                    // otherwise create the new list of possible onsets:
-                    possibleOnsets = new ArrayList<>();
-                    final String afternextvowel = String.copyValueOf(b, vowelPositions.get(i + 1)[0], vowelPositions.get(i + 1)[1]-vowelPositions.get(i + 1)[0]);
-                    for (String possibleOnset : possibleCuts.get(1)) {
-                        // for all possible cuts, create the new set of possible onsets
-                        possibleOnsets.add(possibleOnset+afternextvowel);
-                    }
+            codas = cutCodas;
+            codaBase = g * MAX_CODAS * 3;
+            nCodas = cutCodaN[g];
+        }
+        if (g == 0) {
+            onsets = null;
+            onsetBase = 0;
+            nOnsets = 1;
+        } else {
+            onsets = cutOnsets;
+            onsetBase = (g - 1) * MAX_ONSETS * 3;
+            nOnsets = cutOnsetN[g - 1];
+        }
+        for (int c = 0; c < nCodas; c++) {
+            for (int o = 0; o < nOnsets; o++) {
+                startAlt();
+                if (onsets == null) {
+                    appendSlice(0, vStart[0]);
+                } else {
+                    final int idx = onsetBase + o * 3;
+                    appendPart(onsets[idx], onsets[idx + 1], onsets[idx + 2]);
+                }
+                appendSlice(vStart[g], vEnd[g]);
+                if (codas == null) {
+                    appendSlice(vEnd[g], wordLen);
+                } else {
+                    final int idx = codaBase + c * 3;
+                    appendPart(codas[idx], codas[idx + 1], codas[idx + 2]);
                 }
+                finishAlt();
             }
-            return syllableGroups;
         }
     }
-    
-    // TODO: test with Gomnyam
+
+    private int altEnd() {
+        return nAlts == 0 ? 0 : altStart[nAlts - 1] + altLen[nAlts - 1];
+    }
+
+    private void startAlt() {
+        if (nAlts == altStart.length) {
+            altStart = ArrayUtil.grow(altStart, nAlts + 1);
+            altLen = ArrayUtil.grow(altLen, altStart.length);
+        }
+        altStart[nAlts] = altEnd();
+        altLen[nAlts] = 0;
+    }
+
+    private void append(final char[] src, final int from, final int len) {
+        final int pos = altStart[nAlts] + altLen[nAlts];
+        if (pos + len > alts.length)
+            alts = ArrayUtil.grow(alts, pos + len);
+        System.arraycopy(src, from, alts, pos, len);
+        altLen[nAlts] += len;
+    }
+
+    private void appendSlice(final int from, final int to) {
+        append(word, from, to - from);
+    }
+
+    private void appendPart(final int literal, final int from, final int to) {
+        final char[] lit = LITERALS[literal];
+        append(lit, 0, lit.length);
+        appendSlice(from, to);
+    }
+
+    private void finishAlt() {
+        final int start = altStart[nAlts];
+        final int len = altLen[nAlts];
+        final int end = start + len;
+        /*
+         * Important hack: we transform al and an into el and en. We can't do that earlier
+         * because we don't want to change "pala" ("pa" "la") into "pela" ("pe" "la"). We need
+         * to do it at a stage where we need if the l is suffix or not. That stage is here.
+         */
+        if (len >= 2 && alts[end - 2] == 'a' && (alts[end - 1] == 'l' || alts[end - 1] == 'n'))
+            alts[end - 2] = 'e';
+        if (len >= 2 && alts[start + 1] == 'i') {
+            if (alts[start] == 'G')
+                alts[start] = 'g';
+            else if (alts[start] == 'Y')
+                alts[start] = 'n';
+        }
+        boolean hasZ = false;
+        for (int i = start; i < end; i++) {
+            if (alts[i] == 'z') {
+                hasZ = true;
+                break;
+            }
+        }
+        nAlts++;
+        if (!hasZ)
+            return;
+        // z can be either T (ts) or s
+        startAlt();
+        append(alts, start, len);
+        final int sStart = altStart[nAlts];
+        for (int i = 0; i < len; i++) {
+            if (alts[start + i] == 'z') {
+                alts[start + i] = 'T';
+                alts[sStart + i] = 's';
+            }
+        }
+        nAlts++;
+    }
+
+    @Override
+    public void end() throws IOException {
+        super.end();
+        final int finalOffset = correctOffset(offset);
+        offsetAttr.setOffset(finalOffset, finalOffset);
+    }
 
     @Override
     public void reset() throws IOException {
         super.reset();
-        tokens.clear();
-        tokenIndex = 0;
+        ioLen = 0;
+        ioPos = 0;
+        offset = 0;
+        inputDone = false;
+        wordLen = 0;
+        wordStart = 0;
+        nV = 0;
+        nGroups = 0;
+        groupIdx = 0;
+        nAlts = 0;
+        altIdx = 0;
     }
 }
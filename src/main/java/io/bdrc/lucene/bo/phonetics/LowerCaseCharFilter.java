@@ -1,10 +1,14 @@
 package io.bdrc.lucene.bo.phonetics;
 
 import java.io.Reader;
+import java.util.function.BiConsumer;
 
 import org.apache.lucene.analysis.charfilter.MappingCharFilter;
 import org.apache.lucene.analysis.charfilter.NormalizeCharMap;
 
+import io.bdrc.lucene.bo.metrics.ResourceFootprint;
+import io.bdrc.lucene.bo.metrics.ResourceLoadEvent;
+
 public class LowerCaseCharFilter extends MappingCharFilter {
     
     /*
@@ -12,47 +16,67 @@ public class LowerCaseCharFilter extends MappingCharFilter {
      * so we create our own. It's very basic and only handles the letters we need (no the whole Unicode range)
      */
     
-    private static NormalizeCharMap cache = null;
+    // built on first use, the JVM class initialization publishes it safely to all threads
+    private static final class Cache {
+        static final NormalizeCharMap map = build();
+    }
 
     public LowerCaseCharFilter(final Reader in) {
         super(getCharMapCached(), in);
     }
     
     public static NormalizeCharMap getCharMapCached() {
-        if (cache == null)
-            cache = getNormalizeCharMap();
-        return cache;
+        return Cache.map;
+    }
+    
+    private static NormalizeCharMap build() {
+        final ResourceLoadEvent event = ResourceLoadEvent.start("charmap", "LowerCaseCharFilter");
+        final NormalizeCharMap.Builder builder = new NormalizeCharMap.Builder();
+        final int[] size = {0};
+        addMappings((from, to) -> {
+            builder.add(from, to);
+            size[0]++;
+        });
+        final NormalizeCharMap res = builder.build();
+        event.finish("LowerCaseCharFilter.addMappings", size[0]);
+        ResourceFootprint.register("LowerCaseCharFilter", "charmap", res, size[0]);
+        return res;
     }
     
     public final static NormalizeCharMap getNormalizeCharMap() {
-        NormalizeCharMap.Builder builder = new NormalizeCharMap.Builder();
-        builder.add("A", "a");
-        builder.add("Ä", "a");
-        builder.add("B", "b");
-        builder.add("C", "c");
-        builder.add("D", "d");
-        builder.add("E", "e");
-        builder.add("G", "g");
-        builder.add("H", "h");
-        builder.add("I", "i");
-        builder.add("J", "j");
-        builder.add("K", "k");
-        builder.add("L", "l");
-        builder.add("M", "m");
-        builder.add("N", "n");
-        builder.add("O", "o");
-        builder.add("Ö", "o");
-        builder.add("P", "p");
-        builder.add("Q", "q");
-        builder.add("R", "r");
-        builder.add("S", "s");
-        builder.add("T", "t");
-        builder.add("U", "u");
-        builder.add("Ü", "u");
-        builder.add("V", "v");
-        builder.add("W", "w");
-        builder.add("Y", "y");
-        builder.add("Z", "z");
-        return builder.build(); 
+        final NormalizeCharMap.Builder builder = new NormalizeCharMap.Builder();
+        addMappings(builder::add);
+        return builder.build();
+    }
+    
+    // the mappings, also compiled by EnglishPhoneticCharFilter
+    public final static void addMappings(final BiConsumer<String,String> mapping) {
+        mapping.accept("A", "a");
+        mapping.accept("Ä", "a");
+        mapping.accept("B", "b");
+        mapping.accept("C", "c");
+        mapping.accept("D", "d");
+        mapping.accept("E", "e");
+        mapping.accept("G", "g");
+        mapping.accept("H", "h");
+        mapping.accept("I", "i");
+        mapping.accept("J", "j");
+        mapping.accept("K", "k");
+        mapping.accept("L", "l");
+        mapping.accept("M", "m");
+        mapping.accept("N", "n");
+        mapping.accept("O", "o");
+        mapping.accept("Ö", "o");
+        mapping.accept("P", "p");
+        mapping.accept("Q", "q");
+        mapping.accept("R", "r");
+        mapping.accept("S", "s");
+        mapping.accept("T", "t");
+        mapping.accept("U", "u");
+        mapping.accept("Ü", "u");
+        mapping.accept("V", "v");
+        mapping.accept("W", "w");
+        mapping.accept("Y", "y");
+        mapping.accept("Z", "z");
     }
 }
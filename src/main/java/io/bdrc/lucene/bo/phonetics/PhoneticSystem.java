@@ -1,34 +1,52 @@
 package io.bdrc.lucene.bo.phonetics;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+import org.apache.lucene.analysis.CharArrayMap;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 
-import io.bdrc.lucene.bo.phonetics.BasicTrie.TrieMatch;;
+import io.bdrc.lucene.bo.CommonHelpers;
+import io.bdrc.lucene.bo.phonetics.BasicTrie.TrieMatch;
+import io.bdrc.lucene.bo.phonetics.BasicTrie.TrieNode;
 
 public class PhoneticSystem {
 
+    // the lookups of getPhonetics() and getSktPhonetics() must not allocate, they
+    // are called for each token
     protected BasicTrie onsetTrie;
-    protected Map<String,char[]> vowelCodaRoot;
+    protected CharArrayMap<char[]> vowelCodaRoot;
     protected Map<Character,String> sktPhonetic;
+    // sktPhonetic for the Tibetan block, indexed by c - 0x0F00
+    private final char[][] sktTable = new char[0x100][];
     private static final char[] wa = "w".toCharArray();
     private static final char[] ga = "g".toCharArray();
     private static final char[] na = "n".toCharArray();
     private char[] implicitA;
+    // the phonetics of the syllables by id (see CommonHelpers.syllableId()), each filled on first use
+    private final AtomicReferenceArray<char[]> byId = new AtomicReferenceArray<>(CommonHelpers.nbSyllableIds());
+    private static final char[] NO_PHONETICS = new char[0];
     
     PhoneticSystem(final String implicitA) {
         this.implicitA = implicitA.toCharArray();
     }
 
+    protected void putSkt(final char c, final String phonetic) {
+        this.sktPhonetic.put(c, phonetic);
+        if (c >= '\u0F00' && c <= '\u0FFF')
+            this.sktTable[c - 0x0F00] = phonetic.toCharArray();
+    }
+
     // Convenience function, not used in production
     public String getPhonetics(final String s) {
         final char[] b = s.toCharArray();
         final TrieMatch onset = onsetTrie.findLongestMatch(b, b.length);
         if (onset.nbchar == 0)
             return null;
-        // could be optimized by not using a string here... but it should be fine
-        final String secondPart = String.copyValueOf(b, onset.nbchar, b.length);
-        final char[] vowelCodaPhonetic = vowelCodaRoot.getOrDefault(secondPart, null);
+        final char[] vowelCodaPhonetic = vowelCodaRoot.get(b, onset.nbchar, b.length - onset.nbchar);
         if (vowelCodaPhonetic == null)
             return null;
         return String.copyValueOf(onset.phonetic) + String.copyValueOf(vowelCodaPhonetic);
@@ -41,17 +59,16 @@ public class PhoneticSystem {
         if (len == 0)
             return false;
         // Find the longest onset match at the beginning of the string
-        final TrieMatch onset = onsetTrie.findLongestMatch(b, len);
-        if (onset.nbchar == 0)
+        final TrieNode onset = onsetTrie.findLongestMatchNode(b, len);
+        if (onset == null)
             return false;
-        // could be optimized by not using a string here... but it should be fine
-        final String secondPart = String.copyValueOf(b, onset.nbchar, len-onset.nbchar);
-        final char[] vowelCodaPhonetic = vowelCodaRoot.getOrDefault(secondPart, null);
+        final int onsetLen = onset.getDepth();
+        final char[] vowelCodaPhonetic = vowelCodaRoot.get(b, onsetLen, len - onsetLen);
         if (vowelCodaPhonetic == null)
             return false;
-        char[] phonetic = onset.phonetic;
+        char[] phonetic = onset.getPhonetic();
         // hack: dba = wa (but dbu != wu), this is the only case that doesn't fit in this algorithm
-        if (onset.nbchar == 2 && b[0] == 'ད' && b[1] == 'བ' && len > 2 && b[2] != '\u0f72' && b[2] != '\u0f74' && b[2] != '\u0f7a' && b[2] != '\u0f7c')
+        if (onsetLen == 2 && b[0] == 'ད' && b[1] == 'བ' && len > 2 && b[2] != '\u0f72' && b[2] != '\u0f74' && b[2] != '\u0f7a' && b[2] != '\u0f7c')
             phonetic = wa;
         // Gi -> gi, Ni -> ni
         if (phonetic.length == 1 && vowelCodaPhonetic.length > 0 && vowelCodaPhonetic[0] == 'i') {
@@ -70,34 +87,81 @@ public class PhoneticSystem {
         return true;
     }
     
+    /**
+     * Same as {@link #getPhonetics(CharTermAttribute)} for a syllable with an id,
+     * the phonetics of each id are only computed once.
+     * 
+     * @param termAtt
+     *            the term, replaced by its phonetics
+     * @param syllableId
+     *            the id of the term, from {@link CommonHelpers#syllableId}
+     * @return false if the term has no phonetics
+     */
+    public boolean getPhonetics(final CharTermAttribute termAtt, final int syllableId) {
+        char[] phonetic = byId.get(syllableId);
+        if (phonetic == null) {
+            phonetic = getPhonetics(termAtt) ? Arrays.copyOf(termAtt.buffer(), termAtt.length()) : NO_PHONETICS;
+            byId.set(syllableId, phonetic);
+            return phonetic != NO_PHONETICS;
+        }
+        if (phonetic == NO_PHONETICS)
+            return false;
+        termAtt.copyBuffer(phonetic, 0, phonetic.length);
+        return true;
+    }
+
+    // number of entries in the tables (onsets, vowel / codas and Sanskrit characters)
+    public int size() {
+        return onsetTrie.keys().size() + vowelCodaRoot.size() + sktPhonetic.size();
+    }
+
+    // the characters that have a phonetic value in Sanskrit stacks
+    public Set<Character> getSktCharacters() {
+        return Collections.unmodifiableSet(sktPhonetic.keySet());
+    }
+
+    private char[] sktPhonetic(final char c) {
+        return (c >= '\u0F00' && c <= '\u0FFF') ? sktTable[c - 0x0F00] : null;
+    }
+
     public boolean getSktPhonetics(final CharTermAttribute termAtt) {
         char[] b = termAtt.buffer();
         final int len = termAtt.length();
         if (len == 0)
             return false;
+        // the phonetic is written after the syllable in the term buffer, then moved
+        // to the start
+        int outLen = 0;
+        for (int i = 0 ; i < len ; i++) {
+            final char[] p = sktPhonetic(b[i]);
+            outLen += p == null ? 1 : p.length;
+        }
+        b = termAtt.resizeBuffer(len + outLen + implicitA.length + 1);
         // substitute character by character
-        final StringBuilder phonetic = new StringBuilder();
+        int n = len;
         for (int i = 0 ; i < len ; i++) {
-            char c = b[i];
-            if (sktPhonetic.containsKey(c)) {
-                phonetic.append(sktPhonetic.get(c));
+            final char c = b[i];
+            final char[] p = sktPhonetic(c);
+            if (p != null) {
+                System.arraycopy(p, 0, b, n, p.length);
+                n += p.length;
             }  else {
-                phonetic.append(c);
+                b[n++] = c;
             }
         }
-        if (phonetic.length() == 0 || "ieouM".indexOf(phonetic.charAt(phonetic.length() - 1)) == -1)
-            phonetic.append(this.implicitA);
-        else if (phonetic.length() > 1 && phonetic.charAt(phonetic.length() - 1) == 'M' && "aieou".indexOf(phonetic.charAt(phonetic.length() - 2)) == -1) {
+        final char last = n > len ? b[n - 1] : 0;
+        if (n == len || "ieouM".indexOf(last) == -1) {
+            System.arraycopy(implicitA, 0, b, n, implicitA.length);
+            n += implicitA.length;
+        } else if (n - len > 1 && last == 'M' && "aieou".indexOf(b[n - 2]) == -1) {
             // tM -> taM
-            phonetic.delete(phonetic.length()-1, phonetic.length());
-            phonetic.append("am");
-        } else if (phonetic.charAt(phonetic.length() - 1) == 'M') {
-            phonetic.replace(phonetic.length() - 1, phonetic.length(), "m");
+            b[n - 1] = 'a';
+            b[n++] = 'm';
+        } else if (last == 'M') {
+            b[n - 1] = 'm';
         }
-        final int newLength = phonetic.length();
-        if (b.length < newLength)
-            b = termAtt.resizeBuffer(newLength);
-        phonetic.getChars(0, newLength, b, 0);
+        final int newLength = n - len;
+        System.arraycopy(b, len, b, 0, newLength);
         termAtt.setLength(newLength);
         return true;
     }
@@ -1,28 +1,132 @@
 package io.bdrc.lucene.bo.phonetics;
 
 import java.util.HashMap;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.lucene.analysis.CharArrayMap;
+
+import io.bdrc.lucene.bo.metrics.ResourceFootprint;
+import io.bdrc.lucene.bo.metrics.ResourceLoadEvent;
 
 public class PhoneticSystemEnglish extends PhoneticSystem {
     
-    public boolean ignoreRetroflex = true;
-    public boolean alntoeln = true;
-    public boolean foldnasals = false;
+    // fold retroflex onsets (D) into d
+    public final boolean ignoreRetroflex;
+    // ä is rendered as e rather than a
+    public final boolean alntoeln;
+    // fold m and N into n in the vowel + coda part
+    public final boolean foldnasals;
     
-    public void addOnset(final String onset, String phonetic, final boolean canbefinal) {
+    /*
+     * Immutable description of a variant of the phonetic system, see
+     * PhoneticSystemStandardTibetan.Options
+     */
+    public static final class Options {
+        public final boolean ignoreRetroflex;
+        public final boolean alntoeln;
+        public final boolean foldnasals;
+        
+        public static final Options DEFAULT = builder().build();
+        
+        private Options(final Builder b) {
+            this.ignoreRetroflex = b.ignoreRetroflex;
+            this.alntoeln = b.alntoeln;
+            this.foldnasals = b.foldnasals;
+        }
+        
+        public static Builder builder() {
+            return new Builder();
+        }
+        
+        public Builder toBuilder() {
+            return new Builder()
+                    .ignoreRetroflex(ignoreRetroflex)
+                    .alntoeln(alntoeln)
+                    .foldnasals(foldnasals);
+        }
+        
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Options))
+                return false;
+            final Options other = (Options) o;
+            return ignoreRetroflex == other.ignoreRetroflex
+                    && alntoeln == other.alntoeln
+                    && foldnasals == other.foldnasals;
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hash(ignoreRetroflex, alntoeln, foldnasals);
+        }
+        
+        @Override
+        public String toString() {
+            return "Options[ignoreRetroflex=" + ignoreRetroflex
+                    + ", alntoeln=" + alntoeln
+                    + ", foldnasals=" + foldnasals + "]";
+        }
+        
+        public static final class Builder {
+            private boolean ignoreRetroflex = true;
+            private boolean alntoeln = true;
+            private boolean foldnasals = false;
+            
+            private Builder() {}
+            
+            public Builder ignoreRetroflex(final boolean v) {
+                this.ignoreRetroflex = v;
+                return this;
+            }
+            
+            public Builder alntoeln(final boolean v) {
+                this.alntoeln = v;
+                return this;
+            }
+            
+            public Builder foldnasals(final boolean v) {
+                this.foldnasals = v;
+                return this;
+            }
+            
+            public Options build() {
+                return new Options(this);
+            }
+        }
+    }
+    
+    private static final ConcurrentMap<Options,PhoneticSystemEnglish> systems = new ConcurrentHashMap<>();
+    
+    // returns the compiled system for the options, building it on first use
+    public static PhoneticSystemEnglish get(final Options options) {
+        return systems.computeIfAbsent(Objects.requireNonNull(options), o -> {
+            final ResourceLoadEvent event = ResourceLoadEvent.start("phonetic", "PhoneticSystemEnglish");
+            final PhoneticSystemEnglish res = new PhoneticSystemEnglish(o);
+            event.finish(o.toString(), res.size());
+            ResourceFootprint.register("PhoneticSystemEnglish(" + o + ")", "phonetic", res, res.size());
+            return res;
+        });
+    }
+    
+    protected void addOnset(final String onset, String phonetic, final boolean canbefinal) {
         if (this.ignoreRetroflex && phonetic.startsWith("D"))
             phonetic = "d";
         this.onsetTrie.add(onset,  phonetic, canbefinal);
     }
     
-    public void addSkt(final char c, String sktPhonetic) {
-        this.sktPhonetic.put(c, sktPhonetic);
+    protected void addSkt(final char c, String sktPhonetic) {
+        this.putSkt(c, sktPhonetic);
     }
     
-    public void addOnset(final String onset, final String phonetic) {
+    protected void addOnset(final String onset, final String phonetic) {
         this.addOnset(onset, phonetic, true);
     }
     
-    public void addVowelCoda(final String vowelCoda, String phonetic) {
+    protected void addVowelCoda(final String vowelCoda, String phonetic) {
         if (phonetic.contains("ä")) {
             if (this.alntoeln)
                 phonetic = phonetic.replace("ä", "e");
@@ -36,10 +140,21 @@ public class PhoneticSystemEnglish extends PhoneticSystem {
         this.vowelCodaRoot.put(vowelCoda, phonetic.toCharArray());
     }
     
-    public static final PhoneticSystemEnglish INSTANCE = new PhoneticSystemEnglish();
+    public final Options options;
     
+    public static final PhoneticSystemEnglish INSTANCE = get(Options.DEFAULT);
+    
+    // prefer INSTANCE or get(), which share the compiled tables
     public PhoneticSystemEnglish() {
+        this(Options.DEFAULT);
+    }
+    
+    public PhoneticSystemEnglish(final Options options) {
         super("a");
+        this.options = options;
+        this.ignoreRetroflex = options.ignoreRetroflex;
+        this.alntoeln = options.alntoeln;
+        this.foldnasals = options.foldnasals;
         // we ignore tones, aspiration, voicing
         // gy = G
         // ng = N
@@ -284,7 +399,7 @@ public class PhoneticSystemEnglish extends PhoneticSystem {
         this.addOnset("བསྭ", "s");
         this.addOnset("ཧྭ", "h");
         
-        this.vowelCodaRoot = new HashMap<>();
+        this.vowelCodaRoot = new CharArrayMap<>(512, false);
         this.addVowelCoda("", "a");
         this.addVowelCoda("འ", "a");
         this.addVowelCoda("ག", "ag");
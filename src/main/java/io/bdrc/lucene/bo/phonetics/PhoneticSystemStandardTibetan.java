@@ -1,6 +1,14 @@
 package io.bdrc.lucene.bo.phonetics;
 
 import java.util.HashMap;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.lucene.analysis.CharArrayMap;
+
+import io.bdrc.lucene.bo.metrics.ResourceFootprint;
+import io.bdrc.lucene.bo.metrics.ResourceLoadEvent;
 
 public class PhoneticSystemStandardTibetan extends PhoneticSystem {
     
@@ -15,24 +23,164 @@ public class PhoneticSystemStandardTibetan extends PhoneticSystem {
      */
     
     // pre-nasalization is probably too subtle for our use case
-    public boolean ignoreInitialNasalization = true;
+    public final boolean ignoreInitialNasalization;
     // in a word, syllables after the first have no tone and thus are easy to confuse
     // so we ignore tones, especially since we don't segment into words most of the time
-    public boolean ignoreTone = true;
+    public final boolean ignoreTone;
     // in a word, syllables after the first often loose their aspiration. Also low tones
     // often lose their aspiration
-    public boolean ignoreAspiration = true;
+    public final boolean ignoreAspiration;
     // contour tone is too subtle for what we're aiming at
-    public boolean ignoreContourTone = true;
+    public final boolean ignoreContourTone;
     // sa and da have a little influence on the pronounciation (beyond the vowel change)
     // but our intuition is that that too is also too subtle
-    public boolean ignoreSDSuffix = true;
+    public final boolean ignoreSDSuffix;
     // also ignore long / short vowels
-    public boolean ignoreLengthener = true;
+    public final boolean ignoreLengthener;
     // fold ä into e
-    public boolean foldAE = true; 
+    public final boolean foldAE;
+    
+    /*
+     * Immutable description of a variant of the phonetic system. The flags only
+     * matter when the tables are built, so a system is compiled once per Options
+     * value and shared through get(Options).
+     */
+    public static final class Options {
+        public final boolean ignoreInitialNasalization;
+        public final boolean ignoreTone;
+        public final boolean ignoreAspiration;
+        public final boolean ignoreContourTone;
+        public final boolean ignoreSDSuffix;
+        public final boolean ignoreLengthener;
+        public final boolean foldAE;
+        
+        // the defaults are the loosest variant, used by INSTANCE
+        public static final Options DEFAULT = builder().build();
+        
+        private Options(final Builder b) {
+            this.ignoreInitialNasalization = b.ignoreInitialNasalization;
+            this.ignoreTone = b.ignoreTone;
+            this.ignoreAspiration = b.ignoreAspiration;
+            this.ignoreContourTone = b.ignoreContourTone;
+            this.ignoreSDSuffix = b.ignoreSDSuffix;
+            this.ignoreLengthener = b.ignoreLengthener;
+            this.foldAE = b.foldAE;
+        }
+        
+        public static Builder builder() {
+            return new Builder();
+        }
+        
+        public Builder toBuilder() {
+            return new Builder()
+                    .ignoreInitialNasalization(ignoreInitialNasalization)
+                    .ignoreTone(ignoreTone)
+                    .ignoreAspiration(ignoreAspiration)
+                    .ignoreContourTone(ignoreContourTone)
+                    .ignoreSDSuffix(ignoreSDSuffix)
+                    .ignoreLengthener(ignoreLengthener)
+                    .foldAE(foldAE);
+        }
+        
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Options))
+                return false;
+            final Options other = (Options) o;
+            return ignoreInitialNasalization == other.ignoreInitialNasalization
+                    && ignoreTone == other.ignoreTone
+                    && ignoreAspiration == other.ignoreAspiration
+                    && ignoreContourTone == other.ignoreContourTone
+                    && ignoreSDSuffix == other.ignoreSDSuffix
+                    && ignoreLengthener == other.ignoreLengthener
+                    && foldAE == other.foldAE;
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hash(ignoreInitialNasalization, ignoreTone, ignoreAspiration,
+                    ignoreContourTone, ignoreSDSuffix, ignoreLengthener, foldAE);
+        }
+        
+        @Override
+        public String toString() {
+            return "Options[ignoreInitialNasalization=" + ignoreInitialNasalization
+                    + ", ignoreTone=" + ignoreTone
+                    + ", ignoreAspiration=" + ignoreAspiration
+                    + ", ignoreContourTone=" + ignoreContourTone
+                    + ", ignoreSDSuffix=" + ignoreSDSuffix
+                    + ", ignoreLengthener=" + ignoreLengthener
+                    + ", foldAE=" + foldAE + "]";
+        }
+        
+        public static final class Builder {
+            private boolean ignoreInitialNasalization = true;
+            private boolean ignoreTone = true;
+            private boolean ignoreAspiration = true;
+            private boolean ignoreContourTone = true;
+            private boolean ignoreSDSuffix = true;
+            private boolean ignoreLengthener = true;
+            private boolean foldAE = true;
+            
+            private Builder() {}
+            
+            public Builder ignoreInitialNasalization(final boolean v) {
+                this.ignoreInitialNasalization = v;
+                return this;
+            }
+            
+            public Builder ignoreTone(final boolean v) {
+                this.ignoreTone = v;
+                return this;
+            }
+            
+            public Builder ignoreAspiration(final boolean v) {
+                this.ignoreAspiration = v;
+                return this;
+            }
+            
+            public Builder ignoreContourTone(final boolean v) {
+                this.ignoreContourTone = v;
+                return this;
+            }
+            
+            public Builder ignoreSDSuffix(final boolean v) {
+                this.ignoreSDSuffix = v;
+                return this;
+            }
+            
+            public Builder ignoreLengthener(final boolean v) {
+                this.ignoreLengthener = v;
+                return this;
+            }
+            
+            public Builder foldAE(final boolean v) {
+                this.foldAE = v;
+                return this;
+            }
+            
+            public Options build() {
+                return new Options(this);
+            }
+        }
+    }
+    
+    private static final ConcurrentMap<Options,PhoneticSystemStandardTibetan> systems = new ConcurrentHashMap<>();
     
-    public void addOnset(final String onset, String phonetic, final boolean canbefinal) {
+    // returns the compiled system for the options, building it on first use
+    public static PhoneticSystemStandardTibetan get(final Options options) {
+        return systems.computeIfAbsent(Objects.requireNonNull(options), o -> {
+            final ResourceLoadEvent event = ResourceLoadEvent.start("phonetic", "PhoneticSystemStandardTibetan");
+            final PhoneticSystemStandardTibetan res = new PhoneticSystemStandardTibetan(o);
+            event.finish(o.toString(), res.size());
+            ResourceFootprint.register("PhoneticSystemStandardTibetan(" + o + ")", "phonetic", res, res.size());
+            return res;
+        });
+    }
+    
+    protected void addOnset(final String onset, String phonetic, final boolean canbefinal) {
         if (this.ignoreInitialNasalization && phonetic.startsWith("~"))
             phonetic = phonetic.substring(1);
         if (this.ignoreTone)
@@ -42,11 +190,11 @@ public class PhoneticSystemStandardTibetan extends PhoneticSystem {
         this.onsetTrie.add(onset,  phonetic, canbefinal);
     }
     
-    public void addOnset(final String onset, final String phonetic) {
+    protected void addOnset(final String onset, final String phonetic) {
         this.addOnset(onset, phonetic, true);
     }
     
-    public void addVowelCoda(final String vowelCoda, String phonetic) {
+    protected void addVowelCoda(final String vowelCoda, String phonetic) {
         if (this.ignoreContourTone && phonetic.endsWith("~"))
             phonetic = phonetic.substring(0, phonetic.length()-1);
         if (this.ignoreSDSuffix && phonetic.endsWith("'"))
@@ -58,14 +206,29 @@ public class PhoneticSystemStandardTibetan extends PhoneticSystem {
         this.vowelCodaRoot.put(vowelCoda, phonetic.toCharArray());
     }
     
-    public void addSkt(final char c, String sktPhonetic) {
-        this.sktPhonetic.put(c, sktPhonetic);
+    protected void addSkt(final char c, String sktPhonetic) {
+        this.putSkt(c, sktPhonetic);
     }
     
-    public static final PhoneticSystemStandardTibetan INSTANCE = new PhoneticSystemStandardTibetan();
+    public final Options options;
+    
+    public static final PhoneticSystemStandardTibetan INSTANCE = get(Options.DEFAULT);
     
+    // prefer INSTANCE or get(), which share the compiled tables
     public PhoneticSystemStandardTibetan() {
+        this(Options.DEFAULT);
+    }
+    
+    public PhoneticSystemStandardTibetan(final Options options) {
         super("");
+        this.options = options;
+        this.ignoreInitialNasalization = options.ignoreInitialNasalization;
+        this.ignoreTone = options.ignoreTone;
+        this.ignoreAspiration = options.ignoreAspiration;
+        this.ignoreContourTone = options.ignoreContourTone;
+        this.ignoreSDSuffix = options.ignoreSDSuffix;
+        this.ignoreLengthener = options.ignoreLengthener;
+        this.foldAE = options.foldAE;
         this.onsetTrie = new BasicTrie();
         this.addOnset("ཀ", "k+");
         this.addOnset("ཀྱ", "ky+");
@@ -304,7 +467,7 @@ public class PhoneticSystemStandardTibetan extends PhoneticSystem {
         this.addOnset("བསྭ", "s+");
         this.addOnset("ཧྭ", "h+");
         
-        this.vowelCodaRoot = new HashMap<>();
+        this.vowelCodaRoot = new CharArrayMap<>(512, false);
         this.addVowelCoda("", "a");
         this.addVowelCoda("འ", "a:");
         this.addVowelCoda("ག", "ak");
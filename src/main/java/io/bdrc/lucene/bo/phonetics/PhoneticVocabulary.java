@@ -0,0 +1,127 @@
+package io.bdrc.lucene.bo.phonetics;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.lucene.analysis.CharArraySet;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttributeImpl;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiTerms;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.BytesRef;
+
+public final class PhoneticVocabulary {
+
+    /*
+     * Set of the phonetic syllables that can be found in a phonetic field, used by
+     * EnglishPhoneticTokenizer to drop the alternatives of a Latin query that cannot match.
+     *
+     * It can be derived from a phonetic system (all the onset + vowel / coda combinations
+     * and the Sanskrit stacks of up to 3 consonants) or read from the terms of an indexed
+     * field, which is exact.
+     */
+
+    private final CharArraySet syllables;
+
+    public PhoneticVocabulary(final Collection<String> syllables) {
+        this.syllables = CharArraySet.unmodifiableSet(new CharArraySet(syllables, false));
+    }
+
+    private PhoneticVocabulary(final CharArraySet syllables) {
+        this.syllables = CharArraySet.unmodifiableSet(syllables);
+    }
+
+    // all the syllables that the phonetic system can produce from standard Tibetan syllables
+    // and from Sanskrit stacks of up to 3 consonants
+    public static PhoneticVocabulary fromPhoneticSystem(final PhoneticSystem system) {
+        return fromPhoneticSystem(system, true);
+    }
+
+    // Sanskrit stacks accept many consonant clusters, leaving them out prunes more
+    // but drops the alternatives that only match transliterated Sanskrit
+    public static PhoneticVocabulary fromPhoneticSystem(final PhoneticSystem system, final boolean includeSktStacks) {
+        final CharArraySet res = new CharArraySet(4096, false);
+        final CharTermAttribute termAtt = new CharTermAttributeImpl();
+        for (final String onset : system.onsetTrie.keys()) {
+            for (final Object vowelCoda : system.vowelCodaRoot.keySet()) {
+                final char[] vc = (char[]) vowelCoda;
+                termAtt.setEmpty().append(onset);
+                termAtt.resizeBuffer(onset.length() + vc.length);
+                System.arraycopy(vc, 0, termAtt.buffer(), onset.length(), vc.length);
+                termAtt.setLength(onset.length() + vc.length);
+                if (system.getPhonetics(termAtt))
+                    res.add(termAtt.toString());
+            }
+        }
+        if (includeSktStacks)
+            addSktStacks(system, res, termAtt);
+        return new PhoneticVocabulary(res);
+    }
+
+    // one character for each distinct phonetic value in the range
+    private static List<String> sktRepresentatives(final PhoneticSystem system, final char from, final char to) {
+        final Map<String,String> res = new TreeMap<>();
+        for (final Map.Entry<Character,String> e : system.sktPhonetic.entrySet()) {
+            final char c = e.getKey();
+            if (c >= from && c <= to)
+                res.putIfAbsent(e.getValue(), String.valueOf(c));
+        }
+        return new ArrayList<>(res.values());
+    }
+
+    private static void addSktStacks(final PhoneticSystem system, final CharArraySet res, final CharTermAttribute termAtt) {
+        final List<String> consonants = sktRepresentatives(system, '\u0f40', '\u0f6c');
+        final List<String> subjoined = sktRepresentatives(system, '\u0f90', '\u0fbc');
+        subjoined.add("");
+        final List<String> vowels = sktRepresentatives(system, '\u0f72', '\u0f7d');
+        vowels.add("");
+        for (final String c : consonants) {
+            for (final String sub1 : subjoined) {
+                for (final String sub2 : subjoined) {
+                    if (sub1.isEmpty() && !sub2.isEmpty())
+                        continue;
+                    for (final String v : vowels) {
+                        for (final String anusvara : ANUSVARA) {
+                            termAtt.setEmpty().append(c).append(sub1).append(sub2).append(v).append(anusvara);
+                            if (system.getSktPhonetics(termAtt))
+                                res.add(termAtt.toString());
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static final String[] ANUSVARA = {"", "\u0f7e"};
+
+    // all the terms of a phonetic field in an index
+    public static PhoneticVocabulary fromIndex(final IndexReader reader, final String field) throws IOException {
+        final CharArraySet res = new CharArraySet(4096, false);
+        final Terms terms = MultiTerms.getTerms(reader, field);
+        if (terms != null) {
+            final TermsEnum termsEnum = terms.iterator();
+            BytesRef term;
+            while ((term = termsEnum.next()) != null)
+                res.add(term.utf8ToString());
+        }
+        return new PhoneticVocabulary(res);
+    }
+
+    public boolean contains(final char[] text, final int off, final int len) {
+        return syllables.contains(text, off, len);
+    }
+
+    public boolean contains(final CharSequence cs) {
+        return syllables.contains(cs);
+    }
+
+    public int size() {
+        return syllables.size();
+    }
+}
@@ -7,25 +7,39 @@ import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 
 import io.bdrc.lucene.bo.IsStandardTibetanAttribute;
+import io.bdrc.lucene.bo.SyllableIdAttribute;
 
 public final class StandardTibetanPhoneticFilter extends TokenFilter {
 
+    private final PhoneticSystem system;
+    
     public StandardTibetanPhoneticFilter(final TokenStream input) {
+        this(input, PhoneticSystemStandardTibetan.INSTANCE);
+    }
+    
+    // system can be any variant, typically obtained from PhoneticSystemStandardTibetan.get()
+    public StandardTibetanPhoneticFilter(final TokenStream input, final PhoneticSystem system) {
         super(input);
+        this.system = system;
     }
 
     private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
     private final IsStandardTibetanAttribute istAtt = addAttribute(IsStandardTibetanAttribute.class);
+    // present if the tokenizer sets the syllable ids
+    private final SyllableIdAttribute sylAtt = hasAttribute(SyllableIdAttribute.class) ? getAttribute(SyllableIdAttribute.class) : null;
     
     @Override
     public final boolean incrementToken() throws IOException {
         if (!input.incrementToken())
             return false;
         
-        if (istAtt.getIsStandardTibetan())
-            PhoneticSystemStandardTibetan.INSTANCE.getPhonetics(termAtt);
+        final int id = sylAtt == null ? -1 : sylAtt.getSyllableId();
+        if (id != -1)
+            system.getPhonetics(termAtt, id);
+        else if (istAtt.getIsStandardTibetan())
+            system.getPhonetics(termAtt);
         else
-            PhoneticSystemStandardTibetan.INSTANCE.getSktPhonetics(termAtt);
+            system.getSktPhonetics(termAtt);
         return true;
     }
 
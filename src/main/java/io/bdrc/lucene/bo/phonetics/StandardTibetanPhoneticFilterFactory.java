@@ -0,0 +1,52 @@
+package io.bdrc.lucene.bo.phonetics;
+
+import java.util.Map;
+
+import org.apache.lucene.analysis.TokenFilterFactory;
+import org.apache.lucene.analysis.TokenStream;
+
+/**
+ * Factory for {@link StandardTibetanPhoneticFilter}, the arguments are the
+ * options of {@link PhoneticSystemStandardTibetan.Options}. The phonetic
+ * systems are compiled once per set of options, see
+ * {@link PhoneticSystemStandardTibetan#get}.
+ *
+ * <pre class="prettyprint">
+ * &lt;filter class="io.bdrc.lucene.bo.phonetics.StandardTibetanPhoneticFilterFactory" ignoreTone="true"/&gt;
+ * </pre>
+ *
+ * @lucene.spi {@value #NAME}
+ */
+public class StandardTibetanPhoneticFilterFactory extends TokenFilterFactory {
+
+    public static final String NAME = "tibStandardPhonetic";
+
+    private final PhoneticSystemStandardTibetan system;
+
+    public StandardTibetanPhoneticFilterFactory(final Map<String, String> args) {
+        super(args);
+        final PhoneticSystemStandardTibetan.Options d = PhoneticSystemStandardTibetan.Options.DEFAULT;
+        final PhoneticSystemStandardTibetan.Options options = PhoneticSystemStandardTibetan.Options.builder()
+                .ignoreInitialNasalization(getBoolean(args, "ignoreInitialNasalization", d.ignoreInitialNasalization))
+                .ignoreTone(getBoolean(args, "ignoreTone", d.ignoreTone))
+                .ignoreAspiration(getBoolean(args, "ignoreAspiration", d.ignoreAspiration))
+                .ignoreContourTone(getBoolean(args, "ignoreContourTone", d.ignoreContourTone))
+                .ignoreSDSuffix(getBoolean(args, "ignoreSDSuffix", d.ignoreSDSuffix))
+                .ignoreLengthener(getBoolean(args, "ignoreLengthener", d.ignoreLengthener))
+                .foldAE(getBoolean(args, "foldAE", d.foldAE))
+                .build();
+        if (!args.isEmpty())
+            throw new IllegalArgumentException("Unknown parameters: " + args);
+        this.system = PhoneticSystemStandardTibetan.get(options);
+    }
+
+    // for the SPI
+    public StandardTibetanPhoneticFilterFactory() {
+        throw defaultCtorException();
+    }
+
+    @Override
+    public TokenStream create(final TokenStream input) {
+        return new StandardTibetanPhoneticFilter(input, system);
+    }
+}
@@ -0,0 +1,79 @@
+package io.bdrc.lucene.bo.phonetics;
+
+import java.io.Reader;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+
+import io.bdrc.lucene.bo.TibCharFilter;
+import io.bdrc.lucene.bo.TibEwtsFilter;
+import io.bdrc.lucene.bo.TibPattFilter;
+import io.bdrc.lucene.bo.TibSyllableTokenizer;
+import io.bdrc.lucene.bo.TibetanAnalyzer;
+import io.bdrc.lucene.bo.metrics.DocumentAnalysisFilter;
+
+/**
+ * An Analyzer indexing Tibetan text as phonetic syllables, to be searched with
+ * {@link TibetanPhoneticQueryAnalyzer}.
+ *
+ * The char maps and the phonetic tables are compiled once and shared by all
+ * the instances, the per-field components are reused by the Analyzer.
+ **/
+public final class TibetanPhoneticIndexAnalyzer extends Analyzer {
+
+    private final String inputMethod;
+    private final PhoneticSystem system;
+
+    /**
+     * Creates a new {@link TibetanPhoneticIndexAnalyzer} for Unicode input and
+     * the phonetic system used by Latin queries
+     */
+    public TibetanPhoneticIndexAnalyzer() {
+        this(TibetanAnalyzer.INPUT_METHOD_UNICODE, PhoneticSystemEnglish.INSTANCE);
+    }
+
+    /**
+     * Creates a new {@link TibetanPhoneticIndexAnalyzer}
+     *
+     * @param inputMethod
+     *            one of the TibetanAnalyzer.INPUT_METHOD_* values
+     * @param system
+     *            the phonetic system, typically obtained from
+     *            {@link PhoneticSystemEnglish#get} or
+     *            {@link PhoneticSystemStandardTibetan#get}
+     */
+    public TibetanPhoneticIndexAnalyzer(final String inputMethod, final PhoneticSystem system) {
+        this.inputMethod = inputMethod;
+        this.system = system;
+    }
+
+    @Override
+    protected Reader initReader(final String fieldName, Reader reader) {
+        switch (this.inputMethod) {
+        case TibetanAnalyzer.INPUT_METHOD_EWTS:
+        case TibetanAnalyzer.INPUT_METHOD_DTS:
+        case TibetanAnalyzer.INPUT_METHOD_ALALC:
+            reader = new TibEwtsFilter(reader, this.inputMethod, true);
+            break;
+        default:
+            break;
+        }
+        // lenient and old Tibetan normalization, plugFilters() also reorders the Unicode
+        reader = new TibCharFilter(reader, true, true);
+        reader = TibPattFilter.plugFilters(reader);
+        return super.initReader(fieldName, reader);
+    }
+
+    @Override
+    protected TokenStreamComponents createComponents(final String fieldName) {
+        // the phonetics of the syllables with an id are cached in the system
+        final Tokenizer source = new TibSyllableTokenizer(TokenStream.DEFAULT_TOKEN_ATTRIBUTE_FACTORY, true, false, true);
+        final TokenStream filter;
+        if (system instanceof PhoneticSystemStandardTibetan)
+            filter = new StandardTibetanPhoneticFilter(source, system);
+        else
+            filter = new EnglishPhoneticFilter(source, system);
+        return new TokenStreamComponents(source, new DocumentAnalysisFilter(filter, "TibetanPhoneticIndexAnalyzer", fieldName));
+    }
+}
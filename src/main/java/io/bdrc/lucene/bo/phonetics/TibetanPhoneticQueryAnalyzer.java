@@ -0,0 +1,52 @@
+package io.bdrc.lucene.bo.phonetics;
+
+import java.io.Reader;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.Tokenizer;
+
+/**
+ * An Analyzer for phonetic queries in Latin script ("Tenzin Gyatso"), matching
+ * the fields indexed with {@link TibetanPhoneticIndexAnalyzer}.
+ *
+ * Syllables with an ambiguous cut produce alternatives at the same position,
+ * which can be pruned with a {@link PhoneticVocabulary}.
+ **/
+public final class TibetanPhoneticQueryAnalyzer extends Analyzer {
+
+    private final PhoneticVocabulary vocabulary;
+    private final int maxAlternatives;
+
+    /**
+     * Creates a new {@link TibetanPhoneticQueryAnalyzer} emitting all the
+     * alternatives
+     */
+    public TibetanPhoneticQueryAnalyzer() {
+        this(null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates a new {@link TibetanPhoneticQueryAnalyzer}
+     *
+     * @param vocabulary
+     *            the syllables present in the index, null to keep all the
+     *            alternatives
+     * @param maxAlternatives
+     *            the maximum number of alternatives for a syllable
+     */
+    public TibetanPhoneticQueryAnalyzer(final PhoneticVocabulary vocabulary, final int maxAlternatives) {
+        this.vocabulary = vocabulary;
+        this.maxAlternatives = maxAlternatives;
+    }
+
+    @Override
+    protected Reader initReader(final String fieldName, final Reader reader) {
+        return super.initReader(fieldName, new EnglishPhoneticCharFilter(reader));
+    }
+
+    @Override
+    protected TokenStreamComponents createComponents(final String fieldName) {
+        final Tokenizer source = new EnglishPhoneticTokenizer(vocabulary, maxAlternatives);
+        return new TokenStreamComponents(source);
+    }
+}
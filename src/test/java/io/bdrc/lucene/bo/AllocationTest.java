@@ -0,0 +1,95 @@
+package io.bdrc.lucene.bo;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import io.bdrc.lucene.bo.phonetics.EnglishPhoneticFilter;
+import io.bdrc.lucene.bo.phonetics.StandardTibetanPhoneticFilter;
+
+public class AllocationTest {
+
+    /*
+     * Checks that the hot paths don't allocate per token: the chains are warmed up on a
+     * synthetic corpus and then the bytes allocated by the current thread are measured
+     * over another pass. The few allocations per document (StringReader, buffers growing
+     * on the first long token) are negligible on such a large stream.
+     */
+
+    static final double MAX_BYTES_PER_TOKEN = 1.0;
+    static final int WARMUP_ROUNDS = 20;
+
+    static String corpus;
+    static com.sun.management.ThreadMXBean threadBean;
+
+    @BeforeClass
+    public static void init() {
+        final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        threadBean = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        // with some Sanskrit stacks and non-standard syllables
+        corpus = new SyntheticCorpusGenerator(1234).sktRatio(0.05).oldTibRatio(0.05).generate(200000);
+    }
+
+    private static long consume(final Tokenizer source, final TokenStream chain) throws IOException {
+        source.setReader(new StringReader(corpus));
+        chain.reset();
+        long tokens = 0;
+        while (chain.incrementToken())
+            tokens++;
+        chain.end();
+        chain.close();
+        return tokens;
+    }
+
+    private static void assertNoAllocation(final String name, final Tokenizer source, final TokenStream chain) throws IOException {
+        for (int i = 0; i < WARMUP_ROUNDS; i++)
+            consume(source, chain);
+        final long tid = Thread.currentThread().getId();
+        final long before = threadBean.getThreadAllocatedBytes(tid);
+        final long tokens = consume(source, chain);
+        final long allocated = threadBean.getThreadAllocatedBytes(tid) - before;
+        final double perToken = (double) allocated / tokens;
+        assertTrue(name + " allocated " + allocated + " bytes for " + tokens + " tokens", perToken < MAX_BYTES_PER_TOKEN);
+    }
+
+    @Test
+    public void tibSyllableTokenizer() throws IOException {
+        final Tokenizer source = new TibSyllableTokenizer();
+        assertNoAllocation("TibSyllableTokenizer", source, source);
+    }
+
+    @Test
+    public void tibAffixedFilter() throws IOException {
+        final Tokenizer source = new TibSyllableTokenizer();
+        assertNoAllocation("TibAffixedFilter", source, new TibAffixedFilter(source, true));
+    }
+
+    @Test
+    public void paBaFilter() throws IOException {
+        final Tokenizer source = new TibSyllableTokenizer();
+        assertNoAllocation("PaBaFilter", source, new PaBaFilter(source));
+    }
+
+    @Test
+    public void standardTibetanPhoneticFilter() throws IOException {
+        final Tokenizer source = new TibSyllableTokenizer();
+        assertNoAllocation("StandardTibetanPhoneticFilter", source, new StandardTibetanPhoneticFilter(source));
+    }
+
+    @Test
+    public void englishPhoneticFilter() throws IOException {
+        final Tokenizer source = new TibSyllableTokenizer();
+        assertNoAllocation("EnglishPhoneticFilter", source, new EnglishPhoneticFilter(source));
+    }
+}
@@ -0,0 +1,137 @@
+package io.bdrc.lucene.bo;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.store.ByteBuffersDataInput;
+import org.apache.lucene.store.ByteBuffersDataOutput;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.bdrc.lucene.bo.bulk.AnalysisCache;
+import io.bdrc.lucene.bo.bulk.CachingTibetanAnalyzer;
+import io.bdrc.lucene.bo.bulk.TokenArray;
+
+public class AnalysisCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static TokenArray analyze(final TibetanAnalyzer analyzer, final String text) throws IOException {
+        try (TokenStream ts = analyzer.tokenStream("", text)) {
+            return TokenArray.capture(ts);
+        }
+    }
+
+    private static String[] texts(final int nb) {
+        final String[] res = new String[nb];
+        for (int i = 0; i < nb; i++)
+            res[i] = new SyntheticCorpusGenerator(40 + i).oldTibRatio(0.05).latinRatio(0.01).generate(2000);
+        return res;
+    }
+
+    @Test
+    public void serialization() throws IOException {
+        final TibetanAnalyzer analyzer = new TibetanAnalyzer(false, "affix-paba", "l-ot", TibetanAnalyzer.INPUT_METHOD_UNICODE, "", null);
+        final TokenArray tokens = analyze(analyzer, texts(1)[0]);
+        final ByteBuffersDataOutput out = new ByteBuffersDataOutput();
+        tokens.writeTo(out);
+        assertEquals(tokens, TokenArray.readFrom(new ByteBuffersDataInput(out.toBufferList())));
+        analyzer.close();
+    }
+
+    @Test
+    public void sameTokensAfterReopening() throws IOException {
+        final Path dir = folder.newFolder().toPath();
+        final TibetanAnalyzer analyzer = new TibetanAnalyzer(false, "affix-paba", "l-ot", TibetanAnalyzer.INPUT_METHOD_UNICODE, "", null);
+        final String[] texts = texts(20);
+        // small segments so that some are mapped while writing
+        try (AnalysisCache cache = new AnalysisCache(dir, 10000)) {
+            final CachingTibetanAnalyzer caching = new CachingTibetanAnalyzer(analyzer, cache);
+            for (int pass = 0; pass < 2; pass++) {
+                for (final String text : texts) {
+                    try (TokenStream ts = caching.tokenStream("", text)) {
+                        assertEquals(analyze(analyzer, text), TokenArray.capture(ts));
+                    }
+                }
+            }
+            assertEquals(texts.length, cache.size());
+        }
+        try (AnalysisCache cache = new AnalysisCache(dir, 10000)) {
+            assertEquals(texts.length, cache.size());
+            final CachingTibetanAnalyzer caching = new CachingTibetanAnalyzer(analyzer, cache);
+            for (final String text : texts)
+                assertEquals(analyze(analyzer, text), caching.analyze("", text));
+            assertEquals(texts.length, cache.size());
+            // another configuration is another key
+            final TibetanAnalyzer strict = new TibetanAnalyzer(false, "", "", TibetanAnalyzer.INPUT_METHOD_UNICODE, null, null);
+            assertEquals(analyze(strict, texts[0]), new CachingTibetanAnalyzer(strict, cache).analyze("", texts[0]));
+            assertEquals(texts.length + 1, cache.size());
+            strict.close();
+        }
+        analyzer.close();
+    }
+
+    @Test(expected = IOException.class)
+    public void singleProcess() throws IOException {
+        final Path dir = folder.newFolder().toPath();
+        try (AnalysisCache cache = new AnalysisCache(dir)) {
+            assertEquals(0, cache.size());
+            new AnalysisCache(dir).close();
+        }
+    }
+
+    @Test
+    public void lockReleasedOnError() throws IOException {
+        final Path dir = folder.newFolder().toPath();
+        // a segment that cannot be mapped
+        final Path segment = Files.createDirectory(dir.resolve("00000000.seg"));
+        try {
+            new AnalysisCache(dir).close();
+            fail("the segment should not be opened");
+        } catch (IOException e) {
+            // expected
+        }
+        Files.delete(segment);
+        try (AnalysisCache cache = new AnalysisCache(dir)) {
+            assertEquals(0, cache.size());
+        }
+    }
+
+    @Test
+    public void versionAndLexiconInTheKey() throws IOException {
+        assertTrue(CachingTibetanAnalyzer.LIBRARY_VERSION, CachingTibetanAnalyzer.LIBRARY_VERSION.matches("[0-9]+\\.[0-9]+.*"));
+        final Path dir = folder.newFolder().toPath();
+        final TibetanAnalyzer analyzer = new TibetanAnalyzer(false, "affix-paba", "l-ot", TibetanAnalyzer.INPUT_METHOD_UNICODE, "", null);
+        final String text = texts(1)[0];
+        try (AnalysisCache cache = new AnalysisCache(dir)) {
+            new CachingTibetanAnalyzer(analyzer, cache, "1.0").analyze("", text);
+            new CachingTibetanAnalyzer(analyzer, cache, "1.0").analyze("", text);
+            assertEquals(1, cache.size());
+            // another version misses
+            assertEquals(analyze(analyzer, text), new CachingTibetanAnalyzer(analyzer, cache, "1.1").analyze("", text));
+            assertEquals(2, cache.size());
+            // the same lexicon file with another content misses
+            final Path lexicon = folder.newFile().toPath();
+            final String wordText = "བཀྲ་ཤིས་བདེ་ལེགས།";
+            Files.write(lexicon, "བཀྲ་ཤིས x\n".getBytes(StandardCharsets.UTF_8));
+            final TibetanAnalyzer words = new TibetanAnalyzer(true, "", "", TibetanAnalyzer.INPUT_METHOD_UNICODE, null, lexicon.toString());
+            new CachingTibetanAnalyzer(words, cache).analyze("", wordText);
+            assertEquals(3, cache.size());
+            Files.write(lexicon, "བདེ་ལེགས x\n".getBytes(StandardCharsets.UTF_8));
+            final TibetanAnalyzer otherWords = new TibetanAnalyzer(true, "", "", TibetanAnalyzer.INPUT_METHOD_UNICODE, null, lexicon.toString());
+            assertEquals(words.getConfiguration(), otherWords.getConfiguration());
+            assertEquals(analyze(otherWords, wordText), new CachingTibetanAnalyzer(otherWords, cache).analyze("", wordText));
+            assertEquals(4, cache.size());
+            words.close();
+            otherWords.close();
+        }
+        analyzer.close();
+    }
+}
@@ -0,0 +1,177 @@
+package io.bdrc.lucene.bo;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.CharFilterFactory;
+import org.apache.lucene.analysis.TokenFilterFactory;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.TokenizerFactory;
+import org.apache.lucene.analysis.custom.CustomAnalyzer;
+import org.apache.lucene.util.ClasspathResourceLoader;
+import org.apache.lucene.util.ResourceLoader;
+import org.junit.Test;
+
+import io.bdrc.lucene.bo.bulk.TokenArray;
+import io.bdrc.lucene.bo.phonetics.EnglishPhoneticFilterFactory;
+import io.bdrc.lucene.bo.phonetics.PhoneticSystemEnglish;
+import io.bdrc.lucene.bo.phonetics.TibetanPhoneticIndexAnalyzer;
+
+public class AnalysisFactoriesTest {
+
+    private static TokenArray analyze(final Analyzer analyzer, final String text) throws IOException {
+        try (TokenStream ts = analyzer.tokenStream("", text)) {
+            return TokenArray.capture(ts);
+        }
+    }
+
+    private static void assertSame(final Analyzer expected, final Analyzer actual, final boolean ewts) throws IOException {
+        for (int i = 0; i < 5; i++) {
+            final String text = new SyntheticCorpusGenerator(300 + i).ewts(ewts).oldTibRatio(0.05).generate(2000);
+            assertEquals(analyze(expected, text), analyze(actual, text));
+        }
+        expected.close();
+        actual.close();
+    }
+
+    @Test
+    public void spi() {
+        assertTrue(TokenizerFactory.availableTokenizers().containsAll(Arrays.asList("tibSyllable", "tibWord")));
+        assertTrue(CharFilterFactory.availableCharFilters().containsAll(Arrays.asList("tibChar", "tibEwts", "tibPatt")));
+        assertTrue(TokenFilterFactory.availableTokenFilters().containsAll(Arrays.asList("tibAffixed", "tibPaBa",
+                "tibSyllableLemmatizer", "tibStop", "tibYi", "tibStandardPhonetic", "tibEnglishPhonetic")));
+        assertEquals(EnglishPhoneticFilterFactory.class, TokenFilterFactory.lookupClass("tibEnglishPhonetic"));
+        final Map<String, String> args = new HashMap<>();
+        args.put("unknown", "true");
+        try {
+            TokenFilterFactory.forName("tibAffixed", args);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    // a loader giving the same name to another content, as another core would
+    private static ResourceLoader loader(final String name, final String content) {
+        final ResourceLoader classpath = new ClasspathResourceLoader(AnalysisFactoriesTest.class);
+        return new ResourceLoader() {
+            @Override
+            public InputStream openResource(final String resource) throws IOException {
+                if (resource.equals(name))
+                    return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+                return classpath.openResource(resource);
+            }
+
+            @Override
+            public <T> Class<? extends T> findClass(final String cname, final Class<T> expectedType) {
+                return classpath.findClass(cname, expectedType);
+            }
+        };
+    }
+
+    @Test
+    public void resourcesSharedByContent() throws IOException {
+        final String text = "བཀྲ་ཤིས་བདེ་ལེགས།";
+        final String[] expected = { "ཤིས བདེ ལེགས", "བཀྲ ཤིས ལེགས", "ཤིས བདེ ལེགས" };
+        final String[] lists = { "བཀྲ\n", "བདེ\n", "བཀྲ\n" };
+        for (int i = 0; i < lists.length; i++) {
+            final Analyzer custom = CustomAnalyzer.builder(loader("stops.txt", lists[i]))
+                    .withTokenizer("tibSyllable")
+                    .addTokenFilter("tibStop", "words", "stops.txt")
+                    .build();
+            final TokenArray tokens = analyze(custom, text);
+            final StringBuilder terms = new StringBuilder();
+            for (int t = 0; t < tokens.size(); t++)
+                terms.append(t == 0 ? "" : " ").append(tokens.term(t));
+            assertEquals(expected[i], terms.toString());
+            custom.close();
+        }
+    }
+
+    @Test
+    public void resourcesHeldWeakly() throws IOException {
+        final SharedResources<StringBuilder> shared = new SharedResources<>();
+        final int[] loads = { 0 };
+        final SharedResources.Loader<StringBuilder> loader = () -> {
+            loads[0]++;
+            return new StringBuilder("stops");
+        };
+        StringBuilder used = shared.get("3:abc", loader);
+        org.junit.Assert.assertSame(used, shared.get("3:abc", loader));
+        assertEquals(1, loads[0]);
+        // the resource of a closed core
+        final WeakReference<StringBuilder> ref = new WeakReference<>(used);
+        used = null;
+        for (int i = 0; i < 50 && ref.get() != null; i++)
+            System.gc();
+        assertNull(ref.get());
+        assertEquals(0, shared.size());
+        shared.get("3:abc", loader);
+        assertEquals(2, loads[0]);
+    }
+
+    @Test
+    public void lexiconThroughTheLoader() throws IOException {
+        final String text = "བཀྲ་ཤིས་བདེ་ལེགས།";
+        final String[] lexicons = { "བཀྲ་ཤིས x\n", "བདེ་ལེགས x\n" };
+        final String[] expected = { "བཀྲ་ཤིས|བདེ|ལེགས", "བཀྲ|ཤིས|བདེ་ལེགས" };
+        for (int i = 0; i < lexicons.length; i++) {
+            // not a file of the working directory
+            final Analyzer custom = CustomAnalyzer.builder(loader("core/lexicon.txt", lexicons[i]))
+                    .withTokenizer("tibWord", "lexicon", "core/lexicon.txt", "lemmatize", "false")
+                    .build();
+            final TokenArray tokens = analyze(custom, text);
+            final StringBuilder terms = new StringBuilder();
+            for (int t = 0; t < tokens.size(); t++)
+                terms.append(t == 0 ? "" : "|").append(tokens.term(t));
+            assertEquals(expected[i], terms.toString());
+            custom.close();
+        }
+    }
+
+    @Test
+    public void syllables() throws IOException {
+        final Analyzer custom = CustomAnalyzer.builder(new ClasspathResourceLoader(AnalysisFactoriesTest.class))
+                .addCharFilter("tibPatt", "set", "reorder")
+                .addCharFilter("tibChar", "lenient", "true", "convertOldTib", "false")
+                .withTokenizer("tibSyllable", "syllableIds", "true")
+                .addTokenFilter("tibAffixed")
+                .addTokenFilter("tibPaBa")
+                .addTokenFilter("tibStop")
+                .build();
+        assertSame(new TibetanAnalyzer(false, "affix-paba", "l", TibetanAnalyzer.INPUT_METHOD_UNICODE, "", null), custom, false);
+    }
+
+    @Test
+    public void ewts() throws IOException {
+        final Analyzer custom = CustomAnalyzer.builder(new ClasspathResourceLoader(AnalysisFactoriesTest.class))
+                .addCharFilter("tibEwts", "inputMethod", "ewts")
+                .addCharFilter("tibChar", "lenient", "true", "convertOldTib", "true")
+                .addCharFilter("tibPatt")
+                .withTokenizer("tibSyllable", "syllableIds", "true", "syllableStructures", "true")
+                .addTokenFilter("tibAffixed", "convertOldTib", "true")
+                .addTokenFilter("tibPaBa")
+                .build();
+        assertSame(new TibetanAnalyzer(false, "affix-paba", "l-ot", TibetanAnalyzer.INPUT_METHOD_EWTS, null, null), custom, true);
+    }
+
+    @Test
+    public void phonetics() throws IOException {
+        final Analyzer custom = CustomAnalyzer.builder(new ClasspathResourceLoader(AnalysisFactoriesTest.class))
+                .addCharFilter("tibChar", "lenient", "true", "convertOldTib", "true")
+                .addCharFilter("tibPatt")
+                .withTokenizer("tibSyllable")
+                .addTokenFilter("tibEnglishPhonetic")
+                .build();
+        assertSame(new TibetanPhoneticIndexAnalyzer(TibetanAnalyzer.INPUT_METHOD_UNICODE, PhoneticSystemEnglish.INSTANCE), custom, false);
+    }
+}
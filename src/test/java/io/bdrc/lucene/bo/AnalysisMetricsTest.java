@@ -0,0 +1,175 @@
+package io.bdrc.lucene.bo;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.junit.After;
+import org.junit.Test;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import io.bdrc.lucene.bo.metrics.AnalysisMetrics;
+import io.bdrc.lucene.bo.metrics.Metrics;
+import io.bdrc.lucene.bo.metrics.ResourceFootprint;
+import io.bdrc.lucene.bo.metrics.ResourceInfo;
+import io.bdrc.lucene.bo.phonetics.PhoneticSystemEnglish;
+import io.bdrc.lucene.bo.phonetics.PhoneticSystemStandardTibetan;
+
+public class AnalysisMetricsTest {
+
+    static class RecordingMetrics implements AnalysisMetrics {
+        final List<String> stages = new ArrayList<>();
+        final Map<String,long[]> stageTotals = new ConcurrentHashMap<>();
+        final Map<String,AtomicLong> counters = new ConcurrentHashMap<>();
+
+        @Override
+        public synchronized void recordStage(final String stage, final long nanos, final long chars, final long tokens) {
+            stages.add(stage);
+            final long[] totals = stageTotals.computeIfAbsent(stage, k -> new long[3]);
+            totals[0] += nanos;
+            totals[1] += chars;
+            totals[2] += tokens;
+        }
+
+        @Override
+        public Counter counter(final String name) {
+            final AtomicLong c = counters.computeIfAbsent(name, k -> new AtomicLong());
+            return c::addAndGet;
+        }
+
+        long count(final String name) {
+            final AtomicLong c = counters.get(name);
+            return c == null ? 0 : c.get();
+        }
+    }
+
+    @After
+    public void resetMetrics() {
+        Metrics.set(null);
+    }
+
+    private static int countTokens(final TibetanAnalyzer analyzer, final String input) throws IOException {
+        int res = 0;
+        try (TokenStream ts = analyzer.tokenStream("", input)) {
+            ts.reset();
+            while (ts.incrementToken())
+                res++;
+            ts.end();
+        }
+        return res;
+    }
+
+    @Test
+    public void stagesAndCounters() throws IOException {
+        final RecordingMetrics metrics = new RecordingMetrics();
+        Metrics.set(metrics);
+        final TibetanAnalyzer analyzer = new TibetanAnalyzer(false, "affix-paba", "l-ot", TibetanAnalyzer.INPUT_METHOD_UNICODE, null, null);
+        // ཀྵ་ is not standard Tibetan and is split in stacks
+        final int nbTokens = countTokens(analyzer, "བཀྲ་ཤིས་ཀྵཱ་བདེ་ལེགས།");
+        countTokens(analyzer, "བཀྲ་ཤིས།");
+        analyzer.close();
+        assertEquals(List.of("ReorderFilter", "TibCharFilter", "TibPattFilter", "TibSyllableTokenizer", "TibAffixedFilter", "PaBaFilter"), metrics.stages.subList(0, 6));
+        assertEquals(12, metrics.stages.size());
+        assertEquals(nbTokens + 2, metrics.stageTotals.get("PaBaFilter")[2]);
+        assertEquals(metrics.stageTotals.get("TibSyllableTokenizer")[2], metrics.stageTotals.get("PaBaFilter")[2]);
+        assertTrue(metrics.stageTotals.get("TibCharFilter")[1] > 0);
+        assertTrue(metrics.stageTotals.get("PaBaFilter")[0] >= metrics.stageTotals.get("TibSyllableTokenizer")[0]);
+        assertEquals(1, metrics.count("TibSyllableTokenizer.stackSplits"));
+    }
+
+    @Test
+    public void disabledMetrics() throws IOException {
+        assertFalse(Metrics.get().isEnabled());
+        final RecordingMetrics metrics = new RecordingMetrics() {
+            @Override
+            public boolean isEnabled() {
+                return false;
+            }
+        };
+        Metrics.set(metrics);
+        final TibetanAnalyzer analyzer = new TibetanAnalyzer(false, "affix-paba", "l", TibetanAnalyzer.INPUT_METHOD_UNICODE, null, null);
+        countTokens(analyzer, "བཀྲ་ཤིས།");
+        analyzer.close();
+        assertTrue(metrics.stages.isEmpty());
+    }
+
+    @Test
+    public void flightRecorderEvents() throws IOException {
+        final Path file = Files.createTempFile("analysis", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("io.bdrc.lucene.bo.DocumentAnalysis").withThreshold(Duration.ZERO);
+            recording.enable("io.bdrc.lucene.bo.ResourceLoad");
+            recording.start();
+            // options that no other test uses, so that the tables are built here
+            PhoneticSystemEnglish.get(PhoneticSystemEnglish.Options.builder().ignoreRetroflex(false).alntoeln(false).foldnasals(false).build());
+            final TibetanAnalyzer analyzer = new TibetanAnalyzer(false, "affix-paba", "l", TibetanAnalyzer.INPUT_METHOD_UNICODE, null, null);
+            final int nbTokens = countTokens(analyzer, "བཀྲ་ཤིས་བདེ་ལེགས།");
+            analyzer.close();
+            recording.stop();
+            recording.dump(file);
+            boolean foundDocument = false;
+            boolean foundPhonetic = false;
+            for (final RecordedEvent event : RecordingFile.readAllEvents(file)) {
+                if (event.getEventType().getName().equals("io.bdrc.lucene.bo.DocumentAnalysis")) {
+                    foundDocument = true;
+                    assertEquals("TibetanAnalyzer", event.getString("analyzer"));
+                    assertEquals(17, event.getLong("chars"));
+                    assertEquals(nbTokens, event.getLong("tokens"));
+                } else if (event.getString("kind").equals("phonetic")) {
+                    foundPhonetic = true;
+                    assertTrue(event.getLong("size") > 100);
+                }
+            }
+            assertTrue(foundDocument);
+            assertTrue(foundPhonetic);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void resourceFootprint() throws Exception {
+        new TibCharFilter(new StringReader("ཀ"), true, false).close();
+        final PhoneticSystemStandardTibetan system = PhoneticSystemStandardTibetan.get(PhoneticSystemStandardTibetan.Options.DEFAULT);
+        boolean foundCharMap = false;
+        boolean foundPhonetic = false;
+        for (final ResourceInfo info : ResourceFootprint.resources()) {
+            assertTrue(info.toString(), info.getRetainedBytes() > 0);
+            if (info.getName().equals("TibCharFilter(lenient=true, oldtib=false)")) {
+                foundCharMap = true;
+                assertTrue(info.getEntries() > 10);
+            } else if (info.getKind().equals("phonetic") && info.getName().startsWith("PhoneticSystemStandardTibetan")) {
+                foundPhonetic = true;
+                // at least one char and one reference per entry
+                assertTrue(info.getRetainedBytes() > 6 * info.getEntries());
+            }
+        }
+        assertTrue(foundCharMap);
+        assertTrue(foundPhonetic);
+        assertNotNull(system);
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = new ObjectName(ResourceFootprint.OBJECT_NAME);
+        assertTrue((Long) server.getAttribute(name, "TotalRetainedBytes") > 0);
+        final CompositeData[] resources = (CompositeData[]) server.getAttribute(name, "Resources");
+        assertTrue(resources.length >= 2);
+        assertNotNull(resources[0].get("retainedBytes"));
+    }
+}
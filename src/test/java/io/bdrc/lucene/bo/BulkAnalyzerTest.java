@@ -0,0 +1,93 @@
+package io.bdrc.lucene.bo;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.junit.Test;
+
+import io.bdrc.lucene.bo.bulk.BulkAnalyzer;
+import io.bdrc.lucene.bo.bulk.TokenArray;
+
+public class BulkAnalyzerTest {
+
+    private static List<String> docs(final long seed, final int nbDocs) {
+        final String text = new SyntheticCorpusGenerator(seed).oldTibRatio(0.05).lineLength(500).generate(nbDocs * 500L);
+        return Arrays.asList(text.split("\n"));
+    }
+
+    private static TokenArray sequential(final Analyzer analyzer, final String doc) throws IOException {
+        try (TokenStream ts = analyzer.tokenStream("", doc)) {
+            return TokenArray.capture(ts);
+        }
+    }
+
+    @Test
+    public void sameAsSequential() throws IOException {
+        final List<String> docs = docs(11, 200);
+        final Analyzer analyzer = new TibetanAnalyzer(false, "affix-paba", "l-ot", TibetanAnalyzer.INPUT_METHOD_UNICODE, "", null);
+        final List<TokenArray> results;
+        try (BulkAnalyzer bulk = new BulkAnalyzer(analyzer, 4, null)) {
+            results = bulk.analyze("", docs.stream()).collect(Collectors.toList());
+        }
+        assertEquals(docs.size(), results.size());
+        for (int i = 0; i < docs.size(); i++) {
+            final TokenArray expected = sequential(analyzer, docs.get(i));
+            assertTrue(expected.size() > 0);
+            assertEquals(expected, results.get(i));
+        }
+        final TokenArray first = results.get(0);
+        assertTrue(first.finalOffset() >= first.endOffset(first.size() - 1));
+        analyzer.close();
+    }
+
+    @Test
+    public void readsAheadOfTheConsumerOnlyBoundedly() throws IOException {
+        final List<String> docs = docs(12, 100);
+        final AtomicInteger read = new AtomicInteger();
+        final Iterator<String> input = new Iterator<String>() {
+            final Iterator<String> it = docs.iterator();
+
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            public String next() {
+                read.incrementAndGet();
+                return it.next();
+            }
+        };
+        final Analyzer analyzer = new TibetanAnalyzer(false, "", "", TibetanAnalyzer.INPUT_METHOD_UNICODE, null, null);
+        try (BulkAnalyzer bulk = new BulkAnalyzer(analyzer, 2, null)) {
+            final Iterator<TokenArray> results = bulk.analyze("", input);
+            final List<TokenArray> firsts = new ArrayList<>();
+            for (int i = 0; i < 5; i++)
+                firsts.add(results.next());
+            // 4 * parallelism documents in flight
+            assertTrue(read.get() <= 5 + 8);
+            int nb = firsts.size();
+            while (results.hasNext()) {
+                results.next();
+                nb++;
+            }
+            assertEquals(docs.size(), nb);
+        }
+        analyzer.close();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void closed() throws IOException {
+        final Analyzer analyzer = new TibetanAnalyzer(false, "", "", TibetanAnalyzer.INPUT_METHOD_UNICODE, null, null);
+        final BulkAnalyzer bulk = new BulkAnalyzer(analyzer, 1, null);
+        bulk.close();
+        bulk.analyze("", docs(13, 1).iterator());
+    }
+}
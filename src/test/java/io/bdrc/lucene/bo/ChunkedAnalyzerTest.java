@@ -0,0 +1,62 @@
+package io.bdrc.lucene.bo;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.junit.Test;
+
+import io.bdrc.lucene.bo.bulk.ChunkedAnalyzer;
+import io.bdrc.lucene.bo.bulk.TokenArray;
+
+public class ChunkedAnalyzerTest {
+
+    private static void assertSameAsSequential(final TibetanAnalyzer analyzer, final String text) throws IOException {
+        final TokenArray expected;
+        try (TokenStream ts = analyzer.tokenStream("", text)) {
+            expected = TokenArray.capture(ts);
+        }
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        final ChunkedAnalyzer chunked = new ChunkedAnalyzer(analyzer, 3000, pool);
+        final boolean transliterated = !analyzer.getInputMethod().equals(TibetanAnalyzer.INPUT_METHOD_UNICODE);
+        assertTrue(ChunkedAnalyzer.chunkStarts(text, 3000, transliterated).length > 10);
+        assertEquals(expected, chunked.analyze("", text));
+        // through the ReplayTokenizer
+        try (TokenStream ts = chunked.tokenStream("", text)) {
+            assertEquals(expected, TokenArray.capture(ts));
+        }
+        chunked.close();
+        pool.shutdown();
+        analyzer.close();
+    }
+
+    @Test
+    public void oldTibetanWithStopWords() throws IOException {
+        final String text = new SyntheticCorpusGenerator(21).oldTibRatio(0.05).latinRatio(0.01).generate(100000);
+        assertSameAsSequential(new TibetanAnalyzer(false, "affix-paba", "l-ot", TibetanAnalyzer.INPUT_METHOD_UNICODE, "", null), text);
+    }
+
+    @Test
+    public void strict() throws IOException {
+        final String text = new SyntheticCorpusGenerator(22).sktRatio(0.1).generate(100000);
+        assertSameAsSequential(new TibetanAnalyzer(false, "", "", TibetanAnalyzer.INPUT_METHOD_UNICODE, null, null), text);
+    }
+
+    @Test
+    public void ewts() throws IOException {
+        final String text = new SyntheticCorpusGenerator(23).ewts(true).generate(100000);
+        assertSameAsSequential(new TibetanAnalyzer(false, "affix-paba", "l", TibetanAnalyzer.INPUT_METHOD_EWTS, "", null), text);
+    }
+
+    @Test
+    public void boundaries() {
+        final String text = "ཀ་ཁ། ག་ང།། ཅ། ༄། abc། \nཆ";
+        for (final int start : ChunkedAnalyzer.chunkStarts(text, 1, false)) {
+            if (start > 0)
+                assertTrue(text.substring(start), "གཅཆ".indexOf(text.charAt(start)) >= 0);
+        }
+        assertArrayEquals(new int[] {0}, ChunkedAnalyzer.chunkStarts(text, text.length(), false));
+    }
+}
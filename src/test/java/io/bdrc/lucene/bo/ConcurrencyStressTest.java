@@ -0,0 +1,136 @@
+package io.bdrc.lucene.bo;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.junit.Test;
+
+import io.bdrc.lucene.bo.phonetics.TibetanPhoneticIndexAnalyzer;
+import io.bdrc.lucene.bo.phonetics.TibetanPhoneticQueryAnalyzer;
+
+public class ConcurrencyStressTest {
+
+    /*
+     * Analyzes generated corpora from several threads and compares the output with a
+     * single-threaded run. The concurrent run comes first so that the lazily built
+     * static resources (char maps, phonetic systems, Tries) are initialized under
+     * contention when this test is the first one to use them.
+     *
+     * Each configuration is run with one analyzer shared by all the threads (like in an
+     * IndexWriter) and with one analyzer per thread.
+     */
+
+    private static final int NB_THREADS = 8;
+    private static final int NB_DOCS = 32;
+    private static final int DOC_LENGTH = 2000;
+
+    interface AnalyzerFactory {
+        Analyzer create() throws IOException;
+    }
+
+    private static String[] corpus(final long seed, final boolean ewts) {
+        final String text = new SyntheticCorpusGenerator(seed).sktRatio(0.05).oldTibRatio(0.05).latinRatio(0.01)
+                .lineLength(DOC_LENGTH).ewts(ewts).generate((long) NB_DOCS * DOC_LENGTH);
+        return text.split("\n");
+    }
+
+    // one line per token: term, offsets and position increment
+    private static String analyze(final Analyzer analyzer, final String doc) throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        try (TokenStream ts = analyzer.tokenStream("", doc)) {
+            final CharTermAttribute termAtt = ts.addAttribute(CharTermAttribute.class);
+            final OffsetAttribute offsetAtt = ts.addAttribute(OffsetAttribute.class);
+            final PositionIncrementAttribute posIncAtt = ts.addAttribute(PositionIncrementAttribute.class);
+            ts.reset();
+            while (ts.incrementToken()) {
+                sb.append(termAtt).append(' ').append(offsetAtt.startOffset()).append('-').append(offsetAtt.endOffset())
+                        .append(" +").append(posIncAtt.getPositionIncrement()).append('\n');
+            }
+            ts.end();
+        }
+        return sb.toString();
+    }
+
+    private static void stress(final AnalyzerFactory factory, final String[] docs) throws Exception {
+        final Analyzer shared = factory.create();
+        final ExecutorService executor = Executors.newFixedThreadPool(NB_THREADS);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<String[]>> futures = new ArrayList<>();
+        try {
+            for (int t = 0; t < NB_THREADS; t++) {
+                final int offset = t * NB_DOCS / NB_THREADS;
+                final boolean useShared = t % 2 == 0;
+                final Callable<String[]> task = () -> {
+                    final Analyzer analyzer = useShared ? shared : factory.create();
+                    final String[] res = new String[docs.length];
+                    start.await();
+                    // each thread starts at a different document
+                    for (int i = 0; i < docs.length; i++) {
+                        final int idx = (i + offset) % docs.length;
+                        res[idx] = analyze(analyzer, docs[idx]);
+                    }
+                    if (!useShared)
+                        analyzer.close();
+                    return res;
+                };
+                futures.add(executor.submit(task));
+            }
+            start.countDown();
+            final List<String[]> results = new ArrayList<>();
+            for (final Future<String[]> future : futures)
+                results.add(future.get(5, TimeUnit.MINUTES));
+            final Analyzer reference = factory.create();
+            for (int i = 0; i < docs.length; i++) {
+                final String expected = analyze(reference, docs[i]);
+                assertFalse(expected.isEmpty());
+                for (int t = 0; t < results.size(); t++)
+                    assertEquals("thread " + t + ", document " + i, expected, results.get(t)[i]);
+            }
+            reference.close();
+        } finally {
+            executor.shutdownNow();
+            shared.close();
+        }
+    }
+
+    @Test
+    public void syllables() throws Exception {
+        stress(() -> new TibetanAnalyzer(false, "affix-paba", "l-ot", TibetanAnalyzer.INPUT_METHOD_UNICODE, "", null),
+                corpus(1, false));
+    }
+
+    @Test
+    public void strictSyllables() throws Exception {
+        stress(() -> new TibetanAnalyzer(false, "", "", TibetanAnalyzer.INPUT_METHOD_UNICODE, null, null),
+                corpus(2, false));
+    }
+
+    @Test
+    public void transliterations() throws Exception {
+        final String[] ewts = corpus(3, true);
+        for (final String inputMethod : Arrays.asList(TibetanAnalyzer.INPUT_METHOD_EWTS, TibetanAnalyzer.INPUT_METHOD_DTS,
+                TibetanAnalyzer.INPUT_METHOD_ALALC))
+            stress(() -> new TibetanAnalyzer(false, "affix-paba", "l", inputMethod, "", null), ewts);
+    }
+
+    @Test
+    public void phonetics() throws Exception {
+        stress(TibetanPhoneticIndexAnalyzer::new, corpus(4, false));
+        stress(TibetanPhoneticQueryAnalyzer::new, corpus(5, true));
+    }
+}
@@ -0,0 +1,110 @@
+package io.bdrc.lucene.bo;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.store.ByteArrayDataInput;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.bdrc.lucene.bo.bulk.CorpusAnalyzer;
+import io.bdrc.lucene.bo.bulk.TokenArray;
+
+public class CorpusAnalyzerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private List<Path> corpus() throws IOException {
+        final Path dir = folder.newFolder().toPath();
+        Files.createDirectories(dir.resolve("sub"));
+        for (int i = 0; i < 5; i++) {
+            final String text = new SyntheticCorpusGenerator(60 + i).oldTibRatio(0.01).generate(i == 0 ? 0 : 3000);
+            Files.write(dir.resolve(i < 3 ? "f" + i + ".txt" : "sub/f" + i + ".txt"), text.getBytes(StandardCharsets.UTF_8));
+        }
+        final List<Path> files = CorpusAnalyzer.listFiles(Collections.singletonList(dir));
+        assertEquals(5, files.size());
+        return files;
+    }
+
+    private static TokenArray analyze(final TibetanAnalyzer analyzer, final Path file) throws IOException {
+        try (TokenStream ts = analyzer.tokenStream("", new String(Files.readAllBytes(file), StandardCharsets.UTF_8))) {
+            return TokenArray.capture(ts);
+        }
+    }
+
+    @Test
+    public void binary() throws IOException {
+        final List<Path> files = corpus();
+        final TibetanAnalyzer analyzer = new TibetanAnalyzer(false, "affix-paba", "l", TibetanAnalyzer.INPUT_METHOD_UNICODE, "", null);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final CorpusAnalyzer.Stats stats = new CorpusAnalyzer(analyzer, CorpusAnalyzer.Format.BIN, 3).run(files, out);
+        assertEquals(5, stats.files);
+        final ByteArrayDataInput in = new ByteArrayDataInput(out.toByteArray());
+        assertEquals(CorpusAnalyzer.BINARY_MAGIC, in.readInt());
+        long tokens = 0;
+        for (final Path file : files) {
+            assertEquals(file.toString(), in.readString());
+            final TokenArray expected = analyze(analyzer, file);
+            assertEquals(expected, TokenArray.readFrom(in));
+            tokens += expected.size();
+        }
+        assertTrue(in.eof());
+        assertEquals(tokens, stats.tokens);
+        analyzer.close();
+    }
+
+    @Test
+    public void tsv() throws IOException {
+        final List<Path> files = corpus();
+        final TibetanAnalyzer analyzer = new TibetanAnalyzer(false, "affix-paba", "l", TibetanAnalyzer.INPUT_METHOD_UNICODE, "", null);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final CorpusAnalyzer.Stats stats = new CorpusAnalyzer(analyzer, CorpusAnalyzer.Format.TSV, 2).run(files, out);
+        final String[] lines = out.toString("UTF-8").split("\n");
+        assertEquals(stats.tokens, lines.length);
+        final TokenArray expected = analyze(analyzer, files.get(1));
+        final String[] first = lines[0].split("\t");
+        assertEquals(files.get(1).toString(), first[0]);
+        assertEquals(String.valueOf(expected.startOffset(0)), first[2]);
+        assertEquals(expected.term(0), first[5]);
+        analyzer.close();
+    }
+
+    @Test
+    public void decodedByChunks() throws IOException {
+        final Path dir = folder.newFolder().toPath();
+        // longer than the decoded chunks, with surrogate pairs across their ends
+        final String text = new SyntheticCorpusGenerator(66).generate(50000).replace("་", "་😀");
+        final Path file = dir.resolve("large.txt");
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+        final TibetanAnalyzer analyzer = new TibetanAnalyzer(false, "affix-paba", "l", TibetanAnalyzer.INPUT_METHOD_UNICODE, "", null);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final CorpusAnalyzer.Stats stats = new CorpusAnalyzer(analyzer, CorpusAnalyzer.Format.BIN, 1).run(Collections.singletonList(file), out);
+        assertEquals(text.length(), stats.chars);
+        final ByteArrayDataInput in = new ByteArrayDataInput(out.toByteArray());
+        in.readInt();
+        in.readString();
+        assertEquals(analyze(analyzer, file), TokenArray.readFrom(in));
+        // not in UTF-8
+        final Path invalid = dir.resolve("invalid.txt");
+        final byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        bytes[bytes.length / 2] = (byte) 0xff;
+        Files.write(invalid, bytes);
+        try {
+            new CorpusAnalyzer(analyzer, CorpusAnalyzer.Format.BIN, 1).run(Collections.singletonList(invalid), new ByteArrayOutputStream());
+            fail("the file should be rejected");
+        } catch (IOException e) {
+            assertEquals(invalid + " is not in UTF-8", e.getMessage());
+        }
+        analyzer.close();
+    }
+}
@@ -12,6 +12,7 @@ import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -20,16 +21,23 @@ import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.Tokenizer;
 import org.apache.lucene.analysis.charfilter.MappingCharFilter;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
 import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
 import org.junit.Assert;
 import org.junit.Test;
 
+import io.bdrc.lucene.bo.phonetics.EnglishPhoneticCharFilter;
 import io.bdrc.lucene.bo.phonetics.EnglishPhoneticCharMapFilter;
 import io.bdrc.lucene.bo.phonetics.EnglishPhoneticFilter;
 import io.bdrc.lucene.bo.phonetics.EnglishPhoneticRegexFilter;
 import io.bdrc.lucene.bo.phonetics.EnglishPhoneticTokenizer;
 import io.bdrc.lucene.bo.phonetics.LowerCaseCharFilter;
+import io.bdrc.lucene.bo.phonetics.PhoneticSystemEnglish;
+import io.bdrc.lucene.bo.phonetics.PhoneticSystemStandardTibetan;
+import io.bdrc.lucene.bo.phonetics.PhoneticVocabulary;
 import io.bdrc.lucene.bo.phonetics.StandardTibetanPhoneticFilter;
+import io.bdrc.lucene.bo.phonetics.TibetanPhoneticIndexAnalyzer;
+import io.bdrc.lucene.bo.phonetics.TibetanPhoneticQueryAnalyzer;
 
 import org.apache.lucene.analysis.core.WhitespaceTokenizer;
 import org.apache.lucene.analysis.pattern.PatternReplaceCharFilter;
@@ -91,6 +99,25 @@ public class PhoneticsFilterTest {
         assertTokenStream(stringToTokenStream("གཤན བཤན རྟེན བསྟན ཐེན"), Arrays.asList("Sen", "Sen", "ten", "ten", "ten"));
     }
     
+    @Test
+    public void testStandardTibetanVariants() throws IOException {
+        final PhoneticSystemStandardTibetan.Options strictOptions = PhoneticSystemStandardTibetan.Options.builder()
+                .ignoreTone(false)
+                .ignoreAspiration(false)
+                .build();
+        final PhoneticSystemStandardTibetan strict = PhoneticSystemStandardTibetan.get(strictOptions);
+        // same spec, same compiled system
+        assertTrue(strict == PhoneticSystemStandardTibetan.get(strictOptions.toBuilder().build()));
+        assertTrue(PhoneticSystemStandardTibetan.INSTANCE == PhoneticSystemStandardTibetan.get(PhoneticSystemStandardTibetan.Options.DEFAULT));
+        final WhitespaceTokenizer tokenizer = new WhitespaceTokenizer();
+        tokenizer.setReader(new StringReader("རྟེན ཐེན"));
+        final TokenStream tokenStream = new StandardTibetanPhoneticFilter(tokenizer, strict);
+        tokenStream.reset();
+        assertTokenStream(tokenStream, Arrays.asList("t+en", "th+en"));
+        // the default system is left untouched
+        assertTokenStream(stringToTokenStream("རྟེན ཐེན"), Arrays.asList("ten", "ten"));
+    }
+    
     static TokenStream tibetanToTokenStream(final String s) throws IOException {
         final TibSyllableTokenizer tokenizer = new TibSyllableTokenizer();
         tokenizer.setReader(new StringReader(s));
@@ -132,13 +159,17 @@ public class PhoneticsFilterTest {
         return tokenizer;
     }
     
+    // when set, the query alternatives are pruned
+    private PhoneticVocabulary queryVocabulary = null;
+    
     public List<List<String>> getQueryTokens(final String input) throws IOException {
         final List<List<String>> tokens = new ArrayList<>();
         Reader reader = new StringReader(input);
         reader = new LowerCaseCharFilter(reader);
         reader = new EnglishPhoneticCharMapFilter(reader);
         reader = EnglishPhoneticRegexFilter.plugFilters(reader);
-        TokenStream tokenStream = tokenize(reader, new EnglishPhoneticTokenizer());
+        final Tokenizer tokenizer = queryVocabulary == null ? new EnglishPhoneticTokenizer() : new EnglishPhoneticTokenizer(queryVocabulary, 4);
+        TokenStream tokenStream = tokenize(reader, tokenizer);
         CharTermAttribute charTermAttr = tokenStream.addAttribute(CharTermAttribute.class);
         PositionIncrementAttribute posIncrAttr = tokenStream.addAttribute(PositionIncrementAttribute.class);
         //tokenStream.reset();
@@ -548,4 +579,115 @@ public class PhoneticsFilterTest {
         checkMatch("Nyingthig Yabzhi" , "snying thig ya bzhi");
         checkMatch("Nyingtik Yabshyi" , "snying thig ya bzhi");
     }   
+    
+    @Test
+    public void englishPhoneticTokenizerStreamingTest() throws IOException {
+        // words spanning the tokenizer's read buffer must come out whole, with offsets
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++)
+            sb.append(" \tpalden\n");
+        final Tokenizer tokenizer = new EnglishPhoneticTokenizer();
+        tokenizer.setReader(new StringReader(sb.toString()));
+        tokenizer.reset();
+        final CharTermAttribute termAtt = tokenizer.addAttribute(CharTermAttribute.class);
+        final OffsetAttribute offsetAtt = tokenizer.addAttribute(OffsetAttribute.class);
+        int nbTokens = 0;
+        while (tokenizer.incrementToken()) {
+            final int wordIdx = nbTokens / 2;
+            assertEquals(nbTokens % 2 == 0 ? "pel" : "den", termAtt.toString());
+            assertEquals(wordIdx * 9 + 2, offsetAtt.startOffset());
+            assertEquals(wordIdx * 9 + 8, offsetAtt.endOffset());
+            nbTokens++;
+        }
+        tokenizer.end();
+        assertEquals(sb.length(), offsetAtt.endOffset());
+        tokenizer.close();
+        assertEquals(2000, nbTokens);
+    }
+    
+    private static String drain(final Reader reader, final Random rnd) throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        final char[] buffer = new char[64];
+        int length;
+        while ((length = reader.read(buffer, 0, 1 + rnd.nextInt(buffer.length - 1))) != -1)
+            sb.append(buffer, 0, length);
+        reader.close();
+        return sb.toString();
+    }
+    
+    @Test
+    public void englishPhoneticCharFilterEquivalenceTest() throws IOException {
+        // the fused filter must give the same output as the filter chain
+        final String[] pieces = {"a", "e", "i", "o", "u", "y", "Y", "g", "G", "n", "N", "s", "d", "t", "h", "w", "b", "m",
+                "k", "c", "z", "p", "r", "l", "j", "v", "'", "-", " ", "\n", "ä", "ö", "ü", "é", "ï", "ṃ", "\u0308", "\u0301",
+                "Ä", "Ü", "ay", "ey", "wa", "ng", "ny", "gy", "dz", "ts", "sh", "bb", "mm", "dorje", "lobsang", "amchi ",
+                "chod ", "Tenzin", "Gyatso", "patrul", "4", "ñ", "Ś", "x", "F"};
+        final Random rnd = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            final int len = rnd.nextInt(i % 100 == 0 ? 1500 : 15);
+            final StringBuilder sb = new StringBuilder();
+            for (int j = 0; j < len; j++)
+                sb.append(pieces[rnd.nextInt(pieces.length)]);
+            final String input = sb.toString();
+            Reader chain = new LowerCaseCharFilter(new StringReader(input));
+            chain = new EnglishPhoneticCharMapFilter(chain);
+            chain = EnglishPhoneticRegexFilter.plugFilters(chain);
+            assertEquals("fail on " + input, drain(chain, rnd), drain(new EnglishPhoneticCharFilter(new StringReader(input)), rnd));
+        }
+    }
+    
+    @Test
+    public void prunedPhoneticTest() throws IOException {
+        final PhoneticVocabulary vocabulary = PhoneticVocabulary.fromPhoneticSystem(PhoneticSystemEnglish.INSTANCE);
+        assertTrue(vocabulary.contains("Ga"));
+        // Sanskrit stack
+        assertTrue(vocabulary.contains("Nga"));
+        assertTrue(!vocabulary.contains("Nrig"));
+        final List<List<String>> allTokens = getQueryTokens("Lungrig");
+        queryVocabulary = vocabulary;
+        final List<List<String>> prunedTokens = getQueryTokens("Lungrig");
+        assertEquals(Arrays.asList(Arrays.asList("luN", "lu"), Arrays.asList("rig", "Nrig")), allTokens);
+        assertEquals(Arrays.asList(Arrays.asList("luN", "lu"), Arrays.asList("rig")), prunedTokens);
+        // pruning must not lose any of the expected matches
+        integratedPhoneticTest();
+    }
+    
+    static List<List<String>> analyzerTokens(final Analyzer analyzer, final String input) throws IOException {
+        final List<List<String>> tokens = new ArrayList<>();
+        try (TokenStream tokenStream = analyzer.tokenStream("", input)) {
+            final CharTermAttribute charTermAttr = tokenStream.addAttribute(CharTermAttribute.class);
+            final PositionIncrementAttribute posIncrAttr = tokenStream.addAttribute(PositionIncrementAttribute.class);
+            tokenStream.reset();
+            List<String> lastPosition = new ArrayList<>();
+            while (tokenStream.incrementToken()) {
+                if (posIncrAttr.getPositionIncrement() > 0) {
+                    lastPosition = new ArrayList<>();
+                    tokens.add(lastPosition);
+                }
+                lastPosition.add(charTermAttr.toString());
+            }
+            tokenStream.end();
+        }
+        return tokens;
+    }
+    
+    @Test
+    public void phoneticAnalyzersTest() throws IOException {
+        // the packaged analyzers give the same tokens as the hand-wired components, with reuse
+        try (Analyzer indexAnalyzer = new TibetanPhoneticIndexAnalyzer(TibetanAnalyzer.INPUT_METHOD_EWTS, PhoneticSystemEnglish.INSTANCE);
+                Analyzer queryAnalyzer = new TibetanPhoneticQueryAnalyzer()) {
+            final String[][] pairs = {
+                    {"Tendzin Gyatso", "bstan 'dzin rgya mtsho"},
+                    {"Padma Jungné", "pad+ma 'byung gnas"},
+                    {"Kunzang lame shelung", "kun bzang bla ma'i zhal lung"},
+                    {"Nyingtik Yabshyi", "snying thig ya bzhi"}
+            };
+            for (int i = 0; i < 2; i++) {
+                for (final String[] pair : pairs) {
+                    assertEquals(getQueryTokens(pair[0]), analyzerTokens(queryAnalyzer, pair[0]));
+                    assertEquals(getIndexTokens(pair[1]), analyzerTokens(indexAnalyzer, pair[1]));
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,143 @@
+package io.bdrc.lucene.bo;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.lucene.analysis.CharFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.junit.Test;
+
+import io.bdrc.lucene.bo.bulk.TokenArray;
+
+public class PipelinedCharFilterTest {
+
+    private static CharFilter ewtsChain(final String text) {
+        Reader reader = new TibEwtsFilter(new StringReader(text), TibetanAnalyzer.INPUT_METHOD_EWTS, true);
+        reader = new TibCharFilter(reader, true, true);
+        return (CharFilter) TibPattFilter.plugFilters(reader);
+    }
+
+    private static String readAll(final Reader reader, final int bufferSize) throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        final char[] buffer = new char[bufferSize];
+        int len;
+        while ((len = reader.read(buffer)) != -1)
+            sb.append(buffer, 0, len);
+        return sb.toString();
+    }
+
+    @Test
+    public void sameOutputAndOffsets() throws IOException {
+        final String text = new SyntheticCorpusGenerator(31).ewts(true).oldTibRatio(0.05).generate(50000);
+        final CharFilter expected = ewtsChain(text);
+        final String expectedOutput = readAll(expected, 1000);
+        final PipelinedCharFilter pipelined = new PipelinedCharFilter(ewtsChain(text));
+        // a buffer size that doesn't divide the blocks
+        assertEquals(expectedOutput, readAll(pipelined, 777));
+        for (int off = 0; off <= expectedOutput.length(); off++)
+            assertEquals(expected.correctOffset(off), pipelined.correctOffset(off));
+        expected.close();
+        pipelined.close();
+    }
+
+    @Test
+    public void sameTokens() throws IOException {
+        final String ewts = new SyntheticCorpusGenerator(32).ewts(true).generate(100000);
+        final String unicode = new SyntheticCorpusGenerator(33).oldTibRatio(0.05).generate(100000);
+        final TibetanAnalyzer ewtsAnalyzer = new TibetanAnalyzer(false, "affix-paba", "l", TibetanAnalyzer.INPUT_METHOD_EWTS, "", null);
+        final TibetanAnalyzer unicodeAnalyzer = new TibetanAnalyzer(false, "affix-paba", "l-ot", TibetanAnalyzer.INPUT_METHOD_UNICODE, "", null);
+        for (final Object[] run : new Object[][] { { ewtsAnalyzer, ewts }, { unicodeAnalyzer, unicode } }) {
+            final TibetanAnalyzer analyzer = (TibetanAnalyzer) run[0];
+            final String text = (String) run[1];
+            final TokenArray expected;
+            try (TokenStream ts = analyzer.tokenStream("", text)) {
+                expected = TokenArray.capture(ts);
+            }
+            analyzer.setPipelined(true);
+            for (int i = 0; i < 3; i++) {
+                try (TokenStream ts = analyzer.tokenStream("", text)) {
+                    assertEquals(expected, TokenArray.capture(ts));
+                }
+            }
+            analyzer.close();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void closeBeforeTheEnd() throws IOException {
+        final String text = new SyntheticCorpusGenerator(34).generate(200000);
+        for (int i = 0; i < 20; i++) {
+            final PipelinedCharFilter pipelined = new PipelinedCharFilter(new TibCharFilter(new StringReader(text)));
+            assertTrue(pipelined.read(new char[10]) > 0);
+            pipelined.close();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void uncheckedErrorOfTheChain() throws IOException {
+        final String text = new SyntheticCorpusGenerator(35).generate(50000);
+        final Reader failing = new Reader() {
+            private final Reader in = new StringReader(text);
+            private int read = 0;
+
+            @Override
+            public int read(final char[] cbuf, final int off, final int len) throws IOException {
+                if (read > 20000)
+                    throw new IllegalStateException("failing");
+                final int res = in.read(cbuf, off, len);
+                read += Math.max(res, 0);
+                return res;
+            }
+
+            @Override
+            public void close() throws IOException {
+                in.close();
+            }
+        };
+        final PipelinedCharFilter pipelined = new PipelinedCharFilter(new TibCharFilter(failing));
+        try {
+            readAll(pipelined, 1000);
+            fail("the error of the chain should be thrown by the reading thread");
+        } catch (IllegalStateException e) {
+            assertEquals("failing", e.getMessage());
+        }
+        assertEquals(-1, pipelined.read());
+        pipelined.close();
+    }
+
+    @Test(timeout = 10000)
+    public void rejectedOrDroppedProducer() throws IOException {
+        final PipelinedCharFilter rejected = new PipelinedCharFilter(new TibCharFilter(new StringReader("བཀྲ་ཤིས")), task -> {
+            throw new RejectedExecutionException("full");
+        });
+        try {
+            rejected.read();
+            fail("the rejection should be thrown by the reading thread");
+        } catch (RejectedExecutionException e) {
+            assertEquals("full", e.getMessage());
+        }
+        assertEquals(-1, rejected.read());
+        rejected.close();
+        // accepted but never run, as by ExecutorService.shutdownNow()
+        final PipelinedCharFilter dropped = new PipelinedCharFilter(new TibCharFilter(new StringReader("བཀྲ་ཤིས")), task -> {
+        });
+        new Thread(() -> {
+            try {
+                Thread.sleep(100);
+                dropped.close();
+            } catch (InterruptedException | IOException e) {
+                throw new RuntimeException(e);
+            }
+        }).start();
+        try {
+            dropped.read();
+            fail("the read should be stopped by close()");
+        } catch (IOException e) {
+            assertEquals("closed", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package io.bdrc.lucene.bo;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.junit.Test;
+
+import io.bdrc.lucene.bo.bulk.TokenArray;
+import io.bdrc.lucene.bo.bulk.TokenArrayCache;
+
+public class ResultCacheTest {
+
+    private static TokenArray analyze(final TibetanAnalyzer analyzer, final String text) throws IOException {
+        try (TokenStream ts = analyzer.tokenStream("", text)) {
+            return TokenArray.capture(ts);
+        }
+    }
+
+    private static void assertSameWithCache(final String inputMethod, final boolean ewts) throws IOException {
+        final TibetanAnalyzer expected = new TibetanAnalyzer(false, "affix-paba", "l-ot", inputMethod, "", null);
+        final TibetanAnalyzer cached = new TibetanAnalyzer(false, "affix-paba", "l-ot", inputMethod, "", null);
+        cached.setResultCache(200, 1000);
+        final String[] texts = new String[30];
+        for (int i = 0; i < texts.length; i++)
+            texts[i] = new SyntheticCorpusGenerator(50 + i).ewts(ewts).oldTibRatio(0.05).generate(i < 25 ? 60 : 1000);
+        for (int pass = 0; pass < 3; pass++) {
+            for (final String text : texts) {
+                assertEquals(analyze(expected, text), analyze(cached, text));
+                // through a Reader
+                try (TokenStream ts = cached.tokenStream("", new StringReader(text))) {
+                    assertEquals(analyze(expected, text), TokenArray.capture(ts));
+                }
+            }
+        }
+        expected.close();
+        cached.close();
+    }
+
+    @Test
+    public void unicode() throws IOException {
+        assertSameWithCache(TibetanAnalyzer.INPUT_METHOD_UNICODE, false);
+    }
+
+    @Test
+    public void ewts() throws IOException {
+        assertSameWithCache(TibetanAnalyzer.INPUT_METHOD_EWTS, true);
+    }
+
+    // the syllable ids of the tokens
+    private static List<Integer> syllableIds(final TibetanAnalyzer analyzer, final Reader reader) throws IOException {
+        final List<Integer> res = new ArrayList<>();
+        try (TokenStream ts = analyzer.tokenStream("", reader)) {
+            final SyllableIdAttribute sylAtt = ts.getAttribute(SyllableIdAttribute.class);
+            ts.reset();
+            while (ts.incrementToken())
+                res.add(sylAtt.getSyllableId());
+            ts.end();
+        }
+        return res;
+    }
+
+    @Test
+    public void longTextsStreamed() throws IOException {
+        // without the old Tibetan patterns, the char filters stream their input
+        final TibetanAnalyzer expected = new TibetanAnalyzer(false, "affix-paba", "l", TibetanAnalyzer.INPUT_METHOD_EWTS, "", null);
+        final TibetanAnalyzer cached = new TibetanAnalyzer(false, "affix-paba", "l", TibetanAnalyzer.INPUT_METHOD_EWTS, "", null);
+        cached.setResultCache(200, 1000);
+        final String text = new SyntheticCorpusGenerator(80).ewts(true).generate(100000);
+        final List<Integer> ids = syllableIds(expected, new StringReader(text));
+        assertTrue(ids.stream().anyMatch(id -> id >= 0));
+        for (int pass = 0; pass < 2; pass++) {
+            assertEquals(analyze(expected, text), analyze(cached, text));
+            // the attributes of the chain are kept
+            assertEquals(ids, syllableIds(cached, new StringReader(text)));
+        }
+        // the first tokens are given before the end of the text is read
+        final int[] read = { 0 };
+        final Reader counting = new StringReader(text) {
+            @Override
+            public int read(final char[] cbuf, final int off, final int len) throws IOException {
+                final int res = super.read(cbuf, off, len);
+                read[0] += Math.max(res, 0);
+                return res;
+            }
+        };
+        try (TokenStream ts = cached.tokenStream("", counting)) {
+            ts.reset();
+            assertTrue(ts.incrementToken());
+            assertTrue(read[0] < text.length());
+            while (ts.incrementToken())
+                ;
+            ts.end();
+        }
+        assertEquals(text.length(), read[0]);
+        // the short texts have the syllable ids when they are analyzed, not when they are replayed
+        final String shortText = "bkra shis bde legs/";
+        assertEquals(syllableIds(expected, new StringReader(shortText)), syllableIds(cached, new StringReader(shortText)));
+        assertTrue(syllableIds(cached, new StringReader(shortText)).stream().allMatch(id -> id == -1));
+        expected.close();
+        cached.close();
+    }
+
+    @Test
+    public void bounded() {
+        final TokenArrayCache cache = new TokenArrayCache(10, 64);
+        for (int i = 0; i < 1000; i++)
+            cache.put("ཀ" + i, new TokenArray());
+        assertTrue(cache.size() <= 64);
+        assertNotNull(cache.get("ཀ999"));
+        cache.put("ཀཀཀཀཀཀཀཀཀཀཀ", new TokenArray());
+        assertNull(cache.get("ཀཀཀཀཀཀཀཀཀཀཀ"));
+        // the bound is exact, also when it's not a multiple of the stripes
+        for (final int maxEntries : new int[] { 1, 5, 16, 31, 100 }) {
+            final TokenArrayCache small = new TokenArrayCache(10, maxEntries);
+            for (int i = 0; i < 1000; i++)
+                small.put("ཀ" + i, new TokenArray());
+            assertEquals(maxEntries, small.size());
+        }
+    }
+}
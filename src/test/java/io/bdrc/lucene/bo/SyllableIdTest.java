@@ -0,0 +1,89 @@
+package io.bdrc.lucene.bo;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+
+import org.apache.lucene.analysis.CharArraySet;
+import org.apache.lucene.analysis.StopFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.junit.Test;
+
+import io.bdrc.lucene.bo.bulk.TokenArray;
+import io.bdrc.lucene.bo.phonetics.EnglishPhoneticFilter;
+import io.bdrc.lucene.bo.phonetics.PhoneticSystemEnglish;
+import io.bdrc.lucene.bo.phonetics.PhoneticSystemStandardTibetan;
+import io.bdrc.lucene.bo.phonetics.StandardTibetanPhoneticFilter;
+
+public class SyllableIdTest {
+
+    private static final CharArraySet stopWords = new CharArraySet(Arrays.asList("ཏུ", "གི", "པ", "ནི", "དང", "ཀྱི", "ཏེ"), false);
+
+    private static String[] texts() {
+        final String[] res = new String[10];
+        for (int i = 0; i < res.length; i++)
+            res[i] = new SyntheticCorpusGenerator(100 + i).oldTibRatio(0.05).generate(2000);
+        return res;
+    }
+
+    private interface Chain {
+        TokenStream create(Tokenizer source);
+    }
+
+    private static TokenArray analyze(final String text, final boolean syllableIds, final Chain chain) throws IOException {
+        final Tokenizer source = new TibSyllableTokenizer(TokenStream.DEFAULT_TOKEN_ATTRIBUTE_FACTORY, true, false, syllableIds);
+        source.setReader(new StringReader(text));
+        try (TokenStream ts = chain.create(source)) {
+            return TokenArray.capture(ts);
+        }
+    }
+
+    private static void assertSameWithIds(final Chain chain) throws IOException {
+        for (int pass = 0; pass < 2; pass++) {
+            for (final String text : texts())
+                assertEquals(analyze(text, false, chain), analyze(text, true, chain));
+        }
+    }
+
+    @Test
+    public void ids() throws IOException {
+        for (final String text : texts()) {
+            final Tokenizer source = new TibSyllableTokenizer(TokenStream.DEFAULT_TOKEN_ATTRIBUTE_FACTORY, true, false, true);
+            source.setReader(new StringReader(text));
+            final CharTermAttribute termAtt = source.getAttribute(CharTermAttribute.class);
+            final SyllableIdAttribute sylAtt = source.getAttribute(SyllableIdAttribute.class);
+            final IsStandardTibetanAttribute istAtt = source.getAttribute(IsStandardTibetanAttribute.class);
+            source.reset();
+            while (source.incrementToken()) {
+                final int id = sylAtt.getSyllableId();
+                // the stacks of the syllables that are not Standard Tibetan have no id
+                assertEquals(id != -1, istAtt.getIsStandardTibetan());
+                if (id != -1) {
+                    assertTrue(id < CommonHelpers.nbSyllableIds());
+                    assertEquals(termAtt.toString(), CommonHelpers.syllable(id));
+                }
+            }
+            source.end();
+            source.close();
+        }
+        assertEquals(-1, CommonHelpers.syllableId("ཀཀཀ".toCharArray(), 0, 3));
+    }
+
+    @Test
+    public void filters() throws IOException {
+        assertSameWithIds(source -> new PaBaFilter(new TibAffixedFilter(source, true)));
+        assertSameWithIds(source -> new StopFilter(new TibAffixedFilter(source, false), stopWords));
+        assertSameWithIds(source -> new SyllableStopFilter(new PaBaFilter(new TibAffixedFilter(source, false)), stopWords,
+                SyllableStopFilter.syllableIds(stopWords)));
+    }
+
+    @Test
+    public void phonetics() throws IOException {
+        assertSameWithIds(source -> new StandardTibetanPhoneticFilter(source, PhoneticSystemStandardTibetan.INSTANCE));
+        assertSameWithIds(source -> new EnglishPhoneticFilter(source, PhoneticSystemEnglish.INSTANCE));
+    }
+}
@@ -0,0 +1,71 @@
+package io.bdrc.lucene.bo;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.junit.Test;
+
+import io.bdrc.lucene.bo.bulk.TokenArray;
+
+public class SyllableStructureTest {
+
+    // the components of a syllable, separated by |
+    private static String components(final String syllable) {
+        final int structure = SyllableStructure.of(CommonHelpers.syllableId(syllable.toCharArray(), 0, syllable.length()));
+        assertNotEquals(0, structure);
+        final StringBuilder sb = new StringBuilder();
+        for (int c = SyllableStructure.PREFIX; c <= SyllableStructure.AFFIX; c++) {
+            if (c != SyllableStructure.PREFIX)
+                sb.append('|');
+            sb.append(syllable, SyllableStructure.start(structure, c), SyllableStructure.end(structure, c));
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void decomposition() {
+        assertEquals("བ|ས|ྒ|ྲ|ུ|བ|ས|", components("བསྒྲུབས"));
+        assertEquals("||ཀ|||||", components("ཀ"));
+        assertEquals("ད||བ|ྱ|ི|ང||", components("དབྱིང"));
+        assertEquals("|ར|ྐ|ྱ||||", components("རྐྱ"));
+        assertEquals("|ལ|ྷ||ོ|ད||", components("ལྷོད"));
+        assertEquals("ད||ག|||འ||", components("དགའ"));
+        assertEquals("||བ|||||འི", components("བའི"));
+        assertEquals("||བ||ུ|||འིའོ", components("བུའིའོ"));
+        assertEquals(0, SyllableStructure.of(-1));
+    }
+
+    private static TokenArray analyze(final String text, final boolean structures, final boolean convertOldTib) throws IOException {
+        final Tokenizer source = new TibSyllableTokenizer(TokenStream.DEFAULT_TOKEN_ATTRIBUTE_FACTORY, true, false, structures, structures);
+        source.setReader(new StringReader(text));
+        try (TokenStream ts = new PaBaFilter(new TibAffixedFilter(source, convertOldTib))) {
+            return TokenArray.capture(ts);
+        }
+    }
+
+    @Test
+    public void allSyllables() throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        for (int id = 0; id < CommonHelpers.nbSyllableIds(); id++) {
+            final String syllable = CommonHelpers.syllable(id);
+            // some ids are never given, the longest match of the onset wins
+            if (CommonHelpers.syllableId(syllable.toCharArray(), 0, syllable.length()) != id)
+                continue;
+            final int structure = SyllableStructure.of(id);
+            assertEquals(syllable.length(), SyllableStructure.end(structure, SyllableStructure.AFFIX));
+            assertEquals(1, SyllableStructure.length(structure, SyllableStructure.ROOT));
+            sb.append(syllable).append('་');
+        }
+        final String text = sb.toString();
+        assertEquals(analyze(text, false, false), analyze(text, true, false));
+        assertEquals(analyze(text, false, true), analyze(text, true, true));
+        for (int i = 0; i < 5; i++) {
+            final String corpus = new SyntheticCorpusGenerator(200 + i).oldTibRatio(0.05).generate(2000);
+            assertEquals(analyze(corpus, false, true), analyze(corpus, true, true));
+        }
+    }
+}
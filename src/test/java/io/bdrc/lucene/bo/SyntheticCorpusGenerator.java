@@ -0,0 +1,274 @@
+package io.bdrc.lucene.bo;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import io.bdrc.ewtsconverter.EwtsConverter;
+import io.bdrc.lucene.bo.phonetics.PhoneticSystemStandardTibetan;
+
+public class SyntheticCorpusGenerator {
+
+    /*
+     * Reproducible Tibetan text for benchmarks and stress tests, the same seed and
+     * settings always give the same text.
+     *
+     * Syllables are the onset + vowel / coda combinations of CommonHelpers, drawn with a
+     * Zipfian distribution over a ranking shuffled by the seed (shorter syllables first). Sanskrit stacks are made
+     * of the characters known by the Standard Tibetan phonetic system. Old Tibetan
+     * spellings are the ones normalized by TibCharFilter, TibPattFilter and TibAffixedFilter.
+     *
+     * Large files can be generated with
+     *   mvn test-compile exec:java@synthetic-corpus -Dexec.args="corpus.txt 1000 42"
+     * where the arguments are the file, its size in MB (of chars), the seed and optionally "ewts".
+     */
+
+    private static final List<String> syllables = new ArrayList<>();
+    private static final List<String> sktConsonants = new ArrayList<>();
+    private static final List<String> sktSubjoined = new ArrayList<>();
+    private static final List<String> sktVowels = new ArrayList<>();
+
+    static {
+        final List<String> onsets = CommonHelpers.onsetTrie.keys();
+        final List<String> vowelCodas = CommonHelpers.vowelCodaTrie.keys();
+        Collections.sort(onsets);
+        Collections.sort(vowelCodas);
+        for (final String onset : onsets) {
+            if (onset.isEmpty())
+                continue;
+            for (final String vowelCoda : vowelCodas)
+                syllables.add(onset + vowelCoda);
+        }
+        final List<Character> sktChars = new ArrayList<>(PhoneticSystemStandardTibetan.INSTANCE.getSktCharacters());
+        Collections.sort(sktChars);
+        for (final char c : sktChars) {
+            if (c >= 'ཀ' && c <= 'ཬ')
+                sktConsonants.add(String.valueOf(c));
+            else if (c >= 'ྐ' && c <= 'ྼ')
+                sktSubjoined.add(String.valueOf(c));
+            else if (c >= 'ཱ' && c <= 'ཽ')
+                sktVowels.add(String.valueOf(c));
+        }
+    }
+
+    private final long seed;
+    private double zipfExponent = 1.0;
+    private double sktRatio = 0.02;
+    private double shadRatio = 0.08;
+    private double digitRatio = 0.01;
+    private double oldTibRatio = 0.0;
+    private double latinRatio = 0.0;
+    private int lineLength = 1000;
+    private boolean ewts = false;
+
+    public SyntheticCorpusGenerator(final long seed) {
+        this.seed = seed;
+    }
+
+    // s in P(rank) ~ 1 / rank^s
+    public SyntheticCorpusGenerator zipfExponent(final double zipfExponent) {
+        this.zipfExponent = zipfExponent;
+        return this;
+    }
+
+    // the ratios are per syllable
+    public SyntheticCorpusGenerator sktRatio(final double sktRatio) {
+        this.sktRatio = sktRatio;
+        return this;
+    }
+
+    public SyntheticCorpusGenerator shadRatio(final double shadRatio) {
+        this.shadRatio = shadRatio;
+        return this;
+    }
+
+    public SyntheticCorpusGenerator digitRatio(final double digitRatio) {
+        this.digitRatio = digitRatio;
+        return this;
+    }
+
+    public SyntheticCorpusGenerator oldTibRatio(final double oldTibRatio) {
+        this.oldTibRatio = oldTibRatio;
+        return this;
+    }
+
+    public SyntheticCorpusGenerator latinRatio(final double latinRatio) {
+        this.latinRatio = latinRatio;
+        return this;
+    }
+
+    // approximate number of chars per line, lines end after a shad
+    public SyntheticCorpusGenerator lineLength(final int lineLength) {
+        this.lineLength = lineLength;
+        return this;
+    }
+
+    // transliterate the output in EWTS
+    public SyntheticCorpusGenerator ewts(final boolean ewts) {
+        this.ewts = ewts;
+        return this;
+    }
+
+    public String generate(final long nbChars) {
+        final StringBuilder sb = new StringBuilder();
+        try {
+            generate(sb, nbChars);
+        } catch (IOException e) {
+            // cannot happen with a StringBuilder
+            throw new IllegalStateException(e);
+        }
+        return sb.toString();
+    }
+
+    // appends lines until at least nbChars Tibetan chars have been generated
+    public void generate(final Appendable out, final long nbChars) throws IOException {
+        final Random rand = new Random(seed);
+        final List<String> ranked = new ArrayList<>(syllables);
+        Collections.shuffle(ranked, rand);
+        // short syllables are the most frequent ones in real texts
+        ranked.sort(Comparator.comparingInt(String::length));
+        final double[] cumulative = zipfCumulative(ranked.size());
+        final EwtsConverter converter = ewts ? new EwtsConverter() : null;
+        final StringBuilder line = new StringBuilder();
+        long total = 0;
+        while (total < nbChars) {
+            line.setLength(0);
+            while (line.length() < lineLength)
+                appendPhrase(line, rand, ranked, cumulative);
+            total += line.length();
+            if (converter != null)
+                out.append(converter.toWylie(line.toString()));
+            else
+                out.append(line);
+            out.append('\n');
+        }
+    }
+
+    private double[] zipfCumulative(final int size) {
+        final double[] res = new double[size];
+        double sum = 0;
+        for (int i = 0; i < res.length; i++) {
+            sum += 1.0 / Math.pow(i + 1, zipfExponent);
+            res[i] = sum;
+        }
+        for (int i = 0; i < res.length; i++)
+            res[i] /= sum;
+        return res;
+    }
+
+    private static String zipfSyllable(final Random rand, final List<String> ranked, final double[] cumulative) {
+        int idx = Arrays.binarySearch(cumulative, rand.nextDouble());
+        if (idx < 0)
+            idx = -idx - 1;
+        return ranked.get(Math.min(idx, cumulative.length - 1));
+    }
+
+    // syllables separated by tshegs until a shad
+    private void appendPhrase(final StringBuilder sb, final Random rand, final List<String> ranked, final double[] cumulative) {
+        while (true) {
+            final double r = rand.nextDouble();
+            if (r < latinRatio) {
+                appendLatin(sb, rand);
+            } else if (r < latinRatio + digitRatio) {
+                final int nbDigits = 1 + rand.nextInt(4);
+                for (int i = 0; i < nbDigits; i++)
+                    sb.append((char) ('༠' + rand.nextInt(10)));
+            } else if (r < latinRatio + digitRatio + sktRatio) {
+                appendSktStack(sb, rand);
+            } else {
+                final String syl = zipfSyllable(rand, ranked, cumulative);
+                if (rand.nextDouble() < oldTibRatio)
+                    appendOldTib(sb, syl, rand);
+                else
+                    sb.append(syl);
+            }
+            if (rand.nextDouble() < shadRatio) {
+                sb.append(rand.nextInt(10) == 0 ? "།། " : "། ");
+                return;
+            }
+            sb.append('་');
+        }
+    }
+
+    private static void appendSktStack(final StringBuilder sb, final Random rand) {
+        sb.append(sktConsonants.get(rand.nextInt(sktConsonants.size())));
+        final int nbSubjoined = rand.nextInt(3);
+        for (int i = 0; i < nbSubjoined; i++)
+            sb.append(sktSubjoined.get(rand.nextInt(sktSubjoined.size())));
+        if (rand.nextBoolean())
+            sb.append(sktVowels.get(rand.nextInt(sktVowels.size())));
+        if (rand.nextInt(4) == 0)
+            sb.append('ཾ');
+    }
+
+    private static final String[] mergedSuffixVowels = {"ི", "ུ", "ོ"};
+
+    private static void appendOldTib(final StringBuilder sb, final String syl, final Random rand) {
+        final char last = syl.charAt(syl.length() - 1);
+        switch (rand.nextInt(5)) {
+        case 0:
+            // reversed gigu
+            sb.append(syl.replace('ི', 'ྀ'));
+            break;
+        case 1:
+            // dadrag
+            sb.append(syl);
+            if (last == 'ན' || last == 'ར' || last == 'ལ')
+                sb.append('ད');
+            break;
+        case 2:
+            // medial འ
+            if (syl.length() > 1 && (last == 'ས' || last == 'ད' || last == 'ར'))
+                sb.append(syl, 0, syl.length() - 1).append('འ').append(last);
+            else
+                sb.append(syl);
+            break;
+        case 3:
+            // syllable merged with the following case marker (དུསུ for དུས་སུ)
+            sb.append(syl);
+            if (last >= 'ཀ' && last <= 'ཬ')
+                sb.append(last).append(mergedSuffixVowels[rand.nextInt(mergedSuffixVowels.length)]);
+            break;
+        default:
+            // མྱི for མི
+            if (syl.startsWith("མི") || syl.startsWith("མེ"))
+                sb.append("མྱ").append(syl, 1, syl.length());
+            else
+                sb.append(syl);
+        }
+    }
+
+    private static void appendLatin(final StringBuilder sb, final Random rand) {
+        final int nbWords = 1 + rand.nextInt(3);
+        for (int i = 0; i < nbWords; i++) {
+            if (i > 0)
+                sb.append(' ');
+            final int len = 2 + rand.nextInt(7);
+            for (int j = 0; j < len; j++)
+                sb.append((char) ('a' + rand.nextInt(26)));
+        }
+    }
+
+    public static void main(final String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("usage: SyntheticCorpusGenerator <output file> <size in MB> <seed> [ewts]");
+            System.exit(1);
+        }
+        final long nbChars = Long.parseLong(args[1]) * 1024 * 1024;
+        final SyntheticCorpusGenerator generator = new SyntheticCorpusGenerator(Long.parseLong(args[2]))
+                .oldTibRatio(0.01)
+                .latinRatio(0.001)
+                .ewts(args.length > 3 && args[3].equals("ewts"));
+        try (Writer writer = Files.newBufferedWriter(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+            generator.generate(writer, nbChars);
+        }
+    }
+}
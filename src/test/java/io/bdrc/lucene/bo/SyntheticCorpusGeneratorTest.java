@@ -0,0 +1,46 @@
+package io.bdrc.lucene.bo;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.junit.Test;
+
+public class SyntheticCorpusGeneratorTest {
+
+    @Test
+    public void sameSeedSameText() {
+        final String first = new SyntheticCorpusGenerator(42).oldTibRatio(0.05).latinRatio(0.01).generate(20000);
+        final String second = new SyntheticCorpusGenerator(42).oldTibRatio(0.05).latinRatio(0.01).generate(20000);
+        final String other = new SyntheticCorpusGenerator(43).oldTibRatio(0.05).latinRatio(0.01).generate(20000);
+        assertTrue(first.length() >= 20000);
+        assertEquals(first, second);
+        assertNotEquals(first, other);
+    }
+
+    @Test
+    public void standardSyllables() throws IOException {
+        final String text = new SyntheticCorpusGenerator(1).sktRatio(0).digitRatio(0).generate(10000);
+        final TibSyllableTokenizer tokenizer = new TibSyllableTokenizer();
+        final CharTermAttribute termAtt = tokenizer.addAttribute(CharTermAttribute.class);
+        tokenizer.setReader(new StringReader(text));
+        tokenizer.reset();
+        int nbTokens = 0;
+        while (tokenizer.incrementToken()) {
+            assertTrue(termAtt.toString(), CommonHelpers.isStandardTibetan(termAtt.buffer(), 0, termAtt.length()));
+            nbTokens++;
+        }
+        tokenizer.end();
+        tokenizer.close();
+        assertTrue(nbTokens > 1000);
+    }
+
+    @Test
+    public void ewtsOutput() {
+        final String text = new SyntheticCorpusGenerator(7).ewts(true).generate(5000);
+        for (int i = 0; i < text.length(); i++)
+            assertTrue(text.charAt(i) < 0x80);
+    }
+}
@@ -0,0 +1,172 @@
+package io.bdrc.lucene.bo;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.TermToBytesRefAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.MultiTerms;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.bdrc.lucene.bo.bulk.AnalysisCache;
+import io.bdrc.lucene.bo.bulk.CachingTibetanAnalyzer;
+import io.bdrc.lucene.bo.bulk.ChunkedAnalyzer;
+import io.bdrc.lucene.bo.bulk.TokenArray;
+
+public class TibetanTermEncodingTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static TokenArray analyze(final TibetanAnalyzer analyzer, final String text) throws IOException {
+        try (TokenStream ts = analyzer.tokenStream("", text)) {
+            return TokenArray.capture(ts);
+        }
+    }
+
+    @Test
+    public void roundTrip() {
+        for (final String term : new String[] { "བཀྲ", "ཤིས", "༡༢༣", "abc", "བཀྲa", "", "é" }) {
+            final BytesRef bytes = TibetanTermEncoding.encode(term);
+            assertEquals(term, TibetanTermEncoding.decode(bytes));
+            if (!term.isEmpty() && TibetanTermEncoding.isTibetan(term.toCharArray(), 0, term.length())) {
+                assertEquals(term.length() + 1, bytes.length);
+                assertEquals(TibetanTermEncoding.MARKER, bytes.bytes[bytes.offset]);
+            } else {
+                assertEquals(new BytesRef(term), bytes);
+            }
+        }
+        // the order of the chars is kept
+        assertTrue(TibetanTermEncoding.encode("ཀ").compareTo(TibetanTermEncoding.encode("ཁ")) < 0);
+        assertTrue(TibetanTermEncoding.encode("ཀ").compareTo(TibetanTermEncoding.encode("ཀཀ")) < 0);
+    }
+
+    // the terms as indexed
+    private static List<BytesRef> indexedTerms(final Analyzer analyzer, final String text) throws IOException {
+        final List<BytesRef> res = new ArrayList<>();
+        try (TokenStream ts = analyzer.tokenStream("", text)) {
+            final TermToBytesRefAttribute termAtt = ts.getAttribute(TermToBytesRefAttribute.class);
+            ts.reset();
+            while (ts.incrementToken())
+                res.add(BytesRef.deepCopyOf(termAtt.getBytesRef()));
+            ts.end();
+        }
+        return res;
+    }
+
+    private static TibetanAnalyzer compactAnalyzer() throws IOException {
+        final TibetanAnalyzer res = new TibetanAnalyzer(false, "affix-paba", "l", TibetanAnalyzer.INPUT_METHOD_UNICODE, "", null);
+        res.setCompactTerms(true);
+        return res;
+    }
+
+    @Test
+    public void sameTokens() throws IOException {
+        final TibetanAnalyzer expected = new TibetanAnalyzer(false, "affix-paba", "l", TibetanAnalyzer.INPUT_METHOD_UNICODE, "", null);
+        final TibetanAnalyzer compact = new TibetanAnalyzer(false, "affix-paba", "l", TibetanAnalyzer.INPUT_METHOD_UNICODE, "", null);
+        compact.setCompactTerms(true);
+        for (int i = 0; i < 10; i++) {
+            final String text = new SyntheticCorpusGenerator(i).generate(500);
+            assertEquals(analyze(expected, text), analyze(compact, text));
+        }
+        expected.close();
+        compact.close();
+    }
+
+    @Test
+    public void search() throws IOException, ParseException {
+        final TibetanAnalyzer analyzer = new TibetanAnalyzer(false, "affix-paba", "l", TibetanAnalyzer.INPUT_METHOD_UNICODE, "", null);
+        analyzer.setCompactTerms(true);
+        try (Directory dir = new ByteBuffersDirectory()) {
+            try (IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(analyzer))) {
+                for (final String text : new String[] { "བཀྲ་ཤིས་བདེ་ལེགས།", "ཐམས་ཅད་མཁྱེན་པ།", "བཀྲ་ཤིས་ཀྱི་ཐམས་ཅད།" }) {
+                    final Document doc = new Document();
+                    doc.add(new TextField("text", text, Field.Store.NO));
+                    writer.addDocument(doc);
+                }
+            }
+            try (DirectoryReader reader = DirectoryReader.open(dir)) {
+                final List<String> terms = new ArrayList<>();
+                final TermsEnum te = MultiTerms.getTerms(reader, "text").iterator();
+                BytesRef term;
+                while ((term = te.next()) != null)
+                    terms.add(TibetanTermEncoding.decode(term));
+                assertTrue(terms.contains("བཀྲ"));
+                assertTrue(terms.contains("ལེགས"));
+                final IndexSearcher searcher = new IndexSearcher(reader);
+                assertEquals(2, searcher.count(new TermQuery(new Term("text", TibetanTermEncoding.encode("བཀྲ")))));
+                assertEquals(0, searcher.count(new TermQuery(new Term("text", "བཀྲ"))));
+                final QueryParser parser = new QueryParser("text", analyzer);
+                assertEquals(2, searcher.count(parser.parse("ཐམས")));
+                assertEquals(2, searcher.count(parser.parse("\"བཀྲ་ཤིས\"")));
+                assertEquals(1, searcher.count(parser.parse("\"ཤིས་བདེ\"")));
+                assertEquals(2, searcher.count(parser.parse("མཁྱེན* OR ལེག*")));
+            }
+        }
+        analyzer.close();
+    }
+
+    @Test
+    public void configuration() throws IOException {
+        final TibetanAnalyzer expected = new TibetanAnalyzer(false, "affix-paba", "l", TibetanAnalyzer.INPUT_METHOD_UNICODE, "", null);
+        final TibetanAnalyzer compact = compactAnalyzer();
+        assertNotEquals(expected.getConfiguration(), compact.getConfiguration());
+        expected.setCompactTerms(true);
+        assertEquals(expected.getConfiguration(), compact.getConfiguration());
+        expected.close();
+        compact.close();
+    }
+
+    @Test
+    public void chunkedAnalyzer() throws IOException {
+        final TibetanAnalyzer compact = compactAnalyzer();
+        final ChunkedAnalyzer chunked = new ChunkedAnalyzer(compact, 3000, ForkJoinPool.commonPool());
+        final String text = new SyntheticCorpusGenerator(60).generate(20000);
+        final List<BytesRef> expected = indexedTerms(compact, text);
+        assertEquals(TibetanTermEncoding.MARKER, expected.get(0).bytes[expected.get(0).offset]);
+        assertEquals(expected, indexedTerms(chunked, text));
+        assertEquals(TibetanTermEncoding.encode("བཀྲ"), chunked.normalize("", "བཀྲ"));
+        chunked.close();
+        compact.close();
+    }
+
+    @Test
+    public void cachingAnalyzer() throws IOException {
+        final TibetanAnalyzer compact = compactAnalyzer();
+        final String text = new SyntheticCorpusGenerator(61).generate(2000);
+        final List<BytesRef> expected = indexedTerms(compact, text);
+        assertEquals(TibetanTermEncoding.MARKER, expected.get(0).bytes[expected.get(0).offset]);
+        try (AnalysisCache cache = new AnalysisCache(folder.newFolder().toPath())) {
+            final CachingTibetanAnalyzer caching = new CachingTibetanAnalyzer(compact, cache);
+            // a miss then a hit
+            assertEquals(expected, indexedTerms(caching, text));
+            assertEquals(expected, indexedTerms(caching, text));
+            assertEquals(1, cache.size());
+            assertEquals(TibetanTermEncoding.encode("བཀྲ"), caching.normalize("", "བཀྲ"));
+            caching.close();
+        }
+        compact.close();
+    }
+}